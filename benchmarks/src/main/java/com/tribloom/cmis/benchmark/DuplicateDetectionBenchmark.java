@@ -0,0 +1,95 @@
+package com.tribloom.cmis.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import org.apache.chemistry.opencmis.client.api.CmisObject;
+import org.apache.chemistry.opencmis.client.api.Folder;
+
+import com.tribloom.cmis.AlfrescoItem;
+import com.tribloom.cmis.CmisClient;
+import com.tribloom.cmis.ImportResult;
+
+/**
+ * Latency of looking up a child by name in a large folder, as done for every
+ * imported item to detect duplicates: with the folder's names indexed, and
+ * with a name query per lookup (folders larger than the index limit).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DuplicateDetectionBenchmark {
+
+	@Param({ "1000", "10000" })
+	public int children;
+
+	@Param({ "true", "false" })
+	public boolean indexed;
+
+	private EmbeddedRepository repository;
+	private CmisClient client;
+	private Folder folder;
+
+	@Setup(Level.Trial)
+	public void setUp() throws Exception {
+		repository = new EmbeddedRepository();
+
+		// Populate the folder with another client, whose index would otherwise 
+		// already know every name
+		CmisClient populator = repository.createClient(new Properties(), null);
+		Folder large = repository.createFolder(repository.createSite(populator, EmbeddedRepository.SITE_NAME), "large");
+		List<AlfrescoItem> items = new ArrayList<AlfrescoItem>(children);
+		for (int i = 0; i < children; i++) {
+			items.add(Items.document(large, name(i), 16));
+		}
+		for (ImportResult result : populator.importItems(items)) {
+			if (result.isFailed()) {
+				throw new IllegalStateException("Unable to populate folder: " + result);
+			}
+		}
+
+		Properties properties = new Properties();
+		properties.setProperty("cmis.utils.index.max.children", indexed ? String.valueOf(children) : "0");
+		client = repository.createClient(properties, null);
+		folder = (Folder) client.getSession().getObject(large.getId());
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws Exception {
+		repository.stop();
+	}
+
+	@Benchmark
+	public CmisObject existingName() {
+		return client.getChildByName(folder, name(ThreadLocalRandom.current().nextInt(children)));
+	}
+
+	@Benchmark
+	public CmisObject missingName() {
+		return client.getChildByName(folder, name(children + ThreadLocalRandom.current().nextInt(children)));
+	}
+
+	private static String name(int i) {
+		return "child-" + i + ".txt";
+	}
+}
@@ -0,0 +1,175 @@
+package com.tribloom.cmis.benchmark;
+
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.chemistry.opencmis.client.api.Folder;
+import org.apache.chemistry.opencmis.client.api.Session;
+import org.apache.chemistry.opencmis.client.runtime.repository.ObjectFactoryImpl;
+import org.apache.chemistry.opencmis.commons.PropertyIds;
+import org.apache.chemistry.opencmis.commons.SessionParameter;
+import org.apache.chemistry.opencmis.commons.exceptions.CmisObjectNotFoundException;
+import org.apache.chemistry.opencmis.inmemory.server.InMemoryServiceFactoryImpl;
+import org.apache.chemistry.opencmis.server.impl.CmisRepositoryContextListener;
+import org.apache.chemistry.opencmis.server.impl.atompub.CmisAtomPubServlet;
+import org.apache.chemistry.opencmis.server.impl.browser.CmisBrowserBindingServlet;
+import org.apache.chemistry.opencmis.server.shared.BasicAuthCallContextHandler;
+import org.eclipse.jetty.io.NetworkTrafficListener;
+import org.eclipse.jetty.server.NetworkTrafficServerConnector;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.handler.gzip.GzipHandler;
+import org.eclipse.jetty.servlet.ServletContextHandler;
+import org.eclipse.jetty.servlet.ServletHolder;
+
+import com.tribloom.cmis.CacheFactory;
+import com.tribloom.cmis.CmisClient;
+
+/**
+ * An OpenCMIS InMemory repository served over AtomPub and the Browser binding
+ * by an embedded Jetty on the loopback interface. Each instance has its own,
+ * empty repository.
+ *
+ * Responses are gzipped for clients that accept it, and gzipped requests are
+ * accepted, as by a server set up for compression. The bytes sent and received
+ * on the wire, headers included, are counted.
+ */
+public class EmbeddedRepository {
+
+	public static final String REPOSITORY_ID = "bench";
+	public static final String SITE_NAME = "bench";
+
+	private static final String CONTEXT_PATH = "/inmemory";
+	private static final String SERVLET_PATH = "/atom11";
+	private static final String BROWSER_SERVLET_PATH = "/browser";
+
+	private final Server server;
+	private final int port;
+	private final AtomicLong bytesReceived = new AtomicLong();
+	private final AtomicLong bytesSent = new AtomicLong();
+
+	public EmbeddedRepository() throws Exception {
+		Map<String, String> parameters = new HashMap<String, String>();
+		parameters.put("InMemoryServer.RepositoryId", REPOSITORY_ID);
+		InMemoryServiceFactoryImpl factory = new InMemoryServiceFactoryImpl();
+		factory.init(parameters);
+
+		ServletContextHandler context = new ServletContextHandler(ServletContextHandler.NO_SESSIONS);
+		context.setContextPath(CONTEXT_PATH);
+		context.setAttribute(CmisRepositoryContextListener.SERVICES_FACTORY, factory);
+		ServletHolder atom = new ServletHolder(new CmisAtomPubServlet());
+		atom.setInitParameter("callContextHandler", BasicAuthCallContextHandler.class.getName());
+		atom.setInitParameter("cmisVersion", "1.1");
+		context.addServlet(atom, SERVLET_PATH + "/*");
+		ServletHolder browser = new ServletHolder(new CmisBrowserBindingServlet());
+		browser.setInitParameter("callContextHandler", BasicAuthCallContextHandler.class.getName());
+		browser.setInitParameter("cmisVersion", "1.1");
+		context.addServlet(browser, BROWSER_SERVLET_PATH + "/*");
+
+		GzipHandler gzip = new GzipHandler();
+		gzip.setIncludedMethods("GET", "POST", "PUT", "DELETE");
+		gzip.setInflateBufferSize(8192);
+		gzip.setHandler(context);
+
+		server = new Server();
+		NetworkTrafficServerConnector connector = new NetworkTrafficServerConnector(server);
+		connector.setHost(InetAddress.getLoopbackAddress().getHostAddress());
+		connector.setPort(0);
+		connector.addNetworkTrafficListener(new NetworkTrafficListener() {
+			public void incoming(Socket socket, ByteBuffer bytes) {
+				bytesReceived.addAndGet(bytes.remaining());
+			}
+			public void outgoing(Socket socket, ByteBuffer bytes) {
+				bytesSent.addAndGet(bytes.remaining());
+			}
+		});
+		server.addConnector(connector);
+		server.setHandler(gzip);
+		server.start();
+		port = connector.getLocalPort();
+	}
+
+	/**
+	 * Returns the properties of a CmisClient for this repository.
+	 */
+	public Properties getClientProperties() {
+		Properties properties = new Properties();
+		properties.setProperty("cmis.server.hostname", InetAddress.getLoopbackAddress().getHostAddress());
+		properties.setProperty("cmis.server.port", String.valueOf(port));
+		properties.setProperty("cmis.service.path", CONTEXT_PATH + SERVLET_PATH);
+		properties.setProperty("cmis.user", "admin");
+		properties.setProperty("cmis.password", "admin");
+		properties.setProperty("cmis.repository.id", REPOSITORY_ID);
+		// No Alfresco aspects here
+		properties.setProperty("cmis.session.parameter." + SessionParameter.OBJECT_FACTORY_CLASS,
+				ObjectFactoryImpl.class.getName());
+		properties.setProperty("cmis.utils.jmx.enabled", "false");
+		return properties;
+	}
+
+	/**
+	 * Creates a client with the given properties on top of getClientProperties,
+	 * e.g. "cmis.binding" set to "browser".
+	 */
+	public CmisClient createClient(Properties overrides, CacheFactory cacheFactory) {
+		Properties properties = getClientProperties();
+		if ("browser".equals(overrides.getProperty("cmis.binding"))) {
+			properties.setProperty("cmis.service.path", CONTEXT_PATH + BROWSER_SERVLET_PATH);
+		}
+		properties.putAll(overrides);
+		return cacheFactory != null ? new CmisClient(properties, cacheFactory) : new CmisClient(properties);
+	}
+
+	/**
+	 * Creates the folders of an Alfresco site (/Sites/NAME/documentLibrary)
+	 * and returns the document library.
+	 */
+	public Folder createSite(CmisClient client, String siteName) {
+		Session session = client.getSession();
+		Folder sites = getOrCreateFolder(session, session.getRootFolder(), "Sites");
+		Folder site = getOrCreateFolder(session, sites, siteName);
+		return getOrCreateFolder(session, site, "documentLibrary");
+	}
+
+	/**
+	 * Creates a folder in the given parent, e.g. to hold the children of one
+	 * benchmark run.
+	 */
+	public Folder createFolder(Folder parent, String name) {
+		Map<String, Object> properties = new HashMap<String, Object>();
+		properties.put(PropertyIds.NAME, name);
+		properties.put(PropertyIds.OBJECT_TYPE_ID, "cmis:folder");
+		return parent.createFolder(properties);
+	}
+
+	private Folder getOrCreateFolder(Session session, Folder parent, String name) {
+		String path = parent.isRootFolder() ? "/" + name : parent.getPath() + "/" + name;
+		try {
+			return (Folder) session.getObjectByPath(path);
+		} catch (CmisObjectNotFoundException ex) {
+			return createFolder(parent, name);
+		}
+	}
+
+	/**
+	 * @return the bytes received from clients so far: requests, headers included
+	 */
+	public long getBytesReceived() {
+		return bytesReceived.get();
+	}
+
+	/**
+	 * @return the bytes sent to clients so far: responses, headers included
+	 */
+	public long getBytesSent() {
+		return bytesSent.get();
+	}
+
+	public void stop() throws Exception {
+		server.stop();
+	}
+}
@@ -0,0 +1,91 @@
+package com.tribloom.cmis.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import org.apache.chemistry.opencmis.client.api.Folder;
+
+import com.tribloom.cmis.AlfrescoItem;
+import com.tribloom.cmis.CmisClient;
+import com.tribloom.cmis.ImportResult;
+
+/**
+ * Throughput of creating small (1 KB) documents, one at a time with
+ * importItem and in batches with importItems.
+ *
+ * Run with -t to measure importItem from several threads.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class ImportBenchmark {
+
+	private static final int BATCH_SIZE = 100;
+	private static final int CONTENT_SIZE = 1024;
+
+	private final AtomicLong counter = new AtomicLong();
+	private EmbeddedRepository repository;
+	private CmisClient client;
+	private Folder folder;
+
+	@Setup(Level.Trial)
+	public void setUp() throws Exception {
+		repository = new EmbeddedRepository();
+		client = repository.createClient(new Properties(), null);
+		folder = repository.createFolder(repository.createSite(client, EmbeddedRepository.SITE_NAME), "import");
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws Exception {
+		repository.stop();
+	}
+
+	@Benchmark
+	public String importItem() {
+		String nodeRef = client.importItem(Items.document(folder, nextName(), CONTENT_SIZE));
+		if (nodeRef == null) {
+			throw new IllegalStateException("Import failed");
+		}
+		return nodeRef;
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(BATCH_SIZE)
+	public List<ImportResult> importItems() {
+		List<AlfrescoItem> items = new ArrayList<AlfrescoItem>(BATCH_SIZE);
+		for (int i = 0; i < BATCH_SIZE; i++) {
+			items.add(Items.document(folder, nextName(), CONTENT_SIZE));
+		}
+		List<ImportResult> results = client.importItems(items);
+		for (ImportResult result : results) {
+			if (result.isFailed()) {
+				throw new IllegalStateException("Import failed: " + result);
+			}
+		}
+		return results;
+	}
+
+	private String nextName() {
+		return "item-" + counter.incrementAndGet() + ".txt";
+	}
+}
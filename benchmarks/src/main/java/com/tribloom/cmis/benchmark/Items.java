@@ -0,0 +1,39 @@
+package com.tribloom.cmis.benchmark;
+
+import java.util.Arrays;
+
+import org.apache.chemistry.opencmis.client.api.Folder;
+
+import com.tribloom.cmis.AlfrescoItem;
+
+/**
+ * Builds the items imported by the benchmarks.
+ */
+public class Items {
+
+	private Items() {
+	}
+
+	/**
+	 * Returns a plain text document of the given size.
+	 */
+	public static AlfrescoItem document(Folder destination, String name, int size) {
+		return document(destination, name, content(size));
+	}
+
+	public static byte[] content(int size) {
+		byte[] content = new byte[size];
+		Arrays.fill(content, (byte) 'x');
+		return content;
+	}
+
+	public static AlfrescoItem document(Folder destination, String name, byte[] content) {
+		AlfrescoItem item = new AlfrescoItem();
+		item.setName(name);
+		item.setType("cmis:document");
+		item.setDestinationObject(destination);
+		item.setMimetype("text/plain");
+		item.setContent(content);
+		return item;
+	}
+}
@@ -0,0 +1,66 @@
+package com.tribloom.cmis.benchmark;
+
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import org.apache.chemistry.opencmis.client.api.Folder;
+
+import com.tribloom.cmis.CmisClient;
+
+/**
+ * Latency of site and document library lookups, with the client's caches
+ * (a warm lookup) and without them (every lookup goes to the server).
+ *
+ * The InMemory repository has no Alfresco full text search, so a cold
+ * getSiteFolder also includes the fallback lookup by path.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LookupBenchmark {
+
+	@Param({ "true", "false" })
+	public boolean cached;
+
+	private EmbeddedRepository repository;
+	private CmisClient client;
+
+	@Setup(Level.Trial)
+	public void setUp() throws Exception {
+		repository = new EmbeddedRepository();
+		client = repository.createClient(new Properties(), cached ? null : new NoCacheFactory());
+		repository.createSite(client, EmbeddedRepository.SITE_NAME);
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws Exception {
+		repository.stop();
+	}
+
+	@Benchmark
+	public Folder getSiteFolder() {
+		return client.getSiteFolder(EmbeddedRepository.SITE_NAME);
+	}
+
+	@Benchmark
+	public Folder getDocumentLibrary() {
+		return client.getDocumentLibrary(EmbeddedRepository.SITE_NAME);
+	}
+}
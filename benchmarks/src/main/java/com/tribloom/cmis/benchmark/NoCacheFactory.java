@@ -0,0 +1,31 @@
+package com.tribloom.cmis.benchmark;
+
+import com.tribloom.cmis.Cache;
+import com.tribloom.cmis.CacheFactory;
+import com.tribloom.cmis.CacheStats;
+
+/**
+ * Creates caches that hold nothing, to measure lookups that go to the server.
+ */
+public class NoCacheFactory implements CacheFactory {
+
+	public <K, V> Cache<K, V> createCache(String name, long maxSize, long ttlMillis) {
+		return new Cache<K, V>() {
+			public V get(K key) {
+				return null;
+			}
+			public void put(K key, V value) {
+			}
+			public void invalidate(K key) {
+			}
+			public void invalidateAll() {
+			}
+			public long size() {
+				return 0;
+			}
+			public CacheStats getStats() {
+				return new CacheStats(0, 0, 0);
+			}
+		};
+	}
+}
@@ -0,0 +1,89 @@
+package com.tribloom.cmis.benchmark;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.tribloom.cmis.CmisClient;
+
+/**
+ * Time for a new client to resolve the document library of every site: one
+ * site at a time, with preloadSites finding all sites, and with preloadSites
+ * starting from a site snapshot saved by an earlier client. Each measurement
+ * includes connecting the client.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 10)
+@Fork(1)
+public class SitePreloadBenchmark {
+
+	@Param({ "200" })
+	public int sites;
+
+	private EmbeddedRepository repository;
+	private Path snapshot;
+
+	@Setup(Level.Trial)
+	public void setUp() throws Exception {
+		repository = new EmbeddedRepository();
+		CmisClient populator = repository.createClient(new Properties(), null);
+		for (int i = 0; i < sites; i++) {
+			repository.createSite(populator, "site" + i);
+		}
+		snapshot = Files.createTempFile("sites", ".snapshot");
+		Files.delete(snapshot);
+		Properties properties = new Properties();
+		properties.setProperty("cmis.utils.sites.snapshot", snapshot.toString());
+		CmisClient writer = repository.createClient(properties, null);
+		writer.preloadSites();
+		writer.close();
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws Exception {
+		repository.stop();
+		Files.deleteIfExists(snapshot);
+	}
+
+	@Benchmark
+	public int oneAtATime() {
+		CmisClient client = repository.createClient(new Properties(), null);
+		int found = 0;
+		for (int i = 0; i < sites; i++) {
+			if (client.getDocumentLibrary("site" + i) != null) {
+				found++;
+			}
+		}
+		return found;
+	}
+
+	@Benchmark
+	public int preload() {
+		return repository.createClient(new Properties(), null).preloadSites();
+	}
+
+	@Benchmark
+	public int preloadFromSnapshot() {
+		Properties properties = new Properties();
+		properties.setProperty("cmis.utils.sites.snapshot", snapshot.toString());
+		return repository.createClient(properties, null).preloadSites();
+	}
+}
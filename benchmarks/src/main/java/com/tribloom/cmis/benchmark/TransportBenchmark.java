@@ -0,0 +1,132 @@
+package com.tribloom.cmis.benchmark;
+
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import org.apache.chemistry.opencmis.client.api.CmisObject;
+import org.apache.chemistry.opencmis.client.api.Folder;
+import org.apache.chemistry.opencmis.client.api.OperationContext;
+
+import com.tribloom.cmis.CmisClient;
+
+/**
+ * Latency, and bytes on the wire, of typical calls over the AtomPub and
+ * Browser bindings, with and without gzip compression of requests and
+ * responses: importing a small (1 KB) document, and two lookups that go to
+ * the server, a document library by site name and an object by ID with all
+ * its properties and allowable actions.
+ *
+ * The requestBytes and responseBytes counters are the bytes per call,
+ * headers included. They are only exact when run in a single thread.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TransportBenchmark {
+
+	private static final int CONTENT_SIZE = 1024;
+
+	@Param({ "atompub", "browser" })
+	public String binding;
+
+	@Param({ "false", "true" })
+	public boolean compression;
+
+	private final AtomicLong counter = new AtomicLong();
+	private EmbeddedRepository repository;
+	private CmisClient client;
+	private Folder folder;
+	private String objectId;
+	private OperationContext objectContext;
+
+	/**
+	 * The bytes sent and received per call in the current iteration.
+	 */
+	@State(Scope.Thread)
+	@AuxCounters(AuxCounters.Type.EVENTS)
+	public static class Traffic {
+		public double requestBytes;
+		public double responseBytes;
+
+		private long calls;
+		private long received;
+		private long sent;
+
+		@Setup(Level.Iteration)
+		public void reset(TransportBenchmark benchmark) {
+			calls = 0;
+			received = benchmark.repository.getBytesReceived();
+			sent = benchmark.repository.getBytesSent();
+		}
+
+		void record(EmbeddedRepository repository) {
+			calls++;
+			requestBytes = (double) (repository.getBytesReceived() - received) / calls;
+			responseBytes = (double) (repository.getBytesSent() - sent) / calls;
+		}
+	}
+
+	@Setup(Level.Trial)
+	public void setUp() throws Exception {
+		repository = new EmbeddedRepository();
+		Properties properties = new Properties();
+		properties.setProperty("cmis.binding", binding);
+		properties.setProperty("cmis.http.compression", String.valueOf(compression));
+		properties.setProperty("cmis.http.client.compression", String.valueOf(compression));
+		client = repository.createClient(properties, new NoCacheFactory());
+		folder = repository.createFolder(repository.createSite(client, EmbeddedRepository.SITE_NAME), "import");
+		objectId = client.importItem(Items.document(folder, "lookup.txt", CONTENT_SIZE));
+		objectContext = client.getSession().createOperationContext();
+		objectContext.setIncludeAllowableActions(true);
+		objectContext.setCacheEnabled(false);
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws Exception {
+		repository.stop();
+	}
+
+	@Benchmark
+	public String importItem(Traffic traffic) {
+		String nodeRef = client.importItem(Items.document(folder, "item-" + counter.incrementAndGet() + ".txt",
+				CONTENT_SIZE));
+		if (nodeRef == null) {
+			throw new IllegalStateException("Import failed");
+		}
+		traffic.record(repository);
+		return nodeRef;
+	}
+
+	@Benchmark
+	public Folder getDocumentLibrary(Traffic traffic) {
+		Folder documentLibrary = client.getDocumentLibrary(EmbeddedRepository.SITE_NAME);
+		traffic.record(repository);
+		return documentLibrary;
+	}
+
+	@Benchmark
+	public CmisObject getObject(Traffic traffic) {
+		CmisObject object = client.getSession().getObject(objectId, objectContext);
+		traffic.record(repository);
+		return object;
+	}
+}
@@ -0,0 +1,82 @@
+package com.tribloom.cmis.benchmark;
+
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import org.apache.chemistry.opencmis.client.api.Folder;
+
+import com.tribloom.cmis.CmisClient;
+
+/**
+ * Time to create a document with content of several sizes. With an 8 MB chunk
+ * size, the largest size is uploaded in four requests.
+ *
+ * Each document is deleted after it is measured, so the in-memory repository
+ * does not grow.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class UploadBenchmark {
+
+	private static final String CHUNK_SIZE = String.valueOf(8 * 1024 * 1024);
+
+	@Param({ "1024", "1048576", "33554432" })
+	public int size;
+
+	private EmbeddedRepository repository;
+	private CmisClient client;
+	private Folder folder;
+	private byte[] content;
+	private String nodeRef;
+	private long counter;
+
+	@Setup(Level.Trial)
+	public void setUp() throws Exception {
+		repository = new EmbeddedRepository();
+		Properties properties = new Properties();
+		properties.setProperty("cmis.utils.upload.chunk.size", CHUNK_SIZE);
+		client = repository.createClient(properties, null);
+		folder = repository.createFolder(repository.createSite(client, EmbeddedRepository.SITE_NAME), "upload");
+		content = Items.content(size);
+	}
+
+	@TearDown(Level.Invocation)
+	public void deleteDocument() {
+		if (nodeRef != null) {
+			client.getSession().getObject(nodeRef).delete();
+			nodeRef = null;
+		}
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws Exception {
+		repository.stop();
+	}
+
+	@Benchmark
+	public String upload() {
+		nodeRef = client.importItem(Items.document(folder, "upload-" + (++counter) + ".bin", content));
+		if (nodeRef == null) {
+			throw new IllegalStateException("Upload failed");
+		}
+		return nodeRef;
+	}
+}
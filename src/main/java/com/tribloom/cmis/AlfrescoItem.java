@@ -1,30 +1,54 @@
 package com.tribloom.cmis;
 
-import java.util.HashMap;
+import java.io.InputStream;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Path;
+import java.util.Calendar;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.apache.chemistry.opencmis.client.api.Folder;
 import org.apache.chemistry.opencmis.commons.PropertyIds;
 
 public class AlfrescoItem {
 
-	// Destination should be a NodeRef, but can be GUID or path
+	// Type strings shared by items, so that a batch of a few types holds each once
+	private static final int MAX_SHARED_TYPES = 1024;
+	private static final ConcurrentHashMap<String, String> sharedTypes = new ConcurrentHashMap<String, String>();
+
+	// Destination should be a NodeRef, but can be a repository path ("/Sites/...") 
+	// or a path relative to the site's document library
 	private Folder destinationObject;
 	private String destination;
-	private Map<String, String> properties = new HashMap<String, String>();
-	private Map<String, String> associations = new HashMap<String, String>();
+	// Compact maps sharing their keys between items; see CompactProperties
+	private final CompactProperties properties = new CompactProperties();
+	private final CompactProperties associations = new CompactProperties();
 	private Object content;
 	private String site;
 	private String mimetype;
+	// Optional source key identifying this item within an import batch. Other items 
+	// in the same batch may use it as their destination.
+	private String key;
 
 	public String getDestination() {
-		return destination.trim();
+		return destination != null ? destination.trim() : null;
 	}
 	public String getType() {
 		return properties.get(PropertyIds.OBJECT_TYPE_ID);
 	}
 	public void setType(String type) {
-		properties.put(PropertyIds.OBJECT_TYPE_ID, type.trim());
+		properties.put(PropertyIds.OBJECT_TYPE_ID, share(type.trim()));
+	}
+	private static String share(String type) {
+		String shared = sharedTypes.get(type);
+		if (shared != null) {
+			return shared;
+		}
+		if (sharedTypes.size() >= MAX_SHARED_TYPES) {
+			return type;
+		}
+		shared = sharedTypes.putIfAbsent(type, type);
+		return shared != null ? shared : type;
 	}
 	public void setDestination(String destination) {
 		// TODO: Make this check to enforce this as a NodeRef
@@ -34,21 +58,75 @@ public class AlfrescoItem {
 		return properties;
 	}
 	public void setProperties(Map<String, String> props) {
-		for (String key : props.keySet()) {
-			this.properties.put(key, props.get(key));
-		}
+		this.properties.putAll(props);
 	}
 	public void addProperty(String key, String value) {
 		if (key != null && value != null) {
 			this.properties.put(key.trim(), value.trim());
 		}
 	}
+	/**
+	 * Sets a property to a typed value, which is stored without converting it 
+	 * to a string first: a Number, Boolean, Calendar, Date or String. It reads 
+	 * back from getProperties() as a string (dates as UTC ISO 8601 with millis).
+	 * @param key String property ID
+	 * @param value Object
+	 */
+	public void setProperty(String key, Object value) {
+		if (key != null && value != null) {
+			this.properties.putTyped(key.trim(), value instanceof String ? ((String) value).trim() : value);
+		}
+	}
+	/**
+	 * Returns a property value as stored: a Long, Double, BigInteger, 
+	 * BigDecimal, Boolean, Calendar (for date times) or String. Canonical 
+	 * numbers, booleans and UTC date times added as strings come back typed.
+	 * @param key String property ID
+	 * @return Object, or null if the item has no such property
+	 */
+	public Object getPropertyValue(String key) {
+		return properties.getValue(key);
+	}
+	/**
+	 * @param key String property ID
+	 * @return Calendar the date time value of the property, or null if it has none
+	 */
+	public Calendar getDateProperty(String key) {
+		Object value = properties.getValue(key);
+		return value instanceof Calendar ? (Calendar) value : null;
+	}
 	public Object getContent() {
 		return content;
 	}
 	public void setContent(Object content) {
 		this.content = content;
 	}
+	/**
+	 * Sets the content to a local file, which is streamed to the server when 
+	 * the item is imported.
+	 * @param path Path
+	 */
+	public void setContent(Path path) {
+		this.content = path;
+	}
+	/**
+	 * Sets the content to a stream of the given length. The stream is read 
+	 * once, when the item is imported, and closed afterwards.
+	 * @param stream InputStream
+	 * @param length long content length in bytes
+	 */
+	public void setContent(InputStream stream, long length) {
+		this.content = ItemContent.forStream(stream, length);
+	}
+	/**
+	 * Sets the content to a channel of the given length. The channel is read 
+	 * once, when the item is imported, and closed afterwards.
+	 * @param channel ReadableByteChannel
+	 * @param length long content length in bytes
+	 */
+	public void setContent(ReadableByteChannel channel, long length) {
+		this.content = ItemContent.forChannel(channel, length);
+	}
 	public Folder getDestinationObject() {
 		return destinationObject;
 	}
@@ -59,13 +137,11 @@ public class AlfrescoItem {
 		properties.put(PropertyIds.NAME, name.trim());
 	}	
 	public String getName() {
-		return properties.get(PropertyIds.NAME).trim();
+		String name = properties.get(PropertyIds.NAME);
+		return name != null ? name.trim() : null;
 	}
 	public String getGUID() {
-		if (properties != null && properties.containsKey("w:guid")) {
-			return properties.get("w:guid");
-		}
-		return null;
+		return properties.get("w:guid");
 	}
 	public String toString() {
 		return properties.toString() + " -> " + destination;
@@ -77,7 +153,8 @@ public class AlfrescoItem {
 		return associations;
 	}
 	public void setAssociations(Map<String, String> assocs) {
-		this.associations = assocs;
+		this.associations.clear();
+		this.associations.putAll(assocs);
 	}
 	public void setSiteName(String siteName) {
 		this.site = siteName;
@@ -100,4 +177,10 @@ public class AlfrescoItem {
 	public void setMimetype(String type) {
 		mimetype = type;
 	}
+	public String getKey() {
+		return key;
+	}
+	public void setKey(String key) {
+		this.key = key;
+	}
 }
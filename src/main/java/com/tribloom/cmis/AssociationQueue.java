@@ -0,0 +1,358 @@
+package com.tribloom.cmis;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.chemistry.opencmis.client.api.CmisObject;
+import org.apache.chemistry.opencmis.client.api.ItemIterable;
+import org.apache.chemistry.opencmis.client.api.ObjectId;
+import org.apache.chemistry.opencmis.client.api.OperationContext;
+import org.apache.chemistry.opencmis.client.api.Relationship;
+import org.apache.chemistry.opencmis.client.api.Session;
+import org.apache.chemistry.opencmis.commons.PropertyIds;
+import org.apache.chemistry.opencmis.commons.enums.RelationshipDirection;
+import org.apache.chemistry.opencmis.commons.exceptions.CmisBaseException;
+import org.apache.chemistry.opencmis.commons.exceptions.CmisConstraintException;
+import org.apache.chemistry.opencmis.commons.exceptions.CmisContentAlreadyExistsException;
+import org.apache.chemistry.opencmis.commons.exceptions.CmisInvalidArgumentException;
+import org.apache.chemistry.opencmis.commons.exceptions.CmisObjectNotFoundException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Associations collected while items are imported and created afterwards, so
+ * that an association may point at an item imported later in the same batch.
+ *
+ * On flush, targets are resolved (by batch key, through the imported object
+ * cache, or on the server), duplicates are dropped, relationships that already
+ * exist on sources that were not newly created are fetched and skipped, and
+ * the rest are created in parallel.
+ *
+ * Existing relationships are listed per source (getRelationships), in
+ * parallel, rather than with a query over all sources at once: Alfresco does
+ * not make its relationship types queryable, so a cmis:sourceId IN (...) query
+ * is not available there.
+ */
+public class AssociationQueue {
+
+	// SL4J Logger
+	private static final Logger logger = LoggerFactory.getLogger(AssociationQueue.class);
+
+	private static final int PAGE_SIZE = 1000;
+
+	private final CmisClient client;
+	private final Cache<String, ObjectSummary> objectCache;
+	private final ConcurrentLinkedQueue<Association> pending = new ConcurrentLinkedQueue<Association>();
+	private final Set<String> newSources = Collections.synchronizedSet(new HashSet<String>());
+	private ImportJournal journal;
+
+	AssociationQueue(CmisClient client, Cache<String, ObjectSummary> objectCache) {
+		this.client = client;
+		this.objectCache = objectCache;
+	}
+
+	/**
+	 * Queues an association.
+	 *
+	 * @param sourceId String ID of the source object
+	 * @param sourceIsNew boolean true if the source was just created, and so has no relationships yet
+	 * @param assocType String association type name, without the "R:" prefix
+	 * @param target String NodeRef or batch key of the target
+	 */
+	public void add(String sourceId, boolean sourceIsNew, String assocType, String target) {
+		pending.add(new Association(sourceId, "R:" + assocType, target.trim()));
+		if (sourceIsNew) {
+			newSources.add(sourceId);
+		}
+	}
+
+	public int size() {
+		return pending.size();
+	}
+
+	/**
+	 * Sets a journal in which to look up targets that are keys of items imported
+	 * by an earlier batch.
+	 */
+	void setJournal(ImportJournal journal) {
+		this.journal = journal;
+	}
+
+	/**
+	 * Creates all queued associations and empties the queue.
+	 *
+	 * @param keyedNodeRefs Map<String, String> NodeRefs of the batch's items, by key
+	 * @param parallelism int number of threads to create associations on
+	 * @return AssociationReport
+	 */
+	public AssociationReport flush(Map<String, String> keyedNodeRefs, int parallelism) {
+		Set<Association> associations = new LinkedHashSet<Association>();
+		Association next;
+		while ((next = pending.poll()) != null) {
+			associations.add(next);
+		}
+		if (associations.isEmpty()) {
+			return new AssociationReport(0, 0, 0, 0);
+		}
+		logger.debug("Creating " + associations.size() + " associations...");
+
+		final AtomicInteger created = new AtomicInteger();
+		final AtomicInteger skipped = new AtomicInteger();
+		final AtomicInteger unresolved = new AtomicInteger();
+		final AtomicInteger failed = new AtomicInteger();
+
+		// Resolve targets
+		List<Association> resolved = new ArrayList<Association>(associations.size());
+		Map<String, String> targetIds = new HashMap<String, String>();
+		Set<String> failedTargets = new HashSet<String>();
+		for (Association assoc : associations) {
+			if (failedTargets.contains(assoc.target)) {
+				failed.incrementAndGet();
+				continue;
+			}
+			String targetId = targetIds.get(assoc.target);
+			if (targetId == null && !targetIds.containsKey(assoc.target)) {
+				try {
+					targetId = resolveTarget(assoc.target, keyedNodeRefs);
+				} catch (CmisBaseException ex) {
+					// e.g. permission denied, or the server unreachable after retries
+					logger.error("Unable to look up association target: " + assoc.target, ex);
+					failedTargets.add(assoc.target);
+					failed.incrementAndGet();
+					continue;
+				}
+				targetIds.put(assoc.target, targetId);
+			}
+			if (targetId == null) {
+				logger.warn("No CmisObject found for ID: " + assoc.target);
+				unresolved.incrementAndGet();
+			} else {
+				resolved.add(assoc.withTargetId(targetId));
+			}
+		}
+
+		ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, parallelism));
+		try {
+			// Fetch existing relationships of sources that existed before this batch
+			final Set<String> existing = Collections.synchronizedSet(new HashSet<String>());
+			List<Future<?>> futures = new ArrayList<Future<?>>();
+			Set<String> sources = new HashSet<String>();
+			for (Association assoc : resolved) {
+				if (!newSources.contains(assoc.sourceId) && sources.add(assoc.sourceId)) {
+					final String sourceId = assoc.sourceId;
+					futures.add(executor.submit(new Callable<Void>() {
+						public Void call() {
+							existing.addAll(getExistingRelationships(sourceId));
+							return null;
+						}
+					}));
+				}
+			}
+			awaitAll(futures);
+
+			futures.clear();
+			for (final Association assoc : resolved) {
+				if (existing.contains(assoc.describe())) {
+					skipped.incrementAndGet();
+					continue;
+				}
+				futures.add(executor.submit(new Callable<Void>() {
+					public Void call() {
+						try {
+							createRelationship(assoc);
+							created.incrementAndGet();
+						} catch (CmisContentAlreadyExistsException ex) {
+							skipped.incrementAndGet();
+						} catch (CmisConstraintException ex) {
+							// Some repositories report a duplicate as a constraint violation
+							if (exists(assoc)) {
+								skipped.incrementAndGet();
+							} else {
+								logger.error("Relationship not allowed: " + assoc.describe() + " (" + ex.getMessage() + ")");
+								failed.incrementAndGet();
+							}
+						} catch (RuntimeException ex) {
+							logger.error("Unable to create relationship: " + assoc.describe(), ex);
+							failed.incrementAndGet();
+						}
+						return null;
+					}
+				}));
+			}
+			awaitAll(futures);
+		} finally {
+			executor.shutdown();
+			newSources.clear();
+		}
+
+		AssociationReport report = new AssociationReport(created.get(), skipped.get(), unresolved.get(), failed.get());
+		logger.info("Associations: " + report);
+		return report;
+	}
+
+	private String resolveTarget(String target, Map<String, String> keyedNodeRefs) {
+		if (keyedNodeRefs != null && keyedNodeRefs.containsKey(target)) {
+			return keyedNodeRefs.get(target);
+		}
+		String journaled = journal != null ? journal.getNodeRef(target) : null;
+		if (journaled != null) {
+			return journaled;
+		}
+		ObjectSummary summary = objectCache.get(target);
+		if (summary != null) {
+			return summary.getId();
+		}
+		try {
+			CmisObject obj = client.getObject(client.getSession(), target, createIdContext());
+			return obj.getId();
+		} catch (CmisObjectNotFoundException ex) {
+			return null;
+		} catch (CmisInvalidArgumentException ex) {
+			// Not a valid object ID, e.g. a key of no imported item
+			return null;
+		} catch (IllegalArgumentException ex) {
+			// Not a valid object ID
+			return null;
+		}
+	}
+
+	private Set<String> getExistingRelationships(String sourceId) {
+		final Session session = client.getSession();
+		final OperationContext context = OperationContexts.minimal(session, PAGE_SIZE,
+				PropertyIds.OBJECT_TYPE_ID, PropertyIds.SOURCE_ID, PropertyIds.TARGET_ID);
+		ItemIterable<Relationship> listing = session.getRelationships(session.createObjectId(sourceId), true,
+				RelationshipDirection.SOURCE, null, context);
+		Set<String> relationships = new HashSet<String>();
+		GuardedPages.Page<Relationship> page;
+		long skip = 0;
+		do {
+			page = GuardedPages.getPage(client.getCallGuard(), Operation.GET_RELATIONSHIPS, listing, skip);
+			skip += page.items.size();
+			for (Relationship rel : page.items) {
+				relationships.add(describe(sourceId, rel.getType().getId(), rel.getTargetId().getId()));
+			}
+		} while (page.hasNext());
+		return relationships;
+	}
+
+	/**
+	 * Creates the association's relationship. A call that fails without saying
+	 * whether the relationship was created (e.g. the connection dropped) is
+	 * only repeated once the relationship is found not to exist, so that it
+	 * is not created twice.
+	 */
+	private void createRelationship(Association assoc) {
+		final Map<String, String> properties = new HashMap<String, String>();
+		properties.put(PropertyIds.SOURCE_ID, assoc.sourceId);
+		properties.put(PropertyIds.TARGET_ID, assoc.targetId);
+		properties.put(PropertyIds.OBJECT_TYPE_ID, assoc.type);
+		final Session session = client.getSession();
+		CallGuard guard = client.getCallGuard();
+		int attempt = 0;
+		while (true) {
+			try {
+				guard.execute(Operation.CREATE_RELATIONSHIP, new CallGuard.Call<ObjectId>() {
+					public ObjectId call() {
+						return session.createRelationship(properties);
+					}
+				});
+				return;
+			} catch (RuntimeException ex) {
+				if (!guard.shouldRetry(ex, ++attempt)) {
+					throw ex;
+				}
+				if (getExistingRelationships(assoc.sourceId).contains(assoc.describe())) {
+					logger.warn("Created relationship " + assoc.describe() + " despite " + ex);
+					return;
+				}
+				logger.warn("Retrying create of relationship " + assoc.describe() + " (attempt " + attempt + "): " 
+						+ ex);
+				guard.backoff(attempt);
+			}
+		}
+	}
+
+	/**
+	 * Returns true if the association's relationship exists on the server.
+	 */
+	private boolean exists(Association assoc) {
+		try {
+			return getExistingRelationships(assoc.sourceId).contains(assoc.describe());
+		} catch (CmisBaseException ex) {
+			logger.error("Unable to look up relationships of " + assoc.sourceId, ex);
+			return false;
+		}
+	}
+
+	private OperationContext createIdContext() {
+		return OperationContexts.minimal(client.getSession(), PAGE_SIZE, PropertyIds.OBJECT_ID);
+	}
+
+	private static void awaitAll(List<Future<?>> futures) {
+		for (Future<?> future : futures) {
+			try {
+				future.get();
+			} catch (Exception ex) {
+				logger.error("Association worker failed", ex);
+			}
+		}
+	}
+
+	/**
+	 * Identifies a relationship independently of object versions
+	 * (Alfresco document IDs carry a ";1.0" version suffix).
+	 */
+	private static String describe(String sourceId, String type, String targetId) {
+		return stripVersion(sourceId) + " -" + type + "-> " + stripVersion(targetId);
+	}
+
+	private static String stripVersion(String id) {
+		int index = id.indexOf(';');
+		return index > -1 ? id.substring(0, index) : id;
+	}
+
+	private static class Association {
+		final String sourceId;
+		final String type;
+		final String target;
+		final String targetId;
+
+		Association(String sourceId, String type, String target) {
+			this(sourceId, type, target, null);
+		}
+		Association(String sourceId, String type, String target, String targetId) {
+			this.sourceId = sourceId;
+			this.type = type;
+			this.target = target;
+			this.targetId = targetId;
+		}
+		Association withTargetId(String id) {
+			return new Association(sourceId, type, target, id);
+		}
+		String describe() {
+			return AssociationQueue.describe(sourceId, type, targetId != null ? targetId : target);
+		}
+		public boolean equals(Object obj) {
+			if (!(obj instanceof Association)) {
+				return false;
+			}
+			Association other = (Association) obj;
+			return sourceId.equals(other.sourceId) && type.equals(other.type) && target.equals(other.target);
+		}
+		public int hashCode() {
+			return (sourceId.hashCode() * 31 + type.hashCode()) * 31 + target.hashCode();
+		}
+	}
+}
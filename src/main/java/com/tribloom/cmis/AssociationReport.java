@@ -0,0 +1,41 @@
+package com.tribloom.cmis;
+
+/**
+ * Counts of what happened to the associations queued during an import.
+ */
+public class AssociationReport {
+
+	private final int created;
+	private final int skipped;
+	private final int unresolved;
+	private final int failed;
+
+	public AssociationReport(int created, int skipped, int unresolved, int failed) {
+		this.created = created;
+		this.skipped = skipped;
+		this.unresolved = unresolved;
+		this.failed = failed;
+	}
+
+	public int getCreated() {
+		return created;
+	}
+	/**
+	 * @return the number of associations that already existed
+	 */
+	public int getSkipped() {
+		return skipped;
+	}
+	/**
+	 * @return the number of associations whose target could not be found
+	 */
+	public int getUnresolved() {
+		return unresolved;
+	}
+	public int getFailed() {
+		return failed;
+	}
+	public String toString() {
+		return created + " created, " + skipped + " skipped, " + unresolved + " unresolved, " + failed + " failed";
+	}
+}
@@ -0,0 +1,65 @@
+package com.tribloom.cmis;
+
+import java.lang.reflect.InvocationTargetException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Executors for the async methods of CmisClient.
+ *
+ * On a JVM with virtual threads (Java 21 and later) each task gets its own
+ * virtual thread, so thousands of calls can wait on the server without
+ * thousands of platform threads; the ConcurrencyLimiter still decides how
+ * many reach it at once. The JVM is only asked for them by reflection, so the
+ * library still runs on Java 8, where a fixed pool is used instead.
+ */
+final class AsyncExecutors {
+
+	// SL4J Logger
+	private static final Logger logger = LoggerFactory.getLogger(AsyncExecutors.class);
+
+	private AsyncExecutors() {
+	}
+
+	/**
+	 * Returns an executor that starts a virtual thread per task, or null if the
+	 * JVM has no virtual threads.
+	 */
+	static ExecutorService newVirtualThreadExecutor() {
+		try {
+			return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+		} catch (NoSuchMethodException ex) {
+			return null;
+		} catch (IllegalAccessException ex) {
+			logger.warn("Unable to use virtual threads", ex);
+			return null;
+		} catch (InvocationTargetException ex) {
+			logger.warn("Unable to use virtual threads", ex.getCause());
+			return null;
+		}
+	}
+
+	/**
+	 * Returns a fixed pool of daemon threads named cmis-async-POOL-N.
+	 */
+	static ExecutorService newThreadPool(int threads) {
+		return Executors.newFixedThreadPool(threads, new AsyncThreadFactory());
+	}
+
+	private static class AsyncThreadFactory implements ThreadFactory {
+		private static final AtomicInteger poolCount = new AtomicInteger();
+		private final int pool = poolCount.incrementAndGet();
+		private final AtomicInteger threadCount = new AtomicInteger();
+
+		public Thread newThread(Runnable runnable) {
+			Thread thread = new Thread(runnable, "cmis-async-" + pool + "-" + threadCount.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		}
+	}
+}
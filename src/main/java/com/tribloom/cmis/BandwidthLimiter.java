@@ -0,0 +1,57 @@
+package com.tribloom.cmis;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Limits the bytes per second transferred by any number of threads.
+ *
+ * A token bucket holding up to one second of bytes: a transfer takes its bytes
+ * from the bucket, running it into debt if need be, and then sleeps until
+ * the debt would be paid off. Callers therefore take turns at the configured
+ * rate, in chunks of whatever size they read, after an initial burst of at
+ * most one second's worth.
+ */
+class BandwidthLimiter {
+
+	private final long bytesPerSecond;
+	private double available;
+	private long refilledAt = System.nanoTime();
+
+	/**
+	 * @param bytesPerSecond long, at least 1
+	 */
+	BandwidthLimiter(long bytesPerSecond) {
+		if (bytesPerSecond < 1) {
+			throw new IllegalArgumentException("Bandwidth must be at least 1 byte per second: " + bytesPerSecond);
+		}
+		this.bytesPerSecond = bytesPerSecond;
+		this.available = bytesPerSecond;
+	}
+
+	long getBytesPerSecond() {
+		return bytesPerSecond;
+	}
+
+	/**
+	 * Takes the given number of bytes, waiting as long as the limit requires.
+	 *
+	 * @param bytes long
+	 */
+	void acquire(long bytes) throws InterruptedException {
+		long waitNanos = reserve(bytes);
+		if (waitNanos > 0) {
+			TimeUnit.NANOSECONDS.sleep(waitNanos);
+		}
+	}
+
+	/**
+	 * Takes the bytes from the bucket and returns how long to wait for them.
+	 */
+	synchronized long reserve(long bytes) {
+		long now = System.nanoTime();
+		available = Math.min(bytesPerSecond, available + (now - refilledAt) * (bytesPerSecond / 1e9));
+		refilledAt = now;
+		available -= bytes;
+		return available < 0 ? (long) (-available * 1e9 / bytesPerSecond) : 0;
+	}
+}
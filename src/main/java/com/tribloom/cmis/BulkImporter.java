@@ -0,0 +1,442 @@
+package com.tribloom.cmis;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Imports a batch of AlfrescoItems concurrently through CmisClient.importItemWithResult.
+ *
+ * Items are handed to a fixed pool of worker threads in the order they are provided.
+ * An item whose destination is the key (see AlfrescoItem.setKey) of an earlier item
+ * in the same batch waits for that item to be imported, and is then placed in the
+ * node it produced. Because items are dequeued in submission order, an item can only
+ * ever wait on an item that is already running or finished, so the pool cannot
+ * deadlock on its own dependencies.
+ *
+ * At most parallelism * 4 items are in flight at a time, so very large (or lazily
+ * produced) batches are not read into memory ahead of the workers.
+ *
+ * Each worker borrows a session from the client's session pool for each item.
+ *
+ * Associations are created once all items have been imported, so their targets
+ * may be NodeRefs or keys of any item in the batch, including later ones.
+ *
+ * With an ImportJournal, the outcome of each keyed item is recorded, and items
+ * the journal already holds are skipped without a round trip to the server. Keys
+ * in the journal also resolve as destinations and association targets, so an
+ * interrupted import can be resumed by running the same batch again.
+ *
+ * With a unique property configured on the client (see CmisClient), items are
+ * read ahead in batches whose existing objects are looked up with one query
+ * each (see UniquePropertyLookup), instead of searching each item's
+ * destination folder by name.
+ */
+public class BulkImporter {
+
+	// SL4J Logger
+	private static final Logger logger = LoggerFactory.getLogger(BulkImporter.class);
+
+	private static final int QUEUED_ITEMS_PER_THREAD = 4;
+
+	private final CmisClient client;
+	private final int parallelism;
+	private ImportJournal journal;
+	private ImportPlanner planner;
+	private boolean dryRun;
+	private AssociationReport associationReport;
+
+	/**
+	 * Creates an importer for the default client (see CmisUtils.createSession).
+	 */
+	public BulkImporter(int parallelism) {
+		this(CmisUtils.getClient(), parallelism);
+	}
+
+	public BulkImporter(CmisClient client, int parallelism) {
+		if (client == null) {
+			throw new IllegalArgumentException("No client provided");
+		}
+		if (parallelism < 1) {
+			throw new IllegalArgumentException("Parallelism must be at least 1: " + parallelism);
+		}
+		this.client = client;
+		this.parallelism = parallelism;
+	}
+
+	public int getParallelism() {
+		return parallelism;
+	}
+
+	/**
+	 * Sets the journal used to resume interrupted imports, or null for none.
+	 *
+	 * @param journal ImportJournal
+	 */
+	public void setJournal(ImportJournal journal) {
+		this.journal = journal;
+	}
+
+	public ImportJournal getJournal() {
+		return journal;
+	}
+
+	/**
+	 * Sets the planner that arranges each batch before it is imported (see
+	 * ImportPlanner), or null to import items in the order they are provided.
+	 *
+	 * @param planner ImportPlanner
+	 */
+	public void setPlanner(ImportPlanner planner) {
+		this.planner = planner;
+	}
+
+	public ImportPlanner getPlanner() {
+		return planner;
+	}
+
+	/**
+	 * In a dry run, batches are planned and the plan is logged, but nothing is
+	 * sent to the server; every item is reported as SKIPPED.
+	 *
+	 * @param dryRun boolean
+	 */
+	public void setDryRun(boolean dryRun) {
+		this.dryRun = dryRun;
+	}
+
+	public boolean isDryRun() {
+		return dryRun;
+	}
+
+	/**
+	 * @return the associations created by the last call to importItems
+	 */
+	public AssociationReport getAssociationReport() {
+		return associationReport;
+	}
+
+	/**
+	 * Imports all items and waits for them to finish.
+	 *
+	 * @param items Iterable<AlfrescoItem>
+	 * @return List<ImportResult> one result per item, in iteration order
+	 */
+	public List<ImportResult> importItems(Iterable<AlfrescoItem> items) {
+		if (planner != null || dryRun) {
+			return importPlan((planner != null ? planner : new ImportPlanner(false)).plan(items));
+		}
+		Run run = new Run();
+		List<ImportResult> results = run.importAll(items);
+		run.finish();
+		return results;
+	}
+
+	/**
+	 * Imports the items of a plan in the planned order and waits for them to
+	 * finish. Each item collapsed into another gets that item's outcome, as
+	 * SKIPPED if it was created or updated. In a dry run, the plan is logged
+	 * and nothing is imported.
+	 *
+	 * @param plan ImportPlan
+	 * @return List<ImportResult> one result per item of the batch, in batch order
+	 */
+	public List<ImportResult> importPlan(ImportPlan plan) {
+		List<ImportResult> results = new ArrayList<ImportResult>(plan.getItemCount());
+		if (dryRun) {
+			logger.info("Import plan (dry run): " + plan);
+			for (ImportPlan.Entry entry : plan.getEntries()) {
+				results.add(ImportResult.skipped(entry.item, null, "Dry run"));
+			}
+			return results;
+		}
+		logger.info("Import plan: " + plan);
+		Run run = new Run();
+		List<ImportResult> planned = run.importAll(plan.getItems());
+		Map<AlfrescoItem, ImportResult> byItem = new IdentityHashMap<AlfrescoItem, ImportResult>();
+		for (int i = 0; i < planned.size(); i++) {
+			byItem.put(plan.getItems().get(i), planned.get(i));
+		}
+		for (ImportPlan.Entry entry : plan.getEntries()) {
+			if (entry.mergedInto == null) {
+				results.add(byItem.get(entry.item));
+				continue;
+			}
+			ImportResult merged = byItem.get(entry.mergedInto);
+			CmisClient.discardContent(entry.item);
+			results.add(merged.isFailed() ? ImportResult.failed(entry.item, merged.getMessage())
+					: ImportResult.skipped(entry.item, merged.getNodeRef(), "Collapsed into an earlier item"));
+			if (entry.item.getKey() != null && !run.keyedFutures.containsKey(entry.item.getKey())) {
+				run.keyedFutures.put(entry.item.getKey(), completed(merged));
+			}
+		}
+		run.finish();
+		return results;
+	}
+
+	/**
+	 * The state of one call to importItems.
+	 */
+	private class Run {
+		private final ExecutorService executor = Executors.newFixedThreadPool(parallelism, new WorkerThreadFactory());
+		private final Semaphore inFlight = new Semaphore(parallelism * QUEUED_ITEMS_PER_THREAD);
+		private final List<Future<ImportResult>> futures = new ArrayList<Future<ImportResult>>();
+		private final Map<String, Future<ImportResult>> keyedFutures = new HashMap<String, Future<ImportResult>>();
+		private final AssociationQueue associations = client.createAssociationQueue();
+		private int journaled;
+
+		private Run() {
+			associations.setJournal(journal);
+		}
+
+		/**
+		 * Submits the items, and waits for them to be imported.
+		 */
+		private List<ImportResult> importAll(Iterable<AlfrescoItem> items) {
+			UniquePropertyLookup lookup = client.getUniquePropertyLookup();
+			try {
+				List<AlfrescoItem> pending = new ArrayList<AlfrescoItem>();
+				for (AlfrescoItem item : items) {
+					if (lookup == null) {
+						submit(item, null);
+						continue;
+					}
+					pending.add(item);
+					if (pending.size() >= lookup.getBatchSize()) {
+						submit(pending, lookup);
+						pending.clear();
+					}
+				}
+				if (!pending.isEmpty()) {
+					submit(pending, lookup);
+				}
+			} finally {
+				executor.shutdown();
+			}
+
+			List<ImportResult> results = new ArrayList<ImportResult>(futures.size());
+			int failed = 0;
+			for (Future<ImportResult> future : futures) {
+				ImportResult result = await(future);
+				if (result.isFailed()) {
+					failed++;
+				}
+				results.add(result);
+			}
+			logger.info("Imported " + results.size() + " items (" + failed + " failed"
+					+ (journal != null ? ", " + journaled + " already in the journal" : "") + ")");
+			return results;
+		}
+
+		/**
+		 * Syncs the journal, and creates the queued associations.
+		 */
+		private void finish() {
+			if (journal != null) {
+				try {
+					journal.sync();
+				} catch (IOException ex) {
+					logger.error("Unable to sync import journal " + journal.getFile(), ex);
+				}
+			}
+
+			Map<String, String> keyedNodeRefs = new HashMap<String, String>();
+			for (Map.Entry<String, Future<ImportResult>> entry : keyedFutures.entrySet()) {
+				String nodeRef = await(entry.getValue()).getNodeRef();
+				if (nodeRef != null) {
+					keyedNodeRefs.put(entry.getKey(), nodeRef);
+				}
+			}
+			associationReport = associations.flush(keyedNodeRefs, parallelism);
+		}
+
+		/**
+		 * Looks up the existing objects of a batch of items with the unique
+		 * property, then submits the items. If the lookup fails, so do the items,
+		 * rather than being created again.
+		 */
+		private void submit(List<AlfrescoItem> batch, UniquePropertyLookup lookup) {
+			List<AlfrescoItem> unjournaled = new ArrayList<AlfrescoItem>(batch.size());
+			for (AlfrescoItem item : batch) {
+				if (journal == null || item.getKey() == null || journal.getNodeRef(item.getKey()) == null) {
+					unjournaled.add(item);
+				}
+			}
+			Map<AlfrescoItem, String> existing;
+			try {
+				existing = lookup.lookup(unjournaled);
+			} catch (RuntimeException ex) {
+				logger.error("Unable to look up " + unjournaled.size() + " items by " + lookup.getPropertyId(), ex);
+				for (AlfrescoItem item : batch) {
+					ImportResult result = ImportResult.failed(item, "Unable to look up existing object: " + ex);
+					CmisClient.discardContent(item);
+					record(result);
+					add(item, completed(result));
+				}
+				return;
+			}
+			for (AlfrescoItem item : batch) {
+				submit(item, existing.get(item));
+			}
+		}
+
+		private void submit(final AlfrescoItem item, final String existingId) {
+			final Future<ImportResult> dependency =
+					item.getDestination() != null ? keyedFutures.get(item.getDestination()) : null;
+			if (journal != null) {
+				Future<ImportResult> done = fromJournal(item, dependency);
+				if (done != null) {
+					add(item, done);
+					journaled++;
+					return;
+				}
+			}
+			inFlight.acquireUninterruptibly();
+			Future<ImportResult> future;
+			try {
+				future = executor.submit(new Callable<ImportResult>() {
+					public ImportResult call() {
+						try {
+							return importItem(item, dependency, associations, existingId);
+						} finally {
+							inFlight.release();
+						}
+					}
+				});
+			} catch (RuntimeException ex) {
+				inFlight.release();
+				throw ex;
+			}
+			add(item, future);
+		}
+
+		private void add(AlfrescoItem item, Future<ImportResult> future) {
+			futures.add(future);
+			if (item.getKey() != null) {
+				keyedFutures.put(item.getKey(), future);
+			}
+		}
+	}
+
+	private ImportResult importItem(AlfrescoItem item, Future<ImportResult> dependency,
+			AssociationQueue associations, String existingId) {
+		try {
+			if (dependency != null) {
+				ImportResult parent = await(dependency);
+				if (parent.getNodeRef() == null) {
+					CmisClient.discardContent(item);
+					return ImportResult.failed(item, "Destination was not imported: " + item.getDestination());
+				}
+				item.setDestination(parent.getNodeRef());
+			}
+			// Borrow only after any wait above, so waiting workers don't hold sessions
+			ImportResult result;
+			client.borrowSession();
+			try {
+				result = client.importItemWithResult(item, associations, existingId);
+			} finally {
+				client.releaseSession();
+			}
+			record(result);
+			return result;
+		} catch (RuntimeException ex) {
+			logger.error("Unable to import item: " + item, ex);
+			CmisClient.discardContent(item);
+			ImportResult result = ImportResult.failed(item, ex.toString());
+			record(result);
+			return result;
+		}
+	}
+
+	/**
+	 * Returns the result of an item the journal holds as imported, or null if the
+	 * item has to be imported. An item placed in a keyed item from an earlier run
+	 * gets that item's NodeRef as its destination.
+	 */
+	private Future<ImportResult> fromJournal(AlfrescoItem item, Future<ImportResult> dependency) {
+		if (dependency == null && item.getDestination() != null) {
+			String destination = journal.getNodeRef(item.getDestination());
+			if (destination != null) {
+				item.setDestination(destination);
+			}
+		}
+		String nodeRef = item.getKey() != null ? journal.getNodeRef(item.getKey()) : null;
+		if (nodeRef == null) {
+			return null;
+		}
+		CmisClient.discardContent(item);
+		return completed(ImportResult.skipped(item, nodeRef, "Already imported (journal)"));
+	}
+
+	private static Future<ImportResult> completed(final ImportResult result) {
+		FutureTask<ImportResult> done = new FutureTask<ImportResult>(new Callable<ImportResult>() {
+			public ImportResult call() {
+				return result;
+			}
+		});
+		done.run();
+		return done;
+	}
+
+	private void record(ImportResult result) {
+		if (journal == null) {
+			return;
+		}
+		try {
+			journal.append(result);
+		} catch (IOException ex) {
+			// The item is imported; without a record it is only checked again on resume
+			logger.error("Unable to record " + result + " in import journal " + journal.getFile(), ex);
+		}
+	}
+
+	static ImportResult await(Future<ImportResult> future) {
+		boolean interrupted = false;
+		try {
+			while (true) {
+				try {
+					return future.get();
+				} catch (InterruptedException ex) {
+					interrupted = true;
+				} catch (ExecutionException ex) {
+					// importItem catches everything, so this only happens on Errors
+					throw new IllegalStateException("Import worker failed", ex.getCause());
+				}
+			}
+		} finally {
+			if (interrupted) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	/**
+	 * Names worker threads so they can be told apart in the log and thread dumps.
+	 */
+	static class WorkerThreadFactory implements ThreadFactory {
+		private static final AtomicInteger poolCount = new AtomicInteger();
+		private final int pool = poolCount.incrementAndGet();
+		private final AtomicInteger threadCount = new AtomicInteger();
+
+		public Thread newThread(Runnable runnable) {
+			Thread thread = new Thread(runnable, "cmis-import-" + pool + "-" + threadCount.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		}
+	}
+}
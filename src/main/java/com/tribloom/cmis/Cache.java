@@ -0,0 +1,26 @@
+package com.tribloom.cmis;
+
+/**
+ * A concurrent key/value cache used by CmisUtils. Implementations decide how
+ * and when entries are evicted; see LruCache for the default.
+ */
+public interface Cache<K, V> {
+
+	/**
+	 * @return the cached value, or null if there is none (or it has expired)
+	 */
+	V get(K key);
+
+	void put(K key, V value);
+
+	void invalidate(K key);
+
+	void invalidateAll();
+
+	/**
+	 * @return the number of entries currently cached
+	 */
+	long size();
+
+	CacheStats getStats();
+}
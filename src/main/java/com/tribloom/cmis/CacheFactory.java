@@ -0,0 +1,16 @@
+package com.tribloom.cmis;
+
+/**
+ * Creates the caches used by CmisUtils. Set a custom factory with 
+ * CmisUtils.setCacheFactory to plug in a different cache implementation.
+ */
+public interface CacheFactory {
+
+	/**
+	 * @param name String cache name, e.g. "siteFolder"
+	 * @param maxSize long the configured maximum number of entries
+	 * @param ttlMillis long the configured time-to-live, or 0 for none
+	 * @return Cache
+	 */
+	<K, V> Cache<K, V> createCache(String name, long maxSize, long ttlMillis);
+}
@@ -0,0 +1,44 @@
+package com.tribloom.cmis;
+
+/**
+ * A snapshot of the hit, miss and eviction counts of a Cache.
+ */
+public class CacheStats {
+
+	private final long hitCount;
+	private final long missCount;
+	private final long evictionCount;
+
+	public CacheStats(long hitCount, long missCount, long evictionCount) {
+		this.hitCount = hitCount;
+		this.missCount = missCount;
+		this.evictionCount = evictionCount;
+	}
+
+	public long getHitCount() {
+		return hitCount;
+	}
+	public long getMissCount() {
+		return missCount;
+	}
+	/**
+	 * @return the number of entries removed because of size, weight or expiry
+	 */
+	public long getEvictionCount() {
+		return evictionCount;
+	}
+	public long getRequestCount() {
+		return hitCount + missCount;
+	}
+	/**
+	 * @return the ratio of hits to requests, or 1.0 if there were no requests
+	 */
+	public double getHitRate() {
+		long requests = getRequestCount();
+		return requests == 0 ? 1.0 : (double) hitCount / requests;
+	}
+	public String toString() {
+		return "hits=" + hitCount + ", misses=" + missCount + ", evictions=" + evictionCount
+				+ String.format(", hitRate=%.3f", getHitRate());
+	}
+}
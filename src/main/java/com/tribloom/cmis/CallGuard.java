@@ -0,0 +1,190 @@
+package com.tribloom.cmis;
+
+import java.util.Random;
+
+import org.apache.chemistry.opencmis.commons.exceptions.CmisConnectionException;
+import org.apache.chemistry.opencmis.commons.exceptions.CmisServiceUnavailableException;
+import org.apache.chemistry.opencmis.commons.exceptions.CmisTooManyRequestsException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Makes the remote calls of a CmisClient: each call is measured by
+ * ImportMetrics, waits for the ConcurrencyLimiter, and is refused while the
+ * CircuitBreaker is open.
+ *
+ * Calls of idempotent operations that fail with a transient error (a
+ * connection failure, timeout, 503 Service Unavailable or 429 Too Many
+ * Requests) are retried after a randomized exponential backoff.
+ */
+class CallGuard {
+
+	// SL4J Logger
+	private static final Logger logger = LoggerFactory.getLogger(CallGuard.class);
+
+	/**
+	 * A remote call.
+	 */
+	interface Call<T> {
+		T call();
+	}
+
+	private final ImportMetrics metrics;
+	private final ConcurrencyLimiter limiter;
+	private final CircuitBreaker breaker;
+	private final int retries;
+	private final long backoffMillis;
+	private final long maxBackoffMillis;
+	private final Random random = new Random();
+
+	CallGuard(ImportMetrics metrics, ConcurrencyLimiter limiter, CircuitBreaker breaker, int retries,
+			long backoffMillis, long maxBackoffMillis) {
+		this.metrics = metrics;
+		this.limiter = limiter;
+		this.breaker = breaker;
+		this.retries = retries;
+		this.backoffMillis = backoffMillis;
+		this.maxBackoffMillis = maxBackoffMillis;
+	}
+
+	ImportMetrics getMetrics() {
+		return metrics;
+	}
+
+	ConcurrencyLimiter getLimiter() {
+		return limiter;
+	}
+
+	CircuitBreaker getBreaker() {
+		return breaker;
+	}
+
+	/**
+	 * Makes a call, retrying it if the operation is idempotent.
+	 *
+	 * @param operation Operation
+	 * @param call Call<T>
+	 * @return T the call's result
+	 */
+	<T> T execute(Operation operation, Call<T> call) {
+		int attempt = 0;
+		while (true) {
+			Permit permit = enter(operation);
+			try {
+				T result = call.call();
+				permit.success();
+				return result;
+			} catch (RuntimeException ex) {
+				permit.failure(ex);
+				if (!operation.isIdempotent() || !shouldRetry(ex, ++attempt)) {
+					throw ex;
+				}
+				logger.warn("Retrying " + operation.getOperationName() + " (attempt " + attempt + "): " + ex);
+			} finally {
+				permit.stop();
+			}
+			backoff(attempt);
+		}
+	}
+
+	/**
+	 * Starts a call that the caller makes (and retries) itself.
+	 *
+	 * @param operation Operation
+	 * @return Permit
+	 * @throws CmisConnectionException if the circuit breaker is open
+	 */
+	Permit enter(Operation operation) {
+		if (!breaker.allowRequest()) {
+			throw new CmisConnectionException("Not calling " + operation.getOperationName()
+					+ ", the server has failed repeatedly (circuit breaker open)");
+		}
+		limiter.acquire();
+		return new Permit(operation);
+	}
+
+	/**
+	 * Returns true if a call that failed with the given exception may be
+	 * made again, as the given attempt.
+	 */
+	boolean shouldRetry(RuntimeException ex, int attempt) {
+		return isTransient(ex) && attempt <= retries && breaker.getState() == CircuitBreaker.State.CLOSED;
+	}
+
+	/**
+	 * Waits before the given retry attempt: a random time of up to the backoff
+	 * time, doubled for each attempt.
+	 */
+	void backoff(int attempt) {
+		long ceiling = Math.min(maxBackoffMillis, backoffMillis << Math.min(attempt - 1, 20));
+		long millis;
+		synchronized (random) {
+			millis = (long) (random.nextDouble() * ceiling);
+		}
+		try {
+			Thread.sleep(millis);
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Returns true for failures that say nothing about the request itself:
+	 * connection failures and timeouts (which OpenCMIS reports as connection
+	 * failures), 503 Service Unavailable and 429 Too Many Requests. Other
+	 * server errors, including a generic 500, are taken to be caused by the
+	 * request (e.g. an integrity violation or a failing script), so are
+	 * neither retried nor counted as overload.
+	 */
+	static boolean isTransient(RuntimeException ex) {
+		return ex instanceof CmisConnectionException || ex instanceof CmisServiceUnavailableException
+				|| ex instanceof CmisTooManyRequestsException;
+	}
+
+	/**
+	 * One call in progress. Ends once: by success(), by failure(), or else by
+	 * stop() as a failure that says nothing about the server.
+	 */
+	class Permit {
+		private final Operation operation;
+		private final ImportMetrics.Timer timer;
+		private final long start = System.nanoTime();
+		private boolean ended;
+
+		private Permit(Operation operation) {
+			this.operation = operation;
+			this.timer = metrics.start(operation);
+		}
+
+		void success() {
+			if (!ended) {
+				ended = true;
+				timer.success();
+				limiter.release(operation, start, System.nanoTime() - start, false);
+				breaker.onSuccess();
+			}
+		}
+
+		void failure(RuntimeException ex) {
+			if (!ended) {
+				ended = true;
+				timer.stop();
+				boolean overloaded = isTransient(ex);
+				limiter.release(operation, start, System.nanoTime() - start, overloaded);
+				if (overloaded) {
+					breaker.onFailure();
+				} else {
+					breaker.onSuccess();
+				}
+			}
+		}
+
+		void stop() {
+			if (!ended) {
+				ended = true;
+				timer.stop();
+				limiter.release();
+			}
+		}
+	}
+}
@@ -0,0 +1,191 @@
+package com.tribloom.cmis;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Calendar;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.chemistry.opencmis.client.api.CmisObject;
+import org.apache.chemistry.opencmis.client.api.Document;
+import org.apache.chemistry.opencmis.client.api.Property;
+import org.apache.chemistry.opencmis.client.api.SecondaryType;
+import org.apache.chemistry.opencmis.commons.PropertyIds;
+import org.apache.chemistry.opencmis.commons.enums.PropertyType;
+import org.apache.chemistry.opencmis.commons.impl.DateTimeHelper;
+
+/**
+ * Works out what an overwrite import actually needs to change on an existing
+ * object, so that unchanged properties and content are not sent again.
+ */
+class ChangeDetector {
+
+	/** CMIS 1.1 content hash property, holding values such as "{sha-256}ab12..." */
+	private static final String CONTENT_STREAM_HASH = "cmis:contentStreamHash";
+	private static final String HASH_ALGORITHM = "SHA-256";
+	private static final String HASH_PREFIX = "{sha-256}";
+
+	private ChangeDetector() {
+	}
+
+	/**
+	 * Returns the incoming properties whose values differ from those of the
+	 * existing object. Values are compared as the property's type (so
+	 * "2013-01-01T00:00:00Z" matches the same instant in another time zone, and
+	 * "1.0" matches a decimal 1). The type ID is only included if the incoming
+	 * type string adds aspects the object does not have.
+	 *
+	 * @param obj CmisObject the existing object
+	 * @param incoming Map<String, String> the imported properties
+	 * @param typeSpec TypeRegistry.TypeSpec the parsed imported type
+	 * @return Map<String, Object> properties to update, possibly empty
+	 */
+	static Map<String, Object> getChangedProperties(CmisObject obj, Map<String, String> incoming,
+			TypeRegistry.TypeSpec typeSpec) {
+		Map<String, Object> changed = new LinkedHashMap<String, Object>();
+		for (Map.Entry<String, String> entry : incoming.entrySet()) {
+			String id = entry.getKey();
+			if (PropertyIds.OBJECT_TYPE_ID.equals(id)) {
+				if (hasMissingAspects(obj, typeSpec)) {
+					changed.put(id, entry.getValue());
+				}
+			} else if (!isSameValue(obj.getProperty(id), entry.getValue())) {
+				changed.put(id, entry.getValue());
+			}
+		}
+		return changed;
+	}
+
+	/**
+	 * Returns true if the type string names aspects the object does not have.
+	 * Repositories that do not report secondary types (CMIS 1.0) are assumed to
+	 * have them, so aspects are only added there along with changed properties.
+	 */
+	private static boolean hasMissingAspects(CmisObject obj, TypeRegistry.TypeSpec typeSpec) {
+		if (typeSpec == null || typeSpec.getAspects().isEmpty()) {
+			return false;
+		}
+		List<SecondaryType> secondaryTypes = obj.getSecondaryTypes();
+		if (secondaryTypes == null) {
+			return false;
+		}
+		for (String aspect : typeSpec.getAspects()) {
+			boolean found = false;
+			for (SecondaryType type : secondaryTypes) {
+				if (aspect.equals(type.getId())) {
+					found = true;
+					break;
+				}
+			}
+			if (!found) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	static boolean isSameValue(Property<?> property, String value) {
+		Object existing = property != null ? property.getFirstValue() : null;
+		if (existing == null || value == null) {
+			return existing == null && (value == null || value.length() == 0);
+		}
+		if (property.isMultiValued() && property.getValues().size() != 1) {
+			return false;
+		}
+		PropertyType type = property.getType();
+		try {
+			if (type == PropertyType.DATETIME) {
+				Calendar parsed = DateTimeHelper.parseXmlDateTime(value);
+				return parsed != null && parsed.getTimeInMillis() == ((Calendar) existing).getTimeInMillis();
+			} else if (type == PropertyType.INTEGER) {
+				return new BigInteger(value.trim()).equals(existing);
+			} else if (type == PropertyType.DECIMAL) {
+				return new BigDecimal(value.trim()).compareTo((BigDecimal) existing) == 0;
+			} else if (type == PropertyType.BOOLEAN) {
+				return Boolean.valueOf(value.trim()).equals(existing);
+			}
+		} catch (NumberFormatException ex) {
+			return false;
+		}
+		return value.equals(existing.toString());
+	}
+
+	/**
+	 * Returns true if the incoming content differs from the document's content.
+	 *
+	 * If the incoming content hash is known, it is compared with the hash
+	 * stored in the given property (or in cmis:contentStreamHash). Otherwise
+	 * the content is taken as unchanged when its length matches.
+	 *
+	 * @param document Document
+	 * @param length long incoming content length, or ItemContent.UNKNOWN_LENGTH
+	 * @param hash String incoming content hash, or null
+	 * @param hashProperty String property holding the stored hash, or null
+	 * @return boolean
+	 */
+	static boolean isContentChanged(Document document, long length, String hash, String hashProperty) {
+		if (length < 0 || length != document.getContentStreamLength()) {
+			return true;
+		}
+		if (hash == null) {
+			return false;
+		}
+		String stored = getStoredHash(document, hashProperty);
+		return stored == null || !stored.equalsIgnoreCase(hash);
+	}
+
+	private static String getStoredHash(Document document, String hashProperty) {
+		if (hashProperty != null) {
+			Object value = document.getPropertyValue(hashProperty);
+			if (value != null) {
+				return value.toString();
+			}
+		}
+		List<Object> hashes = document.getPropertyValue(CONTENT_STREAM_HASH);
+		if (hashes != null) {
+			for (Object value : hashes) {
+				String stored = value.toString();
+				if (stored.toLowerCase().startsWith(HASH_PREFIX)) {
+					return stored.substring(HASH_PREFIX.length());
+				}
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Computes the hex SHA-256 digest of repeatable content, or returns null
+	 * for content that can only be read once.
+	 */
+	static String hash(ItemContent content) throws IOException {
+		if (!content.isRepeatable()) {
+			return null;
+		}
+		MessageDigest digest;
+		try {
+			digest = MessageDigest.getInstance(HASH_ALGORITHM);
+		} catch (NoSuchAlgorithmException ex) {
+			throw new IllegalStateException(ex);
+		}
+		InputStream in = content.openStream(0);
+		try {
+			byte[] buffer = new byte[64 * 1024];
+			int count;
+			while ((count = in.read(buffer)) >= 0) {
+				digest.update(buffer, 0, count);
+			}
+		} finally {
+			in.close();
+		}
+		StringBuilder hex = new StringBuilder();
+		for (byte b : digest.digest()) {
+			hex.append(String.format("%02x", b & 0xff));
+		}
+		return hex.toString();
+	}
+}
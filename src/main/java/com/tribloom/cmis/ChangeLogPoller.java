@@ -0,0 +1,291 @@
+package com.tribloom.cmis;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import org.apache.chemistry.opencmis.client.api.ChangeEvent;
+import org.apache.chemistry.opencmis.client.api.ChangeEvents;
+import org.apache.chemistry.opencmis.client.api.OperationContext;
+import org.apache.chemistry.opencmis.client.api.Session;
+import org.apache.chemistry.opencmis.commons.PropertyIds;
+import org.apache.chemistry.opencmis.commons.data.RepositoryInfo;
+import org.apache.chemistry.opencmis.commons.enums.CapabilityChanges;
+import org.apache.chemistry.opencmis.commons.exceptions.CmisBaseException;
+import org.apache.chemistry.opencmis.commons.exceptions.CmisConstraintException;
+import org.apache.chemistry.opencmis.commons.exceptions.CmisInvalidArgumentException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Reads the repository's change log (getContentChanges) and hands each change
+ * to a Listener, so that caches can drop exactly the entries that changed
+ * instead of expiring everything on a timer.
+ *
+ * The change token is kept in a file, if one is given, so a new process
+ * starts where the last one stopped: changes made while no importer ran still
+ * reach caches warm-started from disk, such as the site snapshot. Without a
+ * saved token, polling starts at the repository's latest change. When the
+ * log can't be read from the saved token (it was truncated, or the
+ * repository was rebuilt), the listener is told to drop everything and
+ * polling starts again at the latest change.
+ */
+class ChangeLogPoller {
+
+	// SL4J Logger
+	private static final Logger logger = LoggerFactory.getLogger(ChangeLogPoller.class);
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	/**
+	 * Receives the changes read from the log.
+	 */
+	interface Listener {
+		/**
+		 * An object was created, updated, deleted or had its permissions changed.
+		 */
+		void changed(ChangeEvent event);
+
+		/**
+		 * Changes may have been missed; nothing cached can be trusted.
+		 */
+		void changesLost();
+	}
+
+	private final Supplier<Session> sessions;
+	private final CallGuard guard;
+	private final Listener listener;
+	private final Path tokenFile;
+	private final int batchSize;
+	private String token;
+	private String savedToken;
+	private boolean started;
+	private ScheduledExecutorService scheduler;
+
+	/**
+	 * @param sessions Supplier<Session> the session to poll with
+	 * @param guard CallGuard
+	 * @param listener Listener
+	 * @param tokenFile Path file keeping the change token between runs, or null
+	 * @param batchSize int changes per getContentChanges call
+	 */
+	ChangeLogPoller(Supplier<Session> sessions, CallGuard guard, Listener listener, Path tokenFile, int batchSize) {
+		if (batchSize < 1) {
+			throw new IllegalArgumentException("Batch size must be at least 1: " + batchSize);
+		}
+		this.sessions = sessions;
+		this.guard = guard;
+		this.listener = listener;
+		this.tokenFile = tokenFile;
+		this.batchSize = batchSize;
+	}
+
+	synchronized String getToken() {
+		return token;
+	}
+
+	/**
+	 * Returns true if the repository keeps a change log this poller can read.
+	 */
+	static boolean isSupported(RepositoryInfo info) {
+		CapabilityChanges changes = info.getCapabilities() != null ? info.getCapabilities().getChangesCapability()
+				: null;
+		return changes != null && changes != CapabilityChanges.NONE;
+	}
+
+	/**
+	 * Reads the changes since the last poll (or the saved token) and passes
+	 * them to the listener.
+	 *
+	 * @return the number of changes read
+	 */
+	synchronized int poll() {
+		if (!started) {
+			start();
+			started = true;
+		}
+		if (token == null) {
+			// Nothing to start from yet, e.g. an empty change log
+			token = getLatestToken();
+			saveToken();
+			return 0;
+		}
+		Session session = sessions.get();
+		OperationContext context = OperationContexts.minimal(session, batchSize, PropertyIds.OBJECT_ID);
+		int count = 0;
+		while (true) {
+			ChangeEvents events;
+			try {
+				events = fetch(session, context);
+			} catch (CmisInvalidArgumentException | CmisConstraintException ex) {
+				restart(ex);
+				return count;
+			}
+			List<ChangeEvent> changes = events.getChangeEvents() != null ? events.getChangeEvents()
+					: Collections.<ChangeEvent>emptyList();
+			for (ChangeEvent change : changes) {
+				listener.changed(change);
+			}
+			count += changes.size();
+			String latest = events.getLatestChangeLogToken();
+			boolean advanced = latest != null && !latest.equals(token);
+			if (latest != null) {
+				token = latest;
+			}
+			// Stop if the log has no more, or doesn't move on (it repeats the change at the token)
+			if (!events.getHasMoreItems() || !advanced) {
+				break;
+			}
+		}
+		saveToken();
+		if (count > 0) {
+			logger.debug("Read " + count + " changes, up to token " + token);
+		}
+		return count;
+	}
+
+	/**
+	 * Polls in the background every intervalMillis, starting after one
+	 * interval, until stop is called.
+	 *
+	 * @param intervalMillis long
+	 */
+	synchronized void schedule(long intervalMillis) {
+		if (scheduler != null) {
+			return;
+		}
+		scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, "cmis-changes");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		scheduler.scheduleWithFixedDelay(new Runnable() {
+			public void run() {
+				try {
+					poll();
+				} catch (CmisBaseException ex) {
+					logger.warn("Unable to read the change log: " + ex);
+				} catch (RuntimeException ex) {
+					logger.error("Unable to read the change log", ex);
+				}
+			}
+		}, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+		logger.info("Polling the change log every " + intervalMillis + " ms");
+	}
+
+	/**
+	 * Stops background polling, and saves the token.
+	 */
+	void stop() {
+		ScheduledExecutorService running;
+		synchronized (this) {
+			running = scheduler;
+			scheduler = null;
+		}
+		if (running != null) {
+			running.shutdown();
+			try {
+				running.awaitTermination(10, TimeUnit.SECONDS);
+			} catch (InterruptedException ex) {
+				Thread.currentThread().interrupt();
+			}
+		}
+		synchronized (this) {
+			saveToken();
+		}
+	}
+
+	private ChangeEvents fetch(final Session session, final OperationContext context) {
+		final String from = token;
+		return guard.execute(Operation.GET_CONTENT_CHANGES, new CallGuard.Call<ChangeEvents>() {
+			public ChangeEvents call() {
+				return session.getContentChanges(from, false, batchSize, context);
+			}
+		});
+	}
+
+	/**
+	 * Loads the saved token, or else starts at the latest change.
+	 */
+	private void start() {
+		String saved = loadToken();
+		if (saved != null) {
+			token = saved;
+			savedToken = saved;
+			logger.info("Reading the change log from saved token " + token);
+		} else {
+			token = getLatestToken();
+			logger.info("Reading the change log from token " + token);
+		}
+	}
+
+	private void restart(CmisBaseException ex) {
+		String latest = getLatestToken();
+		logger.warn("Unable to read the change log from token " + token + ", restarting at " + latest
+				+ " and dropping cached objects: " + ex.getMessage());
+		listener.changesLost();
+		token = latest;
+		saveToken();
+	}
+
+	/**
+	 * Asks the repository for its latest token; the session's repository
+	 * info is fetched once, so it would keep returning the first token.
+	 */
+	private String getLatestToken() {
+		final Session session = sessions.get();
+		RepositoryInfo info = guard.execute(Operation.GET_CONTENT_CHANGES,
+				new CallGuard.Call<RepositoryInfo>() {
+					public RepositoryInfo call() {
+						return session.getBinding().getRepositoryService()
+								.getRepositoryInfo(session.getRepositoryInfo().getId(), null);
+					}
+				});
+		return info.getLatestChangeLogToken();
+	}
+
+	private String loadToken() {
+		if (tokenFile == null) {
+			return null;
+		}
+		try {
+			String saved = new String(Files.readAllBytes(tokenFile), UTF8).trim();
+			return saved.length() > 0 ? saved : null;
+		} catch (NoSuchFileException ex) {
+			return null;
+		} catch (IOException ex) {
+			logger.warn("Unable to read change token from " + tokenFile, ex);
+			return null;
+		}
+	}
+
+	private void saveToken() {
+		if (tokenFile == null || token == null || token.equals(savedToken)) {
+			return;
+		}
+		try {
+			Path parent = tokenFile.toAbsolutePath().getParent();
+			if (parent != null) {
+				Files.createDirectories(parent);
+			}
+			Path temp = tokenFile.resolveSibling(tokenFile.getFileName() + ".tmp");
+			Files.write(temp, (token + "\n").getBytes(UTF8));
+			Files.move(temp, tokenFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			savedToken = token;
+		} catch (IOException ex) {
+			logger.error("Unable to save change token to " + tokenFile, ex);
+		}
+	}
+}
@@ -0,0 +1,243 @@
+package com.tribloom.cmis;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.apache.chemistry.opencmis.client.api.CmisObject;
+import org.apache.chemistry.opencmis.client.api.Folder;
+import org.apache.chemistry.opencmis.client.api.ItemIterable;
+import org.apache.chemistry.opencmis.client.api.OperationContext;
+import org.apache.chemistry.opencmis.client.api.QueryResult;
+import org.apache.chemistry.opencmis.client.api.QueryStatement;
+import org.apache.chemistry.opencmis.client.api.Session;
+import org.apache.chemistry.opencmis.commons.PropertyIds;
+import org.apache.chemistry.opencmis.commons.enums.CmisVersion;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Index of child names to object IDs, per folder, used for duplicate detection.
+ *
+ * The first lookup in a folder loads the names and IDs of all of its children
+ * (and nothing else) in large pages. After that, lookups in the folder are local
+ * and objects created by the importer are added as they are created.
+ *
+ * Folders with more than maxIndexedChildren children are not loaded. Instead,
+ * lookups in them run a name-equality query, after checking the names created
+ * by this importer (which the search index may not have caught up with yet).
+ *
+ * The folders are held in a Cache, which by default is bounded by the total
+ * number of names held (see WEIGHER), so the least recently used folders are
+ * dropped, and loaded again if they are needed again.
+ *
+ * The index is safe for concurrent readers and writers; while it is cached,
+ * each folder is loaded at most once, however many threads ask for it at the
+ * same time.
+ */
+class ChildNameIndex {
+
+	// SL4J Logger
+	private static final Logger logger = LoggerFactory.getLogger(ChildNameIndex.class);
+
+	private static final int PAGE_SIZE = 1000;
+	private static final String[] QUERY_TYPES = { "cmis:document", "cmis:folder" };
+
+	/**
+	 * Weighs a folder's index by the number of names in it.
+	 */
+	static final LruCache.Weigher<String, FolderIndex> WEIGHER = new LruCache.Weigher<String, FolderIndex>() {
+		public int weigh(String folderId, FolderIndex index) {
+			return index.names.size() + 1;
+		}
+	};
+
+	private final int maxIndexedChildren;
+	private final CallGuard guard;
+	private final Cache<String, FolderIndex> folders;
+	private final Object creating = new Object();
+
+	/**
+	 * @param maxIndexedChildren int largest folder loaded in full
+	 * @param folders Cache<String, FolderIndex> for the indexes, by folder ID
+	 * @param guard CallGuard
+	 */
+	ChildNameIndex(int maxIndexedChildren, Cache<String, FolderIndex> folders, CallGuard guard) {
+		this.maxIndexedChildren = maxIndexedChildren;
+		this.folders = folders;
+		this.guard = guard;
+	}
+
+	/**
+	 * Returns the ID of the child of the folder with the given name, or null if
+	 * there is none.
+	 */
+	String getChildId(Session session, Folder folder, String name) {
+		FolderIndex index = getFolderIndex(folder.getId());
+		if (index.load(session, folder)) {
+			// Weighed again, now that it holds the names
+			folders.put(folder.getId(), index);
+		}
+		String id = index.names.get(name);
+		if (id == null && !index.complete) {
+			id = queryChildId(session, folder, name);
+			if (id != null) {
+				index.names.put(name, id);
+			}
+		}
+		return id;
+	}
+
+	/**
+	 * Records a child created in the given folder.
+	 */
+	void put(String folderId, String name, String objectId) {
+		FolderIndex index = getFolderIndex(folderId);
+		if (index.names.put(name, objectId) == null) {
+			folders.put(folderId, index);
+		}
+	}
+
+	/**
+	 * Forgets a child of the given folder, e.g. after it was deleted or renamed.
+	 */
+	void remove(String folderId, String name) {
+		FolderIndex index = folders.get(folderId);
+		if (index != null) {
+			index.names.remove(name);
+		}
+	}
+
+	/**
+	 * Drops the index of the given folder, so it is reloaded on the next lookup.
+	 */
+	void invalidate(String folderId) {
+		folders.invalidate(folderId);
+	}
+
+	void clear() {
+		folders.invalidateAll();
+	}
+
+	private FolderIndex getFolderIndex(String folderId) {
+		FolderIndex index = folders.get(folderId);
+		if (index == null) {
+			// Checked again under a lock, so threads asking at once share one index
+			synchronized (creating) {
+				index = folders.get(folderId);
+				if (index == null) {
+					index = new FolderIndex();
+					folders.put(folderId, index);
+				}
+			}
+		}
+		return index;
+	}
+
+	private String queryChildId(Session session, Folder folder, String name) {
+		for (String type : queryTypes(session)) {
+			final QueryStatement query = session.createQueryStatement("SELECT " + PropertyIds.OBJECT_ID
+					+ " FROM " + type + " WHERE " + PropertyIds.NAME + " = ? AND IN_FOLDER(?)");
+			query.setString(1, name);
+			query.setId(2, folder);
+			logger.debug("Query : " + query.toQueryString());
+			String childId = guard.execute(Operation.QUERY, new CallGuard.Call<String>() {
+				public String call() {
+					for (QueryResult result : query.query(false).getPage(1)) {
+						return result.getPropertyValueById(PropertyIds.OBJECT_ID);
+					}
+					return null;
+				}
+			});
+			if (childId != null) {
+				return childId;
+			}
+		}
+		return null;
+	}
+
+	private static String[] queryTypes(Session session) {
+		if (session.getRepositoryInfo().getCmisVersion() == CmisVersion.CMIS_1_1) {
+			return new String[] { QUERY_TYPES[0], QUERY_TYPES[1], "cmis:item" };
+		}
+		return QUERY_TYPES;
+	}
+
+	/**
+	 * Builds an OperationContext that only fetches names and IDs.
+	 */
+	private static OperationContext createNameContext(Session session) {
+		OperationContext context = OperationContexts.minimal(session, PAGE_SIZE, PropertyIds.OBJECT_ID, PropertyIds.NAME);
+		context.setCacheEnabled(false);
+		return context;
+	}
+
+	/**
+	 * The names of the children of one folder.
+	 */
+	class FolderIndex {
+		final ConcurrentHashMap<String, String> names = new ConcurrentHashMap<String, String>();
+		volatile boolean loaded;
+		// True if the names hold every child of the folder
+		volatile boolean complete;
+		final ReentrantLock loading = new ReentrantLock();
+
+		/**
+		 * Loads the children unless they are loaded already.
+		 * 
+		 * @return true if this call loaded them
+		 */
+		boolean load(Session session, Folder folder) {
+			if (loaded) {
+				return false;
+			}
+			// A lock rather than a monitor, so virtual threads waiting for the
+			// listing don't pin their carrier threads
+			loading.lock();
+			try {
+				if (loaded) {
+					return false;
+				}
+				load(folder, folder.getChildren(createNameContext(session)));
+				loaded = true;
+				return true;
+			} finally {
+				loading.unlock();
+			}
+		}
+
+		/**
+		 * Loads the children a page at a time, each page in its own guarded call.
+		 */
+		private void load(Folder folder, ItemIterable<CmisObject> children) {
+			GuardedPages.Page<CmisObject> page = GuardedPages.getPage(guard, Operation.GET_CHILDREN, children, 0);
+			long total = page.totalNumItems;
+			if (total > maxIndexedChildren) {
+				logger.debug("Not indexing " + folder.getName() + " (" + total + " children)");
+			} else {
+				// Names recorded by other threads while loading are kept; the partial
+				// result of an oversized folder still serves as a cache for lookups
+				int count = 0;
+				long skip = 0;
+				while (count <= maxIndexedChildren) {
+					for (CmisObject child : page.items) {
+						if (++count > maxIndexedChildren) {
+							break;
+						}
+						names.putIfAbsent(child.getName(), child.getId());
+					}
+					if (count > maxIndexedChildren || !page.hasNext()) {
+						break;
+					}
+					skip += page.items.size();
+					page = GuardedPages.getPage(guard, Operation.GET_CHILDREN, children, skip);
+				}
+				if (count > maxIndexedChildren) {
+					logger.debug("Not indexing " + folder.getName() + " (over " + maxIndexedChildren + " children)");
+				} else {
+					complete = true;
+					logger.debug("Indexed " + count + " children of " + folder.getName());
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,84 @@
+package com.tribloom.cmis;
+
+/**
+ * Stops calling a server that keeps failing.
+ *
+ * After the given number of consecutive overload failures (connection failures
+ * and timeouts, 503 Service Unavailable and 429 Too Many Requests) the breaker
+ * opens, and calls are refused without contacting the server. Once it has been open for the given time, one trial
+ * call is let through: if it succeeds the breaker closes, if it fails the
+ * breaker opens again. A trial call that never reports back is replaced by
+ * another after the same time.
+ */
+public class CircuitBreaker {
+
+	public enum State {
+		CLOSED, OPEN, HALF_OPEN
+	}
+
+	private final int failureThreshold;
+	private final long openMillis;
+	private State state = State.CLOSED;
+	private int failures;
+	private long openedAt;
+	private long trialAt;
+
+	/**
+	 * @param failureThreshold int consecutive failures that open the breaker
+	 * @param openMillis long time the breaker stays open before a trial call
+	 */
+	public CircuitBreaker(int failureThreshold, long openMillis) {
+		this.failureThreshold = Math.max(1, failureThreshold);
+		this.openMillis = openMillis;
+	}
+
+	/**
+	 * Returns true if a call may be made now.
+	 *
+	 * @return boolean
+	 */
+	public synchronized boolean allowRequest() {
+		long now = System.currentTimeMillis();
+		switch (state) {
+		case CLOSED:
+			return true;
+		case OPEN:
+			if (now - openedAt < openMillis) {
+				return false;
+			}
+			state = State.HALF_OPEN;
+			trialAt = now;
+			return true;
+		default:
+			if (now - trialAt < openMillis) {
+				return false;
+			}
+			trialAt = now;
+			return true;
+		}
+	}
+
+	/**
+	 * Records a call that reached the server, whether or not it succeeded.
+	 */
+	public synchronized void onSuccess() {
+		failures = 0;
+		state = State.CLOSED;
+	}
+
+	/**
+	 * Records a call that failed because of a connection failure or timeout,
+	 * 503 Service Unavailable or 429 Too Many Requests.
+	 */
+	public synchronized void onFailure() {
+		failures++;
+		if (state == State.HALF_OPEN || state == State.CLOSED && failures >= failureThreshold) {
+			state = State.OPEN;
+			openedAt = System.currentTimeMillis();
+		}
+	}
+
+	public synchronized State getState() {
+		return state;
+	}
+}
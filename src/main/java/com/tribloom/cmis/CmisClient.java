@@ -0,0 +1,1863 @@
+package com.tribloom.cmis;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.function.Supplier;
+
+import org.apache.chemistry.opencmis.client.api.ChangeEvent;
+import org.apache.chemistry.opencmis.client.api.CmisObject;
+import org.apache.chemistry.opencmis.client.api.Document;
+import org.apache.chemistry.opencmis.client.api.DocumentType;
+import org.apache.chemistry.opencmis.client.api.Folder;
+import org.apache.chemistry.opencmis.client.api.ItemIterable;
+import org.apache.chemistry.opencmis.client.api.ObjectId;
+import org.apache.chemistry.opencmis.client.api.ObjectType;
+import org.apache.chemistry.opencmis.client.api.OperationContext;
+import org.apache.chemistry.opencmis.client.api.Property;
+import org.apache.chemistry.opencmis.client.api.QueryResult;
+import org.apache.chemistry.opencmis.client.api.Repository;
+import org.apache.chemistry.opencmis.client.api.Session;
+import org.apache.chemistry.opencmis.client.api.SessionFactory;
+import org.apache.chemistry.opencmis.client.runtime.SessionFactoryImpl;
+import org.apache.chemistry.opencmis.commons.PropertyIds;
+import org.apache.chemistry.opencmis.commons.SessionParameter;
+import org.apache.chemistry.opencmis.commons.definitions.FolderTypeDefinition;
+import org.apache.chemistry.opencmis.commons.enums.ChangeType;
+import org.apache.chemistry.opencmis.commons.exceptions.CmisBaseException;
+import org.apache.chemistry.opencmis.commons.exceptions.CmisContentAlreadyExistsException;
+import org.apache.chemistry.opencmis.commons.exceptions.CmisObjectNotFoundException;
+import org.apache.chemistry.opencmis.commons.exceptions.CmisStreamNotSupportedException;
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A connection to one Alfresco repository, configured from Properties.
+ * 
+ * Each client has its own settings, session pool and caches, so several clients
+ * (for different repositories, tenants or credentials) can be used side by side 
+ * in one JVM. CmisUtils provides static access to a default client.
+ * 
+ * Sessions are thread-safe and shared by default. With "cmis.session.pool.size"
+ * set above 1, worker threads can borrow a session of their own (borrowSession /
+ * releaseSession); while a thread holds one, all of this client's calls on that
+ * thread use it.
+ */
+public class CmisClient implements CmisClientMXBean {
+	
+	// SL4J Logger
+	private static final Logger logger = LoggerFactory.getLogger(CmisClient.class);
+	
+	// Property names for CMIS connection
+	private static final String PROP_HOSTNAME = "cmis.server.hostname";
+	private static final String PROP_PORT = "cmis.server.port";
+	private static final String PROP_USER = "cmis.user";
+	private static final String PROP_REPOSITORY_ID = "cmis.repository.id";
+	private static final String PROP_SESSION_POOL_SIZE = "cmis.session.pool.size";
+	private static final String PROP_SESSION_PARAMETER_PREFIX = "cmis.session.parameter.";
+	private static final String PROP_OVERWRITE = "cmis.utils.overwrite";
+	private static final String PROP_IMPORT_THREADS = "cmis.utils.import.threads";
+	private static final String PROP_UPLOAD_CHUNK_SIZE = "cmis.utils.upload.chunk.size";
+	private static final String PROP_UPLOAD_RETRIES = "cmis.utils.upload.retries";
+	private static final String PROP_INDEX_MAX_CHILDREN = "cmis.utils.index.max.children";
+	private static final String PROP_CACHE_PREFIX = "cmis.utils.cache.";
+	private static final String PROP_TYPES_PRELOAD = "cmis.utils.types.preload";
+	private static final String PROP_CREATE_DESTINATION = "cmis.utils.destination.create";
+	private static final String PROP_CONTENT_HASH_PROPERTY = "cmis.utils.content.hash.property";
+	private static final String PROP_TYPES_PRELOAD_THREADS = "cmis.utils.types.preload.threads";
+	private static final String PROP_JMX_ENABLED = "cmis.utils.jmx.enabled";
+	private static final String PROP_JMX_NAME = "cmis.utils.jmx.name";
+	private static final String PROP_LIMIT_INITIAL = "cmis.utils.limit.initial";
+	private static final String PROP_LIMIT_MIN = "cmis.utils.limit.min";
+	private static final String PROP_LIMIT_MAX = "cmis.utils.limit.max";
+	private static final String PROP_RETRY_ATTEMPTS = "cmis.utils.retry.attempts";
+	private static final String PROP_RETRY_BACKOFF_MILLIS = "cmis.utils.retry.backoff.millis";
+	private static final String PROP_RETRY_BACKOFF_MAX_MILLIS = "cmis.utils.retry.backoff.max.millis";
+	private static final String PROP_BREAKER_FAILURES = "cmis.utils.breaker.failures";
+	private static final String PROP_BREAKER_OPEN_MILLIS = "cmis.utils.breaker.open.millis";
+	private static final String PROP_JOURNAL = "cmis.utils.journal";
+	private static final String PROP_JOURNAL_SYNC_RECORDS = "cmis.utils.journal.sync.records";
+	private static final String PROP_JOURNAL_SYNC_MILLIS = "cmis.utils.journal.sync.millis";
+	private static final String PROP_UNIQUE_PROPERTY = "cmis.utils.unique.property";
+	private static final String PROP_UNIQUE_TYPE = "cmis.utils.unique.type";
+	private static final String PROP_UNIQUE_BATCH_SIZE = "cmis.utils.unique.batch.size";
+	private static final String PROP_ASYNC_VIRTUAL = "cmis.utils.async.virtual";
+	private static final String PROP_ASYNC_THREADS = "cmis.utils.async.threads";
+	private static final String PROP_SITES_PRELOAD = "cmis.utils.sites.preload";
+	private static final String PROP_SITES_SNAPSHOT = "cmis.utils.sites.snapshot";
+	private static final String PROP_SITES_SNAPSHOT_TTL = "cmis.utils.sites.snapshot.ttl";
+	private static final String PROP_EXPORT_BYTES_PER_SECOND = "cmis.utils.export.bytes.per.second";
+	private static final String PROP_CHANGES_POLL_INTERVAL = "cmis.utils.changes.poll.interval";
+	private static final String PROP_CHANGES_TOKEN = "cmis.utils.changes.token";
+	private static final String PROP_CHANGES_BATCH_SIZE = "cmis.utils.changes.batch.size";
+	private static final String PROP_IMPORT_PLAN = "cmis.utils.import.plan";
+	private static final String PROP_IMPORT_DRY_RUN = "cmis.utils.import.dry.run";
+	
+	// Page size for lookup queries
+	private static final int PAGE_SIZE = 100;
+	
+	// Factor by which the concurrency limit is cut when the server is overloaded
+	private static final double LIMIT_BACKOFF_RATIO = 0.75;
+	// Multiple of an operation's usual latency at which the server counts as overloaded
+	private static final double LIMIT_LATENCY_TOLERANCE = 2.0;
+	
+	// Stale snapshot entries above which preloadSites finds all sites again, 
+	// rather than checking each one with two queries
+	private static final int SITE_RECHECK_LIMIT = 20;
+	
+	// Alfresco's data list folder type
+	private static final String DATA_LIST_TYPE = "F:dl:dataList";
+	
+	// Types resolved when a session is created, in addition to those in PROP_TYPES_PRELOAD
+	private static final String[] DEFAULT_PRELOAD_TYPES = { "cmis:folder", "cmis:document", DATA_LIST_TYPE };
+
+	// Connection settings, with defaults
+	private final String hostname;
+	private final String port;
+	private final String user;
+	private final String repositoryId;
+	
+	// Import settings, with defaults
+	private final boolean overwrite;
+	private final int importThreads;
+	private final long uploadChunkSize;
+	private final int uploadRetries;
+	private final int indexMaxChildren;
+	private final boolean createDestination;
+	private final String contentHashProperty;
+	private final boolean planImports;
+	private final boolean dryRun;
+	
+	private final Properties properties;
+	private final CacheFactory cacheFactory;
+	private final SessionPool sessionPool;
+	private final ThreadLocal<Session> borrowedSession = new ThreadLocal<Session>();
+	private final TypeRegistry typeRegistry;
+	private final OperationContext folderContext;
+	private final Cache<String, Folder> siteFolderCache;
+	private final Cache<String, Folder> docLibCache;
+	private final Cache<String, ObjectSummary> cmisObjectCache;
+	private final Cache<String, Folder> dataListContainerCache;
+	private final Cache<String, List<Folder>> dataListCache;
+	private final Cache<String, DataListImporter.UniqueIndex> dataListIndexCache;
+	private final ChildNameIndex childNameIndex;
+	private final FolderResolver folderResolver;
+	private final ImportMetrics metrics = new ImportMetrics();
+	private final CallGuard guard;
+	private final ImportJournal journal;
+	private final UniquePropertyLookup uniqueLookup;
+	private final SiteSnapshot siteSnapshot;
+	private final long siteSnapshotTtl;
+	// Site of each cached site folder, document library and data list (container)
+	private final ConcurrentHashMap<String, String> siteNamesByFolderId = new ConcurrentHashMap<String, String>();
+	private final ChangeLogPoller changeLogPoller;
+	private ObjectName mbeanName;
+	private Executor asyncExecutor;
+	private ExecutorService ownAsyncExecutor;
+	
+	/**
+	 * Set up properties and connect to Alfresco, caching with LruCaches.
+	 * 
+	 * @param properties Properties
+	 */
+	public CmisClient(Properties properties) {
+		this(properties, new DefaultCacheFactory());
+	}
+	
+	/**
+	 * Set up properties and connect to Alfresco.
+	 * 
+	 * Connection properties (all optional):
+	 * - cmis.server.scheme (http or https), cmis.server.hostname, 
+	 *   cmis.server.port, cmis.service.path (default Alfresco's path for the binding)
+	 * - cmis.binding: atompub (the default) or browser, whose JSON is much 
+	 *   smaller and quicker to parse than AtomPub's XML
+	 * - cmis.user, cmis.password
+	 * - cmis.repository.id
+	 * - cmis.session.pool.size
+	 * - cmis.http.compression, cmis.http.client.compression: gzip responses 
+	 *   and requests
+	 * - cmis.http.connect.timeout.millis, cmis.http.read.timeout.millis
+	 * - cmis.http.invoker (default, apache, okhttp or a class name) and 
+	 *   cmis.http.max.connections, the connections kept alive per server 
+	 *   by the apache invoker (see Transport)
+	 * - cmis.session.parameter.NAME, passed to OpenCMIS as session parameter NAME
+	 *   (see SessionParameter), overriding the settings above; e.g. to use the 
+	 *   local binding or another object factory
+	 * 
+	 * Remote calls are limited, retried and cut off as described in CallGuard:
+	 * - cmis.utils.limit.initial, cmis.utils.limit.min, cmis.utils.limit.max: 
+	 *   concurrent calls (default import threads, 1 and 4 x import threads)
+	 * - cmis.utils.retry.attempts, cmis.utils.retry.backoff.millis, 
+	 *   cmis.utils.retry.backoff.max.millis: retries of transient failures
+	 * - cmis.utils.breaker.failures, cmis.utils.breaker.open.millis: consecutive
+	 *   failures after which calls are refused, and for how long
+	 * 
+	 * With "cmis.utils.journal" set to a file, importItems records the outcome 
+	 * of each keyed item there and skips items recorded by an earlier run (see 
+	 * ImportJournal). "cmis.utils.journal.sync.records" and 
+	 * "cmis.utils.journal.sync.millis" bound how much is lost on a crash.
+	 * 
+	 * With "cmis.utils.unique.property" set (e.g. to "w:guid"), an existing 
+	 * object with the same value of that property counts as the item's 
+	 * duplicate, wherever it is in the repository, instead of an object of 
+	 * the same name in the destination folder; with "cmis.utils.overwrite" it 
+	 * is updated. importItems looks its items up in batches of 
+	 * "cmis.utils.unique.batch.size" (default 200) with one query each, on 
+	 * the type named by "cmis.utils.unique.type" (e.g. "P:w:webable") or else 
+	 * the first of an item's types that defines the property.
+	 * 
+	 * The async methods run on a virtual thread per call where the JVM has 
+	 * them (unless "cmis.utils.async.virtual" is false), or else on a pool of 
+	 * "cmis.utils.async.threads" threads (default 4 x import threads), unless 
+	 * an executor is set with setAsyncExecutor.
+	 * 
+	 * With "cmis.utils.sites.snapshot" set to a file, the site folder and 
+	 * document library IDs of resolved sites are saved there (see SiteSnapshot), 
+	 * and a later client fetches them by ID instead of querying for them, 
+	 * until they are older than "cmis.utils.sites.snapshot.ttl" seconds 
+	 * (default a day, 0 for no limit). With "cmis.utils.sites.preload" set to 
+	 * true, every site is resolved when the client connects (see preloadSites).
+	 * 
+	 * With "cmis.utils.import.plan" set to true, importItems groups, orders 
+	 * and collapses each batch before importing it (see ImportPlanner). With 
+	 * "cmis.utils.import.dry.run" set to true, it only logs the plan.
+	 * 
+	 * @param properties Properties
+	 * @param cacheFactory CacheFactory
+	 */
+	public CmisClient(Properties properties, CacheFactory cacheFactory) {
+		this.properties = properties;
+		this.cacheFactory = cacheFactory;
+		hostname = properties.getProperty(PROP_HOSTNAME, "localhost");
+		port = properties.getProperty(PROP_PORT, "8080");
+		user = properties.getProperty(PROP_USER, "admin");
+		repositoryId = properties.getProperty(PROP_REPOSITORY_ID);
+		overwrite = getBoolean(PROP_OVERWRITE, false);
+		importThreads = (int) getLong(PROP_IMPORT_THREADS, 4);
+		uploadChunkSize = getLong(PROP_UPLOAD_CHUNK_SIZE, 16L * 1024 * 1024);
+		uploadRetries = (int) getLong(PROP_UPLOAD_RETRIES, 3);
+		indexMaxChildren = (int) getLong(PROP_INDEX_MAX_CHILDREN, 100000);
+		createDestination = getBoolean(PROP_CREATE_DESTINATION, true);
+		contentHashProperty = properties.containsKey(PROP_CONTENT_HASH_PROPERTY) 
+				? properties.getProperty(PROP_CONTENT_HASH_PROPERTY).trim() : null;
+		dryRun = getBoolean(PROP_IMPORT_DRY_RUN, false);
+		planImports = dryRun || getBoolean(PROP_IMPORT_PLAN, false);
+		guard = new CallGuard(metrics, 
+				new ConcurrencyLimiter((int) getLong(PROP_LIMIT_INITIAL, importThreads), 
+						(int) getLong(PROP_LIMIT_MIN, 1), (int) getLong(PROP_LIMIT_MAX, 4L * importThreads), 
+						LIMIT_BACKOFF_RATIO, LIMIT_LATENCY_TOLERANCE),
+				new CircuitBreaker((int) getLong(PROP_BREAKER_FAILURES, 20), getLong(PROP_BREAKER_OPEN_MILLIS, 30000)),
+				(int) getLong(PROP_RETRY_ATTEMPTS, 3), getLong(PROP_RETRY_BACKOFF_MILLIS, 200), 
+				getLong(PROP_RETRY_BACKOFF_MAX_MILLIS, 10000));
+		
+		logger.info("Connecting to Alfresco...");
+		
+		// Create a SessionFactory and set up the SessionParameter map
+		SessionFactory sessionFactory = SessionFactoryImpl.newInstance();
+
+		// Set up the Alfresco connection parameters: binding, URL, credentials and HTTP settings
+		Map<String, String> parameter = Transport.getSessionParameters(properties);
+		
+		// Add the Alfresco OpenCMIS Extension, allowing us to work with aspects and data lists
+		// For more information, see:
+		//  https://code.google.com/a/apache-extras.org/p/alfresco-opencmis-extension/
+		parameter.put(SessionParameter.OBJECT_FACTORY_CLASS,
+				"org.alfresco.cmis.client.impl.AlfrescoObjectFactoryImpl");
+		
+		for (String name : properties.stringPropertyNames()) {
+			if (name.startsWith(PROP_SESSION_PARAMETER_PREFIX)) {
+				parameter.put(name.substring(PROP_SESSION_PARAMETER_PREFIX.length()), properties.getProperty(name));
+			}
+		}
+
+		// Use the configured repository, or else the first (usually the only) one
+		Repository repository = null;
+		for (Repository candidate : sessionFactory.getRepositories(parameter)) {
+			if (repositoryId == null || repositoryId.equals(candidate.getId())) {
+				repository = candidate;
+				break;
+			}
+		}
+		if (repository == null) {
+			throw new IllegalArgumentException("No repository found with ID: " + repositoryId);
+		}
+		sessionPool = new SessionPool(repository, (int) getLong(PROP_SESSION_POOL_SIZE, importThreads));
+		
+		typeRegistry = new TypeRegistry(getSession());
+		folderContext = OperationContexts.minimal(getSession(), PAGE_SIZE, OperationContexts.FOLDER_PROPERTIES);
+		typeRegistry.preload(getPreloadTypes(), (int) getLong(PROP_TYPES_PRELOAD_THREADS, 1));
+		siteFolderCache = createCache("siteFolder", 1000);
+		docLibCache = createCache("docLib", 1000);
+		cmisObjectCache = createCache("cmisObject", 100000);
+		dataListContainerCache = createCache("dataListContainer", 1000);
+		dataListCache = createCache("dataList", 1000);
+		dataListIndexCache = createCache("dataListIndex", 100);
+		childNameIndex = new ChildNameIndex(indexMaxChildren, createChildNameCache(), guard);
+		// The folder IDs are kept as long as the folders
+		folderResolver = new FolderResolver(this, childNameIndex, this.<String, Folder>createCache("folder", 100000), 
+				this.<String, Boolean>createCache("folder", 100000));
+		journal = openJournal();
+		String uniqueProperty = properties.getProperty(PROP_UNIQUE_PROPERTY);
+		uniqueLookup = uniqueProperty != null && uniqueProperty.trim().length() > 0 
+				? new UniquePropertyLookup(this, uniqueProperty.trim(), properties.getProperty(PROP_UNIQUE_TYPE), 
+						(int) getLong(PROP_UNIQUE_BATCH_SIZE, 200)) 
+				: null;
+		String snapshotFile = properties.getProperty(PROP_SITES_SNAPSHOT);
+		siteSnapshot = snapshotFile != null && snapshotFile.trim().length() > 0 
+				? new SiteSnapshot(Paths.get(snapshotFile.trim())) : null;
+		siteSnapshotTtl = getLong(PROP_SITES_SNAPSHOT_TTL, 24 * 60 * 60) * 1000;
+		if (siteSnapshot != null) {
+			for (SiteSnapshot.Entry entry : siteSnapshot.getEntries()) {
+				siteNamesByFolderId.put(entry.getSiteFolderId(), entry.getSiteName());
+				if (entry.getDocumentLibraryId() != null) {
+					siteNamesByFolderId.put(entry.getDocumentLibraryId(), entry.getSiteName());
+				}
+			}
+		}
+		changeLogPoller = createChangeLogPoller();
+		if (getBoolean(PROP_SITES_PRELOAD, false)) {
+			preloadSites();
+		}
+		if (getBoolean(PROP_JMX_ENABLED, true)) {
+			registerMBean(properties.getProperty(PROP_JMX_NAME, hostname + ":" + port + "/" + repository.getId()));
+		}
+		logger.info("Connected!");
+	}
+	
+	/**
+	 * Unregisters this client from JMX, syncs the import journal and saves 
+	 * the site snapshot, if any, stops polling the change log (saving its 
+	 * token), and stops the threads of the async methods once their calls 
+	 * are done. Sessions need no closing, so the client 
+	 * remains usable.
+	 */
+	public void close() {
+		if (changeLogPoller != null) {
+			changeLogPoller.stop();
+		}
+		saveSiteSnapshot();
+		synchronized (this) {
+			if (ownAsyncExecutor != null) {
+				ownAsyncExecutor.shutdown();
+				ownAsyncExecutor = null;
+				asyncExecutor = null;
+			}
+		}
+		if (journal != null) {
+			try {
+				journal.sync();
+			} catch (IOException ex) {
+				logger.error("Unable to sync import journal " + journal.getFile(), ex);
+			}
+		}
+		synchronized (this) {
+			if (mbeanName == null) {
+				return;
+			}
+			try {
+				ManagementFactory.getPlatformMBeanServer().unregisterMBean(mbeanName);
+			} catch (JMException ex) {
+				logger.warn("Unable to unregister " + mbeanName, ex);
+			}
+			mbeanName = null;
+		}
+	}
+	
+	/**
+	 * Creates the change log poller if "cmis.utils.changes.poll.interval" or 
+	 * "cmis.utils.changes.token" is set and the repository has a change log, 
+	 * and reads the changes since the saved token, before any cached folder 
+	 * (such as a site snapshot entry) is used.
+	 */
+	private ChangeLogPoller createChangeLogPoller() {
+		long interval = getLong(PROP_CHANGES_POLL_INTERVAL, 0) * 1000;
+		String tokenFile = properties.getProperty(PROP_CHANGES_TOKEN);
+		boolean hasTokenFile = tokenFile != null && tokenFile.trim().length() > 0;
+		if (interval <= 0 && !hasTokenFile) {
+			return null;
+		}
+		if (!ChangeLogPoller.isSupported(getSession().getRepositoryInfo())) {
+			logger.warn("The repository keeps no change log, cached folders are not invalidated");
+			return null;
+		}
+		Supplier<Session> sessions = new Supplier<Session>() {
+			public Session get() {
+				return getSession();
+			}
+		};
+		ChangeLogPoller poller = new ChangeLogPoller(sessions, guard, new CacheInvalidator(), 
+				hasTokenFile ? Paths.get(tokenFile.trim()) : null, (int) getLong(PROP_CHANGES_BATCH_SIZE, 500));
+		try {
+			poller.poll();
+		} catch (CmisBaseException ex) {
+			logger.warn("Unable to read the change log: " + ex);
+		}
+		if (interval > 0) {
+			poller.schedule(interval);
+		}
+		return poller;
+	}
+	
+	/**
+	 * Opens the journal named by the "cmis.utils.journal" property, if set.
+	 */
+	private ImportJournal openJournal() {
+		String file = properties.getProperty(PROP_JOURNAL);
+		if (file == null || file.trim().length() == 0) {
+			return null;
+		}
+		try {
+			ImportJournal opened = new ImportJournal(Paths.get(file.trim()), 
+					(int) getLong(PROP_JOURNAL_SYNC_RECORDS, 1000), getLong(PROP_JOURNAL_SYNC_MILLIS, 1000));
+			logger.info("Resuming from import journal " + file + " (" + opened.size() + " items)");
+			return opened;
+		} catch (IOException ex) {
+			throw new IllegalArgumentException("Unable to open import journal " + file, ex);
+		}
+	}
+	
+	/**
+	 * @return the journal configured by the "cmis.utils.journal" property, or null
+	 */
+	public ImportJournal getJournal() {
+		return journal;
+	}
+	
+	private void registerMBean(String name) {
+		try {
+			ObjectName objectName = new ObjectName("com.tribloom.cmis:type=CmisClient,name=" + ObjectName.quote(name));
+			ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+			mbeanName = objectName;
+		} catch (InstanceAlreadyExistsException ex) {
+			logger.warn("Not publishing metrics, another client is registered as " + name 
+					+ " (set " + PROP_JMX_NAME + " to tell them apart)");
+		} catch (JMException ex) {
+			logger.warn("Unable to publish metrics over JMX", ex);
+		}
+	}
+	
+	/**
+	 * Returns the latency and throughput of the remote calls made by this client.
+	 * 
+	 * @return ImportMetrics
+	 */
+	public ImportMetrics getMetrics() {
+		return metrics;
+	}
+	
+	public Map<String, OperationStats> getOperationStats() {
+		Map<String, OperationStats> stats = new LinkedHashMap<String, OperationStats>();
+		for (OperationStats operationStats : metrics.getStats().values()) {
+			stats.put(operationStats.getOperation().getOperationName(), operationStats);
+		}
+		return stats;
+	}
+	
+	public long getBytesUploaded() {
+		return metrics.getBytesUploaded();
+	}
+	
+	public int getConcurrencyLimit() {
+		return guard.getLimiter().getLimit();
+	}
+	
+	public String getCircuitState() {
+		return guard.getBreaker().getState().name();
+	}
+	
+	/**
+	 * Returns the lookup of existing objects by the "cmis.utils.unique.property" 
+	 * property, or null if it isn't set.
+	 */
+	UniquePropertyLookup getUniquePropertyLookup() {
+		return uniqueLookup;
+	}
+	
+	/**
+	 * Returns the unique property indexes of data lists, by data list ID and 
+	 * property, shared by every DataListImporter of this client.
+	 */
+	Cache<String, DataListImporter.UniqueIndex> getDataListIndexCache() {
+		return dataListIndexCache;
+	}
+	
+	TypeRegistry getTypeRegistry() {
+		return typeRegistry;
+	}
+	
+	/**
+	 * Returns the guard through which remote calls are made.
+	 */
+	CallGuard getCallGuard() {
+		return guard;
+	}
+	
+	/**
+	 * Returns the session borrowed by the current thread, if any, or else the 
+	 * client's shared session.
+	 * 
+	 * @return Session
+	 */
+	public Session getSession() {
+		Session session = borrowedSession.get();
+		return session != null ? session : sessionPool.getPrimary();
+	}
+	
+	/**
+	 * Borrows a session from the pool for the current thread, waiting for one 
+	 * to become available if necessary. Calls to this client from the current 
+	 * thread use it until releaseSession is called.
+	 * 
+	 * @return Session
+	 */
+	public Session borrowSession() {
+		Session session = borrowedSession.get();
+		if (session == null) {
+			session = sessionPool.borrow();
+			borrowedSession.set(session);
+		}
+		return session;
+	}
+	
+	/**
+	 * Returns the session borrowed by the current thread to the pool.
+	 */
+	public void releaseSession() {
+		Session session = borrowedSession.get();
+		if (session != null) {
+			borrowedSession.remove();
+			sessionPool.release(session);
+		}
+	}
+	
+	/**
+	 * @return the number of worker threads used by importItems
+	 */
+	public int getImportThreads() {
+		return importThreads;
+	}
+	
+	/**
+	 * Returns hit, miss and eviction statistics for each cache, by cache name.
+	 * 
+	 * @return Map<String, CacheStats>
+	 */
+	public Map<String, CacheStats> getCacheStats() {
+		Map<String, CacheStats> stats = new LinkedHashMap<String, CacheStats>();
+		stats.put("siteFolder", siteFolderCache.getStats());
+		stats.put("docLib", docLibCache.getStats());
+		stats.put("cmisObject", cmisObjectCache.getStats());
+		stats.put("dataListContainer", dataListContainerCache.getStats());
+		stats.put("dataList", dataListCache.getStats());
+		stats.put("dataListIndex", dataListIndexCache.getStats());
+		return stats;
+	}
+	
+	private boolean getBoolean(String name, boolean defaultValue) {
+		String value = properties.getProperty(name);
+		return value != null ? "true".equalsIgnoreCase(value.trim()) : defaultValue;
+	}
+	
+	private long getLong(String name, long defaultValue) {
+		String value = properties.getProperty(name);
+		return value != null ? Long.parseLong(value.trim()) : defaultValue;
+	}
+	
+	/**
+	 * Returns the types to preload: the defaults, plus those listed (separated 
+	 * by semicolons, as type strings may contain commas) in the 
+	 * "cmis.utils.types.preload" property.
+	 */
+	private List<String> getPreloadTypes() {
+		List<String> types = new ArrayList<String>(Arrays.asList(DEFAULT_PRELOAD_TYPES));
+		String configured = properties.getProperty(PROP_TYPES_PRELOAD);
+		if (configured != null) {
+			for (String type : configured.split(";")) {
+				if (type.trim().length() > 0 && !types.contains(type.trim())) {
+					types.add(type.trim());
+				}
+			}
+		}
+		return types;
+	}
+	
+	/**
+	 * Creates a cache, sized by the "cmis.utils.cache.NAME.size" and 
+	 * "cmis.utils.cache.NAME.ttl" (seconds) properties if they are set.
+	 */
+	private <K, V> Cache<K, V> createCache(String name, long defaultSize) {
+		String prefix = PROP_CACHE_PREFIX + name;
+		long size = getLong(prefix + ".size", defaultSize);
+		long ttl = getLong(prefix + ".ttl", 0);
+		return cacheFactory.createCache(name, size, ttl * 1000);
+	}
+	
+	/**
+	 * Creates the cache of ChildNameIndex, which holds at most 
+	 * "cmis.utils.cache.childNames.size" names (default a million) across all 
+	 * folders. A custom CacheFactory is given that size as is.
+	 */
+	private Cache<String, ChildNameIndex.FolderIndex> createChildNameCache() {
+		String prefix = PROP_CACHE_PREFIX + "childNames";
+		long size = getLong(prefix + ".size", 1000000);
+		long ttl = getLong(prefix + ".ttl", 0);
+		if (cacheFactory instanceof DefaultCacheFactory) {
+			return new LruCache<String, ChildNameIndex.FolderIndex>(size, ttl * 1000, ChildNameIndex.WEIGHER);
+		}
+		return cacheFactory.createCache("childNames", size, ttl * 1000);
+	}
+	
+	/**
+	 * Creates LruCaches.
+	 */
+	private static class DefaultCacheFactory implements CacheFactory {
+		public <K, V> Cache<K, V> createCache(String name, long maxSize, long ttlMillis) {
+			return new LruCache<K, V>(maxSize, ttlMillis, null);
+		}
+	}
+	
+	public Folder getSiteFolder(String siteName) {
+		Session session = getSession();
+		Folder cachedFolder = siteFolderCache.get(siteName);
+		if (cachedFolder != null) {
+			return cachedFolder;
+		}
+
+		// A fresh snapshot entry saves the query
+		SiteSnapshot.Entry entry = getSiteSnapshotEntry(siteName);
+		Folder folder = entry != null ? getFolderById(session, entry.getSiteFolderId()) : null;
+		if (folder == null) {
+			// Assume there's only one
+			folder = queryFolder(folderQuery(session, "cmis:folder", "CONTAINS(?)")
+					.setString(1, "=PATH:\"" + getSitePath(siteName) + "\""));
+			if (folder == null) {
+				// Not indexed yet, or a repository without Alfresco's full text search
+				folder = getFolderByPath(session, "/Sites/" + siteName);
+			}
+			if (folder != null && siteSnapshot != null) {
+				// Keep the document library of the same site folder
+				siteSnapshot.put(siteName, folder.getId(), entry != null 
+						&& folder.getId().equals(entry.getSiteFolderId()) ? entry.getDocumentLibraryId() : null);
+			}
+		}
+		
+		// Cache this folder for future retrieval
+		if (folder != null) {
+			cacheSiteFolder(siteFolderCache, siteName, folder);	
+		}
+		
+		return folder;
+	}
+	
+	public Folder getDocumentLibrary(String siteName) {
+		Session session = getSession();
+		Folder cachedFolder = docLibCache.get(siteName);
+		if (cachedFolder != null) {
+			return cachedFolder; 
+		}
+		
+		// A fresh snapshot entry saves the queries
+		SiteSnapshot.Entry entry = getSiteSnapshotEntry(siteName);
+		Folder folder = entry != null && entry.getDocumentLibraryId() != null 
+				? getFolderById(session, entry.getDocumentLibraryId()) : null;
+		if (folder == null) {
+			Folder site = getSiteFolder(siteName);
+			if (site == null) {
+				logger.error("No site found: " + siteName);
+				return null;
+			}
+			
+			// Assume there's only one
+			folder = queryFolder(folderQuery(session, "cmis:folder", "cmis:name = 'documentLibrary' AND IN_FOLDER(?)")
+					.setId(1, site));
+			if (folder != null && siteSnapshot != null) {
+				siteSnapshot.put(siteName, site.getId(), folder.getId());
+			}
+		}
+		
+		// Cache this folder for future retrieval
+		if (folder != null) {
+			cacheSiteFolder(docLibCache, siteName, folder);
+		}
+		
+		return folder;
+	}
+	
+	/**
+	 * Resolves the site folder and document library of every site into the 
+	 * caches, so that imports don't resolve sites one at a time.
+	 * 
+	 * Sites in the site snapshot (see "cmis.utils.sites.snapshot") are fetched 
+	 * by ID, a page of folders per query, and only sites whose entries are 
+	 * stale or no longer exist are checked again. Without a usable snapshot, 
+	 * all sites are found with two queries: one for the folders in /Sites and 
+	 * one for the documentLibrary folders below it. Sites created since the 
+	 * snapshot was taken are resolved when first used, as before.
+	 * 
+	 * @return int the number of sites resolved
+	 */
+	public int preloadSites() {
+		Session session = getSession();
+		List<String> recheck = new ArrayList<String>();
+		int loaded = 0;
+		if (siteSnapshot != null) {
+			List<SiteSnapshot.Entry> fresh = new ArrayList<SiteSnapshot.Entry>();
+			List<String> ids = new ArrayList<String>();
+			for (SiteSnapshot.Entry entry : siteSnapshot.getEntries()) {
+				if (entry.isStale(siteSnapshotTtl)) {
+					recheck.add(entry.getSiteName());
+				} else {
+					fresh.add(entry);
+					ids.add(entry.getSiteFolderId());
+					if (entry.getDocumentLibraryId() != null) {
+						ids.add(entry.getDocumentLibraryId());
+					}
+				}
+			}
+			Map<String, Folder> folders = getFoldersById(session, ids);
+			for (SiteSnapshot.Entry entry : fresh) {
+				Folder site = folders.get(entry.getSiteFolderId());
+				Folder docLib = entry.getDocumentLibraryId() != null ? folders.get(entry.getDocumentLibraryId()) : null;
+				if (site == null || docLib == null) {
+					recheck.add(entry.getSiteName());
+					continue;
+				}
+				cacheSiteFolder(siteFolderCache, entry.getSiteName(), site);
+				cacheSiteFolder(docLibCache, entry.getSiteName(), docLib);
+				loaded++;
+			}
+		}
+		if (loaded == 0 || recheck.size() > SITE_RECHECK_LIMIT) {
+			loaded = discoverSites(session);
+		} else {
+			for (String siteName : recheck) {
+				siteSnapshot.remove(siteName);
+				siteFolderCache.invalidate(siteName);
+				docLibCache.invalidate(siteName);
+				if (getDocumentLibrary(siteName) != null) {
+					loaded++;
+				}
+			}
+		}
+		saveSiteSnapshot();
+		logger.info("Preloaded " + loaded + " sites");
+		return loaded;
+	}
+	
+	/**
+	 * Finds every site folder in /Sites and the document libraries below 
+	 * them, caching both and replacing the site snapshot's entries.
+	 */
+	private int discoverSites(Session session) {
+		Folder sitesFolder = getFolderByPath(session, "/Sites");
+		if (sitesFolder == null) {
+			logger.error("No /Sites folder found");
+			return 0;
+		}
+		List<Folder> sites = queryFolders(folderQuery(session, "cmis:folder", "IN_FOLDER(?)").setId(1, sitesFolder), 
+				Integer.MAX_VALUE);
+		Map<String, Folder> docLibsBySite = new HashMap<String, Folder>();
+		try {
+			for (Folder docLib : queryFolders(folderQuery(session, "cmis:folder", 
+					"cmis:name = 'documentLibrary' AND IN_TREE(?)").setId(1, sitesFolder), Integer.MAX_VALUE)) {
+				docLibsBySite.put(docLib.getParentId(), docLib);
+			}
+		} catch (CmisBaseException ex) {
+			logger.warn("Unable to query document libraries, resolving them one site at a time: " + ex);
+			docLibsBySite = null;
+		}
+		Set<String> siteNames = new HashSet<String>();
+		for (Folder site : sites) {
+			siteNames.add(site.getName());
+			cacheSiteFolder(siteFolderCache, site.getName(), site);
+			Folder docLib;
+			if (docLibsBySite != null) {
+				docLib = docLibsBySite.get(site.getId());
+				if (docLib != null) {
+					cacheSiteFolder(docLibCache, site.getName(), docLib);
+				}
+			} else {
+				docLibCache.invalidate(site.getName());
+				docLib = getDocumentLibrary(site.getName());
+			}
+			if (siteSnapshot != null) {
+				siteSnapshot.put(site.getName(), site.getId(), docLib != null ? docLib.getId() : null);
+			}
+		}
+		if (siteSnapshot != null) {
+			siteSnapshot.retainAll(siteNames);
+		}
+		return sites.size();
+	}
+	
+	/**
+	 * Caches a folder of a site by site name, remembering which site it 
+	 * belongs to for when it shows up in the change log.
+	 */
+	private void cacheSiteFolder(Cache<String, Folder> cache, String siteName, Folder folder) {
+		cache.put(siteName, folder);
+		siteNamesByFolderId.put(folder.getId(), siteName);
+	}
+	
+	/**
+	 * Fetches folders by ID with as few queries as possible, leaving out those 
+	 * that no longer exist.
+	 */
+	private Map<String, Folder> getFoldersById(Session session, List<String> ids) {
+		Map<String, Folder> folders = new HashMap<String, Folder>();
+		for (int i = 0; i < ids.size(); i += PAGE_SIZE) {
+			List<String> batch = ids.subList(i, Math.min(ids.size(), i + PAGE_SIZE));
+			PagedQuery<CmisObject> query = folderQuery(session, "cmis:folder", PropertyIds.OBJECT_ID + " IN (?)")
+					.setString(1, batch.toArray(new String[batch.size()]));
+			for (Folder folder : queryFolders(query, Integer.MAX_VALUE)) {
+				folders.put(folder.getId(), folder);
+			}
+		}
+		return folders;
+	}
+	
+	private Folder getFolderById(Session session, String id) {
+		try {
+			CmisObject obj = getObject(session, id, folderContext);
+			return obj instanceof Folder ? (Folder) obj : null;
+		} catch (CmisObjectNotFoundException ex) {
+			return null;
+		}
+	}
+	
+	/**
+	 * Returns the site's snapshot entry, or null if there is none or it is stale.
+	 */
+	private SiteSnapshot.Entry getSiteSnapshotEntry(String siteName) {
+		if (siteSnapshot == null) {
+			return null;
+		}
+		SiteSnapshot.Entry entry = siteSnapshot.get(siteName);
+		return entry != null && !entry.isStale(siteSnapshotTtl) ? entry : null;
+	}
+	
+	private void saveSiteSnapshot() {
+		if (siteSnapshot != null) {
+			try {
+				siteSnapshot.save();
+			} catch (IOException ex) {
+				logger.error("Unable to save site snapshot " + siteSnapshot.getFile(), ex);
+			}
+		}
+	}
+	
+	/**
+	 * @return the snapshot configured by the "cmis.utils.sites.snapshot" property, or null
+	 */
+	public SiteSnapshot getSiteSnapshot() {
+		return siteSnapshot;
+	}
+	
+	/**
+	 * Reads the repository's change log since the last poll and drops the 
+	 * cached folders and objects that changed. Polling runs in the background 
+	 * when "cmis.utils.changes.poll.interval" (in seconds) is set; with only 
+	 * "cmis.utils.changes.token" set, call this whenever the caches should 
+	 * catch up, e.g. before each batch.
+	 * 
+	 * @return int the number of changes read, or -1 if change log polling is 
+	 * not enabled or the repository has no change log
+	 */
+	public int pollChanges() {
+		if (changeLogPoller == null) {
+			return -1;
+		}
+		return changeLogPoller.poll();
+	}
+	
+	/**
+	 * Drops what the change log says has changed.
+	 * 
+	 * A change to a site folder, document library or data list (container) 
+	 * drops that site's cached folders and snapshot entry, and the resolved 
+	 * destination paths, so a deleted and recreated site is looked up again. 
+	 * A change to any other object drops it from the object cache, and a 
+	 * deleted folder's child names are forgotten. Objects created in indexed 
+	 * folders are not added, as the change log doesn't name their parent; the 
+	 * importer already copes with names that turn out to exist, and with 
+	 * indexed children that turn out to be gone.
+	 */
+	private class CacheInvalidator implements ChangeLogPoller.Listener {
+		public void changed(ChangeEvent event) {
+			String id = event.getObjectId();
+			ChangeType type = event.getChangeType();
+			if (id == null || type == ChangeType.CREATED || type == ChangeType.SECURITY) {
+				return;
+			}
+			String siteName = siteNamesByFolderId.remove(id);
+			if (siteName != null) {
+				logger.info("Site " + siteName + " changed (" + type + " " + id + "), dropping its cached folders");
+				siteFolderCache.invalidate(siteName);
+				docLibCache.invalidate(siteName);
+				dataListContainerCache.invalidate(siteName);
+				dataListCache.invalidateAll();
+				dataListIndexCache.invalidateAll();
+				if (siteSnapshot != null) {
+					siteSnapshot.remove(siteName);
+				}
+				folderResolver.clear();
+			} else if (folderResolver.isResolved(id)) {
+				folderResolver.clear();
+			}
+			cmisObjectCache.invalidate(id);
+			if (type == ChangeType.DELETED) {
+				childNameIndex.invalidate(id);
+			}
+		}
+
+		public void changesLost() {
+			siteFolderCache.invalidateAll();
+			docLibCache.invalidateAll();
+			dataListContainerCache.invalidateAll();
+			dataListCache.invalidateAll();
+			dataListIndexCache.invalidateAll();
+			cmisObjectCache.invalidateAll();
+			siteNamesByFolderId.clear();
+			if (siteSnapshot != null) {
+				siteSnapshot.retainAll(Collections.<String>emptySet());
+			}
+			folderResolver.clear();
+			childNameIndex.clear();
+		}
+	}
+	
+	/**
+	 * Returns the data list container (folder) for the given site. Containers 
+	 * are cached by site name.
+	 * 
+	 * @param siteName String
+	 * @param createIfNotFound boolean
+	 * @return Folder
+	 */
+	public Folder getDataListContainer(String siteName, boolean createIfNotFound) {
+		if (siteName == null) {
+			logger.error("No site name provided");
+			return null;
+		}
+		Folder cachedFolder = dataListContainerCache.get(siteName);
+		if (cachedFolder != null) {
+			return cachedFolder;
+		}
+		Folder containerFolder = findDataListContainer(siteName);
+		if (containerFolder == null && createIfNotFound) {
+			synchronized (dataListContainerCache) {
+				// Another thread may have created it while we looked
+				containerFolder = findDataListContainer(siteName);
+				if (containerFolder == null) {
+					containerFolder = createDataListContainer(siteName);
+				}
+			}
+		}
+		if (containerFolder != null) {
+			cacheSiteFolder(dataListContainerCache, siteName, containerFolder);
+		}
+		return containerFolder;
+	}
+	
+	private Folder findDataListContainer(String siteName) {
+		Session session = getSession();
+		Folder containerFolder = queryFolder(folderQuery(session, "cmis:folder", "CONTAINS(?)")
+				.setString(1, "PATH:\"" + getSitePath(siteName) + "/cm:dataLists\""));
+		if (containerFolder == null) {
+			// Not indexed yet, or a repository without Alfresco's full text search
+			containerFolder = getFolderByPath(session, "/Sites/" + siteName + "/dataLists");
+		}
+		return containerFolder;
+	}
+	
+	private Folder createDataListContainer(String siteName) {
+		logger.debug("Creating Data Lists folder");
+		Folder siteFolder = getSiteFolder(siteName);
+		if (siteFolder == null) {
+			// No site!
+			logger.error("No site found: " + siteName);
+			return null;
+		}
+		Map<String, Object> properties = new HashMap<String, Object>();
+		properties.put(PropertyIds.NAME, "dataLists");
+		properties.put(PropertyIds.OBJECT_TYPE_ID, "cmis:folder,P:st:siteContainer,P:cm:ownable,P:cm:titled,P:cm:tagscope");
+		properties.put("st:componentId", "dataLists");
+		properties.put("cm:owner", user);
+		properties.put("cm:description", "Data Lists");
+		return createFolder(getSession(), properties, siteFolder);
+	}
+	
+	/**
+	 * Returns all data list folders (dl:dataList) for the given site that contain
+	 * the provided dl:dataListItemType. 
+	 * 
+	 * If the third parameter is true, it will attempt to create the data list 
+	 * if it doesn't exist. Lists that are found (or created) are cached by site
+	 * and item type.
+	 *  
+	 * Note: The "Data Lists" site component may still need to be added to the site
+	 *       from the Share "Customize Site" page to make it visible).
+	 * 
+	 * @param siteName String
+	 * @param dataListItemType String
+	 * @param createIfNotFound boolean
+	 * @return List<Folder> data list folders
+	 */
+	public List<Folder> getDataLists(String siteName, String dataListItemType, boolean createIfNotFound) {
+		if (siteName == null) {
+			logger.error("No site name provided");
+			return null;
+		}
+		if (dataListItemType == null) {
+			logger.error("No data list item type provided");
+			return null;
+		}
+		// Validate the provided dataListItemType
+		// Note: CMIS notation requires the "D:" namespace, as it's technically 
+		//       a "document" from the CMIS standpoint.
+		String dlItemTypeStr = dataListItemType;
+		if (!dataListItemType.startsWith("D:")) {
+			dlItemTypeStr = "D:" + dataListItemType;
+		}
+		ObjectType dlItemTypeObj = typeRegistry.getType(dlItemTypeStr);
+		if (dlItemTypeObj == null) {
+			logger.error("No data list item type defined for: " + dataListItemType);
+			return null;
+		}
+		
+		String cacheKey = siteName + "/" + dataListItemType;
+		List<Folder> cachedLists = dataListCache.get(cacheKey);
+		if (cachedLists != null) {
+			return new ArrayList<Folder>(cachedLists);
+		}
+		
+		List<Folder> dataLists = findDataLists(siteName, dataListItemType);
+		if (dataLists.isEmpty() && createIfNotFound) {
+			synchronized (dataListCache) {
+				// Another thread may have created it while we looked
+				dataLists = findDataLists(siteName, dataListItemType);
+				if (dataLists.isEmpty()) {
+					logger.debug("Creating new data list");
+					// Find the data list container
+					Folder containerFolder = getDataListContainer(siteName, createIfNotFound);
+					if (containerFolder == null) {
+						return dataLists;
+					}
+					
+					// Create the data list in the data list container
+					Map<String, Object> properties = new HashMap<String, Object>();
+					properties.put(PropertyIds.OBJECT_TYPE_ID, typeRegistry.getType(DATA_LIST_TYPE).getId() + ",P:cm:titled");
+					properties.put(PropertyIds.NAME, dlItemTypeObj.getDisplayName());
+					properties.put("dl:dataListItemType", dataListItemType);
+					properties.put("cm:description", "Imported data list: " + dlItemTypeObj.getDisplayName());
+					dataLists.add(createFolder(getSession(), properties, containerFolder));
+				}
+			}
+		}
+		if (!dataLists.isEmpty()) {
+			dataListCache.put(cacheKey, Collections.unmodifiableList(new ArrayList<Folder>(dataLists)));
+			for (Folder dataList : dataLists) {
+				siteNamesByFolderId.put(dataList.getId(), siteName);
+			}
+		}
+		return dataLists;
+	}
+	
+	/**
+	 * Looks up the data lists of a site by query, or else (if the lists are not 
+	 * indexed yet) among the children of the site's data list container.
+	 */
+	private List<Folder> findDataLists(String siteName, String dataListItemType) {
+		Session session = getSession();
+		List<Folder> dataLists = queryFolders(folderQuery(session, DATA_LIST_TYPE, 
+				"dl:dataListItemType = ? AND CONTAINS(?)").setString(1, dataListItemType)
+				.setString(2, "PATH:\"" + getSitePath(siteName) + "/cm:dataLists//.\""), Integer.MAX_VALUE);
+		if (!dataLists.isEmpty()) {
+			return dataLists;
+		}
+		Folder containerFolder = getDataListContainer(siteName, false);
+		if (containerFolder == null) {
+			return dataLists;
+		}
+		final OperationContext context = OperationContexts.minimal(session, PAGE_SIZE, 
+				PropertyIds.OBJECT_ID, PropertyIds.OBJECT_TYPE_ID, PropertyIds.BASE_TYPE_ID, PropertyIds.NAME, 
+				PropertyIds.PATH, PropertyIds.PARENT_ID, "dl:dataListItemType");
+		ItemIterable<CmisObject> children = containerFolder.getChildren(context);
+		List<Folder> folders = new ArrayList<Folder>();
+		GuardedPages.Page<CmisObject> page;
+		long skip = 0;
+		do {
+			page = GuardedPages.getPage(guard, Operation.GET_CHILDREN, children, skip);
+			skip += page.items.size();
+			for (CmisObject child : page.items) {
+				if (child instanceof Folder 
+						&& dataListItemType.equals(child.getPropertyValue("dl:dataListItemType"))) {
+					folders.add((Folder) child);
+				}
+			}
+		} while (page.hasNext());
+		return folders;
+	}
+	
+	/**
+	 * Returns the site's path for Alfresco's PATH queries.
+	 */
+	private static String getSitePath(String siteName) {
+		return "/app:company_home/st:sites/cm:" + PagedQuery.encodePathName(siteName);
+	}
+	
+	/**
+	 * Creates a query that selects only the folder properties, so the folders 
+	 * are built straight from the results rather than fetched again.
+	 */
+	private PagedQuery<CmisObject> folderQuery(Session session, String typeId, String where) {
+		return PagedQuery.forObjects(session, guard, getAsyncExecutor(), typeId, where)
+				.setOperationContext(folderContext);
+	}
+	
+	/**
+	 * Returns the first folder matched by the query, or null if there is none.
+	 */
+	private Folder queryFolder(PagedQuery<CmisObject> query) {
+		List<Folder> folders = queryFolders(query, 1);
+		return folders.isEmpty() ? null : folders.get(0);
+	}
+	
+	private List<Folder> queryFolders(PagedQuery<CmisObject> query, int maxItems) {
+		List<Folder> folders = new ArrayList<Folder>();
+		PagedQuery<CmisObject>.Results results = query.setMaxItems(maxItems).iterator();
+		try {
+			while (results.hasNext()) {
+				CmisObject result = results.next();
+				if (result instanceof Folder) {
+					debug(result);
+					folders.add((Folder) result);
+				}
+			}
+		} finally {
+			results.close();
+		}
+		return folders;
+	}
+	
+	private Folder createFolder(final Session session, final Map<String, Object> properties, final Folder parent) {
+		ObjectId newFolderId = guard.execute(Operation.CREATE_FOLDER, new CallGuard.Call<ObjectId>() {
+			public ObjectId call() {
+				return session.createFolder(properties, parent);
+			}
+		});
+		return (Folder) getObject(session, newFolderId.getId(), folderContext);
+	}
+	
+	private Folder getFolderByPath(final Session session, final String path) {
+		try {
+			CmisObject obj = guard.execute(Operation.GET_OBJECT, new CallGuard.Call<CmisObject>() {
+				public CmisObject call() {
+					return session.getObjectByPath(path, folderContext);
+				}
+			});
+			return obj instanceof Folder ? (Folder) obj : null;
+		} catch (CmisObjectNotFoundException ex) {
+			return null;
+		}
+	}
+	
+	/**
+	 * Fetches an object, usually from the session's object cache.
+	 */
+	CmisObject getObject(final Session session, final String id, final OperationContext context) {
+		return guard.execute(Operation.GET_OBJECT, new CallGuard.Call<CmisObject>() {
+			public CmisObject call() {
+				return session.getObject(id, context);
+			}
+		});
+	}
+	
+	/**
+	 * Returns the OperationContext used to fetch folders that are only used as 
+	 * parents or destinations.
+	 */
+	OperationContext getFolderContext() {
+		return folderContext;
+	}
+	
+	/**
+	 * Determine where the item should be created. This is done by 
+	 * querying the item for it's destination. This may be:
+	 * - blank, in which case, if the item has a Site name set, it will be 
+	 *   created in that site's document library
+	 * - a NodeRef (workspace://...) of an existing folder
+	 * - a repository path starting with "/", e.g. "/Sites/swsdp/documentLibrary/Archive"
+	 * - a path relative to the document library of the item's site, e.g. "Archive/2013"
+	 * 
+	 * Missing folders on a path are created if the "cmis.utils.destination.create"
+	 * property is true (the default).
+	 * 
+	 * @param item ImportItem
+	 */
+	private void configureDestination(AlfrescoItem item) {
+		Session session = getSession();
+		String dest = item.getDestination();
+		String siteName = item.getSiteName();
+		if (dest == null || "".equals(dest)) {
+			// If there's no destination, place the item in the Document Library
+			if (siteName != null) {
+				Folder docLib = getDocumentLibrary(siteName);
+				if (docLib != null) {
+					item.setDestination(docLib.getId());
+					item.setDestinationObject(docLib);	
+				}
+			}
+		} else if (dest.contains("workspace://") || cmisObjectCache.get(dest) != null) {
+			// A NodeRef, or the ID of an object imported earlier (e.g. a keyed folder item)
+			ObjectSummary destObj = cmisObjectCache.get(dest);
+			String destId = destObj != null ? destObj.getId() : dest;
+			if (destObj != null && !destObj.isFolder()) {
+				logger.error("Item destination is not a folder: " + dest);
+				return;
+			}
+			try {
+				CmisObject folder = getObject(session, destId, folderContext);
+				if (folder instanceof Folder) {
+					item.setDestinationObject((Folder) folder);
+				} else {
+					logger.error("Item destination is not a folder: " + dest);
+				}
+			} catch (CmisObjectNotFoundException ex) {
+				logger.error("Item destination not found: " + dest);
+			}
+		} else if (dest.startsWith("/")) {
+			item.setDestinationObject(folderResolver.resolve(dest, createDestination));
+		} else if (siteName != null) {
+			Folder docLib = getDocumentLibrary(siteName);
+			if (docLib != null) {
+				item.setDestinationObject(folderResolver.resolve(docLib, dest, createDestination));
+			}
+		} else {
+			logger.warn("Unable to process item destination: " + dest);
+			logger.warn("  " + item.toString());
+		}
+	}
+	
+	/**
+	 * Returns the child of the folder with the given name, or null if there is none.
+	 * Names are looked up in a per-folder index, see ChildNameIndex.
+	 * 
+	 * @param folder Folder
+	 * @param name String
+	 * @return CmisObject
+	 */
+	public CmisObject getChildByName(Folder folder, String name) {
+		Session session = getSession();
+		if (folder == null) {
+			logger.error("No folder provided");
+			return null;
+		}
+		if (name == null) {
+			logger.error("No name provided");
+			return null;
+		}
+		String childId = childNameIndex.getChildId(session, folder, name);
+		if (childId == null) {
+			return null;
+		}
+		try {
+			return getObject(session, childId, session.getDefaultContext());
+		} catch (CmisObjectNotFoundException ex) {
+			// Deleted behind our back
+			childNameIndex.remove(folder.getId(), name);
+			return null;
+		}
+	}
+	
+	/**
+	 * Creates a query for a CMIS-QL statement whose parameters, marked with ?, 
+	 * are bound with the query's setters, e.g.
+	 * 
+	 * client.query("SELECT cmis:objectId FROM dl:issue WHERE dl:issueID = ?").setString(1, id)
+	 * 
+	 * Results are fetched a page at a time, with the next page prefetched on 
+	 * the async executor while the current one is read.
+	 * 
+	 * @param statement String
+	 * @return PagedQuery<QueryResult>
+	 * @see PagedQuery
+	 */
+	public PagedQuery<QueryResult> query(String statement) {
+		return PagedQuery.forStatement(getSession(), guard, getAsyncExecutor(), statement);
+	}
+	
+	/**
+	 * Creates a query for the objects of a type that match a WHERE clause 
+	 * whose parameters, marked with ?, are bound with the query's setters. 
+	 * The properties fetched are those of the query's OperationContext.
+	 * 
+	 * @param typeId String e.g. "cmis:folder"
+	 * @param where String e.g. "IN_FOLDER(?)"
+	 * @return PagedQuery<CmisObject>
+	 * @see PagedQuery
+	 */
+	public PagedQuery<CmisObject> queryObjects(String typeId, String where) {
+		return PagedQuery.forObjects(getSession(), guard, getAsyncExecutor(), typeId, where);
+	}
+	
+	/**
+	 * Creates the item in Alfresco via CMIS and returns the ID (NodeRef) 
+	 * of the new item.
+	 * 
+	 * @return String nodeRef
+	 */
+	public String importItem(AlfrescoItem item) {
+		return importItemWithResult(item).getNodeRef();
+	}
+	
+	/**
+	 * Imports a batch of items concurrently, using the number of worker threads
+	 * configured by the "cmis.utils.import.threads" property.
+	 * 
+	 * @param items Iterable<AlfrescoItem>
+	 * @return List<ImportResult> one result per item, in iteration order
+	 * @see BulkImporter
+	 */
+	public List<ImportResult> importItems(Iterable<AlfrescoItem> items) {
+		return importItems(items, importThreads);
+	}
+	
+	/**
+	 * Imports a batch of items concurrently using the given number of worker threads.
+	 * 
+	 * @param items Iterable<AlfrescoItem>
+	 * @param parallelism int
+	 * @return List<ImportResult> one result per item, in iteration order
+	 * @see BulkImporter
+	 */
+	public List<ImportResult> importItems(Iterable<AlfrescoItem> items, int parallelism) {
+		BulkImporter importer = new BulkImporter(this, parallelism);
+		importer.setJournal(journal);
+		if (planImports) {
+			importer.setPlanner(new ImportPlanner(overwrite));
+			importer.setDryRun(dryRun);
+		}
+		return importer.importItems(items);
+	}
+	
+	/**
+	 * Plans the import of a batch of items without importing them, or making 
+	 * any calls to the server.
+	 * 
+	 * @param items Iterable<AlfrescoItem>
+	 * @return ImportPlan
+	 * @see ImportPlanner
+	 */
+	public ImportPlan planImport(Iterable<AlfrescoItem> items) {
+		return new ImportPlanner(overwrite).plan(items);
+	}
+	
+	/**
+	 * Inserts rows into the site's data list for the given item type, creating 
+	 * the list if there is none, using the number of worker threads configured 
+	 * by the "cmis.utils.import.threads" property.
+	 * 
+	 * @param siteName String
+	 * @param dataListItemType String e.g. "dl:issue"
+	 * @param rows Iterable<AlfrescoItem>
+	 * @param uniqueProperty String property identifying a row, whose values 
+	 *     are not inserted twice, or null to insert every row
+	 * @return List<ImportResult> one result per row, in iteration order
+	 * @see DataListImporter
+	 */
+	public List<ImportResult> importDataListRows(String siteName, String dataListItemType, 
+			Iterable<AlfrescoItem> rows, String uniqueProperty) {
+		DataListImporter importer = new DataListImporter(this, importThreads);
+		importer.setUniqueProperty(uniqueProperty);
+		return importer.importRows(siteName, dataListItemType, rows);
+	}
+	
+	/**
+	 * Exports the site's document library, and the data lists of the given 
+	 * item types, to a local directory, downloading content with as many 
+	 * threads as importItems uses. Download bandwidth is limited by the 
+	 * cmis.utils.export.bytes.per.second property, if set. Running the export 
+	 * again into the same directory resumes it.
+	 * 
+	 * @param siteName String
+	 * @param directory Path
+	 * @param dataListItemTypes String... e.g. "dl:issue"
+	 * @return ExportReport, or null if the site could not be exported
+	 * @see SiteExporter
+	 */
+	public ExportReport exportSite(String siteName, Path directory, String... dataListItemTypes) {
+		SiteExporter exporter = new SiteExporter(this, importThreads);
+		exporter.setBytesPerSecond(getLong(PROP_EXPORT_BYTES_PER_SECOND, 0));
+		exporter.setDataListItemTypes(dataListItemTypes);
+		return exporter.exportSite(siteName, directory);
+	}
+	
+	/**
+	 * Sets the executor of the async methods, replacing the default virtual 
+	 * threads or thread pool. The client doesn't shut it down.
+	 * 
+	 * @param executor Executor
+	 */
+	public synchronized void setAsyncExecutor(Executor executor) {
+		if (ownAsyncExecutor != null) {
+			ownAsyncExecutor.shutdown();
+			ownAsyncExecutor = null;
+		}
+		asyncExecutor = executor;
+	}
+	
+	/**
+	 * Returns the executor of the async methods, creating the default one on 
+	 * first use.
+	 * 
+	 * @return Executor
+	 */
+	public synchronized Executor getAsyncExecutor() {
+		if (asyncExecutor == null) {
+			ownAsyncExecutor = getBoolean(PROP_ASYNC_VIRTUAL, true) ? AsyncExecutors.newVirtualThreadExecutor() : null;
+			if (ownAsyncExecutor != null) {
+				logger.debug("Running async calls on virtual threads");
+			} else {
+				int threads = (int) getLong(PROP_ASYNC_THREADS, 4L * importThreads);
+				logger.debug("Running async calls on " + threads + " threads");
+				ownAsyncExecutor = AsyncExecutors.newThreadPool(threads);
+			}
+			asyncExecutor = ownAsyncExecutor;
+		}
+		return asyncExecutor;
+	}
+	
+	/**
+	 * Returns the site folder without blocking: a cached folder at once, or 
+	 * else as soon as it has been looked up.
+	 * 
+	 * @param siteName String
+	 * @return CompletableFuture<Folder> completed with the folder, or null if there is none
+	 * @see #getSiteFolder(String)
+	 */
+	public CompletableFuture<Folder> getSiteFolderAsync(final String siteName) {
+		Folder cachedFolder = siteFolderCache.get(siteName);
+		if (cachedFolder != null) {
+			return CompletableFuture.completedFuture(cachedFolder);
+		}
+		return CompletableFuture.supplyAsync(new Supplier<Folder>() {
+			public Folder get() {
+				return getSiteFolder(siteName);
+			}
+		}, getAsyncExecutor());
+	}
+	
+	/**
+	 * Returns the document library without blocking: a cached folder at once, 
+	 * or else as soon as it has been looked up.
+	 * 
+	 * @param siteName String
+	 * @return CompletableFuture<Folder> completed with the folder, or null if there is none
+	 * @see #getDocumentLibrary(String)
+	 */
+	public CompletableFuture<Folder> getDocumentLibraryAsync(final String siteName) {
+		Folder cachedFolder = docLibCache.get(siteName);
+		if (cachedFolder != null) {
+			return CompletableFuture.completedFuture(cachedFolder);
+		}
+		return CompletableFuture.supplyAsync(new Supplier<Folder>() {
+			public Folder get() {
+				return getDocumentLibrary(siteName);
+			}
+		}, getAsyncExecutor());
+	}
+	
+	/**
+	 * Returns the data lists without blocking.
+	 * 
+	 * @param siteName String
+	 * @param dataListItemType String
+	 * @param createIfNotFound boolean
+	 * @return CompletableFuture<List<Folder>>
+	 * @see #getDataLists(String, String, boolean)
+	 */
+	public CompletableFuture<List<Folder>> getDataListsAsync(final String siteName, final String dataListItemType, 
+			final boolean createIfNotFound) {
+		return CompletableFuture.supplyAsync(new Supplier<List<Folder>>() {
+			public List<Folder> get() {
+				return getDataLists(siteName, dataListItemType, createIfNotFound);
+			}
+		}, getAsyncExecutor());
+	}
+	
+	/**
+	 * Imports the item without blocking, on a session borrowed from the pool 
+	 * for the duration of the import.
+	 * 
+	 * @param item AlfrescoItem
+	 * @return CompletableFuture<ImportResult> completed once the item and its associations are created
+	 * @see #importItemWithResult(AlfrescoItem)
+	 */
+	public CompletableFuture<ImportResult> importItemAsync(final AlfrescoItem item) {
+		return CompletableFuture.supplyAsync(new Supplier<ImportResult>() {
+			public ImportResult get() {
+				// Keep a session the executor's thread already holds
+				boolean borrowed = borrowedSession.get() == null;
+				borrowSession();
+				try {
+					return importItemWithResult(item);
+				} finally {
+					if (borrowed) {
+						releaseSession();
+					}
+				}
+			}
+		}, getAsyncExecutor());
+	}
+	
+	/**
+	 * Creates the item in Alfresco via CMIS and reports what happened to it.
+	 * The item's associations are created before this returns; targets must 
+	 * already exist.
+	 * 
+	 * @param item AlfrescoItem
+	 * @return ImportResult
+	 */
+	public ImportResult importItemWithResult(AlfrescoItem item) {
+		AssociationQueue associations = createAssociationQueue();
+		ImportResult result = importItemWithResult(item, associations);
+		associations.flush(null, 1);
+		return result;
+	}
+	
+	/**
+	 * Returns a queue for associations to be created after a batch of items is imported.
+	 * 
+	 * @return AssociationQueue
+	 */
+	AssociationQueue createAssociationQueue() {
+		return new AssociationQueue(this, cmisObjectCache);
+	}
+	
+	/**
+	 * Creates the item in Alfresco via CMIS, adding its associations to the given 
+	 * queue rather than creating them.
+	 * 
+	 * @param item AlfrescoItem
+	 * @param associations AssociationQueue
+	 * @return ImportResult
+	 */
+	ImportResult importItemWithResult(AlfrescoItem item, AssociationQueue associations) {
+		String existingId = null;
+		if (uniqueLookup != null && item.isValid()) {
+			existingId = uniqueLookup.lookup(item);
+		}
+		return importItemWithResult(item, associations, existingId);
+	}
+	
+	/**
+	 * Creates the item in Alfresco via CMIS, or updates the given existing 
+	 * object found by the unique property (which may be in another folder).
+	 * 
+	 * @param item AlfrescoItem
+	 * @param associations AssociationQueue
+	 * @param existingId String ID of the item's existing object, or null to look for it by name
+	 * @return ImportResult
+	 */
+	ImportResult importItemWithResult(AlfrescoItem item, AssociationQueue associations, String existingId) {
+		try {
+			return createOrUpdate(item, associations, existingId);
+		} finally {
+			// Content that wasn't sent (skipped, unchanged or failed) is closed all the same
+			discardContent(item);
+		}
+	}
+	
+	/**
+	 * Closes the item's content if it is a stream or channel that was not read.
+	 * 
+	 * @param item AlfrescoItem
+	 */
+	static void discardContent(AlfrescoItem item) {
+		ItemContent content = ItemContent.from(item.getContent());
+		if (content != null) {
+			try {
+				content.discard();
+			} catch (IOException ex) {
+				logger.debug("Unable to close content of " + item.getName(), ex);
+			}
+		}
+	}
+	
+	private ImportResult createOrUpdate(AlfrescoItem item, AssociationQueue associations, String existingId) {
+		Session session = getSession();
+		if (!item.isValid()) {
+			logger.error("Item is not valid");
+			return ImportResult.failed(item, "Item is not valid");
+		}
+		
+		CmisObject cmisItem = null;
+		if (existingId != null) {
+			try {
+				cmisItem = getObject(session, existingId, session.getDefaultContext());
+			} catch (CmisObjectNotFoundException ex) {
+				// Deleted since it was looked up
+				logger.debug("Existing object " + existingId + " of " + item.getName() + " no longer exists");
+			}
+		}
+		
+		// An existing object is updated where it is, so needs no destination
+		if (cmisItem == null) {
+			configureDestination(item);
+			
+			// At this point, we should have a CmisObject destination for the item
+			if (item.getDestinationObject() == null) {
+				logger.error("Unable to locate destination for item: " + item.getName());
+				return ImportResult.failed(item, "Unable to locate destination");
+			}
+		}
+		
+		// The item type may be a comma-separated list of values.
+		// For example, "cmis:folder,P:cm:titled" would represent a folder with the "cm:titled" aspect.
+		// The first type represents the primary type; the registry parses and validates it once per type string.
+		String itemType = item.getType();
+		TypeRegistry.TypeSpec typeSpec = itemType != null ? typeRegistry.getTypeSpec(itemType) : null;
+		if (typeSpec == null) {
+			logger.error("Invalid type: " + itemType);
+			return ImportResult.failed(item, "Invalid type: " + itemType);
+		}
+	
+		// Search for duplicates by name, unless looked up by the unique property
+		String name = item.getName();
+		if (cmisItem == null 
+				&& (uniqueLookup == null || item.getProperties().get(uniqueLookup.getPropertyId()) == null)) {
+			cmisItem = getChildByName(item.getDestinationObject(), name);
+		}
+		ImportResult.Status status;
+		if (cmisItem != null) {
+			if (overwrite) {
+				// Only send what has changed, so re-running an import doesn't create 
+				// new versions or trigger re-indexing of unchanged nodes
+				Map<String, Object> changed = 
+						ChangeDetector.getChangedProperties(cmisItem, item.getProperties(), typeSpec);
+				boolean contentUpdated = false;
+				if (cmisItem instanceof Document) {
+					ItemContent content = ItemContent.from(item.getContent());
+					if (content != null) {
+						try {
+							String hash = contentHashProperty != null ? ChangeDetector.hash(content) : null;
+							if (ChangeDetector.isContentChanged((Document) cmisItem, content.getLength(), hash, 
+									contentHashProperty)) {
+								String type = getMimetype(item);
+								if (type == null) {
+									logger.error("No mimetype provided");
+									return ImportResult.failed(item, "No mimetype provided");
+								}
+								logger.debug("Updating content on " + name 
+										+ " (" + cmisItem.getId() + ") with content (" + type + ")");
+								getContentUploader().setContent((Document) cmisItem, name, type, content);
+								contentUpdated = true;
+								if (hash != null) {
+									changed.put(contentHashProperty, hash);
+								}
+							} else {
+								logger.debug("Content unchanged on " + name);
+							}
+						} catch (CmisStreamNotSupportedException ex) {
+							logger.warn("Unable to update node content...", ex);
+						} catch (IOException ex) {
+							logger.error("Unable to read content for " + name, ex);
+							return ImportResult.failed(item, "Unable to read content: " + ex);
+						}
+					}
+				}
+				if (!changed.isEmpty()) {
+					logger.info("Updating node: " + name + " " + changed.keySet());
+					final CmisObject existing = cmisItem;
+					final Map<String, Object> update = changed;
+					guard.execute(Operation.UPDATE_PROPERTIES, new CallGuard.Call<CmisObject>() {
+						public CmisObject call() {
+							return existing.updateProperties(update);
+						}
+					});
+				}
+				if (changed.isEmpty() && !contentUpdated) {
+					logger.info("Existing item unchanged: " + name);
+					status = ImportResult.Status.SKIPPED;
+				} else {
+					status = ImportResult.Status.UPDATED;
+				}
+			} else {
+				status = ImportResult.Status.SKIPPED;
+				logger.info("Existing item not updated: " + name + "...");
+			}
+		} else {
+			status = ImportResult.Status.CREATED;
+			ItemContent content = ItemContent.from(item.getContent());
+			Map<String, Object> properties = new HashMap<String, Object>(item.getProperties());
+			String mimetype = null;
+			try {
+				if (content != null) {
+					mimetype = getMimetype(item);
+					if (mimetype == null) {
+						logger.error("No mimetype provided");
+						return ImportResult.failed(item, "No mimetype provided");
+					}
+					if (contentHashProperty != null) {
+						// Store the hash so a later overwrite can tell if the content changed
+						String hash = ChangeDetector.hash(content);
+						if (hash != null) {
+							properties.put(contentHashProperty, hash);
+						}
+					}
+					logger.info("Creating document: " + name);
+				} else {
+					logger.info("Creating item: " + name);
+				}
+				cmisItem = create(session, item.getDestinationObject(), name, properties, content, mimetype, 
+						isVersionable(typeSpec), typeSpec.getPrimaryType() instanceof FolderTypeDefinition);
+			} catch (CmisContentAlreadyExistsException ex) {
+				// Another worker created the same name since we looked. For items, 
+				// I've also seen instances where an item is not found from a search, 
+				// which may be due to the indexes not updating in time?
+				logger.warn("Content already exists");
+				return ImportResult.skipped(item, null, "Content already exists");
+			} catch (IOException ex) {
+				logger.error("Unable to read content for " + name, ex);
+				return ImportResult.failed(item, "Unable to read content: " + ex);
+			}
+		}
+		
+		// Cache this item in case it's needed for an association or as a destination
+		if (cmisItem == null) {
+			return ImportResult.failed(item, "No object returned from server");
+		}
+		cmisObjectCache.put(cmisItem.getId(), ObjectSummary.of(cmisItem));
+		if (status == ImportResult.Status.CREATED) {
+			childNameIndex.put(item.getDestinationObject().getId(), name, cmisItem.getId());
+		}
+		
+		// Queue associations, if they exist.
+		// These are stored as a map of association type names to a comma-separated list 
+		// of target objects (nodeRefs or keys of items in the same batch)
+		Map<String, String> assocs = item.getAssociations();
+		for (String assocName : assocs.keySet()) {
+			for (String target : assocs.get(assocName).split(",")) {
+				if (target.trim().length() > 0) {
+					associations.add(cmisItem.getId(), status == ImportResult.Status.CREATED, assocName, target);
+				}
+			}
+		}
+		return new ImportResult(item, status, cmisItem.getId(), null);
+	}
+	
+	/**
+	 * Creates a document (when there is content), a folder (for folder types) 
+	 * or an item.
+	 * 
+	 * A create that fails with a transient error may have succeeded on the server
+	 * anyway, so before it is retried the parent is checked for an object of the 
+	 * same name. A document found there only counts as created if it has all the
+	 * content. Content that can only be read once is not retried.
+	 */
+	private CmisObject create(final Session session, final Folder parent, String name, 
+			final Map<String, Object> properties, ItemContent content, String mimetype, boolean versionable, 
+			boolean folder) throws IOException {
+		int attempt = 0;
+		while (true) {
+			try {
+				if (content != null) {
+					return getContentUploader().createDocument(parent, properties, name, mimetype, content, 
+							versionable);
+				}
+				if (folder) {
+					return createFolder(session, properties, parent);
+				}
+				ObjectId newItemId = guard.execute(Operation.CREATE_ITEM, new CallGuard.Call<ObjectId>() {
+					public ObjectId call() {
+						return session.createItem(properties, parent);
+					}
+				});
+				return getObject(session, newItemId.getId(), session.getDefaultContext());
+			} catch (RuntimeException ex) {
+				if (content != null && !content.isRepeatable() || !guard.shouldRetry(ex, ++attempt)) {
+					throw ex;
+				}
+				childNameIndex.invalidate(parent.getId());
+				CmisObject existing = getChildByName(parent, name);
+				if (existing != null) {
+					if (content == null || existing instanceof Document 
+							&& ((Document) existing).getContentStreamLength() == content.getLength()) {
+						logger.warn("Created " + name + " despite " + ex);
+						return existing;
+					}
+					throw ex;
+				}
+				logger.warn("Retrying create of " + name + " (attempt " + attempt + "): " + ex);
+				guard.backoff(attempt);
+			}
+		}
+	}
+	
+	private static boolean isVersionable(TypeRegistry.TypeSpec typeSpec) {
+		ObjectType type = typeSpec.getPrimaryType();
+		return !(type instanceof DocumentType) || !Boolean.FALSE.equals(((DocumentType) type).isVersionable());
+	}
+	
+	private ContentUploader getContentUploader() {
+		return new ContentUploader(uploadChunkSize, uploadRetries, guard);
+	}
+	
+	/**
+	 * Returns the item's mimetype, or for content in a file without one, the 
+	 * mimetype probed from the file; null if neither is known.
+	 */
+	private String getMimetype(AlfrescoItem item) {
+		String mimetype = item.getMimetype();
+		if (mimetype == null && item.getContent() instanceof Path) {
+			mimetype = probeMimetype((Path) item.getContent());
+		}
+		return mimetype;
+	}
+	
+	private String probeMimetype(Path path) {
+		try {
+			return Files.probeContentType(path);
+		} catch (IOException ex) {
+			logger.debug("Unable to determine mimetype of " + path, ex);
+			return null;
+		}
+	}
+	
+	/**
+	 * Helper method to display debug output for a CmisObject.
+	 * @param obj CmisObject
+	 */
+	private void debug(CmisObject obj) {
+		if (logger.isDebugEnabled()) {
+			logger.debug("CmisObject: " + obj.getName() + " (" + obj.getId() + ")");
+			logger.debug("  Type: " + obj.getType().getDisplayName());
+			logger.debug("  Properties:");
+			for (Property<?> prop : obj.getProperties()) {
+				logger.debug("    " + prop.getDisplayName() + " (" + prop.getId() + ") = " + prop.getValueAsString());
+			}	
+		}
+	}
+}
@@ -0,0 +1,34 @@
+package com.tribloom.cmis;
+
+import java.util.Map;
+
+/**
+ * The metrics of a CmisClient, as published over JMX under
+ * "com.tribloom.cmis:type=CmisClient,name=...".
+ */
+public interface CmisClientMXBean {
+
+	/**
+	 * @return Map<String, OperationStats> by operation name
+	 */
+	Map<String, OperationStats> getOperationStats();
+
+	/**
+	 * @return Map<String, CacheStats> by cache name
+	 */
+	Map<String, CacheStats> getCacheStats();
+
+	long getBytesUploaded();
+
+	/**
+	 * @return the current number of concurrent remote calls allowed
+	 * @see ConcurrencyLimiter
+	 */
+	int getConcurrencyLimit();
+
+	/**
+	 * @return CLOSED, OPEN or HALF_OPEN
+	 * @see CircuitBreaker
+	 */
+	String getCircuitState();
+}
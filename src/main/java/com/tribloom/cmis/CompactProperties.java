@@ -0,0 +1,383 @@
+package com.tribloom.cmis;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.GregorianCalendar;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.TimeZone;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The property (or association) map of an AlfrescoItem, built to hold tens of
+ * millions of items in memory.
+ *
+ * Keys live in a Schema shared by every map that added the same keys in the
+ * same order, so each map holds only a schema reference and an array of
+ * values, and each key string is kept once rather than once per item. Values
+ * that are canonical numbers, booleans and UTC date times are stored typed
+ * (a boxed Long instead of a String of digits, a shared Boolean, the millis of
+ * a date), and turned back into the same strings when read.
+ *
+ * Keys keep their insertion order. Lookups scan the keys of small schemas and
+ * use a hash index on large ones. Like HashMap, a map is not thread-safe.
+ */
+class CompactProperties extends AbstractMap<String, String> {
+
+	private static final Object[] NO_VALUES = new Object[0];
+
+	// UTC date times in the form DateTimeHelper writes, with or without millis
+	private static final DateTimeFormatter MILLIS_FORMAT =
+			DateTimeFormatter.ofPattern("uuuu-MM-dd'T'HH:mm:ss.SSS'Z'").withZone(ZoneOffset.UTC);
+	private static final DateTimeFormatter SECONDS_FORMAT =
+			DateTimeFormatter.ofPattern("uuuu-MM-dd'T'HH:mm:ss'Z'").withZone(ZoneOffset.UTC);
+	private static final TimeZone UTC = TimeZone.getTimeZone("UTC");
+
+	private Schema schema = Schema.EMPTY;
+	private Object[] values = NO_VALUES;
+
+	Schema getSchema() {
+		return schema;
+	}
+
+	@Override
+	public int size() {
+		return schema.size();
+	}
+
+	@Override
+	public boolean containsKey(Object key) {
+		return schema.indexOf(key) >= 0;
+	}
+
+	@Override
+	public String get(Object key) {
+		int index = schema.indexOf(key);
+		return index >= 0 ? asString(values[index]) : null;
+	}
+
+	/**
+	 * Returns the value as stored: a Long, Double, BigInteger, BigDecimal,
+	 * Boolean, Calendar (for date times) or String.
+	 */
+	Object getValue(String key) {
+		int index = schema.indexOf(key);
+		if (index < 0) {
+			return null;
+		}
+		Object value = values[index];
+		if (value instanceof DateValue) {
+			GregorianCalendar calendar = new GregorianCalendar(UTC);
+			calendar.setTimeInMillis(((DateValue) value).millis);
+			return calendar;
+		}
+		return value;
+	}
+
+	@Override
+	public String put(String key, String value) {
+		return asString(putValue(key, compact(value)));
+	}
+
+	/**
+	 * Stores a typed value: a Number, Boolean, Calendar, Date or String.
+	 */
+	void putTyped(String key, Object value) {
+		putValue(key, typed(value));
+	}
+
+	private Object putValue(String key, Object value) {
+		if (key == null) {
+			throw new NullPointerException("Property key");
+		}
+		int index = schema.indexOf(key);
+		if (index >= 0) {
+			Object old = values[index];
+			values[index] = value;
+			return old;
+		}
+		schema = schema.with(key);
+		values = Arrays.copyOf(values, values.length + 1);
+		values[values.length - 1] = value;
+		return null;
+	}
+
+	@Override
+	public String remove(Object key) {
+		int index = schema.indexOf(key);
+		if (index < 0) {
+			return null;
+		}
+		Object old = values[index];
+		removeAt(index);
+		return asString(old);
+	}
+
+	private void removeAt(int index) {
+		Schema remaining = Schema.EMPTY;
+		Object[] kept = new Object[values.length - 1];
+		for (int i = 0, j = 0; i < values.length; i++) {
+			if (i != index) {
+				remaining = remaining.with(schema.keys[i]);
+				kept[j++] = values[i];
+			}
+		}
+		schema = remaining;
+		values = kept.length > 0 ? kept : NO_VALUES;
+	}
+
+	@Override
+	public void clear() {
+		schema = Schema.EMPTY;
+		values = NO_VALUES;
+	}
+
+	@Override
+	public Set<Map.Entry<String, String>> entrySet() {
+		return new AbstractSet<Map.Entry<String, String>>() {
+			@Override
+			public int size() {
+				return schema.size();
+			}
+
+			@Override
+			public Iterator<Map.Entry<String, String>> iterator() {
+				return new EntryIterator();
+			}
+		};
+	}
+
+	private class EntryIterator implements Iterator<Map.Entry<String, String>> {
+		private int next;
+		private boolean removable;
+
+		public boolean hasNext() {
+			return next < values.length;
+		}
+
+		public Map.Entry<String, String> next() {
+			if (!hasNext()) {
+				throw new NoSuchElementException();
+			}
+			final String key = schema.keys[next++];
+			removable = true;
+			return new AbstractMap.SimpleEntry<String, String>(key, asString(values[next - 1])) {
+				private static final long serialVersionUID = 1L;
+
+				@Override
+				public String setValue(String value) {
+					super.setValue(value);
+					return put(key, value);
+				}
+			};
+		}
+
+		public void remove() {
+			if (!removable) {
+				throw new IllegalStateException();
+			}
+			removeAt(--next);
+			removable = false;
+		}
+	}
+
+	/**
+	 * Returns the typed form of a string, if it turns back into the same string.
+	 */
+	static Object compact(String value) {
+		if (value == null || value.isEmpty() || value.length() > 24) {
+			return value;
+		}
+		if ("true".equals(value)) {
+			return Boolean.TRUE;
+		}
+		if ("false".equals(value)) {
+			return Boolean.FALSE;
+		}
+		char first = value.charAt(0);
+		if (first != '-' && (first < '0' || first > '9')) {
+			return value;
+		}
+		if (value.length() <= 19 && isCanonicalLong(value)) {
+			return Long.valueOf(value);
+		}
+		if (value.length() >= 20 && value.charAt(10) == 'T' && value.charAt(value.length() - 1) == 'Z') {
+			boolean millis = value.length() == 24;
+			try {
+				Instant instant = Instant.parse(value);
+				if ((millis ? MILLIS_FORMAT : SECONDS_FORMAT).format(instant).equals(value)) {
+					return new DateValue(instant.toEpochMilli(), millis);
+				}
+			} catch (DateTimeParseException ex) {
+				// Not a date time after all
+			}
+			return value;
+		}
+		if (value.indexOf('.') > 0) {
+			try {
+				Double number = Double.valueOf(value);
+				if (number.toString().equals(value)) {
+					return number;
+				}
+			} catch (NumberFormatException ex) {
+				// Not a number after all
+			}
+		}
+		return value;
+	}
+
+	private static boolean isCanonicalLong(String value) {
+		int start = value.charAt(0) == '-' ? 1 : 0;
+		int length = value.length() - start;
+		if (length == 0 || length > 1 && value.charAt(start) == '0' || start == 1 && "-0".equals(value)) {
+			return false;
+		}
+		for (int i = start; i < value.length(); i++) {
+			char c = value.charAt(i);
+			if (c < '0' || c > '9') {
+				return false;
+			}
+		}
+		// 18 digits always fit; 19 may overflow
+		if (length == 19) {
+			try {
+				Long.parseLong(value);
+			} catch (NumberFormatException ex) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static Object typed(Object value) {
+		if (value == null || value instanceof Long || value instanceof Double || value instanceof Boolean
+				|| value instanceof BigInteger || value instanceof BigDecimal) {
+			return value;
+		}
+		if (value instanceof String) {
+			return compact((String) value);
+		}
+		if (value instanceof Integer || value instanceof Short || value instanceof Byte) {
+			return Long.valueOf(((Number) value).longValue());
+		}
+		if (value instanceof Float) {
+			return Double.valueOf(((Float) value).doubleValue());
+		}
+		if (value instanceof Calendar) {
+			return new DateValue(((Calendar) value).getTimeInMillis(), true);
+		}
+		if (value instanceof Date) {
+			return new DateValue(((Date) value).getTime(), true);
+		}
+		throw new IllegalArgumentException("Unsupported property value type: " + value.getClass().getName());
+	}
+
+	private static String asString(Object value) {
+		if (value == null || value instanceof String) {
+			return (String) value;
+		}
+		if (value instanceof DateValue) {
+			DateValue date = (DateValue) value;
+			return (date.withMillis ? MILLIS_FORMAT : SECONDS_FORMAT).format(Instant.ofEpochMilli(date.millis));
+		}
+		if (value instanceof BigDecimal) {
+			return ((BigDecimal) value).toPlainString();
+		}
+		return value.toString();
+	}
+
+	/**
+	 * A UTC date time, and whether it was written with millis.
+	 */
+	private static final class DateValue {
+		final long millis;
+		final boolean withMillis;
+
+		DateValue(long millis, boolean withMillis) {
+			this.millis = millis;
+			this.withMillis = withMillis;
+		}
+	}
+
+	/**
+	 * An ordered set of keys, shared by all maps that added them in that order.
+	 * Adding a key moves a map to a child schema, which is cached so that maps
+	 * built the same way end up with the same schema.
+	 */
+	static final class Schema {
+		static final Schema EMPTY = new Schema(new String[0]);
+
+		// Children cached per schema, beyond which new ones are not shared
+		private static final int MAX_CHILDREN = 64;
+		// Size from which keys are found through a hash index rather than a scan
+		private static final int INDEXED_SIZE = 12;
+
+		private final String[] keys;
+		private final Map<String, Integer> index;
+		private final ConcurrentHashMap<String, Schema> children = new ConcurrentHashMap<String, Schema>(4);
+
+		private Schema(String[] keys) {
+			this.keys = keys;
+			if (keys.length >= INDEXED_SIZE) {
+				index = new HashMap<String, Integer>(keys.length * 2);
+				for (int i = 0; i < keys.length; i++) {
+					index.put(keys[i], i);
+				}
+			} else {
+				index = null;
+			}
+		}
+
+		int size() {
+			return keys.length;
+		}
+
+		int indexOf(Object key) {
+			if (index != null) {
+				Integer i = index.get(key);
+				return i != null ? i : -1;
+			}
+			for (int i = 0; i < keys.length; i++) {
+				if (keys[i] == key) {
+					return i;
+				}
+			}
+			if (key != null) {
+				for (int i = 0; i < keys.length; i++) {
+					if (keys[i].equals(key)) {
+						return i;
+					}
+				}
+			}
+			return -1;
+		}
+
+		Schema with(String key) {
+			Schema child = children.get(key);
+			if (child == null) {
+				String[] childKeys = Arrays.copyOf(keys, keys.length + 1);
+				childKeys[keys.length] = key;
+				child = new Schema(childKeys);
+				if (children.size() < MAX_CHILDREN) {
+					Schema existing = children.putIfAbsent(key, child);
+					if (existing != null) {
+						child = existing;
+					}
+				}
+			}
+			return child;
+		}
+	}
+}
@@ -0,0 +1,158 @@
+package com.tribloom.cmis;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Limits the number of concurrent remote calls, adapting the limit to the
+ * server's response (additive increase, multiplicative decrease).
+ *
+ * While calls succeed at their usual latency, the limit grows by about one per
+ * limit's worth of calls, but only while the limit is actually being used.
+ * When a call fails with an overload error (a connection failure or timeout,
+ * 503 Service Unavailable or 429 Too Many Requests) or takes much longer than
+ * the usual latency of its operation, the limit is cut by the backoff ratio. Only one cut is made per round trip:
+ * calls that started before the last cut don't cut it again.
+ *
+ * The usual latency of each operation is the lowest latency seen, drifting
+ * slowly upwards so that it follows a server that has become slower for good.
+ * Calls that send content are not used as a latency signal, since their
+ * latency depends on the content length.
+ *
+ * Waiting callers park on a lock rather than a monitor, so virtual threads
+ * waiting for a permit don't pin their carrier threads.
+ */
+public class ConcurrencyLimiter {
+
+	// Calls of an operation seen before its latency is used as a signal
+	private static final int WARMUP_CALLS = 20;
+	// Fraction of the difference by which the usual latency drifts towards a slower call
+	private static final double BASELINE_DRIFT = 0.01;
+
+	private final int minLimit;
+	private final int maxLimit;
+	private final double backoffRatio;
+	private final double tolerance;
+	private final double[] baselines = new double[Operation.values().length];
+	private final int[] calls = new int[Operation.values().length];
+	private final ReentrantLock lock = new ReentrantLock();
+	private final Condition released = lock.newCondition();
+	private double limit;
+	private int inFlight;
+	private long lastDecrease = System.nanoTime();
+
+	/**
+	 * @param initialLimit int
+	 * @param minLimit int
+	 * @param maxLimit int
+	 * @param backoffRatio double factor by which the limit is cut, e.g. 0.75
+	 * @param tolerance double multiple of the usual latency above which a call counts as slow, e.g. 2.0
+	 */
+	public ConcurrencyLimiter(int initialLimit, int minLimit, int maxLimit, double backoffRatio, double tolerance) {
+		if (minLimit < 1 || maxLimit < minLimit) {
+			throw new IllegalArgumentException("Invalid limits: " + minLimit + ".." + maxLimit);
+		}
+		if (backoffRatio <= 0 || backoffRatio >= 1) {
+			throw new IllegalArgumentException("Backoff ratio must be between 0 and 1: " + backoffRatio);
+		}
+		this.minLimit = minLimit;
+		this.maxLimit = maxLimit;
+		this.backoffRatio = backoffRatio;
+		this.tolerance = tolerance;
+		this.limit = Math.max(minLimit, Math.min(maxLimit, initialLimit));
+	}
+
+	/**
+	 * Waits until a call may start.
+	 */
+	public void acquire() {
+		lock.lock();
+		try {
+			while (inFlight >= (int) limit) {
+				released.awaitUninterruptibly();
+			}
+			inFlight++;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Ends a call without adjusting the limit, e.g. when it failed before
+	 * reaching the server.
+	 */
+	public void release() {
+		lock.lock();
+		try {
+			inFlight--;
+			released.signalAll();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Ends a call and adjusts the limit to its outcome.
+	 *
+	 * @param operation Operation
+	 * @param startNanos long System.nanoTime() when the call started
+	 * @param nanos long time the call took
+	 * @param overloaded boolean true if the call failed in a way that suggests the server is overloaded
+	 */
+	public void release(Operation operation, long startNanos, long nanos, boolean overloaded) {
+		lock.lock();
+		try {
+			boolean utilized = inFlight >= limit / 2;
+			inFlight--;
+			if (overloaded || isSlow(operation, nanos)) {
+				if (startNanos - lastDecrease > 0) {
+					limit = Math.max(minLimit, limit * backoffRatio);
+					lastDecrease = System.nanoTime();
+				}
+			} else if (utilized) {
+				limit = Math.min(maxLimit, limit + 1 / limit);
+			}
+			released.signalAll();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	public int getLimit() {
+		lock.lock();
+		try {
+			return (int) limit;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	public int getInFlight() {
+		lock.lock();
+		try {
+			return inFlight;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Updates the usual latency of the operation, and returns true if the call
+	 * took much longer.
+	 */
+	private boolean isSlow(Operation operation, long nanos) {
+		if (operation.isSendingContent()) {
+			return false;
+		}
+		int i = operation.ordinal();
+		double micros = TimeUnit.NANOSECONDS.toMicros(nanos);
+		double baseline = baselines[i];
+		if (calls[i]++ == 0 || micros < baseline) {
+			baselines[i] = micros;
+		} else {
+			baselines[i] = baseline + (micros - baseline) * BASELINE_DRIFT;
+		}
+		return calls[i] > WARMUP_CALLS && micros > baseline * tolerance;
+	}
+}
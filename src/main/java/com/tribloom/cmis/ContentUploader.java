@@ -0,0 +1,395 @@
+package com.tribloom.cmis;
+
+import java.io.ByteArrayInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigInteger;
+import java.util.Map;
+
+import org.apache.chemistry.opencmis.client.api.Document;
+import org.apache.chemistry.opencmis.client.api.Folder;
+import org.apache.chemistry.opencmis.commons.data.ContentStream;
+import org.apache.chemistry.opencmis.commons.enums.VersioningState;
+import org.apache.chemistry.opencmis.commons.exceptions.CmisConnectionException;
+import org.apache.chemistry.opencmis.commons.exceptions.CmisNotSupportedException;
+import org.apache.chemistry.opencmis.commons.impl.dataobjects.ContentStreamImpl;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Sends ItemContent to the server without reading it into memory.
+ *
+ * Content up to the chunk size is streamed in a single request. Larger content
+ * is sent as a first chunk followed by appendContentStream calls, so that a
+ * connection failure only costs the chunk in flight: the chunk is retried after
+ * checking how much content the server actually stored. Chunks of repeatable
+ * content are re-read from the source; chunks of one-shot streams are buffered,
+ * one at a time, so they can be re-sent.
+ *
+ * Repositories that do not support appendContentStream (CMIS 1.0) fall back to
+ * a single setContentStream call when the content is repeatable.
+ *
+ * A document created by a first chunk is deleted again (all versions) if the
+ * rest of its content cannot be sent.
+ */
+class ContentUploader {
+
+	// SL4J Logger
+	private static final Logger logger = LoggerFactory.getLogger(ContentUploader.class);
+
+	private final long chunkSize;
+	private final int retries;
+	private final CallGuard guard;
+
+	ContentUploader(long chunkSize, int retries, CallGuard guard) {
+		if (chunkSize < 1 || chunkSize > Integer.MAX_VALUE) {
+			// One-shot content is buffered a chunk at a time, in a byte array
+			throw new IllegalArgumentException("Chunk size must be between 1 and " + Integer.MAX_VALUE + ": " 
+					+ chunkSize);
+		}
+		this.chunkSize = chunkSize;
+		this.retries = retries;
+		this.guard = guard;
+	}
+
+	/**
+	 * Creates a document in the given folder with the given content, as a major
+	 * version if the document type is versionable.
+	 */
+	Document createDocument(Folder parent, Map<String, ?> properties, String name, String mimetype,
+			ItemContent content, boolean versionable) throws IOException {
+		long length = content.getLength();
+		ChunkReader reader = isChunked(length) ? new ChunkReader(content) : null;
+		try {
+			Upload upload = reader == null 
+					? new Upload(Operation.CREATE_DOCUMENT, name, mimetype, length, content.openStream(0))
+					: new Upload(Operation.CREATE_DOCUMENT, name, mimetype, chunkSize, reader.open(0, chunkSize));
+			Document document;
+			try {
+				document = parent.createDocument(properties, upload.getContentStream(), 
+						versionable ? VersioningState.MAJOR : VersioningState.NONE);
+				upload.success();
+			} catch (RuntimeException ex) {
+				upload.failure(ex);
+				throw ex;
+			} finally {
+				upload.stop();
+			}
+			if (reader != null) {
+				try {
+					appendChunks(document, name, mimetype, content, reader);
+				} catch (IOException ex) {
+					deletePartial(document, name);
+					throw ex;
+				} catch (RuntimeException ex) {
+					deletePartial(document, name);
+					throw ex;
+				}
+			}
+			return document;
+		} finally {
+			if (reader != null) {
+				reader.close();
+			}
+		}
+	}
+
+	/**
+	 * Deletes a document whose content could not be sent in full, so that a
+	 * later run finds no document by that name and uploads it again, rather 
+	 * than taking the truncated one for a complete upload.
+	 */
+	private void deletePartial(final Document document, String name) {
+		try {
+			guard.execute(Operation.DELETE_OBJECT, new CallGuard.Call<Void>() {
+				public Void call() {
+					document.delete(true);
+					return null;
+				}
+			});
+			logger.warn("Deleted partially uploaded document " + name);
+		} catch (RuntimeException ex) {
+			logger.error("Unable to delete partially uploaded document " + name + " (" + document.getId() + ")", ex);
+		}
+	}
+
+	/**
+	 * Replaces the content of an existing document.
+	 */
+	void setContent(Document document, String name, String mimetype, ItemContent content) throws IOException {
+		long length = content.getLength();
+		if (!isChunked(length)) {
+			setContentStream(document, new Upload(Operation.SET_CONTENT_STREAM, name, mimetype, length, 
+					content.openStream(0)));
+			return;
+		}
+		ChunkReader reader = new ChunkReader(content);
+		try {
+			setContentStream(document, new Upload(Operation.SET_CONTENT_STREAM, name, mimetype, chunkSize, 
+					reader.open(0, chunkSize)));
+			appendChunks(document, name, mimetype, content, reader);
+		} finally {
+			reader.close();
+		}
+	}
+
+	private static void setContentStream(Document document, Upload upload) {
+		try {
+			document.setContentStream(upload.getContentStream(), true);
+			upload.success();
+		} catch (RuntimeException ex) {
+			upload.failure(ex);
+			throw ex;
+		} finally {
+			upload.stop();
+		}
+	}
+
+	private boolean isChunked(long length) {
+		return length > chunkSize;
+	}
+
+	private void appendChunks(Document document, String name, String mimetype, ItemContent content,
+			ChunkReader reader) throws IOException {
+		long length = content.getLength();
+		long offset = chunkSize;
+		while (offset < length) {
+			long size = Math.min(chunkSize, length - offset);
+			boolean last = offset + size >= length;
+			int attempt = 0;
+			while (true) {
+				Upload upload = new Upload(Operation.APPEND_CONTENT_STREAM, name, mimetype, size, 
+						reader.open(offset, size));
+				try {
+					document.appendContentStream(upload.getContentStream(), last);
+					upload.success();
+					break;
+				} catch (CmisNotSupportedException ex) {
+					upload.failure(ex);
+					if (!content.isRepeatable()) {
+						throw ex;
+					}
+					logger.debug("appendContentStream not supported, uploading " + name + " in one request");
+					setContentStream(document, new Upload(Operation.SET_CONTENT_STREAM, name, mimetype, length, 
+							content.openStream(0)));
+					return;
+				} catch (CmisConnectionException ex) {
+					upload.failure(ex);
+					long stored = storedLength(document);
+					if (stored == offset + size) {
+						// The chunk arrived, only the response was lost
+						break;
+					}
+					if (stored != offset || ++attempt > retries) {
+						throw ex;
+					}
+					logger.warn("Retrying chunk at " + offset + " of " + name + " (attempt " + attempt + ")", ex);
+				} finally {
+					upload.stop();
+				}
+			}
+			offset += size;
+		}
+	}
+
+	private static long storedLength(Document document) {
+		document.refresh();
+		return document.getContentStreamLength();
+	}
+
+	/**
+	 * One guarded request that sends content, counting the bytes actually read 
+	 * from the stream. The stream is closed when the request ends, as OpenCMIS 
+	 * doesn't close it.
+	 */
+	private class Upload {
+		private final CallGuard.Permit permit;
+		private final CountingInputStream stream;
+		private final ContentStream contentStream;
+		private boolean closed;
+
+		Upload(Operation operation, String name, String mimetype, long length, InputStream in) throws IOException {
+			try {
+				this.permit = guard.enter(operation);
+			} catch (RuntimeException ex) {
+				in.close();
+				throw ex;
+			}
+			BigInteger size = length >= 0 ? BigInteger.valueOf(length) : null;
+			this.stream = new CountingInputStream(in);
+			this.contentStream = new ContentStreamImpl(name, size, mimetype, stream);
+		}
+
+		ContentStream getContentStream() {
+			return contentStream;
+		}
+
+		void success() {
+			permit.success();
+			stop();
+		}
+
+		void failure(RuntimeException ex) {
+			permit.failure(ex);
+			stop();
+		}
+
+		void stop() {
+			permit.stop();
+			long count = stream.getAndResetCount();
+			if (count > 0) {
+				guard.getMetrics().addBytesUploaded(count);
+			}
+			if (!closed) {
+				closed = true;
+				closeQuietly(stream);
+			}
+		}
+	}
+
+	/**
+	 * Counts the bytes read from a stream.
+	 */
+	private static class CountingInputStream extends FilterInputStream {
+		private long count;
+
+		CountingInputStream(InputStream in) {
+			super(in);
+		}
+		public int read() throws IOException {
+			int b = super.read();
+			if (b >= 0) {
+				count++;
+			}
+			return b;
+		}
+		public int read(byte[] b, int off, int len) throws IOException {
+			int read = super.read(b, off, len);
+			if (read > 0) {
+				count += read;
+			}
+			return read;
+		}
+		public long skip(long n) throws IOException {
+			long skipped = super.skip(n);
+			count += skipped;
+			return skipped;
+		}
+		public boolean markSupported() {
+			return false;
+		}
+		synchronized long getAndResetCount() {
+			long result = count;
+			count = 0;
+			return result;
+		}
+	}
+
+	/**
+	 * Hands out chunks of content. Repeatable content is re-opened at each chunk's
+	 * offset; one-shot content is read sequentially into a reused buffer.
+	 */
+	private class ChunkReader {
+		private final ItemContent content;
+		private InputStream oneShot;
+		private byte[] buffer;
+		private long bufferOffset = -1;
+		private int bufferLength;
+
+		ChunkReader(ItemContent content) {
+			this.content = content;
+		}
+
+		InputStream open(long offset, long size) throws IOException {
+			if (content.isRepeatable()) {
+				return new BoundedInputStream(content.openStream(offset), size);
+			}
+			if (offset != bufferOffset) {
+				if (oneShot == null) {
+					oneShot = content.openStream(0);
+					buffer = new byte[(int) chunkSize];
+				}
+				bufferLength = readFully(oneShot, buffer, (int) size);
+				bufferOffset = offset;
+				if (offset + bufferLength >= content.getLength()) {
+					oneShot.close();
+				}
+			}
+			return new ByteArrayInputStream(buffer, 0, bufferLength);
+		}
+
+		/**
+		 * Closes one-shot content, whether or not all of it was read.
+		 */
+		void close() {
+			if (oneShot != null) {
+				closeQuietly(oneShot);
+				oneShot = null;
+			}
+		}
+	}
+
+	private static void closeQuietly(InputStream in) {
+		try {
+			in.close();
+		} catch (IOException ex) {
+			logger.debug("Unable to close content stream", ex);
+		}
+	}
+
+	private static int readFully(InputStream in, byte[] buffer, int size) throws IOException {
+		int read = 0;
+		while (read < size) {
+			int count = in.read(buffer, read, size - read);
+			if (count < 0) {
+				throw new IOException("Content ended after " + read + " of " + size + " chunk bytes");
+			}
+			read += count;
+		}
+		return read;
+	}
+
+	/**
+	 * Limits a stream to the given number of bytes.
+	 */
+	private static class BoundedInputStream extends FilterInputStream {
+		private long remaining;
+
+		BoundedInputStream(InputStream in, long limit) {
+			super(in);
+			this.remaining = limit;
+		}
+		public int read() throws IOException {
+			if (remaining <= 0) {
+				return -1;
+			}
+			int b = super.read();
+			if (b >= 0) {
+				remaining--;
+			}
+			return b;
+		}
+		public int read(byte[] b, int off, int len) throws IOException {
+			if (remaining <= 0) {
+				return -1;
+			}
+			int count = super.read(b, off, (int) Math.min(len, remaining));
+			if (count > 0) {
+				remaining -= count;
+			}
+			return count;
+		}
+		public long skip(long n) throws IOException {
+			long skipped = super.skip(Math.min(n, remaining));
+			remaining -= skipped;
+			return skipped;
+		}
+		public int available() throws IOException {
+			return (int) Math.min(super.available(), remaining);
+		}
+		public boolean markSupported() {
+			return false;
+		}
+	}
+}
@@ -0,0 +1,147 @@
+package com.tribloom.cmis;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Reads items from a CSV manifest whose first row names the fields (see
+ * ManifestMapping). Fields may be quoted with double quotes, in which case
+ * they can contain delimiters, line breaks and doubled quotes ("").
+ * Blank lines are skipped.
+ */
+public class CsvManifestReader extends ManifestReader {
+
+	// SL4J Logger
+	private static final Logger logger = LoggerFactory.getLogger(CsvManifestReader.class);
+
+	private final char delimiter;
+	private final List<String> fields = new ArrayList<String>();
+	private final StringBuilder field = new StringBuilder();
+	private String[] header;
+	private long line = 1;
+	private boolean eof;
+
+	/**
+	 * @param reader Reader
+	 * @param mapping ManifestMapping, or null for the default mapping
+	 */
+	public CsvManifestReader(Reader reader, ManifestMapping mapping) {
+		this(reader, mapping, ',');
+	}
+
+	/**
+	 * @param reader Reader
+	 * @param mapping ManifestMapping, or null for the default mapping
+	 * @param delimiter char field delimiter, e.g. ',' or '\t'
+	 */
+	public CsvManifestReader(Reader reader, ManifestMapping mapping, char delimiter) {
+		super(reader, mapping);
+		this.delimiter = delimiter;
+	}
+
+	/**
+	 * @return the field names from the header row, or null if it hasn't been read yet
+	 */
+	public String[] getHeader() {
+		return header != null ? header.clone() : null;
+	}
+
+	protected AlfrescoItem readItem() throws IOException {
+		if (header == null) {
+			if (!readRecord()) {
+				return null;
+			}
+			if (fields.size() > 0 && fields.get(0).startsWith("\uFEFF")) {
+				fields.set(0, fields.get(0).substring(1));
+			}
+			header = new String[fields.size()];
+			for (int i = 0; i < header.length; i++) {
+				header[i] = fields.get(i).trim();
+			}
+		}
+		while (true) {
+			long start = line;
+			if (!readRecord()) {
+				return null;
+			}
+			if (fields.size() == 1 && fields.get(0).length() == 0) {
+				continue;
+			}
+			if (fields.size() > header.length) {
+				logger.warn("Ignoring " + (fields.size() - header.length) + " fields without a header on line " + start);
+			}
+			AlfrescoItem item = new AlfrescoItem();
+			int count = Math.min(fields.size(), header.length);
+			for (int i = 0; i < count; i++) {
+				apply(item, header[i], fields.get(i));
+			}
+			return item;
+		}
+	}
+
+	/**
+	 * Reads the fields of the next record into fields.
+	 *
+	 * @return false at the end of input
+	 */
+	private boolean readRecord() throws IOException {
+		fields.clear();
+		if (eof) {
+			return false;
+		}
+		Reader reader = getReader();
+		field.setLength(0);
+		boolean quoted = false;
+		boolean started = false;
+		while (true) {
+			int c = reader.read();
+			if (c < 0) {
+				eof = true;
+				if (quoted) {
+					logger.error("Unterminated quoted field at end of manifest, line " + line);
+				}
+				if (started || fields.size() > 0) {
+					fields.add(field.toString());
+					return true;
+				}
+				return false;
+			}
+			started = true;
+			if (quoted) {
+				if (c == '"') {
+					reader.mark(1);
+					int following = reader.read();
+					if (following == '"') {
+						field.append('"');
+					} else {
+						quoted = false;
+						if (following >= 0) {
+							reader.reset();
+						}
+					}
+				} else {
+					if (c == '\n') {
+						line++;
+					}
+					field.append((char) c);
+				}
+			} else if (c == '"' && field.length() == 0) {
+				quoted = true;
+			} else if (c == delimiter) {
+				fields.add(field.toString());
+				field.setLength(0);
+			} else if (c == '\n') {
+				line++;
+				fields.add(field.toString());
+				return true;
+			} else if (c != '\r') {
+				field.append((char) c);
+			}
+		}
+	}
+}
@@ -0,0 +1,299 @@
+package com.tribloom.cmis;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.Semaphore;
+
+import org.apache.chemistry.opencmis.client.api.Folder;
+import org.apache.chemistry.opencmis.client.api.ObjectId;
+import org.apache.chemistry.opencmis.client.api.ObjectType;
+import org.apache.chemistry.opencmis.client.api.OperationContext;
+import org.apache.chemistry.opencmis.client.api.QueryResult;
+import org.apache.chemistry.opencmis.client.api.Session;
+import org.apache.chemistry.opencmis.commons.PropertyIds;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Inserts rows (items of a dl:dataListItem subtype) into a site's data list
+ * concurrently.
+ *
+ * The data list is resolved (and created if needed) once per batch, and each
+ * row then costs a single createDocument call: rows skip the destination
+ * lookup and the duplicate check by name that importItems makes for every
+ * item. Rows without a name are named with a random UUID, as Share does, and
+ * rows without a type get the list's item type.
+ *
+ * Duplicate detection is optional. With a unique property set (e.g.
+ * "dl:issueID"), the values of that property in the list are loaded once,
+ * with a paged query, into an in-memory index; rows whose value is already in
+ * the list, or earlier in the batch, are skipped. A row whose value is still
+ * being inserted by an earlier row waits for it, and is only skipped once that
+ * row has been created; if it fails, the later row is inserted in its place.
+ * Rows created through this importer are added to the index. The index is
+ * kept by the client (in its "dataListIndex" cache, dropped along with its
+ * cached data lists), so later batches, other importers and concurrent calls
+ * into the same list share it instead of loading it again.
+ *
+ * Associations are created once all rows have been inserted, as with
+ * BulkImporter; their targets may be NodeRefs or keys of rows in the batch.
+ */
+public class DataListImporter {
+
+	// SL4J Logger
+	private static final Logger logger = LoggerFactory.getLogger(DataListImporter.class);
+
+	private static final int QUEUED_ROWS_PER_THREAD = 4;
+	private static final int PAGE_SIZE = 1000;
+
+	private final CmisClient client;
+	private final int parallelism;
+	private String uniqueProperty;
+	private AssociationReport associationReport;
+
+	/**
+	 * The rows of a data list by unique property value: the NodeRefs of rows
+	 * in the list, and the inserts of rows not yet created.
+	 */
+	static class UniqueIndex {
+		final ConcurrentHashMap<String, String> nodeRefs = new ConcurrentHashMap<String, String>();
+		final ConcurrentHashMap<String, FutureTask<ImportResult>> inserting =
+				new ConcurrentHashMap<String, FutureTask<ImportResult>>();
+	}
+
+	public DataListImporter(CmisClient client, int parallelism) {
+		if (client == null) {
+			throw new IllegalArgumentException("No client provided");
+		}
+		if (parallelism < 1) {
+			throw new IllegalArgumentException("Parallelism must be at least 1: " + parallelism);
+		}
+		this.client = client;
+		this.parallelism = parallelism;
+	}
+
+	/**
+	 * Sets the property whose value identifies a row, or null (the default) to
+	 * insert every row without checking for duplicates.
+	 *
+	 * @param uniqueProperty String e.g. "dl:issueID"
+	 */
+	public void setUniqueProperty(String uniqueProperty) {
+		this.uniqueProperty = uniqueProperty;
+	}
+
+	public String getUniqueProperty() {
+		return uniqueProperty;
+	}
+
+	/**
+	 * @return the associations created by the last call to importRows
+	 */
+	public AssociationReport getAssociationReport() {
+		return associationReport;
+	}
+
+	/**
+	 * Inserts rows into the site's data list for the given item type, creating
+	 * the list if there is none.
+	 *
+	 * @param siteName String
+	 * @param dataListItemType String e.g. "dl:issue"
+	 * @param rows Iterable<AlfrescoItem>
+	 * @return List<ImportResult> one result per row, in iteration order
+	 */
+	public List<ImportResult> importRows(String siteName, String dataListItemType, Iterable<AlfrescoItem> rows) {
+		List<ImportResult> results = new ArrayList<ImportResult>();
+		List<Folder> dataLists = client.getDataLists(siteName, dataListItemType, true);
+		if (dataLists == null || dataLists.isEmpty()) {
+			logger.error("No data list for " + dataListItemType + " in site " + siteName);
+			for (AlfrescoItem row : rows) {
+				results.add(ImportResult.failed(row, "No data list found"));
+			}
+			return results;
+		}
+		final Folder dataList = dataLists.get(0);
+		final String type = dataListItemType.startsWith("D:") ? dataListItemType : "D:" + dataListItemType;
+		final UniqueIndex index = uniqueProperty != null ? getIndex(dataList, type) : null;
+		final Map<String, String> keyedNodeRefs = new ConcurrentHashMap<String, String>();
+		final AssociationQueue associations = client.createAssociationQueue();
+
+		ExecutorService executor = Executors.newFixedThreadPool(parallelism, new BulkImporter.WorkerThreadFactory());
+		final Semaphore inFlight = new Semaphore(parallelism * QUEUED_ROWS_PER_THREAD);
+		List<Future<ImportResult>> futures = new ArrayList<Future<ImportResult>>();
+		try {
+			for (final AlfrescoItem row : rows) {
+				inFlight.acquireUninterruptibly();
+				try {
+					futures.add(executor.submit(new Callable<ImportResult>() {
+						public ImportResult call() {
+							try {
+								return insertRow(row, dataList, type, index, keyedNodeRefs, associations);
+							} finally {
+								inFlight.release();
+							}
+						}
+					}));
+				} catch (RuntimeException ex) {
+					inFlight.release();
+					throw ex;
+				}
+			}
+		} finally {
+			executor.shutdown();
+		}
+
+		int skipped = 0;
+		int failed = 0;
+		for (Future<ImportResult> future : futures) {
+			ImportResult result = BulkImporter.await(future);
+			if (result.isFailed()) {
+				failed++;
+			} else if (result.getStatus() == ImportResult.Status.SKIPPED) {
+				skipped++;
+			}
+			results.add(result);
+		}
+		logger.info("Inserted " + (results.size() - skipped - failed) + " rows into " + dataList.getName()
+				+ " (" + skipped + " duplicates, " + failed + " failed)");
+		associationReport = associations.flush(keyedNodeRefs, parallelism);
+		return results;
+	}
+
+	private ImportResult insertRow(final AlfrescoItem row, final Folder dataList, final String type,
+			UniqueIndex index, final Map<String, String> keyedNodeRefs, final AssociationQueue associations) {
+		final String value = index != null ? row.getProperties().get(uniqueProperty) : null;
+		if (value == null) {
+			return createRow(row, dataList, type, null, null, keyedNodeRefs, associations);
+		}
+		final Map<String, String> nodeRefs = index.nodeRefs;
+		while (true) {
+			String existing = nodeRefs.get(value);
+			if (existing != null) {
+				return ImportResult.skipped(row, existing, "Duplicate " + uniqueProperty + ": " + value);
+			}
+			FutureTask<ImportResult> newTask = new FutureTask<ImportResult>(new Callable<ImportResult>() {
+				public ImportResult call() {
+					return createRow(row, dataList, type, value, nodeRefs, keyedNodeRefs, associations);
+				}
+			});
+			FutureTask<ImportResult> task = index.inserting.putIfAbsent(value, newTask);
+			if (task == null) {
+				try {
+					// The row inserting the value may have finished since it was looked up
+					existing = nodeRefs.get(value);
+					if (existing != null) {
+						return ImportResult.skipped(row, existing, "Duplicate " + uniqueProperty + ": " + value);
+					}
+					newTask.run();
+					return BulkImporter.await(newTask);
+				} finally {
+					index.inserting.remove(value, newTask);
+				}
+			}
+			ImportResult first = BulkImporter.await(task);
+			if (!first.isFailed()) {
+				return ImportResult.skipped(row, first.getNodeRef(), "Duplicate " + uniqueProperty + ": " + value);
+			}
+			// The first row with the value failed, so insert this one instead
+			index.inserting.remove(value, task);
+		}
+	}
+
+	private ImportResult createRow(AlfrescoItem row, final Folder dataList, String type, String value,
+			Map<String, String> nodeRefs, Map<String, String> keyedNodeRefs, AssociationQueue associations) {
+		try {
+			final Map<String, Object> properties = new HashMap<String, Object>(row.getProperties());
+			if (!properties.containsKey(PropertyIds.OBJECT_TYPE_ID)) {
+				properties.put(PropertyIds.OBJECT_TYPE_ID, type);
+			}
+			if (!properties.containsKey(PropertyIds.NAME)) {
+				properties.put(PropertyIds.NAME, UUID.randomUUID().toString());
+			}
+			String nodeRef;
+			client.borrowSession();
+			try {
+				final Session session = client.getSession();
+				nodeRef = client.getCallGuard().execute(Operation.CREATE_DOCUMENT, new CallGuard.Call<ObjectId>() {
+					public ObjectId call() {
+						return session.createDocument(properties, dataList, null, null);
+					}
+				}).getId();
+			} finally {
+				client.releaseSession();
+			}
+			if (value != null) {
+				nodeRefs.put(value, nodeRef);
+			}
+			if (row.getKey() != null) {
+				keyedNodeRefs.put(row.getKey(), nodeRef);
+			}
+			Map<String, String> assocs = row.getAssociations();
+			for (String assocName : assocs.keySet()) {
+				for (String target : assocs.get(assocName).split(",")) {
+					if (target.trim().length() > 0) {
+						associations.add(nodeRef, true, assocName, target);
+					}
+				}
+			}
+			return ImportResult.created(row, nodeRef);
+		} catch (RuntimeException ex) {
+			logger.error("Unable to insert row: " + row, ex);
+			return ImportResult.failed(row, ex.toString());
+		}
+	}
+
+	/**
+	 * Returns the index of unique property values in the data list, loading it
+	 * on first use.
+	 */
+	private UniqueIndex getIndex(Folder dataList, String type) {
+		String key = dataList.getId() + "/" + uniqueProperty;
+		Cache<String, UniqueIndex> indexes = client.getDataListIndexCache();
+		UniqueIndex index = indexes.get(key);
+		if (index == null) {
+			synchronized (indexes) {
+				// Another importer may have loaded it while we looked
+				index = indexes.get(key);
+				if (index == null) {
+					index = loadIndex(dataList, type);
+					indexes.put(key, index);
+				}
+			}
+		}
+		return index;
+	}
+
+	private UniqueIndex loadIndex(Folder dataList, String type) {
+		UniqueIndex index = new UniqueIndex();
+		TypeRegistry typeRegistry = client.getTypeRegistry();
+		ObjectType objectType = typeRegistry.getType(type);
+		String propertyQueryName = typeRegistry.getQueryName(type, uniqueProperty);
+		if (objectType == null || propertyQueryName == null) {
+			throw new IllegalArgumentException("No property " + uniqueProperty + " on type " + type);
+		}
+		OperationContext context = OperationContexts.minimal(client.getSession(), PAGE_SIZE, PropertyIds.OBJECT_ID);
+		context.setCacheEnabled(false);
+		// Pages are prefetched, so large lists are indexed at the speed of the network
+		PagedQuery<QueryResult> query = client.query("SELECT " + PropertyIds.OBJECT_ID + ", " + propertyQueryName
+				+ " FROM " + objectType.getQueryName() + " WHERE IN_FOLDER(?)").setId(1, dataList)
+				.setOperationContext(context);
+		for (QueryResult result : query) {
+			Object value = result.getPropertyValueById(uniqueProperty);
+			if (value != null) {
+				index.nodeRefs.put(value.toString(), (String) result.getPropertyValueById(PropertyIds.OBJECT_ID));
+			}
+		}
+		logger.info("Indexed " + index.nodeRefs.size() + " " + uniqueProperty + " values in " + dataList.getName());
+		return index;
+	}
+}
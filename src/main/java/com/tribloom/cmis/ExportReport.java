@@ -0,0 +1,61 @@
+package com.tribloom.cmis;
+
+/**
+ * Counts of what an export wrote to disk.
+ */
+public class ExportReport {
+
+	private final int folders;
+	private final int exported;
+	private final int skipped;
+	private final int failed;
+	private final int dataListRows;
+	private final long bytes;
+
+	public ExportReport(int folders, int exported, int skipped, int failed, int dataListRows, long bytes) {
+		this.folders = folders;
+		this.exported = exported;
+		this.skipped = skipped;
+		this.failed = failed;
+		this.dataListRows = dataListRows;
+		this.bytes = bytes;
+	}
+
+	public int getFolders() {
+		return folders;
+	}
+	/**
+	 * @return the number of documents whose content was downloaded
+	 */
+	public int getExported() {
+		return exported;
+	}
+	/**
+	 * @return the number of documents whose content was already on disk from an earlier export
+	 */
+	public int getSkipped() {
+		return skipped;
+	}
+	/**
+	 * @return the number of documents that could not be exported, and are left out of the manifest
+	 */
+	public int getFailed() {
+		return failed;
+	}
+	public int getDataListRows() {
+		return dataListRows;
+	}
+	/**
+	 * @return the number of content bytes downloaded
+	 */
+	public long getBytes() {
+		return bytes;
+	}
+	public boolean isComplete() {
+		return failed == 0;
+	}
+	public String toString() {
+		return folders + " folders, " + exported + " exported, " + skipped + " skipped, " + failed + " failed, "
+				+ dataListRows + " data list rows, " + bytes + " bytes";
+	}
+}
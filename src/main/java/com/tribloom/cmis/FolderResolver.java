@@ -0,0 +1,212 @@
+package com.tribloom.cmis;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+import org.apache.chemistry.opencmis.client.api.CmisObject;
+import org.apache.chemistry.opencmis.client.api.Folder;
+import org.apache.chemistry.opencmis.client.api.Session;
+import org.apache.chemistry.opencmis.commons.PropertyIds;
+import org.apache.chemistry.opencmis.commons.exceptions.CmisContentAlreadyExistsException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Resolves folder paths to Folders, optionally creating missing folders.
+ *
+ * Resolved folders are cached by parent folder ID and name, so a deep
+ * hierarchy costs one lookup per distinct folder rather than one per item.
+ * The cache is bounded like the client's other caches, and a folder that was
+ * evicted is simply resolved again. Each folder is resolved once at a time:
+ * when several threads ask for the same missing folder at the same time, one
+ * of them looks it up (and creates it if needed) while the others wait for its
+ * result. Only resolutions in flight are tracked that way.
+ */
+class FolderResolver {
+
+	// SL4J Logger
+	private static final Logger logger = LoggerFactory.getLogger(FolderResolver.class);
+
+	private final CmisClient client;
+	private final ChildNameIndex childNameIndex;
+	// Folders by parent folder ID and name
+	private final Cache<String, Folder> folders;
+	// IDs of the cached folders
+	private final Cache<String, Boolean> folderIds;
+	private final ConcurrentHashMap<String, FutureTask<Folder>> resolving = 
+			new ConcurrentHashMap<String, FutureTask<Folder>>();
+
+	/**
+	 * @param folders Cache<String, Folder> for resolved folders
+	 * @param folderIds Cache<String, Boolean> for their IDs, of the same size
+	 */
+	FolderResolver(CmisClient client, ChildNameIndex childNameIndex, Cache<String, Folder> folders, 
+			Cache<String, Boolean> folderIds) {
+		this.client = client;
+		this.childNameIndex = childNameIndex;
+		this.folders = folders;
+		this.folderIds = folderIds;
+	}
+
+	/**
+	 * Resolves a path relative to the given folder. Returns null if a folder on
+	 * the path does not exist (and create is false) or is not a folder.
+	 *
+	 * @param root Folder
+	 * @param path String slash-separated folder names
+	 * @param create boolean create missing folders
+	 * @return Folder
+	 */
+	Folder resolve(Folder root, String path, boolean create) {
+		Folder folder = root;
+		for (String segment : path.split("/")) {
+			if (segment.length() == 0 || ".".equals(segment)) {
+				continue;
+			}
+			folder = getChild(folder, segment, create);
+			if (folder == null) {
+				return null;
+			}
+		}
+		return folder;
+	}
+
+	/**
+	 * Resolves a path from the repository root folder.
+	 */
+	Folder resolve(String path, boolean create) {
+		return resolve(client.getSession().getRootFolder(), path, create);
+	}
+
+	/**
+	 * Returns true if the folder with the given ID was resolved, and not
+	 * forgotten since.
+	 */
+	boolean isResolved(String folderId) {
+		return folderIds.get(folderId) != null;
+	}
+
+	/**
+	 * Forgets all resolved folders.
+	 */
+	void clear() {
+		folders.invalidateAll();
+		folderIds.invalidateAll();
+	}
+
+	/**
+	 * @return the number of resolutions in flight
+	 */
+	int getResolvingCount() {
+		return resolving.size();
+	}
+
+	private Folder getChild(final Folder parent, final String name, final boolean create) {
+		final String key = parent.getId() + "/" + name;
+		Folder child = getCached(key);
+		if (child != null) {
+			return child;
+		}
+		FutureTask<Folder> newTask = new FutureTask<Folder>(new Callable<Folder>() {
+			public Folder call() {
+				// Resolved by another thread since we looked
+				Folder folder = getCached(key);
+				if (folder == null) {
+					folder = lookupOrCreate(parent, name, create);
+					if (folder != null) {
+						folderIds.put(folder.getId(), Boolean.TRUE);
+						folders.put(key, folder);
+					}
+				}
+				return folder;
+			}
+		});
+		FutureTask<Folder> task = resolving.putIfAbsent(key, newTask);
+		if (task == null) {
+			task = newTask;
+			try {
+				task.run();
+			} finally {
+				resolving.remove(key, task);
+			}
+		}
+		try {
+			return await(task);
+		} catch (RuntimeException ex) {
+			logger.error("Unable to resolve folder " + name + " in " + parent.getName(), ex);
+			return null;
+		}
+	}
+
+	/**
+	 * Returns a cached folder whose ID is still known, so that a change to it
+	 * can't be missed.
+	 */
+	private Folder getCached(String key) {
+		Folder folder = folders.get(key);
+		return folder != null && isResolved(folder.getId()) ? folder : null;
+	}
+
+	private Folder lookupOrCreate(final Folder parent, String name, boolean create) {
+		Folder folder = lookup(parent, name);
+		if (folder != null || !create) {
+			return folder;
+		}
+		logger.info("Creating folder: " + name + " in " + parent.getName());
+		final Map<String, Object> properties = new HashMap<String, Object>();
+		properties.put(PropertyIds.NAME, name);
+		properties.put(PropertyIds.OBJECT_TYPE_ID, "cmis:folder");
+		try {
+			folder = client.getCallGuard().execute(Operation.CREATE_FOLDER, new CallGuard.Call<Folder>() {
+				public Folder call() {
+					return parent.createFolder(properties);
+				}
+			});
+		} catch (CmisContentAlreadyExistsException ex) {
+			// Created by another process since we looked
+			childNameIndex.invalidate(parent.getId());
+			return lookup(parent, name);
+		}
+		childNameIndex.put(parent.getId(), name, folder.getId());
+		return folder;
+	}
+
+	private Folder lookup(Folder parent, String name) {
+		Session session = client.getSession();
+		String childId = childNameIndex.getChildId(session, parent, name);
+		if (childId == null) {
+			return null;
+		}
+		CmisObject child = client.getObject(session, childId, client.getFolderContext());
+		if (!(child instanceof Folder)) {
+			throw new IllegalArgumentException("Not a folder: " + name + " in " + parent.getName());
+		}
+		return (Folder) child;
+	}
+
+	private static Folder await(FutureTask<Folder> task) {
+		boolean interrupted = false;
+		try {
+			while (true) {
+				try {
+					return task.get();
+				} catch (InterruptedException ex) {
+					interrupted = true;
+				} catch (ExecutionException ex) {
+					if (ex.getCause() instanceof RuntimeException) {
+						throw (RuntimeException) ex.getCause();
+					}
+					throw new IllegalStateException(ex.getCause());
+				}
+			}
+		} finally {
+			if (interrupted) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+}
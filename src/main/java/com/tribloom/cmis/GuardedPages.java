@@ -0,0 +1,67 @@
+package com.tribloom.cmis;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.chemistry.opencmis.client.api.ItemIterable;
+
+/**
+ * Reads an OpenCMIS listing one page at a time, each page in its own guarded
+ * call.
+ *
+ * Iterating an ItemIterable fetches its pages lazily, so guarding a whole loop
+ * over it would hold one permit for the whole listing, time it as one very
+ * slow call, and retry it from the start after a failure on any page.
+ */
+final class GuardedPages {
+
+	/**
+	 * One page of a listing.
+	 */
+	static class Page<T> {
+		final List<T> items;
+		final boolean hasMoreItems;
+		final long totalNumItems;
+
+		Page(List<T> items, boolean hasMoreItems, long totalNumItems) {
+			this.items = items;
+			this.hasMoreItems = hasMoreItems;
+			this.totalNumItems = totalNumItems;
+		}
+
+		/**
+		 * Returns true if there is a page after this one. Repositories may
+		 * return fewer items than asked for, so a short page is not the last
+		 * unless it says so.
+		 */
+		boolean hasNext() {
+			return hasMoreItems && !items.isEmpty();
+		}
+	}
+
+	private GuardedPages() {
+	}
+
+	/**
+	 * Fetches the page of the listing that starts at the given offset.
+	 *
+	 * @param guard CallGuard
+	 * @param operation Operation the listing is timed and limited as
+	 * @param listing ItemIterable<T> e.g. the children of a folder
+	 * @param skip long number of items before the page
+	 * @return Page<T>
+	 */
+	static <T> Page<T> getPage(CallGuard guard, Operation operation, final ItemIterable<T> listing,
+			final long skip) {
+		return guard.execute(operation, new CallGuard.Call<Page<T>>() {
+			public Page<T> call() {
+				ItemIterable<T> page = listing.skipTo(skip).getPage();
+				List<T> items = new ArrayList<T>();
+				for (T item : page) {
+					items.add(item);
+				}
+				return new Page<T>(items, page.getHasMoreItems(), page.getTotalNumItems());
+			}
+		});
+	}
+}
@@ -0,0 +1,420 @@
+package com.tribloom.cmis;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.CRC32;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * An append-only file recording the outcome of each imported item by its
+ * source key (see AlfrescoItem.setKey), so an interrupted import can be
+ * resumed: items already in the journal are skipped without asking the server,
+ * and their NodeRefs still serve as destinations and association targets.
+ *
+ * Records are checksummed and written as they are appended, but only forced
+ * to disk every syncRecords records or syncMillis milliseconds (and on sync
+ * and close). A crash loses at most the unsynced tail, whose items are simply
+ * imported again (and found by duplicate detection); a record torn by the
+ * crash is dropped when the journal is reopened.
+ *
+ * Only a compact index (a 64-bit key hash and a file offset per record) is kept
+ * in memory. The records themselves are read through a memory mapping of the
+ * journal as it was when opened, or from the file for records appended since.
+ * When a key is recorded more than once, the last record wins.
+ */
+public class ImportJournal implements Closeable {
+
+	// SL4J Logger
+	private static final Logger logger = LoggerFactory.getLogger(ImportJournal.class);
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+	private static final byte[] MAGIC = "CMISJNL1".getBytes(UTF8);
+	private static final int MAX_RECORD_SIZE = 64 * 1024;
+	private static final long MAPPING_SIZE = 1L << 30;
+	private static final int MIN_CAPACITY = 1024;
+
+	private final Path file;
+	private final FileChannel channel;
+	private final int syncRecords;
+	private final long syncMillis;
+	private final List<MappedByteBuffer> mappings = new ArrayList<MappedByteBuffer>();
+	private final long mappedEnd;
+	private long end;
+	private int unsynced;
+	private long lastSync = System.currentTimeMillis();
+
+	// Open addressing table of key hashes (0 = empty) and record offsets
+	private long[] hashes;
+	private long[] offsets;
+	private int size;
+
+	/**
+	 * Opens (or creates) a journal that is forced to disk every 1000 records
+	 * or every second.
+	 *
+	 * @param file Path
+	 */
+	public ImportJournal(Path file) throws IOException {
+		this(file, 1000, 1000);
+	}
+
+	/**
+	 * @param file Path
+	 * @param syncRecords int number of records after which the journal is forced to disk
+	 * @param syncMillis long time after which appended records are forced to disk
+	 */
+	public ImportJournal(Path file, int syncRecords, long syncMillis) throws IOException {
+		this.file = file;
+		this.syncRecords = Math.max(1, syncRecords);
+		this.syncMillis = syncMillis;
+		this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+				StandardOpenOption.WRITE);
+		try {
+			allocate(MIN_CAPACITY);
+			if (channel.size() == 0) {
+				channel.write(ByteBuffer.wrap(MAGIC), 0);
+				channel.force(true);
+				end = MAGIC.length;
+			} else {
+				end = load();
+				if (end < channel.size()) {
+					logger.warn("Dropping " + (channel.size() - end) + " bytes of incomplete records from " + file);
+					channel.truncate(end);
+					channel.force(true);
+				}
+			}
+			mappedEnd = end;
+			for (long position = 0; position < mappedEnd; position += MAPPING_SIZE) {
+				long length = Math.min(MAPPING_SIZE + MAX_RECORD_SIZE, mappedEnd - position);
+				mappings.add(channel.map(FileChannel.MapMode.READ_ONLY, position, length));
+			}
+		} catch (IOException ex) {
+			channel.close();
+			throw ex;
+		}
+		logger.info("Opened import journal " + file + " (" + size + " items)");
+	}
+
+	public Path getFile() {
+		return file;
+	}
+
+	/**
+	 * @return the number of distinct keys recorded
+	 */
+	public synchronized int size() {
+		return size;
+	}
+
+	/**
+	 * Returns the last record for the given key, or null if there is none.
+	 *
+	 * @param key String
+	 * @return Entry
+	 */
+	public synchronized Entry get(String key) {
+		if (key == null) {
+			return null;
+		}
+		long hash = hash(key);
+		int mask = hashes.length - 1;
+		for (int slot = slot(hash, mask); hashes[slot] != 0; slot = (slot + 1) & mask) {
+			if (hashes[slot] == hash) {
+				Entry entry = read(offsets[slot]);
+				if (entry.getKey().equals(key)) {
+					return entry;
+				}
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Returns the NodeRef recorded for the given key if its item was imported,
+	 * or null if it was not (or failed).
+	 *
+	 * @param key String
+	 * @return String nodeRef
+	 */
+	public String getNodeRef(String key) {
+		Entry entry = get(key);
+		return entry != null && entry.getStatus() != ImportResult.Status.FAILED ? entry.getNodeRef() : null;
+	}
+
+	/**
+	 * Records the outcome of importing an item. Results of items without a key
+	 * are ignored.
+	 *
+	 * @param result ImportResult
+	 */
+	public void append(ImportResult result) throws IOException {
+		String key = result.getItem() != null ? result.getItem().getKey() : null;
+		if (key != null) {
+			append(key, result.getStatus(), result.getNodeRef());
+		}
+	}
+
+	/**
+	 * Records the outcome of importing the item with the given key.
+	 *
+	 * @param key String
+	 * @param status ImportResult.Status
+	 * @param nodeRef String, or null
+	 */
+	public synchronized void append(String key, ImportResult.Status status, String nodeRef) throws IOException {
+		ByteBuffer record = encode(key, status, nodeRef);
+		long offset = end;
+		while (record.hasRemaining()) {
+			channel.write(record, end + record.position());
+		}
+		end += record.limit();
+		index(key, offset);
+		if (++unsynced >= syncRecords || System.currentTimeMillis() - lastSync >= syncMillis) {
+			sync();
+		}
+	}
+
+	/**
+	 * Forces all appended records to disk.
+	 */
+	public synchronized void sync() throws IOException {
+		if (unsynced > 0) {
+			channel.force(false);
+			unsynced = 0;
+		}
+		lastSync = System.currentTimeMillis();
+	}
+
+	public synchronized void close() throws IOException {
+		if (channel.isOpen()) {
+			sync();
+			channel.close();
+		}
+	}
+
+	/**
+	 * Reads all records, building the index, and returns the end of the last
+	 * complete record.
+	 */
+	private long load() throws IOException {
+		DataInputStream in = new DataInputStream(new BufferedInputStream(
+				Channels.newInputStream(channel.position(0)), 1 << 16));
+		byte[] magic = new byte[MAGIC.length];
+		try {
+			in.readFully(magic);
+		} catch (EOFException ex) {
+			throw new IOException("Not an import journal: " + file);
+		}
+		if (!Arrays.equals(magic, MAGIC)) {
+			throw new IOException("Not an import journal: " + file);
+		}
+		long position = MAGIC.length;
+		byte[] payload = new byte[MAX_RECORD_SIZE];
+		CRC32 crc = new CRC32();
+		while (true) {
+			int length;
+			try {
+				length = in.readInt();
+				if (length <= 0 || length > MAX_RECORD_SIZE) {
+					return position;
+				}
+				in.readFully(payload, 0, length);
+				crc.reset();
+				crc.update(payload, 0, length);
+				if (in.readInt() != (int) crc.getValue()) {
+					return position;
+				}
+			} catch (EOFException ex) {
+				return position;
+			}
+			Entry entry = decode(ByteBuffer.wrap(payload, 0, length));
+			index(entry.getKey(), position);
+			position += 4 + length + 4;
+		}
+	}
+
+	private Entry read(long offset) {
+		ByteBuffer buffer;
+		if (offset < mappedEnd) {
+			buffer = mappings.get((int) (offset / MAPPING_SIZE)).duplicate();
+			buffer.position((int) (offset % MAPPING_SIZE));
+		} else {
+			buffer = ByteBuffer.allocate(4 + MAX_RECORD_SIZE);
+			try {
+				buffer.limit(4);
+				readFully(buffer, offset);
+				buffer.limit(4 + buffer.getInt(0));
+				readFully(buffer, offset);
+			} catch (IOException ex) {
+				throw new IllegalStateException("Unable to read import journal " + file, ex);
+			}
+			buffer.flip();
+		}
+		int length = buffer.getInt();
+		ByteBuffer payload = buffer.slice();
+		payload.limit(length);
+		return decode(payload);
+	}
+
+	private void readFully(ByteBuffer buffer, long offset) throws IOException {
+		while (buffer.hasRemaining()) {
+			if (channel.read(buffer, offset + buffer.position()) < 0) {
+				throw new EOFException();
+			}
+		}
+	}
+
+	private static ByteBuffer encode(String key, ImportResult.Status status, String nodeRef) {
+		byte[] keyBytes = key.getBytes(UTF8);
+		byte[] refBytes = nodeRef != null ? nodeRef.getBytes(UTF8) : null;
+		int length = 1 + 4 + keyBytes.length + 4 + (refBytes != null ? refBytes.length : 0);
+		if (length > MAX_RECORD_SIZE) {
+			throw new IllegalArgumentException("Key and NodeRef too long for the journal: " + key);
+		}
+		ByteBuffer buffer = ByteBuffer.allocate(4 + length + 4);
+		buffer.putInt(length);
+		buffer.put((byte) status.name().charAt(0));
+		buffer.putInt(keyBytes.length);
+		buffer.put(keyBytes);
+		buffer.putInt(refBytes != null ? refBytes.length : -1);
+		if (refBytes != null) {
+			buffer.put(refBytes);
+		}
+		CRC32 crc = new CRC32();
+		crc.update(buffer.array(), 4, length);
+		buffer.putInt((int) crc.getValue());
+		buffer.flip();
+		return buffer;
+	}
+
+	private static Entry decode(ByteBuffer payload) {
+		ImportResult.Status status = toStatus(payload.get());
+		byte[] keyBytes = new byte[payload.getInt()];
+		payload.get(keyBytes);
+		int refLength = payload.getInt();
+		String nodeRef = null;
+		if (refLength >= 0) {
+			byte[] refBytes = new byte[refLength];
+			payload.get(refBytes);
+			nodeRef = new String(refBytes, UTF8);
+		}
+		return new Entry(new String(keyBytes, UTF8), status, nodeRef);
+	}
+
+	private static ImportResult.Status toStatus(byte code) {
+		for (ImportResult.Status status : ImportResult.Status.values()) {
+			if (status.name().charAt(0) == code) {
+				return status;
+			}
+		}
+		throw new IllegalStateException("Unknown status in import journal: " + (char) code);
+	}
+
+	/**
+	 * Points the key's slot at the given record.
+	 */
+	private void index(String key, long offset) {
+		long hash = hash(key);
+		int mask = hashes.length - 1;
+		int slot = slot(hash, mask);
+		for (; hashes[slot] != 0; slot = (slot + 1) & mask) {
+			if (hashes[slot] == hash && read(offsets[slot]).getKey().equals(key)) {
+				offsets[slot] = offset;
+				return;
+			}
+		}
+		hashes[slot] = hash;
+		offsets[slot] = offset;
+		if (++size > hashes.length * 3 / 4) {
+			resize();
+		}
+	}
+
+	private void resize() {
+		long[] oldHashes = hashes;
+		long[] oldOffsets = offsets;
+		allocate(oldHashes.length * 2);
+		int mask = hashes.length - 1;
+		for (int i = 0; i < oldHashes.length; i++) {
+			if (oldHashes[i] != 0) {
+				int slot = slot(oldHashes[i], mask);
+				while (hashes[slot] != 0) {
+					slot = (slot + 1) & mask;
+				}
+				hashes[slot] = oldHashes[i];
+				offsets[slot] = oldOffsets[i];
+			}
+		}
+	}
+
+	private void allocate(int capacity) {
+		hashes = new long[capacity];
+		offsets = new long[capacity];
+	}
+
+	private static int slot(long hash, int mask) {
+		return (int) (hash ^ (hash >>> 32)) & mask;
+	}
+
+	/**
+	 * FNV-1a over the key's characters, mixed so that the low bits spread
+	 * well; never 0, which marks an empty slot.
+	 */
+	static long hash(String key) {
+		long hash = 0xcbf29ce484222325L;
+		for (int i = 0; i < key.length(); i++) {
+			hash ^= key.charAt(i);
+			hash *= 0x100000001b3L;
+		}
+		hash ^= hash >>> 33;
+		hash *= 0xff51afd7ed558ccdL;
+		hash ^= hash >>> 33;
+		return hash != 0 ? hash : 1;
+	}
+
+	/**
+	 * A recorded outcome.
+	 */
+	public static class Entry {
+		private final String key;
+		private final ImportResult.Status status;
+		private final String nodeRef;
+
+		Entry(String key, ImportResult.Status status, String nodeRef) {
+			this.key = key;
+			this.status = status;
+			this.nodeRef = nodeRef;
+		}
+
+		public String getKey() {
+			return key;
+		}
+		public ImportResult.Status getStatus() {
+			return status;
+		}
+		/**
+		 * @return the NodeRef of the imported node, or null if the item failed
+		 */
+		public String getNodeRef() {
+			return nodeRef;
+		}
+		public String toString() {
+			return key + " -> " + status + (nodeRef != null ? " " + nodeRef : "");
+		}
+	}
+}
@@ -0,0 +1,137 @@
+package com.tribloom.cmis;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Latency and throughput of the remote calls made by a CmisClient.
+ *
+ * Each Operation has a LatencyHistogram and an error count; content uploads
+ * also add up the bytes sent. Calls are measured with a Timer:
+ *
+ * <pre>
+ * ImportMetrics.Timer timer = metrics.start(Operation.CREATE_FOLDER);
+ * try {
+ *     folder = parent.createFolder(properties);
+ *     timer.success();
+ * } finally {
+ *     timer.stop();
+ * }
+ * </pre>
+ *
+ * Measurements are also passed to any registered MetricsListeners.
+ */
+public class ImportMetrics {
+
+	private final LatencyHistogram[] latencies = new LatencyHistogram[Operation.values().length];
+	private final AtomicLong[] errors = new AtomicLong[Operation.values().length];
+	private final AtomicLong bytesUploaded = new AtomicLong();
+	private final CopyOnWriteArrayList<MetricsListener> listeners = new CopyOnWriteArrayList<MetricsListener>();
+
+	public ImportMetrics() {
+		for (int i = 0; i < latencies.length; i++) {
+			latencies[i] = new LatencyHistogram();
+			errors[i] = new AtomicLong();
+		}
+	}
+
+	public void addListener(MetricsListener listener) {
+		listeners.add(listener);
+	}
+
+	public void removeListener(MetricsListener listener) {
+		listeners.remove(listener);
+	}
+
+	/**
+	 * Starts timing a call.
+	 *
+	 * @param operation Operation
+	 * @return Timer
+	 */
+	public Timer start(Operation operation) {
+		return new Timer(operation);
+	}
+
+	/**
+	 * Records a call.
+	 *
+	 * @param operation Operation
+	 * @param nanos long time the call took
+	 * @param success boolean false if the call threw an exception
+	 */
+	public void record(Operation operation, long nanos, boolean success) {
+		latencies[operation.ordinal()].record(TimeUnit.NANOSECONDS.toMicros(nanos));
+		if (!success) {
+			errors[operation.ordinal()].incrementAndGet();
+		}
+		for (MetricsListener listener : listeners) {
+			listener.operationCompleted(operation, nanos, success);
+		}
+	}
+
+	/**
+	 * Records content sent to the server.
+	 *
+	 * @param bytes long
+	 */
+	public void addBytesUploaded(long bytes) {
+		bytesUploaded.addAndGet(bytes);
+		for (MetricsListener listener : listeners) {
+			listener.bytesUploaded(bytes);
+		}
+	}
+
+	public long getBytesUploaded() {
+		return bytesUploaded.get();
+	}
+
+	public OperationStats getStats(Operation operation) {
+		LatencyHistogram histogram = latencies[operation.ordinal()];
+		return new OperationStats(operation, histogram.getCount(), errors[operation.ordinal()].get(), 
+				histogram.getMean(), histogram.getPercentile(50), histogram.getPercentile(99), histogram.getMax());
+	}
+
+	/**
+	 * @return Map<Operation, OperationStats> stats of every operation, in declaration order
+	 */
+	public Map<Operation, OperationStats> getStats() {
+		Map<Operation, OperationStats> stats = new LinkedHashMap<Operation, OperationStats>();
+		for (Operation operation : Operation.values()) {
+			stats.put(operation, getStats(operation));
+		}
+		return stats;
+	}
+
+	/**
+	 * Times one call. The call is recorded once: by success(), or else by stop()
+	 * as a failure.
+	 */
+	public class Timer {
+		private final Operation operation;
+		private final long start = System.nanoTime();
+		private boolean recorded;
+
+		private Timer(Operation operation) {
+			this.operation = operation;
+		}
+
+		public void success() {
+			record(true);
+		}
+
+		public void stop() {
+			record(false);
+		}
+
+		private void record(boolean success) {
+			if (!recorded) {
+				recorded = true;
+				ImportMetrics.this.record(operation, System.nanoTime() - start, success);
+			}
+		}
+	}
+}
@@ -0,0 +1,163 @@
+package com.tribloom.cmis;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The order in which ImportPlanner has arranged a batch of items: grouped by
+ * destination folder, parent folders before their contents, with repeated
+ * writes of the same name to the same folder collapsed into one item.
+ *
+ * Round trips are estimated for a client whose caches are cold: resolving
+ * each site, NodeRef and folder on a path once, indexing the names in each
+ * destination once, one create or update per item, and one call per
+ * association. Collapsed items cost nothing.
+ */
+public class ImportPlan {
+
+	/**
+	 * The items planned for one destination folder.
+	 */
+	public static class Group {
+		private final String destination;
+		private final int resolveRoundTrips;
+		private final List<AlfrescoItem> items = new ArrayList<AlfrescoItem>();
+		private int folders;
+		private int associations;
+
+		Group(String destination, int resolveRoundTrips) {
+			this.destination = destination;
+			this.resolveRoundTrips = resolveRoundTrips;
+		}
+
+		void add(AlfrescoItem item, boolean folder) {
+			items.add(item);
+			if (folder) {
+				folders++;
+			}
+			for (String targets : item.getAssociations().values()) {
+				for (String target : targets.split(",")) {
+					if (target.trim().length() > 0) {
+						associations++;
+					}
+				}
+			}
+		}
+
+		/**
+		 * @return the repository path or NodeRef of the folder, or null if it can't be resolved
+		 */
+		public String getDestination() {
+			return destination;
+		}
+		public List<AlfrescoItem> getItems() {
+			return Collections.unmodifiableList(items);
+		}
+		/**
+		 * @return the number of the items that are folders
+		 */
+		public int getFolders() {
+			return folders;
+		}
+		public int getEstimatedRoundTrips() {
+			return destination != null ? resolveRoundTrips + 1 + items.size() + associations
+					: items.size() + associations;
+		}
+		public String toString() {
+			return (destination != null ? destination : "(unresolved destination)") + ": " + items.size()
+					+ " items (" + folders + " folders), about " + getEstimatedRoundTrips() + " round trips";
+		}
+	}
+
+	/**
+	 * An item of the batch, by its position in the batch, and the planned
+	 * item it was collapsed into, if any.
+	 */
+	static class Entry {
+		final int index;
+		final AlfrescoItem item;
+		final AlfrescoItem mergedInto;
+
+		Entry(int index, AlfrescoItem item, AlfrescoItem mergedInto) {
+			this.index = index;
+			this.item = item;
+			this.mergedInto = mergedInto;
+		}
+	}
+
+	private final List<Group> groups;
+	private final List<AlfrescoItem> items;
+	private final List<Entry> entries;
+	private final int sites;
+
+	ImportPlan(List<Group> groups, List<Entry> entries, int sites) {
+		this.groups = groups;
+		this.entries = entries;
+		this.sites = sites;
+		items = new ArrayList<AlfrescoItem>();
+		for (Group group : groups) {
+			items.addAll(group.items);
+		}
+	}
+
+	/**
+	 * @return the groups, in the order they are imported
+	 */
+	public List<Group> getGroups() {
+		return Collections.unmodifiableList(groups);
+	}
+
+	/**
+	 * @return the items to import, in order, without the collapsed ones
+	 */
+	public List<AlfrescoItem> getItems() {
+		return Collections.unmodifiableList(items);
+	}
+
+	/**
+	 * @return the number of items in the batch
+	 */
+	public int getItemCount() {
+		return entries.size();
+	}
+
+	/**
+	 * @return the number of items collapsed into an earlier item of the same name and folder
+	 */
+	public int getCollapsedCount() {
+		return entries.size() - items.size();
+	}
+
+	public int getEstimatedRoundTrips() {
+		int roundTrips = 2 * sites;
+		for (Group group : groups) {
+			roundTrips += group.getEstimatedRoundTrips();
+		}
+		return roundTrips;
+	}
+
+	/**
+	 * @return the items of the batch in batch order
+	 */
+	List<Entry> getEntries() {
+		return entries;
+	}
+
+	/**
+	 * Lists the groups, one per line, after a summary line.
+	 */
+	public String toString() {
+		StringBuilder plan = new StringBuilder();
+		plan.append(entries.size()).append(" items in ").append(groups.size()).append(" destinations, ")
+				.append(getCollapsedCount()).append(" collapsed, about ").append(getEstimatedRoundTrips())
+				.append(" round trips");
+		if (sites > 0) {
+			plan.append(" (").append(2 * sites).append(" to resolve ").append(sites).append(" sites)");
+		}
+		for (Group group : groups) {
+			plan.append("\n  ").append(group);
+		}
+		return plan.toString();
+	}
+}
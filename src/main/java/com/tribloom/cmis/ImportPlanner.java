@@ -0,0 +1,303 @@
+package com.tribloom.cmis;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.chemistry.opencmis.commons.PropertyIds;
+
+/**
+ * Arranges a batch of AlfrescoItems before it is imported, without any calls
+ * to the server.
+ *
+ * Each item's destination is resolved the way CmisClient resolves it (a
+ * blank destination is the site's document library, a relative one is below
+ * it, and the key of an earlier item is that item), but as a path, so items
+ * for the same folder can be grouped however their destinations are written.
+ * Groups are imported parents first, and in each group folders before other
+ * items, so each destination is resolved once and its name index is used
+ * while it is warm.
+ *
+ * Several items of the same name in the same folder are collapsed into the
+ * first: with overwrite, later properties, content and associations are
+ * merged into it, as importing them one after another would; without, only
+ * their associations are. This saves the redundant updates, and the race in
+ * which two workers create the same name at once.
+ *
+ * An item whose destination is the path of a folder item of the batch is
+ * placed in that item by key (the folder item is given the key
+ * "plan:PATH" if it has none), so BulkImporter waits for the folder to be
+ * created instead of creating it a second time through the destination path.
+ *
+ * Planning reads the whole batch into memory, and updates the items.
+ */
+public class ImportPlanner {
+
+	private static final String KEY_PREFIX = "plan:";
+
+	private final boolean overwrite;
+
+	/**
+	 * @param overwrite boolean whether existing items are updated (see "cmis.utils.overwrite")
+	 */
+	public ImportPlanner(boolean overwrite) {
+		this.overwrite = overwrite;
+	}
+
+	public ImportPlan plan(Iterable<AlfrescoItem> items) {
+		List<ImportPlan.Entry> entries = new ArrayList<ImportPlan.Entry>();
+		// Paths of the earlier keyed items, keys of collapsed items to the keys they now go by
+		Map<String, String> keyPaths = new HashMap<String, String>();
+		Map<String, String> keyAliases = new HashMap<String, String>();
+		Map<String, AlfrescoItem> itemsByPath = new HashMap<String, AlfrescoItem>();
+		Map<AlfrescoItem, String> destinations = new HashMap<AlfrescoItem, String>();
+		// Items whose destination is resolved as written, not by key
+		Set<AlfrescoItem> written = new HashSet<AlfrescoItem>();
+		List<AlfrescoItem> planned = new ArrayList<AlfrescoItem>();
+		for (AlfrescoItem item : items) {
+			String key = item.getDestination() != null ? keyAliases.get(item.getDestination()) : null;
+			if (key != null) {
+				item.setDestination(key);
+			}
+			String destination = resolve(item, keyPaths);
+			if (item.getKey() != null) {
+				// Only earlier keys are destinations, as in BulkImporter
+				keyPaths.remove(item.getKey());
+			}
+			String name = item.getName();
+			String path = destination != null && name != null ? destination + "/" + name : null;
+			AlfrescoItem first = path != null ? itemsByPath.get(path) : null;
+			if (first != null) {
+				merge(item, first, keyAliases);
+				if (first.getKey() != null) {
+					keyPaths.put(first.getKey(), path);
+				}
+				entries.add(new ImportPlan.Entry(entries.size(), item, first));
+				continue;
+			}
+			if (path != null) {
+				itemsByPath.put(path, item);
+				if (item.getKey() != null) {
+					keyPaths.put(item.getKey(), path);
+				}
+			}
+			destinations.put(item, destination);
+			if (!isKey(item.getDestination(), keyPaths)) {
+				written.add(item);
+			}
+			planned.add(item);
+			entries.add(new ImportPlan.Entry(entries.size(), item, null));
+		}
+
+		// Group by destination, in order of first use
+		Map<String, List<AlfrescoItem>> byDestination = new LinkedHashMap<String, List<AlfrescoItem>>();
+		List<AlfrescoItem> unresolved = new ArrayList<AlfrescoItem>();
+		for (AlfrescoItem item : planned) {
+			String destination = destinations.get(item);
+			if (destination == null) {
+				unresolved.add(item);
+				continue;
+			}
+			AlfrescoItem folder = itemsByPath.get(destination);
+			if (folder != null && folder != item && isFolder(folder) && written.contains(item)) {
+				// Wait for the folder item rather than creating the folder by path
+				if (folder.getKey() == null) {
+					folder.setKey(KEY_PREFIX + destination);
+				}
+				item.setDestination(folder.getKey());
+				written.remove(item);
+			}
+			List<AlfrescoItem> group = byDestination.get(destination);
+			if (group == null) {
+				group = new ArrayList<AlfrescoItem>();
+				byDestination.put(destination, group);
+			}
+			group.add(item);
+		}
+		List<String> order = new ArrayList<String>(byDestination.keySet());
+		// Stable, so groups of the same depth keep their order
+		Collections.sort(order, new Comparator<String>() {
+			public int compare(String a, String b) {
+				return Integer.compare(depth(a), depth(b));
+			}
+		});
+
+		List<ImportPlan.Group> groups = new ArrayList<ImportPlan.Group>();
+		Set<String> sites = new HashSet<String>();
+		Set<String> resolved = new HashSet<String>();
+		for (String destination : order) {
+			List<AlfrescoItem> group = byDestination.get(destination);
+			int resolveRoundTrips = 0;
+			for (AlfrescoItem item : group) {
+				// Items placed in another item by key need no lookups
+				if (written.contains(item)) {
+					resolveRoundTrips = countResolveRoundTrips(item, destination, sites, resolved);
+					break;
+				}
+			}
+			ImportPlan.Group planGroup = new ImportPlan.Group(destination, resolveRoundTrips);
+			for (AlfrescoItem item : group) {
+				if (isFolder(item)) {
+					planGroup.add(item, true);
+				}
+			}
+			for (AlfrescoItem item : group) {
+				if (!isFolder(item)) {
+					planGroup.add(item, false);
+				}
+			}
+			groups.add(planGroup);
+		}
+		if (!unresolved.isEmpty()) {
+			// In batch order, as they may be placed in one another
+			ImportPlan.Group planGroup = new ImportPlan.Group(null, 0);
+			for (AlfrescoItem item : unresolved) {
+				planGroup.add(item, isFolder(item));
+			}
+			groups.add(planGroup);
+		}
+		return new ImportPlan(groups, entries, sites.size());
+	}
+
+	/**
+	 * Returns the repository path (or NodeRef, and path below it) of the
+	 * item's destination folder, or null if it can't be told without the server.
+	 */
+	static String resolve(AlfrescoItem item, Map<String, String> keyPaths) {
+		String destination = item.getDestination();
+		String siteName = item.getSiteName();
+		if (destination != null && keyPaths.containsKey(destination)) {
+			return keyPaths.get(destination);
+		}
+		if (destination == null || destination.length() == 0) {
+			return siteName != null ? getDocumentLibraryPath(siteName) : null;
+		} else if (destination.contains("workspace://")) {
+			return destination;
+		} else if (destination.startsWith("/")) {
+			return normalize("", destination);
+		} else if (siteName != null) {
+			return normalize(getDocumentLibraryPath(siteName), destination);
+		}
+		return null;
+	}
+
+	/**
+	 * Folds a later item of the same name and folder into the first.
+	 */
+	private void merge(AlfrescoItem item, AlfrescoItem first, Map<String, String> keyAliases) {
+		if (overwrite) {
+			for (Map.Entry<String, String> property : item.getProperties().entrySet()) {
+				// The type of an existing object isn't changed by an update
+				if (!PropertyIds.OBJECT_TYPE_ID.equals(property.getKey())) {
+					first.setProperty(property.getKey(), item.getPropertyValue(property.getKey()));
+				}
+			}
+			if (item.getContent() != null) {
+				// The first item's own content is replaced, so won't be read
+				CmisClient.discardContent(first);
+				first.setContent(item.getContent());
+				first.setMimetype(item.getMimetype());
+			}
+		}
+		for (Map.Entry<String, String> association : item.getAssociations().entrySet()) {
+			String targets = first.getAssociations().get(association.getKey());
+			first.addAssociation(association.getKey(),
+					targets != null ? targets + "," + association.getValue() : association.getValue());
+		}
+		if (item.getKey() != null && !item.getKey().equals(first.getKey())) {
+			if (first.getKey() == null) {
+				first.setKey(item.getKey());
+			} else {
+				keyAliases.put(item.getKey(), first.getKey());
+			}
+		}
+	}
+
+	/**
+	 * Counts the lookups needed to resolve a destination that earlier groups
+	 * haven't already resolved.
+	 */
+	private static int countResolveRoundTrips(AlfrescoItem item, String destination, Set<String> sites,
+			Set<String> resolved) {
+		String itemDestination = item.getDestination() != null ? item.getDestination() : "";
+		if (itemDestination.contains("workspace://")) {
+			return resolved.add(itemDestination) ? 1 : 0;
+		}
+		boolean absolute = itemDestination.startsWith("/");
+		if (!absolute) {
+			sites.add(item.getSiteName());
+		}
+		// One lookup per folder on the path, resolved from the root or the document library
+		String root = absolute ? "" : getDocumentLibraryPath(item.getSiteName());
+		int roundTrips = 0;
+		for (String path = destination; path.length() > root.length(); path = path.substring(0,
+				path.lastIndexOf('/'))) {
+			if (resolved.add((absolute ? "root:" : "site:") + path)) {
+				roundTrips++;
+			}
+		}
+		return roundTrips;
+	}
+
+	private static boolean isKey(String destination, Map<String, String> keyPaths) {
+		return destination != null && keyPaths.containsKey(destination);
+	}
+
+	/**
+	 * Returns true if the item's primary type is a folder type.
+	 */
+	static boolean isFolder(AlfrescoItem item) {
+		String type = item.getType();
+		if (type == null) {
+			return false;
+		}
+		int comma = type.indexOf(',');
+		String primary = (comma >= 0 ? type.substring(0, comma) : type).trim();
+		return "cmis:folder".equals(primary) || primary.startsWith("F:");
+	}
+
+	private static String getDocumentLibraryPath(String siteName) {
+		return "/Sites/" + siteName + "/documentLibrary";
+	}
+
+	/**
+	 * Appends the segments of a slash-separated path to a base path, skipping
+	 * empty and "." segments as FolderResolver does.
+	 */
+	private static String normalize(String base, String path) {
+		StringBuilder normalized = new StringBuilder(base);
+		for (String segment : path.split("/")) {
+			if (segment.length() > 0 && !".".equals(segment)) {
+				normalized.append('/').append(segment.trim());
+			}
+		}
+		return normalized.length() > 0 ? normalized.toString() : "/";
+	}
+
+	/**
+	 * The number of folders below the root (or a NodeRef) on the path.
+	 */
+	private static int depth(String path) {
+		int start = 0;
+		int scheme = path.indexOf("://");
+		if (scheme >= 0) {
+			// workspace://SpacesStore/id, then the path below it
+			int store = path.indexOf('/', scheme + 3);
+			int id = store >= 0 ? path.indexOf('/', store + 1) : -1;
+			start = id >= 0 ? id : path.length();
+		}
+		int depth = 0;
+		for (int i = start; i < path.length(); i++) {
+			if (path.charAt(i) == '/') {
+				depth++;
+			}
+		}
+		return depth;
+	}
+}
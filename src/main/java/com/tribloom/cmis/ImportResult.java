@@ -0,0 +1,69 @@
+package com.tribloom.cmis;
+
+/**
+ * The outcome of importing a single AlfrescoItem.
+ */
+public class ImportResult {
+
+	public enum Status {
+		/** A new node was created */
+		CREATED,
+		/** An existing node was updated (overwrite mode) */
+		UPDATED,
+		/** An existing node was left untouched */
+		SKIPPED,
+		/** The item could not be imported */
+		FAILED
+	}
+
+	private final AlfrescoItem item;
+	private final Status status;
+	private final String nodeRef;
+	private final String message;
+
+	public ImportResult(AlfrescoItem item, Status status, String nodeRef, String message) {
+		this.item = item;
+		this.status = status;
+		this.nodeRef = nodeRef;
+		this.message = message;
+	}
+
+	public static ImportResult created(AlfrescoItem item, String nodeRef) {
+		return new ImportResult(item, Status.CREATED, nodeRef, null);
+	}
+
+	public static ImportResult updated(AlfrescoItem item, String nodeRef) {
+		return new ImportResult(item, Status.UPDATED, nodeRef, null);
+	}
+
+	public static ImportResult skipped(AlfrescoItem item, String nodeRef, String message) {
+		return new ImportResult(item, Status.SKIPPED, nodeRef, message);
+	}
+
+	public static ImportResult failed(AlfrescoItem item, String message) {
+		return new ImportResult(item, Status.FAILED, null, message);
+	}
+
+	public AlfrescoItem getItem() {
+		return item;
+	}
+	public Status getStatus() {
+		return status;
+	}
+	/**
+	 * @return the NodeRef of the created or existing node, or null if there is none
+	 */
+	public String getNodeRef() {
+		return nodeRef;
+	}
+	public String getMessage() {
+		return message;
+	}
+	public boolean isFailed() {
+		return status == Status.FAILED;
+	}
+	public String toString() {
+		return status + (nodeRef != null ? " " + nodeRef : "")
+				+ (message != null ? " (" + message + ")" : "") + ": " + item;
+	}
+}
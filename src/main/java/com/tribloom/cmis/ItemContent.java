@@ -0,0 +1,156 @@
+package com.tribloom.cmis;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * The content of an AlfrescoItem, read lazily so that it never has to be
+ * held on the heap in full.
+ *
+ * Repeatable content (strings and files) can be opened any number of times at
+ * any offset, which lets a failed chunk be re-sent straight from the source.
+ * Stream and channel content can only be read once, front to back.
+ */
+public abstract class ItemContent {
+
+	public static final long UNKNOWN_LENGTH = -1;
+
+	/**
+	 * @return the content length in bytes, or UNKNOWN_LENGTH
+	 */
+	public abstract long getLength();
+
+	/**
+	 * @return true if openStream may be called more than once
+	 */
+	public abstract boolean isRepeatable();
+
+	/**
+	 * Opens the content, skipping the first offset bytes. Content that is not
+	 * repeatable can only be opened once, at offset 0.
+	 *
+	 * @param offset long
+	 * @return InputStream
+	 */
+	public abstract InputStream openStream(long offset) throws IOException;
+
+	/**
+	 * Releases content that won't be read, e.g. because the item was skipped
+	 * or its content is unchanged. A stream or channel that was never opened
+	 * is closed; repeatable content has nothing to release.
+	 */
+	public void discard() throws IOException {
+	}
+
+	/**
+	 * Returns the ItemContent for an AlfrescoItem content value, or null if the
+	 * value is not a supported kind of content. Supported values are ItemContent,
+	 * String, byte[], Path and File.
+	 *
+	 * @param content Object
+	 * @return ItemContent
+	 */
+	public static ItemContent from(Object content) {
+		if (content instanceof ItemContent) {
+			return (ItemContent) content;
+		}
+		if (content instanceof String) {
+			return forBytes(((String) content).getBytes());
+		}
+		if (content instanceof byte[]) {
+			return forBytes((byte[]) content);
+		}
+		if (content instanceof Path) {
+			return forPath((Path) content);
+		}
+		if (content instanceof File) {
+			return forPath(((File) content).toPath());
+		}
+		return null;
+	}
+
+	public static ItemContent forBytes(final byte[] bytes) {
+		return new ItemContent() {
+			public long getLength() {
+				return bytes.length;
+			}
+			public boolean isRepeatable() {
+				return true;
+			}
+			public InputStream openStream(long offset) {
+				int start = (int) Math.min(offset, bytes.length);
+				return new ByteArrayInputStream(bytes, start, bytes.length - start);
+			}
+		};
+	}
+
+	public static ItemContent forPath(final Path path) {
+		return new ItemContent() {
+			public long getLength() {
+				try {
+					return Files.size(path);
+				} catch (IOException ex) {
+					return UNKNOWN_LENGTH;
+				}
+			}
+			public boolean isRepeatable() {
+				return true;
+			}
+			public InputStream openStream(long offset) throws IOException {
+				FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+				channel.position(offset);
+				return Channels.newInputStream(channel);
+			}
+			public String toString() {
+				return path.toString();
+			}
+		};
+	}
+
+	public static ItemContent forStream(InputStream stream, long length) {
+		return new OneShotContent(stream, length);
+	}
+
+	public static ItemContent forChannel(ReadableByteChannel channel, long length) {
+		return new OneShotContent(Channels.newInputStream(channel), length);
+	}
+
+	private static class OneShotContent extends ItemContent {
+		private InputStream stream;
+		private final long length;
+
+		OneShotContent(InputStream stream, long length) {
+			this.stream = stream;
+			this.length = length;
+		}
+		public long getLength() {
+			return length;
+		}
+		public boolean isRepeatable() {
+			return false;
+		}
+		public synchronized InputStream openStream(long offset) throws IOException {
+			if (stream == null || offset != 0) {
+				throw new IOException("Content stream can only be read once");
+			}
+			InputStream result = stream;
+			stream = null;
+			return result;
+		}
+		public synchronized void discard() throws IOException {
+			if (stream != null) {
+				InputStream unread = stream;
+				stream = null;
+				unread.close();
+			}
+		}
+	}
+}
@@ -0,0 +1,156 @@
+package com.tribloom.cmis;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Map;
+
+import org.apache.chemistry.opencmis.commons.impl.json.parser.JSONParseException;
+import org.apache.chemistry.opencmis.commons.impl.json.parser.JSONParser;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Reads items from a JSON manifest: either a top-level array of objects, or
+ * a sequence of objects such as newline-delimited JSON (NDJSON). Each object
+ * is read and parsed on its own, so only one record is held in memory.
+ *
+ * Members are mapped by ManifestMapping. In addition, the members of a nested
+ * "properties" object are mapped as if they were top-level members, and the
+ * members of a nested "associations" object are associations by name:
+ *
+ * {"name": "a.pdf", "content": "files/a.pdf", "properties": {"cm:title": "A"},
+ *  "associations": {"cm:references": "b"}}
+ *
+ * Numbers and booleans are set as strings; arrays and other nested objects
+ * are ignored.
+ */
+public class JsonManifestReader extends ManifestReader {
+
+	// SL4J Logger
+	private static final Logger logger = LoggerFactory.getLogger(JsonManifestReader.class);
+
+	private static final String PROPERTIES = "properties";
+	private static final String ASSOCIATIONS = "associations";
+
+	private final JSONParser parser = new JSONParser();
+	private final StringBuilder record = new StringBuilder();
+	private boolean inArray;
+	private boolean started;
+	private boolean ended;
+	private long line = 1;
+	private long recordLine;
+
+	/**
+	 * @param reader Reader
+	 * @param mapping ManifestMapping, or null for the default mapping
+	 */
+	public JsonManifestReader(Reader reader, ManifestMapping mapping) {
+		super(reader, mapping);
+	}
+
+	protected AlfrescoItem readItem() throws IOException {
+		while (true) {
+			if (!readRecord()) {
+				return null;
+			}
+			long start = recordLine;
+			Object parsed;
+			try {
+				parsed = parser.parse(record.toString());
+			} catch (JSONParseException ex) {
+				logger.error("Skipping manifest record on line " + start + ": " + ex.getMessage());
+				continue;
+			}
+			AlfrescoItem item = new AlfrescoItem();
+			for (Map.Entry<?, ?> member : ((Map<?, ?>) parsed).entrySet()) {
+				applyMember(item, (String) member.getKey(), member.getValue(), start);
+			}
+			return item;
+		}
+	}
+
+	private void applyMember(AlfrescoItem item, String name, Object value, long start) {
+		if (value instanceof Map) {
+			boolean associations = ASSOCIATIONS.equals(name);
+			if (!associations && !PROPERTIES.equals(name)) {
+				logger.warn("Ignoring nested object " + name + " on line " + start);
+				return;
+			}
+			for (Map.Entry<?, ?> member : ((Map<?, ?>) value).entrySet()) {
+				Object memberValue = member.getValue();
+				if (memberValue instanceof Map || memberValue instanceof Iterable) {
+					logger.warn("Ignoring nested value " + member.getKey() + " on line " + start);
+				} else if (memberValue != null && associations) {
+					mapping.applyAssociation(item, (String) member.getKey(), memberValue.toString());
+				} else if (memberValue != null) {
+					apply(item, (String) member.getKey(), memberValue.toString());
+				}
+			}
+		} else if (value instanceof Iterable) {
+			logger.warn("Ignoring array " + name + " on line " + start);
+		} else if (value != null) {
+			apply(item, name, value.toString());
+		}
+	}
+
+	/**
+	 * Reads the text of the next top-level object into record, skipping the
+	 * brackets and commas of an enclosing array.
+	 *
+	 * @return false at the end of input
+	 */
+	private boolean readRecord() throws IOException {
+		record.setLength(0);
+		Reader reader = getReader();
+		int depth = 0;
+		boolean inString = false;
+		boolean escaped = false;
+		while (true) {
+			int c = reader.read();
+			if (c < 0) {
+				if (depth > 0) {
+					logger.error("Incomplete manifest record at end of input, line " + line);
+				}
+				return false;
+			}
+			if (c == '\n') {
+				line++;
+			}
+			if (depth == 0) {
+				if (c == '{') {
+					if (ended) {
+						throw new IOException("Unexpected object after the end of the array, line " + line);
+					}
+					started = true;
+					depth = 1;
+					recordLine = line;
+					record.append((char) c);
+				} else if (c == '[' && !started) {
+					started = true;
+					inArray = true;
+				} else if (c == ']' && inArray && !ended) {
+					ended = true;
+				} else if (!(Character.isWhitespace(c) || c == ',' && inArray) && !(c == '\uFEFF' && !started)) {
+					throw new IOException("Unexpected '" + (char) c + "' in JSON manifest, line " + line);
+				}
+				continue;
+			}
+			record.append((char) c);
+			if (inString) {
+				if (escaped) {
+					escaped = false;
+				} else if (c == '\\') {
+					escaped = true;
+				} else if (c == '"') {
+					inString = false;
+				}
+			} else if (c == '"') {
+				inString = true;
+			} else if (c == '{' || c == '[') {
+				depth++;
+			} else if ((c == '}' || c == ']') && --depth == 0) {
+				return true;
+			}
+		}
+	}
+}
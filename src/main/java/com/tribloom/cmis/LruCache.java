@@ -0,0 +1,179 @@
+package com.tribloom.cmis;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The default Cache: a least-recently-used cache bounded by total entry weight,
+ * with an optional time-to-live.
+ *
+ * Entries are spread over independently locked segments, each holding an equal
+ * share of the maximum weight, so concurrent readers rarely contend. Without a
+ * Weigher every entry weighs 1, which makes the maximum weight a maximum size.
+ * An entry heavier than a segment's share evicts everything else in its
+ * segment, but is kept until it is itself the eldest.
+ */
+public class LruCache<K, V> implements Cache<K, V> {
+
+	/**
+	 * Computes the weight of a cache entry, e.g. its approximate size in bytes.
+	 */
+	public interface Weigher<K, V> {
+		int weigh(K key, V value);
+	}
+
+	private static final int MAX_SEGMENTS = 16;
+	private static final int MIN_SEGMENT_WEIGHT = 64;
+
+	private final Segment[] segments;
+	private final long ttlMillis;
+	private final Weigher<? super K, ? super V> weigher;
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+	private final AtomicLong evictions = new AtomicLong();
+
+	public LruCache(long maxSize) {
+		this(maxSize, 0, null);
+	}
+
+	/**
+	 * @param maxWeight long maximum total weight of all entries
+	 * @param ttlMillis long time after which an entry expires, or 0 for never
+	 * @param weigher Weigher, or null to weigh every entry as 1
+	 */
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	public LruCache(long maxWeight, long ttlMillis, Weigher<? super K, ? super V> weigher) {
+		if (maxWeight < 1) {
+			throw new IllegalArgumentException("Maximum weight must be positive: " + maxWeight);
+		}
+		int segmentCount = (int) Math.max(1, Math.min(MAX_SEGMENTS, maxWeight / MIN_SEGMENT_WEIGHT));
+		long segmentWeight = (maxWeight + segmentCount - 1) / segmentCount;
+		this.segments = new LruCache.Segment[segmentCount];
+		for (int i = 0; i < segmentCount; i++) {
+			segments[i] = new Segment(segmentWeight);
+		}
+		this.ttlMillis = ttlMillis;
+		this.weigher = weigher;
+	}
+
+	public V get(K key) {
+		Segment segment = segmentFor(key);
+		CacheEntry<V> entry;
+		synchronized (segment) {
+			entry = segment.get(key);
+			if (entry != null && entry.isExpired(System.currentTimeMillis())) {
+				segment.removeEntry(key);
+				evictions.incrementAndGet();
+				entry = null;
+			}
+		}
+		if (entry == null) {
+			misses.incrementAndGet();
+			return null;
+		}
+		hits.incrementAndGet();
+		return entry.value;
+	}
+
+	public void put(K key, V value) {
+		if (key == null || value == null) {
+			return;
+		}
+		int weight = weigher != null ? weigher.weigh(key, value) : 1;
+		long expiresAt = ttlMillis > 0 ? System.currentTimeMillis() + ttlMillis : Long.MAX_VALUE;
+		Segment segment = segmentFor(key);
+		synchronized (segment) {
+			segment.putEntry(key, new CacheEntry<V>(value, weight, expiresAt));
+		}
+	}
+
+	public void invalidate(K key) {
+		Segment segment = segmentFor(key);
+		synchronized (segment) {
+			segment.removeEntry(key);
+		}
+	}
+
+	public void invalidateAll() {
+		for (Segment segment : segments) {
+			synchronized (segment) {
+				segment.clear();
+				segment.weight = 0;
+			}
+		}
+	}
+
+	public long size() {
+		long size = 0;
+		for (Segment segment : segments) {
+			synchronized (segment) {
+				size += segment.size();
+			}
+		}
+		return size;
+	}
+
+	public CacheStats getStats() {
+		return new CacheStats(hits.get(), misses.get(), evictions.get());
+	}
+
+	private Segment segmentFor(Object key) {
+		int hash = key.hashCode();
+		hash ^= (hash >>> 16);
+		return segments[(hash & 0x7fffffff) % segments.length];
+	}
+
+	private static class CacheEntry<V> {
+		final V value;
+		final int weight;
+		final long expiresAt;
+
+		CacheEntry(V value, int weight, long expiresAt) {
+			this.value = value;
+			this.weight = weight;
+			this.expiresAt = expiresAt;
+		}
+		boolean isExpired(long now) {
+			return now >= expiresAt;
+		}
+	}
+
+	/**
+	 * An access-ordered map holding a share of the entries. Callers synchronize on it.
+	 */
+	@SuppressWarnings("serial")
+	private class Segment extends LinkedHashMap<K, CacheEntry<V>> {
+		final long maxWeight;
+		long weight;
+
+		Segment(long maxWeight) {
+			super(16, 0.75f, true);
+			this.maxWeight = maxWeight;
+		}
+
+		void putEntry(K key, CacheEntry<V> entry) {
+			CacheEntry<V> previous = put(key, entry);
+			if (previous != null) {
+				weight -= previous.weight;
+			}
+			weight += entry.weight;
+			Iterator<Map.Entry<K, CacheEntry<V>>> eldest = entrySet().iterator();
+			// Keep the entry just put, even if it alone outweighs the segment
+			while (weight > maxWeight && size() > 1) {
+				Map.Entry<K, CacheEntry<V>> evicted = eldest.next();
+				weight -= evicted.getValue().weight;
+				eldest.remove();
+				evictions.incrementAndGet();
+			}
+		}
+
+		void removeEntry(Object key) {
+			CacheEntry<V> removed = remove(key);
+			if (removed != null) {
+				weight -= removed.weight;
+			}
+		}
+	}
+}
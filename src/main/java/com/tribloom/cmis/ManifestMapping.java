@@ -0,0 +1,178 @@
+package com.tribloom.cmis;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Maps the fields (CSV columns or JSON members) of a manifest record onto an
+ * AlfrescoItem.
+ *
+ * By default, the fields "name", "type", "destination", "site", "content",
+ * "mimetype" and "key" set the corresponding item attributes; fields starting
+ * with "assoc:" are associations ("assoc:cm:references" creates a
+ * cm:references association to the NodeRef or key in the field), and every
+ * other field is a property with the field's name (e.g. "cm:title"). Empty
+ * values are ignored.
+ *
+ * Content paths are resolved against the manifest's directory when the
+ * manifest is opened from a file.
+ */
+public class ManifestMapping {
+
+	/**
+	 * Item attributes a field can set.
+	 */
+	public enum Role {
+		NAME, TYPE, DESTINATION, SITE, CONTENT, MIMETYPE, KEY
+	}
+
+	private final Map<String, Role> roles = new HashMap<String, Role>();
+	private final Map<String, String> propertyIds = new HashMap<String, String>();
+	private final Map<String, String> associationNames = new HashMap<String, String>();
+	private final Set<String> ignored = new HashSet<String>();
+	private String associationPrefix = "assoc:";
+
+	public ManifestMapping() {
+		for (Role role : Role.values()) {
+			roles.put(role.name().toLowerCase(Locale.ENGLISH), role);
+		}
+	}
+
+	/**
+	 * Uses the given field to set an item attribute, e.g. mapField("filename", Role.NAME).
+	 *
+	 * @param field String
+	 * @param role Role
+	 */
+	public void mapField(String field, Role role) {
+		clear(field);
+		roles.put(field, role);
+	}
+
+	/**
+	 * Uses the given field to set a property, e.g. mapProperty("title", "cm:title").
+	 *
+	 * @param field String
+	 * @param propertyId String
+	 */
+	public void mapProperty(String field, String propertyId) {
+		clear(field);
+		propertyIds.put(field, propertyId);
+	}
+
+	/**
+	 * Uses the given field as the target (a NodeRef or key) of an association.
+	 *
+	 * @param field String
+	 * @param associationName String e.g. "cm:references"
+	 */
+	public void mapAssociation(String field, String associationName) {
+		clear(field);
+		associationNames.put(field, associationName);
+	}
+
+	/**
+	 * Ignores the given field.
+	 *
+	 * @param field String
+	 */
+	public void ignoreField(String field) {
+		clear(field);
+		ignored.add(field);
+	}
+
+	/**
+	 * Sets the prefix of fields that are associations, or null for none.
+	 *
+	 * @param prefix String
+	 */
+	public void setAssociationPrefix(String prefix) {
+		associationPrefix = prefix;
+	}
+
+	public String getAssociationPrefix() {
+		return associationPrefix;
+	}
+
+	/**
+	 * Sets the item attribute, property or association for a field.
+	 *
+	 * @param item AlfrescoItem
+	 * @param field String
+	 * @param value String
+	 * @param contentBase Path directory that relative content paths are resolved against, or null
+	 */
+	void apply(AlfrescoItem item, String field, String value, Path contentBase) {
+		if (field == null || value == null || ignored.contains(field)) {
+			return;
+		}
+		value = value.trim();
+		if (value.length() == 0) {
+			return;
+		}
+		Role role = roles.get(field);
+		if (role != null) {
+			applyRole(item, role, value, contentBase);
+		} else if (associationNames.containsKey(field)) {
+			item.addAssociation(associationNames.get(field), value);
+		} else if (propertyIds.containsKey(field)) {
+			item.addProperty(propertyIds.get(field), value);
+		} else if (associationPrefix != null && field.startsWith(associationPrefix)
+				&& field.length() > associationPrefix.length()) {
+			item.addAssociation(field.substring(associationPrefix.length()), value);
+		} else {
+			item.addProperty(field, value);
+		}
+	}
+
+	/**
+	 * Adds an association given by name rather than by field.
+	 */
+	void applyAssociation(AlfrescoItem item, String associationName, String value) {
+		if (associationName == null || value == null) {
+			return;
+		}
+		value = value.trim();
+		if (value.length() > 0) {
+			item.addAssociation(associationName, value);
+		}
+	}
+
+	private static void applyRole(AlfrescoItem item, Role role, String value, Path contentBase) {
+		switch (role) {
+		case NAME:
+			item.setName(value);
+			break;
+		case TYPE:
+			item.setType(value);
+			break;
+		case DESTINATION:
+			item.setDestination(value);
+			break;
+		case SITE:
+			item.setSiteName(value);
+			break;
+		case CONTENT:
+			item.setContent(contentBase != null ? contentBase.resolve(value) : Paths.get(value));
+			break;
+		case MIMETYPE:
+			item.setMimetype(value);
+			break;
+		case KEY:
+			item.setKey(value);
+			break;
+		}
+	}
+
+	private void clear(String field) {
+		roles.remove(field);
+		propertyIds.remove(field);
+		associationNames.remove(field);
+		ignored.remove(field);
+	}
+}
@@ -0,0 +1,167 @@
+package com.tribloom.cmis;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.NoSuchElementException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Reads AlfrescoItems from a manifest one record at a time, so a manifest of
+ * any size can be imported without holding it in memory.
+ *
+ * A reader is both the Iterator and (single-use) Iterable of its items, and
+ * can be passed straight to importItems: BulkImporter pulls items only as
+ * workers become free, so the manifest is read no faster than it is imported.
+ * The reader closes itself when the last item has been read; close it
+ * explicitly when stopping early.
+ *
+ * Records that can't be parsed are logged and skipped. An I/O error while
+ * reading ends the iteration with an IllegalStateException.
+ *
+ * @see CsvManifestReader
+ * @see JsonManifestReader
+ */
+public abstract class ManifestReader implements Iterator<AlfrescoItem>, Iterable<AlfrescoItem>, Closeable {
+
+	// SL4J Logger
+	private static final Logger logger = LoggerFactory.getLogger(ManifestReader.class);
+
+	static final Charset UTF8 = Charset.forName("UTF-8");
+
+	protected final ManifestMapping mapping;
+	private final Reader reader;
+	private Path contentBase;
+	private AlfrescoItem next;
+	private boolean finished;
+	private long count;
+
+	protected ManifestReader(Reader reader, ManifestMapping mapping) {
+		this.reader = reader instanceof BufferedReader ? reader : new BufferedReader(reader, 1 << 16);
+		this.mapping = mapping != null ? mapping : new ManifestMapping();
+	}
+
+	/**
+	 * Opens a UTF-8 manifest, choosing the format by file extension: ".csv" for
+	 * CSV, ".tsv" for tab-separated values, and ".json", ".ndjson" or ".jsonl"
+	 * for JSON. Relative content paths are resolved against the manifest's
+	 * directory.
+	 *
+	 * @param file Path
+	 * @param mapping ManifestMapping, or null for the default mapping
+	 * @return ManifestReader
+	 */
+	public static ManifestReader open(Path file, ManifestMapping mapping) throws IOException {
+		String name = file.getFileName().toString().toLowerCase(Locale.ENGLISH);
+		Reader reader = new BufferedReader(new InputStreamReader(Files.newInputStream(file), UTF8), 1 << 16);
+		ManifestReader manifest;
+		if (name.endsWith(".csv")) {
+			manifest = new CsvManifestReader(reader, mapping);
+		} else if (name.endsWith(".tsv")) {
+			manifest = new CsvManifestReader(reader, mapping, '\t');
+		} else if (name.endsWith(".json") || name.endsWith(".ndjson") || name.endsWith(".jsonl")) {
+			manifest = new JsonManifestReader(reader, mapping);
+		} else {
+			reader.close();
+			throw new IllegalArgumentException("Unknown manifest format: " + file);
+		}
+		Path directory = file.toAbsolutePath().getParent();
+		manifest.setContentBase(directory);
+		return manifest;
+	}
+
+	/**
+	 * Sets the directory that relative content paths are resolved against; by
+	 * default they are resolved against the working directory.
+	 *
+	 * @param contentBase Path
+	 */
+	public void setContentBase(Path contentBase) {
+		this.contentBase = contentBase;
+	}
+
+	public Path getContentBase() {
+		return contentBase;
+	}
+
+	/**
+	 * @return the number of items read so far
+	 */
+	public long getCount() {
+		return count;
+	}
+
+	public Iterator<AlfrescoItem> iterator() {
+		return this;
+	}
+
+	public boolean hasNext() {
+		if (next == null && !finished) {
+			try {
+				next = readItem();
+			} catch (IOException ex) {
+				finish();
+				throw new IllegalStateException("Unable to read manifest after " + count + " items", ex);
+			}
+			if (next == null) {
+				finish();
+			}
+		}
+		return next != null;
+	}
+
+	public AlfrescoItem next() {
+		if (!hasNext()) {
+			throw new NoSuchElementException();
+		}
+		AlfrescoItem item = next;
+		next = null;
+		count++;
+		return item;
+	}
+
+	public void remove() {
+		throw new UnsupportedOperationException();
+	}
+
+	public void close() throws IOException {
+		finished = true;
+		next = null;
+		reader.close();
+	}
+
+	/**
+	 * Reads the next item, skipping records that can't be parsed.
+	 *
+	 * @return AlfrescoItem, or null at the end of the manifest
+	 */
+	protected abstract AlfrescoItem readItem() throws IOException;
+
+	protected Reader getReader() {
+		return reader;
+	}
+
+	/**
+	 * Sets one field of an item being read.
+	 */
+	protected void apply(AlfrescoItem item, String field, String value) {
+		mapping.apply(item, field, value, contentBase);
+	}
+
+	private void finish() {
+		try {
+			close();
+		} catch (IOException ex) {
+			logger.warn("Unable to close manifest", ex);
+		}
+	}
+}
@@ -0,0 +1,145 @@
+package com.tribloom.cmis;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+
+import org.apache.chemistry.opencmis.commons.PropertyIds;
+import org.apache.chemistry.opencmis.commons.impl.json.JSONObject;
+
+/**
+ * Writes AlfrescoItems to a newline-delimited JSON manifest, one record per
+ * line, in the form JsonManifestReader reads with the default mapping:
+ *
+ * {"key": "...", "name": "a.pdf", "type": "D:cm:content,P:cm:titled",
+ *  "site": "swsdp", "destination": "Reports/2014", "content": "files/a.pdf",
+ *  "mimetype": "application/pdf", "properties": {"cm:title": "A"}}
+ *
+ * Content that is a local file is written as a path relative to the content
+ * base (by default the manifest's directory), so the manifest and its files
+ * can be moved together. Other content is not written. Writing is
+ * thread-safe; each record is written whole.
+ */
+public class ManifestWriter implements Closeable, Flushable {
+
+	private final Writer writer;
+	private Path contentBase;
+	private long count;
+
+	/**
+	 * @param writer Writer
+	 */
+	public ManifestWriter(Writer writer) {
+		this.writer = writer instanceof BufferedWriter ? writer : new BufferedWriter(writer, 1 << 16);
+	}
+
+	/**
+	 * Creates (or replaces) a UTF-8 manifest whose content paths are relative
+	 * to its directory.
+	 *
+	 * @param file Path
+	 * @return ManifestWriter
+	 */
+	public static ManifestWriter open(Path file) throws IOException {
+		ManifestWriter manifest = new ManifestWriter(new OutputStreamWriter(Files.newOutputStream(file),
+				ManifestReader.UTF8));
+		manifest.setContentBase(file.toAbsolutePath().getParent());
+		return manifest;
+	}
+
+	/**
+	 * Sets the directory that content paths are written relative to; by
+	 * default they are written as they are.
+	 *
+	 * @param contentBase Path
+	 */
+	public void setContentBase(Path contentBase) {
+		this.contentBase = contentBase != null ? contentBase.toAbsolutePath() : null;
+	}
+
+	public Path getContentBase() {
+		return contentBase;
+	}
+
+	/**
+	 * @return the number of items written so far
+	 */
+	public synchronized long getCount() {
+		return count;
+	}
+
+	/**
+	 * Writes one item as a record.
+	 *
+	 * @param item AlfrescoItem
+	 */
+	public void write(AlfrescoItem item) throws IOException {
+		String record = toRecord(item).toJSONString();
+		synchronized (this) {
+			writer.write(record);
+			writer.write('\n');
+			count++;
+		}
+	}
+
+	public synchronized void flush() throws IOException {
+		writer.flush();
+	}
+
+	public synchronized void close() throws IOException {
+		writer.close();
+	}
+
+	private JSONObject toRecord(AlfrescoItem item) {
+		JSONObject record = new JSONObject();
+		putIfSet(record, "key", item.getKey());
+		putIfSet(record, "name", item.getName());
+		putIfSet(record, "type", item.getType());
+		putIfSet(record, "site", item.getSiteName());
+		putIfSet(record, "destination", item.getDestination());
+		if (item.getContent() instanceof Path) {
+			putIfSet(record, "content", toContentPath((Path) item.getContent()));
+		}
+		putIfSet(record, "mimetype", item.getMimetype());
+		JSONObject properties = new JSONObject();
+		for (Map.Entry<String, String> property : item.getProperties().entrySet()) {
+			String id = property.getKey();
+			if (!PropertyIds.NAME.equals(id) && !PropertyIds.OBJECT_TYPE_ID.equals(id)
+					&& property.getValue() != null) {
+				properties.put(id, property.getValue());
+			}
+		}
+		if (!properties.isEmpty()) {
+			record.put("properties", properties);
+		}
+		if (!item.getAssociations().isEmpty()) {
+			JSONObject associations = new JSONObject();
+			associations.putAll(item.getAssociations());
+			record.put("associations", associations);
+		}
+		return record;
+	}
+
+	private String toContentPath(Path content) {
+		Path path = content;
+		if (contentBase != null) {
+			Path absolute = content.toAbsolutePath();
+			if (absolute.startsWith(contentBase)) {
+				path = contentBase.relativize(absolute);
+			}
+		}
+		return path.toString().replace(path.getFileSystem().getSeparator(), "/");
+	}
+
+	private static void putIfSet(JSONObject record, String field, String value) {
+		if (value != null && value.length() > 0) {
+			record.put(field, value);
+		}
+	}
+}
@@ -0,0 +1,21 @@
+package com.tribloom.cmis;
+
+/**
+ * Receives every measurement taken by ImportMetrics, e.g. to forward them to a
+ * metrics system. Listeners are called on the thread that made the call, so
+ * they should be quick and must be thread-safe.
+ */
+public interface MetricsListener {
+
+	/**
+	 * @param operation Operation
+	 * @param nanos long time the call took
+	 * @param success boolean false if the call threw an exception
+	 */
+	void operationCompleted(Operation operation, long nanos, boolean success);
+
+	/**
+	 * @param bytes long content bytes sent to the server
+	 */
+	void bytesUploaded(long bytes);
+}
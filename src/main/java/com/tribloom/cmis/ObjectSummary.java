@@ -0,0 +1,47 @@
+package com.tribloom.cmis;
+
+import org.apache.chemistry.opencmis.client.api.CmisObject;
+import org.apache.chemistry.opencmis.commons.enums.BaseTypeId;
+
+/**
+ * The ID, type and name of an imported object. This is what CmisUtils keeps
+ * for imported objects instead of the full CmisObject, which is fetched again
+ * (usually from the session's own object cache) only when it is needed.
+ */
+public class ObjectSummary {
+
+	private final String id;
+	private final String typeId;
+	private final BaseTypeId baseTypeId;
+	private final String name;
+
+	public ObjectSummary(String id, String typeId, BaseTypeId baseTypeId, String name) {
+		this.id = id;
+		this.typeId = typeId;
+		this.baseTypeId = baseTypeId;
+		this.name = name;
+	}
+
+	public static ObjectSummary of(CmisObject obj) {
+		return new ObjectSummary(obj.getId(), obj.getType().getId(), obj.getBaseTypeId(), obj.getName());
+	}
+
+	public String getId() {
+		return id;
+	}
+	public String getTypeId() {
+		return typeId;
+	}
+	public BaseTypeId getBaseTypeId() {
+		return baseTypeId;
+	}
+	public String getName() {
+		return name;
+	}
+	public boolean isFolder() {
+		return baseTypeId == BaseTypeId.CMIS_FOLDER;
+	}
+	public String toString() {
+		return name + " (" + id + ", " + typeId + ")";
+	}
+}
@@ -0,0 +1,54 @@
+package com.tribloom.cmis;
+
+/**
+ * The remote operations measured by ImportMetrics.
+ */
+public enum Operation {
+	QUERY("query", true, false),
+	GET_OBJECT("getObject", true, false),
+	GET_CHILDREN("getChildren", true, false),
+	GET_RELATIONSHIPS("getRelationships", true, false),
+	GET_CONTENT_STREAM("getContentStream", true, false),
+	GET_CONTENT_CHANGES("getContentChanges", true, false),
+	CREATE_DOCUMENT("createDocument", false, true),
+	CREATE_ITEM("createItem", false, false),
+	CREATE_FOLDER("createFolder", false, false),
+	UPDATE_PROPERTIES("updateProperties", true, false),
+	SET_CONTENT_STREAM("setContentStream", false, true),
+	APPEND_CONTENT_STREAM("appendContentStream", false, true),
+	DELETE_OBJECT("deleteObject", true, false),
+	CREATE_RELATIONSHIP("createRelationship", false, false);
+
+	private final String operationName;
+	private final boolean idempotent;
+	private final boolean sendsContent;
+
+	private Operation(String operationName, boolean idempotent, boolean sendsContent) {
+		this.operationName = operationName;
+		this.idempotent = idempotent;
+		this.sendsContent = sendsContent;
+	}
+
+	/**
+	 * @return the name of the CMIS operation, e.g. "createDocument"
+	 */
+	public String getOperationName() {
+		return operationName;
+	}
+
+	/**
+	 * @return true if the call can safely be repeated after a failure whose
+	 * outcome is unknown
+	 */
+	public boolean isIdempotent() {
+		return idempotent;
+	}
+
+	/**
+	 * @return true if the call sends content, so its latency depends on the
+	 * content length rather than only on the server's load
+	 */
+	public boolean isSendingContent() {
+		return sendsContent;
+	}
+}
@@ -0,0 +1,52 @@
+package com.tribloom.cmis;
+
+import org.apache.chemistry.opencmis.client.api.OperationContext;
+import org.apache.chemistry.opencmis.client.api.Session;
+import org.apache.chemistry.opencmis.commons.PropertyIds;
+import org.apache.chemistry.opencmis.commons.enums.IncludeRelationships;
+
+/**
+ * OperationContexts that fetch only what a lookup needs.
+ *
+ * The session's default context asks for every property, the allowable actions
+ * and policies of each object; lookups that only need an ID or a name can use
+ * a minimal context instead, which keeps response payloads small.
+ */
+final class OperationContexts {
+
+	// Properties needed to use a Folder as a parent or destination
+	static final String[] FOLDER_PROPERTIES = { PropertyIds.OBJECT_ID, PropertyIds.OBJECT_TYPE_ID,
+			PropertyIds.BASE_TYPE_ID, PropertyIds.NAME, PropertyIds.PATH, PropertyIds.PARENT_ID };
+
+	private OperationContexts() {
+	}
+
+	/**
+	 * Builds a context that fetches only the given properties, without ACLs,
+	 * allowable actions, policies, relationships, renditions or path segments.
+	 *
+	 * @param session Session
+	 * @param pageSize int items per page for lists and queries
+	 * @param propertyIds String... properties to fetch
+	 * @return OperationContext
+	 */
+	static OperationContext minimal(Session session, int pageSize, String... propertyIds) {
+		StringBuilder filter = new StringBuilder();
+		for (String propertyId : propertyIds) {
+			if (filter.length() > 0) {
+				filter.append(',');
+			}
+			filter.append(propertyId);
+		}
+		OperationContext context = session.createOperationContext();
+		context.setFilterString(filter.toString());
+		context.setIncludeAcls(false);
+		context.setIncludeAllowableActions(false);
+		context.setIncludePolicies(false);
+		context.setIncludeRelationships(IncludeRelationships.NONE);
+		context.setRenditionFilterString("cmis:none");
+		context.setIncludePathSegments(false);
+		context.setMaxItemsPerPage(pageSize);
+		return context;
+	}
+}
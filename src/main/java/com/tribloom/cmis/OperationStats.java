@@ -0,0 +1,57 @@
+package com.tribloom.cmis;
+
+/**
+ * A snapshot of the calls made for one Operation. Latencies are in microseconds
+ * and include calls that failed.
+ */
+public class OperationStats {
+
+	private final Operation operation;
+	private final long count;
+	private final long errorCount;
+	private final long meanMicros;
+	private final long p50Micros;
+	private final long p99Micros;
+	private final long maxMicros;
+
+	public OperationStats(Operation operation, long count, long errorCount, long meanMicros, 
+			long p50Micros, long p99Micros, long maxMicros) {
+		this.operation = operation;
+		this.count = count;
+		this.errorCount = errorCount;
+		this.meanMicros = meanMicros;
+		this.p50Micros = p50Micros;
+		this.p99Micros = p99Micros;
+		this.maxMicros = maxMicros;
+	}
+
+	public Operation getOperation() {
+		return operation;
+	}
+	public long getCount() {
+		return count;
+	}
+	/**
+	 * @return the number of calls that threw an exception
+	 */
+	public long getErrorCount() {
+		return errorCount;
+	}
+	public long getMeanMicros() {
+		return meanMicros;
+	}
+	public long getP50Micros() {
+		return p50Micros;
+	}
+	public long getP99Micros() {
+		return p99Micros;
+	}
+	public long getMaxMicros() {
+		return maxMicros;
+	}
+	public String toString() {
+		return operation.getOperationName() + ": count=" + count + ", errors=" + errorCount 
+				+ ", mean=" + meanMicros + "us, p50=" + p50Micros + "us, p99=" + p99Micros 
+				+ "us, max=" + maxMicros + "us";
+	}
+}
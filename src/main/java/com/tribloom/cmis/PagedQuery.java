@@ -0,0 +1,410 @@
+package com.tribloom.cmis;
+
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import org.apache.chemistry.opencmis.client.api.CmisObject;
+import org.apache.chemistry.opencmis.client.api.ItemIterable;
+import org.apache.chemistry.opencmis.client.api.ObjectId;
+import org.apache.chemistry.opencmis.client.api.OperationContext;
+import org.apache.chemistry.opencmis.client.api.QueryResult;
+import org.apache.chemistry.opencmis.client.api.QueryStatement;
+import org.apache.chemistry.opencmis.client.api.Session;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A CMIS query whose parameters are bound rather than concatenated, and whose
+ * results are read a page at a time.
+ *
+ * Parameters are marked with ? and set with the typed setters, which quote
+ * and escape them (see QueryStatement); IDs, site names and property values
+ * can't break out of their literals. Each page is fetched with its own
+ * guarded call, and while the caller works through one page the next is
+ * fetched in the background, so a large result set is read at the speed of
+ * the network rather than one request and response after another. A page
+ * whose fetch hasn't started by the time it is needed is fetched by the
+ * reading thread, so prefetching can't wait on a busy executor.
+ *
+ * A query can be iterated more than once; each iteration runs it again.
+ * Iterators and streams are not thread-safe.
+ *
+ * @param <T> QueryResult for a statement, CmisObject for an object query
+ */
+public abstract class PagedQuery<T> implements Iterable<T> {
+
+	// SL4J Logger
+	private static final Logger logger = LoggerFactory.getLogger(PagedQuery.class);
+
+	private static final int DEFAULT_PAGE_SIZE = 100;
+
+	final Session session;
+	final QueryStatement statement;
+	private final CallGuard guard;
+	private final Executor prefetchExecutor;
+	private OperationContext context;
+	private int pageSize;
+	private long maxItems = Long.MAX_VALUE;
+	private boolean searchAllVersions;
+	private boolean prefetch = true;
+
+	PagedQuery(Session session, CallGuard guard, Executor prefetchExecutor, String statement) {
+		this.session = session;
+		this.guard = guard;
+		this.prefetchExecutor = prefetchExecutor;
+		this.statement = session.createQueryStatement(statement);
+	}
+
+	/**
+	 * Creates a query for a full CMIS-QL statement, e.g.
+	 * "SELECT cmis:objectId FROM cmis:document WHERE cmis:name = ? AND IN_FOLDER(?)".
+	 */
+	static PagedQuery<QueryResult> forStatement(Session session, CallGuard guard, Executor prefetchExecutor,
+			String statement) {
+		return new PagedQuery<QueryResult>(session, guard, prefetchExecutor, statement) {
+			ItemIterable<QueryResult> execute(boolean searchAllVersions, OperationContext context) {
+				return this.statement.query(searchAllVersions, context);
+			}
+		};
+	}
+
+	/**
+	 * Creates a query for the objects of a type matching a WHERE clause; the
+	 * properties selected are those of the OperationContext's filter.
+	 */
+	static PagedQuery<CmisObject> forObjects(Session session, CallGuard guard, Executor prefetchExecutor,
+			final String typeId, String where) {
+		return new PagedQuery<CmisObject>(session, guard, prefetchExecutor, where) {
+			ItemIterable<CmisObject> execute(boolean searchAllVersions, OperationContext context) {
+				return this.session.queryObjects(typeId, this.statement.toQueryString(), searchAllVersions, context);
+			}
+		};
+	}
+
+	abstract ItemIterable<T> execute(boolean searchAllVersions, OperationContext context);
+
+	/**
+	 * Encodes a name for use as a local name in an Alfresco PATH, as ISO 9075
+	 * requires: characters that may not appear in an XML name become _xHHHH_.
+	 * For example "2014 reports" becomes "_x0032_014_x0020_reports".
+	 *
+	 * @param name String
+	 * @return String
+	 */
+	public static String encodePathName(String name) {
+		StringBuilder encoded = new StringBuilder(name.length() + 16);
+		for (int i = 0; i < name.length(); i++) {
+			char c = name.charAt(i);
+			boolean valid = i == 0 ? Character.isLetter(c) || c == '_'
+					: Character.isLetterOrDigit(c) || c == '_' || c == '-' || c == '.';
+			// An underscore that starts something looking like an escape is escaped too
+			if (valid && !(c == '_' && isEscape(name, i))) {
+				encoded.append(c);
+			} else {
+				String hex = Integer.toHexString(c).toUpperCase();
+				encoded.append("_x");
+				for (int pad = hex.length(); pad < 4; pad++) {
+					encoded.append('0');
+				}
+				encoded.append(hex).append('_');
+			}
+		}
+		return encoded.toString();
+	}
+
+	private static boolean isEscape(String name, int start) {
+		if (start + 7 > name.length() || name.charAt(start + 1) != 'x' || name.charAt(start + 6) != '_') {
+			return false;
+		}
+		for (int i = start + 2; i < start + 6; i++) {
+			if (Character.digit(name.charAt(i), 16) < 0) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	public PagedQuery<T> setString(int parameterIndex, String... values) {
+		statement.setString(parameterIndex, values);
+		return this;
+	}
+
+	/**
+	 * Sets a value for LIKE, escaping % and _ so they match themselves.
+	 */
+	public PagedQuery<T> setStringLike(int parameterIndex, String value) {
+		statement.setStringLike(parameterIndex, value);
+		return this;
+	}
+
+	/**
+	 * Sets a search term for CONTAINS, escaping the full text search syntax.
+	 */
+	public PagedQuery<T> setStringContains(int parameterIndex, String value) {
+		statement.setStringContains(parameterIndex, value);
+		return this;
+	}
+
+	public PagedQuery<T> setId(int parameterIndex, ObjectId... ids) {
+		statement.setId(parameterIndex, ids);
+		return this;
+	}
+
+	public PagedQuery<T> setNumber(int parameterIndex, Number... values) {
+		statement.setNumber(parameterIndex, values);
+		return this;
+	}
+
+	public PagedQuery<T> setBoolean(int parameterIndex, boolean... values) {
+		statement.setBoolean(parameterIndex, values);
+		return this;
+	}
+
+	public PagedQuery<T> setDateTime(int parameterIndex, Calendar... values) {
+		statement.setDateTime(parameterIndex, values);
+		return this;
+	}
+
+	/**
+	 * Sets a type, by ID, as its query name (for FROM).
+	 */
+	public PagedQuery<T> setType(int parameterIndex, String typeId) {
+		statement.setType(parameterIndex, typeId);
+		return this;
+	}
+
+	/**
+	 * Sets a property of a type, by ID, as its query name.
+	 */
+	public PagedQuery<T> setProperty(int parameterIndex, String typeId, String propertyId) {
+		statement.setProperty(parameterIndex, typeId, propertyId);
+		return this;
+	}
+
+	/**
+	 * Sets the OperationContext of the results: the properties selected by an
+	 * object query, and whether allowable actions, ACLs and so on are
+	 * included. Its page size is used unless setPageSize is called.
+	 *
+	 * @param context OperationContext
+	 */
+	public PagedQuery<T> setOperationContext(OperationContext context) {
+		this.context = context;
+		return this;
+	}
+
+	/**
+	 * @param pageSize int results fetched per call (default 100)
+	 */
+	public PagedQuery<T> setPageSize(int pageSize) {
+		if (pageSize < 1) {
+			throw new IllegalArgumentException("Page size must be at least 1: " + pageSize);
+		}
+		this.pageSize = pageSize;
+		return this;
+	}
+
+	/**
+	 * @param maxItems long stop after this many results
+	 */
+	public PagedQuery<T> setMaxItems(long maxItems) {
+		this.maxItems = maxItems;
+		return this;
+	}
+
+	public PagedQuery<T> setSearchAllVersions(boolean searchAllVersions) {
+		this.searchAllVersions = searchAllVersions;
+		return this;
+	}
+
+	/**
+	 * @param prefetch boolean fetch the next page while the current one is read (default true)
+	 */
+	public PagedQuery<T> setPrefetch(boolean prefetch) {
+		this.prefetch = prefetch;
+		return this;
+	}
+
+	/**
+	 * @return the statement with its parameters bound, as sent to the repository
+	 */
+	public String toQueryString() {
+		return statement.toQueryString();
+	}
+
+	/**
+	 * Runs the query. Closing the iterator before the end drops a prefetched
+	 * page; it doesn't have to be closed after reading to the end.
+	 */
+	public Results iterator() {
+		OperationContext queryContext = context;
+		if (queryContext == null) {
+			queryContext = session.createOperationContext();
+			queryContext.setMaxItemsPerPage(pageSize > 0 ? pageSize : DEFAULT_PAGE_SIZE);
+		}
+		int size = pageSize > 0 ? pageSize
+				: queryContext.getMaxItemsPerPage() > 0 ? queryContext.getMaxItemsPerPage() : DEFAULT_PAGE_SIZE;
+		logger.debug("Query : " + toQueryString());
+		return new Results(execute(searchAllVersions, queryContext), size);
+	}
+
+	/**
+	 * Runs the query, as a sequential stream whose close drops a prefetched page.
+	 */
+	public Stream<T> stream() {
+		final Results results = iterator();
+		return StreamSupport.stream(Spliterators.spliteratorUnknownSize(results,
+				Spliterator.ORDERED | Spliterator.NONNULL), false).onClose(new Runnable() {
+					public void run() {
+						results.close();
+					}
+				});
+	}
+
+	/**
+	 * Reads all results (up to the maximum) into a list.
+	 */
+	public List<T> toList() {
+		List<T> list = new ArrayList<T>();
+		for (T result : this) {
+			list.add(result);
+		}
+		return list;
+	}
+
+	/**
+	 * The results of one run of the query.
+	 */
+	public final class Results implements Iterator<T>, AutoCloseable {
+		private final ItemIterable<T> results;
+		private final int pageSize;
+		private List<T> page;
+		private int index;
+		private long skipCount;
+		private boolean hasMore = true;
+		private FutureTask<Page<T>> next;
+
+		Results(ItemIterable<T> results, int pageSize) {
+			this.results = results;
+			this.pageSize = pageSize;
+		}
+
+		public boolean hasNext() {
+			while (page == null || index >= page.size()) {
+				if (!hasMore) {
+					return false;
+				}
+				nextPage();
+			}
+			return true;
+		}
+
+		public T next() {
+			if (!hasNext()) {
+				throw new NoSuchElementException();
+			}
+			return page.get(index++);
+		}
+
+		public void remove() {
+			throw new UnsupportedOperationException();
+		}
+
+		/**
+		 * Stops reading, dropping the prefetched page.
+		 */
+		public void close() {
+			hasMore = false;
+			page = null;
+			if (next != null) {
+				next.cancel(false);
+				next = null;
+			}
+		}
+
+		private void nextPage() {
+			Page<T> fetched = next != null ? await(next) : fetch(skipCount);
+			next = null;
+			page = fetched.items;
+			index = 0;
+			skipCount += page.size();
+			hasMore = fetched.hasMore && !page.isEmpty() && skipCount < maxItems;
+			if (hasMore && prefetch && prefetchExecutor != null) {
+				final long nextSkipCount = skipCount;
+				next = new FutureTask<Page<T>>(new Callable<Page<T>>() {
+					public Page<T> call() {
+						return fetch(nextSkipCount);
+					}
+				});
+				try {
+					prefetchExecutor.execute(next);
+				} catch (RejectedExecutionException ex) {
+					// Fetched when needed instead
+				}
+			}
+		}
+
+		private Page<T> fetch(final long skipCount) {
+			final int maxNumItems = (int) Math.min(pageSize, maxItems - skipCount);
+			return guard.execute(Operation.QUERY, new CallGuard.Call<Page<T>>() {
+				public Page<T> call() {
+					ItemIterable<T> fetched = results.skipTo(skipCount).getPage(maxNumItems);
+					List<T> items = new ArrayList<T>(maxNumItems);
+					for (T item : fetched) {
+						items.add(item);
+					}
+					return new Page<T>(items, fetched.getHasMoreItems());
+				}
+			});
+		}
+	}
+
+	/**
+	 * Waits for a prefetched page, fetching it on this thread if it hasn't
+	 * started yet.
+	 */
+	private static <T> Page<T> await(FutureTask<Page<T>> task) {
+		task.run();
+		boolean interrupted = false;
+		try {
+			while (true) {
+				try {
+					return task.get();
+				} catch (InterruptedException ex) {
+					interrupted = true;
+				} catch (ExecutionException ex) {
+					if (ex.getCause() instanceof RuntimeException) {
+						throw (RuntimeException) ex.getCause();
+					}
+					throw new IllegalStateException(ex.getCause());
+				}
+			}
+		} finally {
+			if (interrupted) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	private static class Page<T> {
+		final List<T> items;
+		final boolean hasMore;
+
+		Page(List<T> items, boolean hasMore) {
+			this.items = items;
+			this.hasMore = hasMore;
+		}
+	}
+}
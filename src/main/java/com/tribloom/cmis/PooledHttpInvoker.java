@@ -0,0 +1,36 @@
+package com.tribloom.cmis;
+
+import org.apache.chemistry.opencmis.client.bindings.spi.BindingSession;
+import org.apache.chemistry.opencmis.client.bindings.spi.http.ApacheClientHttpInvoker;
+import org.apache.chemistry.opencmis.commons.impl.UrlBuilder;
+import org.apache.http.conn.ClientConnectionManager;
+import org.apache.http.impl.client.DefaultHttpClient;
+import org.apache.http.impl.conn.PoolingClientConnectionManager;
+
+/**
+ * OpenCMIS's Apache HttpClient invoker, with a connection pool sized by the
+ * session rather than by the JVM wide "http.maxConnections" property, so that
+ * clients in one JVM can keep different numbers of connections.
+ *
+ * The pool size is the "cmis.utils.http.max.connections" session parameter,
+ * which Transport sets from the client's "cmis.http.max.connections". Each
+ * session owns its HttpClient, and therefore its pool.
+ */
+public class PooledHttpInvoker extends ApacheClientHttpInvoker {
+
+	static final String MAX_CONNECTIONS = "cmis.utils.http.max.connections";
+
+	@SuppressWarnings("deprecation")
+	@Override
+	protected DefaultHttpClient createHttpClient(UrlBuilder url, BindingSession session) {
+		DefaultHttpClient httpClient = super.createHttpClient(url, session);
+		int maxConnections = session.get(MAX_CONNECTIONS, 0);
+		ClientConnectionManager connectionManager = httpClient.getConnectionManager();
+		if (maxConnections > 0 && connectionManager instanceof PoolingClientConnectionManager) {
+			PoolingClientConnectionManager pool = (PoolingClientConnectionManager) connectionManager;
+			pool.setMaxTotal(maxConnections);
+			pool.setDefaultMaxPerRoute(maxConnections);
+		}
+		return httpClient;
+	}
+}
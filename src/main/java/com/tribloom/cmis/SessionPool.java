@@ -0,0 +1,86 @@
+package com.tribloom.cmis;
+
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.chemistry.opencmis.client.api.Repository;
+import org.apache.chemistry.opencmis.client.api.Session;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A fixed-size pool of sessions to one repository. Sessions are created on
+ * demand, up to the pool size; when all of them are borrowed, borrow waits
+ * for one to be released.
+ *
+ * The first session is also the primary session, shared by threads that have
+ * not borrowed one.
+ */
+class SessionPool {
+
+	// SL4J Logger
+	private static final Logger logger = LoggerFactory.getLogger(SessionPool.class);
+
+	private final Repository repository;
+	private final int size;
+	private final Session primary;
+	private final LinkedBlockingQueue<Session> idle = new LinkedBlockingQueue<Session>();
+	private final AtomicInteger created = new AtomicInteger();
+
+	SessionPool(Repository repository, int size) {
+		if (size < 1) {
+			throw new IllegalArgumentException("Session pool size must be at least 1: " + size);
+		}
+		this.repository = repository;
+		this.size = size;
+		this.primary = repository.createSession();
+		created.incrementAndGet();
+		idle.add(primary);
+	}
+
+	Session getPrimary() {
+		return primary;
+	}
+
+	int getSize() {
+		return size;
+	}
+
+	Session borrow() {
+		Session session = idle.poll();
+		if (session != null) {
+			return session;
+		}
+		int count = created.get();
+		while (count < size) {
+			if (created.compareAndSet(count, count + 1)) {
+				logger.debug("Creating pooled session " + (count + 1) + " of " + size);
+				try {
+					return repository.createSession();
+				} catch (RuntimeException ex) {
+					created.decrementAndGet();
+					throw ex;
+				}
+			}
+			count = created.get();
+		}
+		boolean interrupted = false;
+		try {
+			while (true) {
+				try {
+					return idle.take();
+				} catch (InterruptedException ex) {
+					interrupted = true;
+				}
+			}
+		} finally {
+			if (interrupted) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	void release(Session session) {
+		idle.add(session);
+	}
+}
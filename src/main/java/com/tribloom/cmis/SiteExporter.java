@@ -0,0 +1,465 @@
+package com.tribloom.cmis;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.GregorianCalendar;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.chemistry.opencmis.client.api.CmisObject;
+import org.apache.chemistry.opencmis.client.api.Document;
+import org.apache.chemistry.opencmis.client.api.Folder;
+import org.apache.chemistry.opencmis.client.api.ItemIterable;
+import org.apache.chemistry.opencmis.client.api.OperationContext;
+import org.apache.chemistry.opencmis.client.api.Property;
+import org.apache.chemistry.opencmis.client.api.SecondaryType;
+import org.apache.chemistry.opencmis.client.api.Session;
+import org.apache.chemistry.opencmis.commons.PropertyIds;
+import org.apache.chemistry.opencmis.commons.data.ContentStream;
+import org.apache.chemistry.opencmis.commons.enums.Updatability;
+import org.apache.chemistry.opencmis.commons.exceptions.CmisBaseException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Exports a site's document library, and optionally its data lists, to a
+ * local directory that can be imported again:
+ *
+ * directory/manifest.jsonl             one record per document (see ManifestWriter)
+ * directory/documentLibrary/...        the content, in the library's folder tree
+ * directory/datalists/dl_issue.jsonl   the rows of the site's dl:issue lists
+ *
+ * Records name the site and the folder relative to the document library as
+ * the destination, so ManifestReader.open(manifest) can be passed straight to
+ * importItems (with cmis.utils.destination.create set, to recreate folders).
+ * Only properties that can be set are exported; the type includes the
+ * document's aspects. Data list rows can be inserted with importDataListRows.
+ *
+ * The folder tree is listed on the calling thread, a page of children at a
+ * time, while the content of the documents found is fetched in parallel.
+ * Each file is streamed to disk through a channel, so memory use doesn't
+ * depend on file sizes, into a ".part" file that is renamed once complete.
+ * Each file's modification time is set to the document's
+ * cmis:lastModificationDate. An export can therefore be resumed by running it
+ * again: files already on disk with the document's content length and
+ * modification date (to the second) are not downloaded again, while the
+ * manifest is rewritten. A bandwidth limit, if set, is shared by all
+ * downloads.
+ */
+public class SiteExporter {
+
+	// SL4J Logger
+	private static final Logger logger = LoggerFactory.getLogger(SiteExporter.class);
+
+	static final String MANIFEST = "manifest.jsonl";
+	static final String DOCUMENT_LIBRARY = "documentLibrary";
+	static final String DATA_LISTS = "datalists";
+
+	private static final int QUEUED_DOCUMENTS_PER_THREAD = 4;
+	private static final int PAGE_SIZE = 100;
+	private static final int BUFFER_SIZE = 64 * 1024;
+	private static final String PART_SUFFIX = ".part";
+
+	private final CmisClient client;
+	private final int parallelism;
+	private BandwidthLimiter bandwidthLimiter;
+	private List<String> dataListItemTypes = Collections.emptyList();
+
+	public SiteExporter(CmisClient client, int parallelism) {
+		if (client == null) {
+			throw new IllegalArgumentException("No client provided");
+		}
+		if (parallelism < 1) {
+			throw new IllegalArgumentException("Parallelism must be at least 1: " + parallelism);
+		}
+		this.client = client;
+		this.parallelism = parallelism;
+	}
+
+	/**
+	 * Limits the rate at which content is downloaded, over all threads.
+	 *
+	 * @param bytesPerSecond long, or 0 (the default) for no limit
+	 */
+	public void setBytesPerSecond(long bytesPerSecond) {
+		bandwidthLimiter = bytesPerSecond > 0 ? new BandwidthLimiter(bytesPerSecond) : null;
+	}
+
+	public long getBytesPerSecond() {
+		return bandwidthLimiter != null ? bandwidthLimiter.getBytesPerSecond() : 0;
+	}
+
+	/**
+	 * Sets the item types of the data lists to export along with the
+	 * document library; by default none are.
+	 *
+	 * @param dataListItemTypes String... e.g. "dl:issue", "dl:task"
+	 */
+	public void setDataListItemTypes(String... dataListItemTypes) {
+		this.dataListItemTypes = Arrays.asList(dataListItemTypes);
+	}
+
+	public List<String> getDataListItemTypes() {
+		return Collections.unmodifiableList(dataListItemTypes);
+	}
+
+	/**
+	 * Exports the site into the given directory, creating it if needed.
+	 *
+	 * @param siteName String
+	 * @param directory Path
+	 * @return ExportReport, or null if the site has no document library or
+	 * the directory can't be written
+	 */
+	public ExportReport exportSite(String siteName, Path directory) {
+		Folder docLib = client.getDocumentLibrary(siteName);
+		if (docLib == null) {
+			logger.error("No document library found for site " + siteName);
+			return null;
+		}
+		Export export;
+		try {
+			Files.createDirectories(directory.resolve(DOCUMENT_LIBRARY));
+			export = new Export(siteName, directory);
+		} catch (IOException ex) {
+			logger.error("Unable to write to " + directory, ex);
+			return null;
+		}
+		try {
+			export.exportLibrary(docLib);
+			for (String dataListItemType : dataListItemTypes) {
+				export.exportDataLists(dataListItemType);
+			}
+		} catch (IOException ex) {
+			logger.error("Unable to write the manifest of site " + siteName, ex);
+			return null;
+		} finally {
+			export.close();
+		}
+		ExportReport report = export.getReport();
+		logger.info("Exported site " + siteName + " to " + directory + ": " + report);
+		return report;
+	}
+
+	/**
+	 * Builds the manifest record of a document or data list row.
+	 */
+	static AlfrescoItem toItem(CmisObject object) {
+		AlfrescoItem item = new AlfrescoItem();
+		item.setKey(object.getId());
+		item.setName(object.getName());
+		StringBuilder type = new StringBuilder(object.getType().getId());
+		List<SecondaryType> aspects = object.getSecondaryTypes();
+		if (aspects != null) {
+			for (SecondaryType aspect : aspects) {
+				type.append(',').append(aspect.getId());
+			}
+		}
+		item.setType(type.toString());
+		for (Property<?> property : object.getProperties()) {
+			String id = property.getId();
+			if (property.getDefinition() == null
+					|| property.getDefinition().getUpdatability() == Updatability.READONLY
+					|| PropertyIds.NAME.equals(id) || PropertyIds.OBJECT_TYPE_ID.equals(id)
+					|| PropertyIds.SECONDARY_OBJECT_TYPE_IDS.equals(id)) {
+				continue;
+			}
+			if (property.isMultiValued()) {
+				// Items hold a single value per property
+				List<?> values = property.getValues();
+				if (values != null && values.size() > 1) {
+					logger.debug("Not exporting multi-valued " + id + " of " + object.getName());
+					continue;
+				}
+			}
+			Object value = property.getFirstValue();
+			if (value != null) {
+				item.setProperty(id, value);
+			}
+		}
+		return item;
+	}
+
+	/**
+	 * The state of one exportSite call.
+	 */
+	private class Export {
+		private final String siteName;
+		private final Path directory;
+		private final Path root;
+		private final ManifestWriter manifest;
+		private final Path manifestPart;
+		private final OperationContext context;
+		private final ExecutorService executor;
+		private final Semaphore inFlight = new Semaphore(parallelism * QUEUED_DOCUMENTS_PER_THREAD);
+		private final AtomicInteger exported = new AtomicInteger();
+		private final AtomicInteger skipped = new AtomicInteger();
+		private final AtomicInteger failed = new AtomicInteger();
+		private final AtomicLong bytes = new AtomicLong();
+		private int folders;
+		private int dataListRows;
+		private boolean complete;
+
+		Export(String siteName, Path directory) throws IOException {
+			this.siteName = siteName;
+			this.directory = directory;
+			this.root = directory.resolve(DOCUMENT_LIBRARY).toAbsolutePath().normalize();
+			this.manifestPart = directory.resolve(MANIFEST + PART_SUFFIX);
+			this.manifest = ManifestWriter.open(manifestPart);
+			// Every property, for the records; nothing else
+			this.context = OperationContexts.minimal(client.getSession(), PAGE_SIZE, "*");
+			this.context.setIncludePathSegments(false);
+			this.context.setCacheEnabled(false);
+			this.executor = Executors.newFixedThreadPool(parallelism, new BulkImporter.WorkerThreadFactory());
+		}
+
+		/**
+		 * Lists the library's folders breadth first, queueing each document
+		 * for download as it is found, then waits for the downloads.
+		 */
+		void exportLibrary(Folder docLib) throws IOException {
+			Deque<Folder> folderQueue = new ArrayDeque<Folder>();
+			Deque<String> pathQueue = new ArrayDeque<String>();
+			folderQueue.add(docLib);
+			pathQueue.add("");
+			try {
+				while (!folderQueue.isEmpty()) {
+					Folder folder = folderQueue.poll();
+					String path = pathQueue.poll();
+					ItemIterable<CmisObject> children = folder.getChildren(context);
+					GuardedPages.Page<CmisObject> page;
+					long skip = 0;
+					do {
+						page = getPage(children, skip);
+						skip += page.items.size();
+						for (CmisObject child : page.items) {
+							if (child instanceof Folder) {
+								folders++;
+								folderQueue.add((Folder) child);
+								pathQueue.add(path.isEmpty() ? child.getName() : path + "/" + child.getName());
+							} else if (child instanceof Document) {
+								submit((Document) child, path);
+							}
+						}
+					} while (page.hasNext());
+				}
+			} finally {
+				// Wait for the queued downloads
+				inFlight.acquireUninterruptibly(parallelism * QUEUED_DOCUMENTS_PER_THREAD);
+				inFlight.release(parallelism * QUEUED_DOCUMENTS_PER_THREAD);
+			}
+			complete = true;
+		}
+
+		private void submit(final Document document, final String path) {
+			inFlight.acquireUninterruptibly();
+			try {
+				executor.execute(new Runnable() {
+					public void run() {
+						try {
+							exportDocument(document, path);
+						} finally {
+							inFlight.release();
+						}
+					}
+				});
+			} catch (RuntimeException ex) {
+				inFlight.release();
+				throw ex;
+			}
+		}
+
+		private void exportDocument(Document document, String path) {
+			String name = document.getName();
+			try {
+				AlfrescoItem item = toItem(document);
+				item.setSiteName(siteName);
+				if (!path.isEmpty()) {
+					item.setDestination(path);
+				}
+				long length = document.getContentStreamLength();
+				if (length >= 0 && document.getContentStreamMimeType() != null) {
+					Path target = root.resolve(path).resolve(name).normalize();
+					if (!target.startsWith(root) || target.equals(root)) {
+						throw new IOException("Name escapes the export directory: " + name);
+					}
+					if (isCurrent(target, document, length)) {
+						skipped.incrementAndGet();
+					} else {
+						download(document, target, length);
+						exported.incrementAndGet();
+					}
+					item.setContent(target);
+					item.setMimetype(document.getContentStreamMimeType());
+				} else {
+					exported.incrementAndGet();
+				}
+				manifest.write(item);
+			} catch (IOException | CmisBaseException ex) {
+				logger.error("Unable to export " + path + "/" + name + ": " + ex);
+				failed.incrementAndGet();
+			} catch (RuntimeException ex) {
+				logger.error("Unable to export " + path + "/" + name, ex);
+				failed.incrementAndGet();
+			}
+		}
+
+		/**
+		 * Returns true if the file holds the document's current content, as far
+		 * as its length and modification time tell. Without a modification date
+		 * on the document, the file can't be shown to be current.
+		 */
+		private boolean isCurrent(Path target, Document document, long length) throws IOException {
+			GregorianCalendar modified = document.getLastModificationDate();
+			if (modified == null || !Files.isRegularFile(target) || Files.size(target) != length) {
+				return false;
+			}
+			// File systems differ in the precision they keep
+			return Files.getLastModifiedTime(target).to(TimeUnit.SECONDS) 
+					== TimeUnit.MILLISECONDS.toSeconds(modified.getTimeInMillis());
+		}
+
+		/**
+		 * Streams the content into a part file next to the target, and renames
+		 * it once it is complete, with the document's modification date.
+		 */
+		private void download(final Document document, Path target, long length) throws IOException {
+			Files.createDirectories(target.getParent());
+			Path part = target.resolveSibling(target.getFileName() + PART_SUFFIX);
+			long written = 0;
+			client.borrowSession();
+			try {
+				final Session workerSession = client.getSession();
+				ContentStream contentStream = client.getCallGuard().execute(Operation.GET_CONTENT_STREAM,
+						new CallGuard.Call<ContentStream>() {
+							public ContentStream call() {
+								return workerSession.getContentStream(document);
+							}
+						});
+				if (contentStream == null || contentStream.getStream() == null) {
+					throw new IOException("No content stream");
+				}
+				try (ReadableByteChannel in = Channels.newChannel(contentStream.getStream());
+						FileChannel out = FileChannel.open(part, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+								StandardOpenOption.TRUNCATE_EXISTING)) {
+					ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+					while (in.read(buffer) >= 0) {
+						buffer.flip();
+						if (bandwidthLimiter != null && buffer.hasRemaining()) {
+							bandwidthLimiter.acquire(buffer.remaining());
+						}
+						while (buffer.hasRemaining()) {
+							written += out.write(buffer);
+						}
+						buffer.clear();
+					}
+				}
+				if (written != length) {
+					throw new IOException("Received " + written + " of " + length + " bytes");
+				}
+				GregorianCalendar modified = document.getLastModificationDate();
+				if (modified != null) {
+					Files.setLastModifiedTime(part, FileTime.fromMillis(modified.getTimeInMillis()));
+				}
+				Files.move(part, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			} catch (InterruptedException ex) {
+				Thread.currentThread().interrupt();
+				Files.deleteIfExists(part);
+				throw new InterruptedIOException("Interrupted downloading " + target);
+			} catch (IOException | RuntimeException ex) {
+				Files.deleteIfExists(part);
+				throw ex;
+			} finally {
+				client.releaseSession();
+				bytes.addAndGet(written);
+			}
+		}
+
+		/**
+		 * Writes the rows of the site's data lists of the given item type.
+		 */
+		void exportDataLists(String dataListItemType) throws IOException {
+			List<Folder> dataLists = client.getDataLists(siteName, dataListItemType, false);
+			if (dataLists == null || dataLists.isEmpty()) {
+				logger.info("No " + dataListItemType + " data list in site " + siteName);
+				return;
+			}
+			Path directory = this.directory.resolve(DATA_LISTS);
+			Files.createDirectories(directory);
+			Path file = directory.resolve(dataListItemType.replace(':', '_') + ".jsonl");
+			Path part = file.resolveSibling(file.getFileName() + PART_SUFFIX);
+			ManifestWriter rows = ManifestWriter.open(part);
+			try {
+				for (Folder dataList : dataLists) {
+					ItemIterable<CmisObject> children = dataList.getChildren(context);
+					GuardedPages.Page<CmisObject> page;
+					long skip = 0;
+					do {
+						page = getPage(children, skip);
+						skip += page.items.size();
+						for (CmisObject row : page.items) {
+							if (!(row instanceof Folder)) {
+								rows.write(toItem(row));
+							}
+						}
+					} while (page.hasNext());
+				}
+			} finally {
+				rows.close();
+			}
+			Files.move(part, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			dataListRows += rows.getCount();
+		}
+
+		/**
+		 * Fetches a page of children in one guarded call. The server may return
+		 * fewer children than the page size, so the listing goes on for as long 
+		 * as the page says there are more.
+		 */
+		private GuardedPages.Page<CmisObject> getPage(ItemIterable<CmisObject> children, long skip) {
+			return GuardedPages.getPage(client.getCallGuard(), Operation.GET_CHILDREN, children, skip);
+		}
+
+		/**
+		 * Finishes the manifest, replacing the previous one, unless the listing
+		 * was cut short.
+		 */
+		void close() {
+			executor.shutdown();
+			try {
+				manifest.close();
+				if (complete) {
+					Files.move(manifestPart, directory.resolve(MANIFEST), StandardCopyOption.REPLACE_EXISTING,
+							StandardCopyOption.ATOMIC_MOVE);
+				} else {
+					logger.warn("Export of site " + siteName + " incomplete, keeping the previous manifest");
+				}
+			} catch (IOException ex) {
+				logger.error("Unable to write the manifest of site " + siteName, ex);
+			}
+		}
+
+		ExportReport getReport() {
+			return new ExportReport(folders, exported.get(), skipped.get(), failed.get(), dataListRows,
+					bytes.get());
+		}
+	}
+}
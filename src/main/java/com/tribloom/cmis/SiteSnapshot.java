@@ -0,0 +1,229 @@
+package com.tribloom.cmis;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A local file mapping site names to the IDs of their site folder and
+ * document library, so that a new JVM can resolve sites by ID instead of
+ * querying for them.
+ *
+ * Each entry records when it was last checked against the repository; entries
+ * older than the caller's time to live are stale and should be checked again.
+ * The file is a line per site (name, site folder ID, document library ID and
+ * check time, separated by tabs), rewritten as a whole on save through a
+ * temporary file so a crash never leaves it half written. Unreadable lines are
+ * skipped, and an unreadable file is treated as empty.
+ */
+public class SiteSnapshot {
+
+	// SL4J Logger
+	private static final Logger logger = LoggerFactory.getLogger(SiteSnapshot.class);
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+	private static final String HEADER = "# cmis-utils site snapshot 1";
+	private static final String NONE = "-";
+
+	/**
+	 * The folders of one site, as last checked.
+	 */
+	public static class Entry {
+		private final String siteName;
+		private final String siteFolderId;
+		private final String documentLibraryId;
+		private final long checkedAt;
+
+		public Entry(String siteName, String siteFolderId, String documentLibraryId, long checkedAt) {
+			this.siteName = siteName;
+			this.siteFolderId = siteFolderId;
+			this.documentLibraryId = documentLibraryId;
+			this.checkedAt = checkedAt;
+		}
+
+		public String getSiteName() {
+			return siteName;
+		}
+
+		public String getSiteFolderId() {
+			return siteFolderId;
+		}
+
+		/**
+		 * @return the document library's ID, or null if the site had none
+		 */
+		public String getDocumentLibraryId() {
+			return documentLibraryId;
+		}
+
+		/**
+		 * @return the time (millis since the epoch) the entry was checked
+		 */
+		public long getCheckedAt() {
+			return checkedAt;
+		}
+
+		/**
+		 * @param ttlMillis long time for which an entry is trusted, or 0 to trust it forever
+		 * @return true if the entry was checked longer ago than the time to live
+		 */
+		public boolean isStale(long ttlMillis) {
+			return ttlMillis > 0 && System.currentTimeMillis() - checkedAt > ttlMillis;
+		}
+
+		public String toString() {
+			return siteName + " (" + siteFolderId + ", " + documentLibraryId + ")";
+		}
+	}
+
+	private final Path file;
+	private final ConcurrentMap<String, Entry> entries = new ConcurrentHashMap<String, Entry>();
+	private volatile boolean modified;
+
+	/**
+	 * Opens a snapshot, reading the file if it exists.
+	 *
+	 * @param file Path
+	 */
+	public SiteSnapshot(Path file) {
+		this.file = file;
+		if (Files.exists(file)) {
+			try {
+				read();
+			} catch (IOException ex) {
+				logger.warn("Unable to read site snapshot " + file + ", starting empty", ex);
+				entries.clear();
+			}
+		}
+	}
+
+	private void read() throws IOException {
+		BufferedReader reader = Files.newBufferedReader(file, UTF8);
+		try {
+			String line = reader.readLine();
+			if (!HEADER.equals(line)) {
+				logger.warn("Ignoring site snapshot " + file + ", unknown format");
+				return;
+			}
+			int lineNumber = 1;
+			while ((line = reader.readLine()) != null) {
+				lineNumber++;
+				String[] fields = line.split("\t");
+				try {
+					if (fields.length != 4) {
+						throw new IllegalArgumentException("Expected 4 fields");
+					}
+					entries.put(fields[0], new Entry(fields[0], fields[1],
+							NONE.equals(fields[2]) ? null : fields[2], Long.parseLong(fields[3])));
+				} catch (IllegalArgumentException ex) {
+					logger.warn("Skipping line " + lineNumber + " of site snapshot " + file + ": " + ex.getMessage());
+				}
+			}
+		} finally {
+			reader.close();
+		}
+	}
+
+	public Path getFile() {
+		return file;
+	}
+
+	/**
+	 * @return the entry for the site, or null if there is none
+	 */
+	public Entry get(String siteName) {
+		return entries.get(siteName);
+	}
+
+	/**
+	 * Records the folders of a site, as checked now.
+	 *
+	 * @param siteName String
+	 * @param siteFolderId String
+	 * @param documentLibraryId String or null if the site has none
+	 */
+	public void put(String siteName, String siteFolderId, String documentLibraryId) {
+		entries.put(siteName, new Entry(siteName, siteFolderId, documentLibraryId, System.currentTimeMillis()));
+		modified = true;
+	}
+
+	public void remove(String siteName) {
+		if (entries.remove(siteName) != null) {
+			modified = true;
+		}
+	}
+
+	/**
+	 * Removes the entries of sites that aren't in the given collection.
+	 */
+	public void retainAll(Collection<String> siteNames) {
+		if (entries.keySet().retainAll(siteNames)) {
+			modified = true;
+		}
+	}
+
+	public Collection<Entry> getEntries() {
+		return new ArrayList<Entry>(entries.values());
+	}
+
+	public int size() {
+		return entries.size();
+	}
+
+	/**
+	 * Writes the snapshot, if it has changed since it was read or last saved.
+	 */
+	public synchronized void save() throws IOException {
+		if (!modified) {
+			return;
+		}
+		modified = false;
+		List<Entry> snapshot = new ArrayList<Entry>(entries.values());
+		try {
+			write(snapshot);
+		} catch (IOException ex) {
+			modified = true;
+			throw ex;
+		}
+		logger.debug("Saved " + snapshot.size() + " sites to " + file);
+	}
+
+	private void write(List<Entry> snapshot) throws IOException {
+		Path parent = file.toAbsolutePath().getParent();
+		if (parent != null) {
+			Files.createDirectories(parent);
+		}
+		Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+		BufferedWriter writer = Files.newBufferedWriter(temp, UTF8);
+		try {
+			writer.write(HEADER);
+			writer.newLine();
+			for (Entry entry : snapshot) {
+				writer.write(entry.getSiteName() + "\t" + entry.getSiteFolderId() + "\t"
+						+ (entry.getDocumentLibraryId() != null ? entry.getDocumentLibraryId() : NONE) + "\t"
+						+ entry.getCheckedAt());
+				writer.newLine();
+			}
+		} finally {
+			writer.close();
+		}
+		try {
+			Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} catch (AtomicMoveNotSupportedException ex) {
+			Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+		}
+	}
+}
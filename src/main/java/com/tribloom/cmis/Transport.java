@@ -0,0 +1,141 @@
+package com.tribloom.cmis;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+
+import org.apache.chemistry.opencmis.commons.SessionParameter;
+import org.apache.chemistry.opencmis.commons.enums.BindingType;
+
+/**
+ * The binding and HTTP settings of a client's sessions, read from its
+ * properties.
+ *
+ * The AtomPub binding (the default) sends every object as an Atom entry; the
+ * Browser binding sends the same data as much smaller JSON, which is also
+ * quicker to parse, and suits high volumes of lookups. Both ask the server
+ * for gzip responses with "cmis.http.compression", and gzip the requests
+ * they send with "cmis.http.client.compression" (only where the server
+ * accepts gzip request bodies).
+ *
+ * The HTTP invoker is the JDK's HttpURLConnection unless "cmis.http.invoker"
+ * names another: "apache" (Apache HttpClient 4, which must be on the class
+ * path) or "okhttp" (OkHttp 2), or the class of an HttpInvoker. Both the JDK
+ * and Apache invokers keep connections alive and reuse them; the number
+ * kept per server is the JVM wide "http.maxConnections" (default 5), which
+ * should be at least the number of concurrent calls. With the Apache invoker,
+ * "cmis.http.max.connections" sizes the client's own pool instead (see
+ * PooledHttpInvoker). The JDK's pool is shared by the whole JVM, so it can
+ * only be sized with the system property, before the first connection; the
+ * setting is rejected with other invokers rather than changing it.
+ */
+final class Transport {
+
+	static final String ATOMPUB = "atompub";
+	static final String BROWSER = "browser";
+
+	static final String ATOMPUB_PATH = "/alfresco/cmisatom";
+	static final String BROWSER_PATH = "/alfresco/api/-default-/public/cmis/versions/1.1/browser";
+
+	private static final String PROP_SCHEME = "cmis.server.scheme";
+	private static final String PROP_HOSTNAME = "cmis.server.hostname";
+	private static final String PROP_PORT = "cmis.server.port";
+	private static final String PROP_SERVICE_PATH = "cmis.service.path";
+	private static final String PROP_USER = "cmis.user";
+	private static final String PROP_PASSWORD = "cmis.password";
+	private static final String PROP_BINDING = "cmis.binding";
+	private static final String PROP_COMPRESSION = "cmis.http.compression";
+	private static final String PROP_CLIENT_COMPRESSION = "cmis.http.client.compression";
+	private static final String PROP_CONNECT_TIMEOUT = "cmis.http.connect.timeout.millis";
+	private static final String PROP_READ_TIMEOUT = "cmis.http.read.timeout.millis";
+	private static final String PROP_INVOKER = "cmis.http.invoker";
+	private static final String PROP_MAX_CONNECTIONS = "cmis.http.max.connections";
+
+	private static final String HTTP_INVOKER_PACKAGE = "org.apache.chemistry.opencmis.client.bindings.spi.http.";
+	private static final String APACHE_INVOKER = HTTP_INVOKER_PACKAGE + "ApacheClientHttpInvoker";
+
+	private Transport() {
+	}
+
+	/**
+	 * Returns the session parameters for the binding, URL, credentials and
+	 * HTTP settings in the properties.
+	 *
+	 * @param properties Properties of the client
+	 * @return Map<String, String> of session parameters
+	 * @throws IllegalArgumentException if the binding or invoker is unknown
+	 */
+	static Map<String, String> getSessionParameters(Properties properties) {
+		Map<String, String> parameter = new HashMap<String, String>();
+		String binding = properties.getProperty(PROP_BINDING, ATOMPUB).trim().toLowerCase();
+		String port = properties.getProperty(PROP_PORT, "8080");
+		String url = properties.getProperty(PROP_SCHEME, "http") + "://"
+				+ properties.getProperty(PROP_HOSTNAME, "localhost") + (!port.equals("") ? ":" : "") + port;
+		if (ATOMPUB.equals(binding)) {
+			parameter.put(SessionParameter.BINDING_TYPE, BindingType.ATOMPUB.value());
+			parameter.put(SessionParameter.ATOMPUB_URL, url + properties.getProperty(PROP_SERVICE_PATH, ATOMPUB_PATH));
+		} else if (BROWSER.equals(binding)) {
+			parameter.put(SessionParameter.BINDING_TYPE, BindingType.BROWSER.value());
+			parameter.put(SessionParameter.BROWSER_URL, url + properties.getProperty(PROP_SERVICE_PATH, BROWSER_PATH));
+		} else {
+			throw new IllegalArgumentException("Unknown binding (expected atompub or browser): " + binding);
+		}
+		parameter.put(SessionParameter.USER, properties.getProperty(PROP_USER, "admin"));
+		parameter.put(SessionParameter.PASSWORD, properties.getProperty(PROP_PASSWORD, "admin"));
+
+		parameter.put(SessionParameter.COMPRESSION, String.valueOf(getBoolean(properties, PROP_COMPRESSION)));
+		parameter.put(SessionParameter.CLIENT_COMPRESSION,
+				String.valueOf(getBoolean(properties, PROP_CLIENT_COMPRESSION)));
+		copy(properties, PROP_CONNECT_TIMEOUT, parameter, SessionParameter.CONNECT_TIMEOUT);
+		copy(properties, PROP_READ_TIMEOUT, parameter, SessionParameter.READ_TIMEOUT);
+		String invoker = properties.getProperty(PROP_INVOKER);
+		String invokerClass = invoker != null && invoker.trim().length() > 0 ? getInvokerClass(invoker.trim()) : null;
+		String maxConnections = properties.getProperty(PROP_MAX_CONNECTIONS);
+		if (maxConnections != null && maxConnections.trim().length() > 0) {
+			if (!APACHE_INVOKER.equals(invokerClass) && !PooledHttpInvoker.class.getName().equals(invokerClass)) {
+				throw new IllegalArgumentException(PROP_MAX_CONNECTIONS + " needs " + PROP_INVOKER 
+						+ "=apache; the pool of other invokers is sized by the JVM wide http.maxConnections");
+			}
+			int max = Integer.parseInt(maxConnections.trim());
+			if (max < 1) {
+				throw new IllegalArgumentException("Max connections must be at least 1: " + max);
+			}
+			invokerClass = PooledHttpInvoker.class.getName();
+			parameter.put(PooledHttpInvoker.MAX_CONNECTIONS, String.valueOf(max));
+		}
+		if (invokerClass != null) {
+			parameter.put(SessionParameter.HTTP_INVOKER_CLASS, invokerClass);
+		}
+		return parameter;
+	}
+
+	/**
+	 * Returns the class name of an HTTP invoker, given its short name or class name.
+	 */
+	static String getInvokerClass(String invoker) {
+		if ("default".equalsIgnoreCase(invoker)) {
+			return HTTP_INVOKER_PACKAGE + "DefaultHttpInvoker";
+		} else if ("apache".equalsIgnoreCase(invoker)) {
+			return APACHE_INVOKER;
+		} else if ("okhttp".equalsIgnoreCase(invoker)) {
+			return HTTP_INVOKER_PACKAGE + "OkHttpHttpInvoker";
+		} else if (invoker.indexOf('.') < 0) {
+			throw new IllegalArgumentException(
+					"Unknown HTTP invoker (expected default, apache, okhttp or a class name): " + invoker);
+		}
+		return invoker;
+	}
+
+	private static boolean getBoolean(Properties properties, String name) {
+		String value = properties.getProperty(name);
+		return value != null && "true".equalsIgnoreCase(value.trim());
+	}
+
+	private static void copy(Properties properties, String name, Map<String, String> parameter, String key) {
+		String value = properties.getProperty(name);
+		if (value != null && value.trim().length() > 0) {
+			// Fail here rather than on the first call
+			parameter.put(key, String.valueOf(Long.parseLong(value.trim())));
+		}
+	}
+}
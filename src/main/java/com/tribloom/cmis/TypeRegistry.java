@@ -0,0 +1,185 @@
+package com.tribloom.cmis;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.chemistry.opencmis.client.api.ObjectType;
+import org.apache.chemistry.opencmis.client.api.Session;
+import org.apache.chemistry.opencmis.commons.definitions.PropertyDefinition;
+import org.apache.chemistry.opencmis.commons.exceptions.CmisObjectNotFoundException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Resolved type definitions, property query names and parsed type strings for
+ * a session, so that lookups and imports do not ask the server (or split
+ * strings) for the same type over and over.
+ *
+ * Types are resolved on first use, or up front with preload.
+ */
+class TypeRegistry {
+
+	// SL4J Logger
+	private static final Logger logger = LoggerFactory.getLogger(TypeRegistry.class);
+
+	// Marks types the repository does not know, so they are not asked for again
+	private static final Object MISSING = new Object();
+
+	private final Session session;
+	private final ConcurrentHashMap<String, Object> types = new ConcurrentHashMap<String, Object>();
+	private final ConcurrentHashMap<String, String> queryNames = new ConcurrentHashMap<String, String>();
+	private final ConcurrentHashMap<String, TypeSpec> typeSpecs = new ConcurrentHashMap<String, TypeSpec>();
+
+	TypeRegistry(Session session) {
+		this.session = session;
+	}
+
+	/**
+	 * Returns the type definition for the given type ID, or null if the
+	 * repository does not define it.
+	 */
+	ObjectType getType(String typeId) {
+		Object type = types.get(typeId);
+		if (type == null) {
+			try {
+				type = session.getTypeDefinition(typeId);
+			} catch (CmisObjectNotFoundException ex) {
+				type = null;
+			}
+			if (type == null) {
+				type = MISSING;
+			}
+			types.put(typeId, type);
+		}
+		return type == MISSING ? null : (ObjectType) type;
+	}
+
+	/**
+	 * Returns the query name of a property of the given type, or null if either
+	 * does not exist.
+	 */
+	String getQueryName(String typeId, String propertyId) {
+		String key = typeId + "/" + propertyId;
+		String queryName = queryNames.get(key);
+		if (queryName == null) {
+			ObjectType type = getType(typeId);
+			if (type == null) {
+				return null;
+			}
+			PropertyDefinition<?> propDef = type.getPropertyDefinitions().get(propertyId);
+			if (propDef == null) {
+				return null;
+			}
+			queryName = propDef.getQueryName();
+			queryNames.put(key, queryName);
+		}
+		return queryName;
+	}
+
+	/**
+	 * Parses a type string such as "cmis:folder,P:cm:titled" into its primary
+	 * type and aspects. Returns null if the primary type does not exist.
+	 */
+	TypeSpec getTypeSpec(String typeString) {
+		TypeSpec spec = typeSpecs.get(typeString);
+		if (spec == null) {
+			String[] parts = typeString.split(",");
+			ObjectType primaryType = getType(parts[0].trim());
+			if (primaryType == null) {
+				return null;
+			}
+			List<String> aspects = new ArrayList<String>(parts.length - 1);
+			for (int i = 1; i < parts.length; i++) {
+				if (parts[i].trim().length() > 0) {
+					aspects.add(parts[i].trim());
+				}
+			}
+			spec = new TypeSpec(typeString, primaryType, Collections.unmodifiableList(aspects));
+			typeSpecs.put(typeString, spec);
+		}
+		return spec;
+	}
+
+	/**
+	 * Resolves the given types (which may be type strings with aspects) ahead of
+	 * time, using up to the given number of threads.
+	 */
+	void preload(Collection<String> typeStrings, int threads) {
+		long start = System.currentTimeMillis();
+		if (threads <= 1 || typeStrings.size() <= 1) {
+			for (String typeString : typeStrings) {
+				preload(typeString);
+			}
+		} else {
+			ExecutorService executor = Executors.newFixedThreadPool(Math.min(threads, typeStrings.size()));
+			try {
+				List<Future<?>> futures = new ArrayList<Future<?>>();
+				for (final String typeString : typeStrings) {
+					futures.add(executor.submit(new Callable<Void>() {
+						public Void call() {
+							preload(typeString);
+							return null;
+						}
+					}));
+				}
+				for (Future<?> future : futures) {
+					try {
+						future.get();
+					} catch (Exception ex) {
+						logger.warn("Unable to preload type", ex);
+					}
+				}
+			} finally {
+				executor.shutdown();
+			}
+		}
+		logger.debug("Preloaded " + typeStrings.size() + " types in " + (System.currentTimeMillis() - start) + "ms");
+	}
+
+	private void preload(String typeString) {
+		TypeSpec spec = getTypeSpec(typeString);
+		if (spec == null) {
+			logger.warn("Unknown type: " + typeString);
+			return;
+		}
+		for (String aspect : spec.getAspects()) {
+			getType(aspect);
+		}
+		// Resolve query names of all properties, which also pulls in inherited definitions
+		for (String propertyId : spec.getPrimaryType().getPropertyDefinitions().keySet()) {
+			getQueryName(spec.getPrimaryType().getId(), propertyId);
+		}
+	}
+
+	/**
+	 * A parsed type string: a primary type plus any number of aspects.
+	 */
+	static class TypeSpec {
+		private final String typeString;
+		private final ObjectType primaryType;
+		private final List<String> aspects;
+
+		TypeSpec(String typeString, ObjectType primaryType, List<String> aspects) {
+			this.typeString = typeString;
+			this.primaryType = primaryType;
+			this.aspects = aspects;
+		}
+
+		String getTypeString() {
+			return typeString;
+		}
+		ObjectType getPrimaryType() {
+			return primaryType;
+		}
+		List<String> getAspects() {
+			return aspects;
+		}
+	}
+}
@@ -0,0 +1,199 @@
+package com.tribloom.cmis;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.chemistry.opencmis.client.api.ItemIterable;
+import org.apache.chemistry.opencmis.client.api.OperationContext;
+import org.apache.chemistry.opencmis.client.api.QueryResult;
+import org.apache.chemistry.opencmis.client.api.QueryStatement;
+import org.apache.chemistry.opencmis.client.api.Session;
+import org.apache.chemistry.opencmis.commons.PropertyIds;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Finds the existing objects of items by a unique property (such as w:guid),
+ * wherever they are in the repository.
+ *
+ * The items of a batch are looked up together, with one query per type that
+ * defines the property and per batchSize values:
+ * SELECT cmis:objectId, w:guid FROM w:webable WHERE w:guid IN (...)
+ *
+ * The type queried is the configured one, or else the first of the item's
+ * primary type and aspects that defines the property.
+ */
+class UniquePropertyLookup {
+
+	// SL4J Logger
+	private static final Logger logger = LoggerFactory.getLogger(UniquePropertyLookup.class);
+
+	// Marks type strings that don't define the property
+	private static final String UNDEFINED = new String("undefined");
+
+	private final CmisClient client;
+	private final TypeRegistry typeRegistry;
+	private final String propertyId;
+	private final String typeId;
+	private final int batchSize;
+	// Query names of the type to query by type string, and of the property by type
+	private final ConcurrentHashMap<String, String> queryTypes = new ConcurrentHashMap<String, String>();
+	private final ConcurrentHashMap<String, String> propertyQueryNames = new ConcurrentHashMap<String, String>();
+
+	/**
+	 * @param client CmisClient
+	 * @param propertyId String e.g. "w:guid"
+	 * @param typeId String type or aspect defining the property, e.g. "P:w:webable", or null to find it per item
+	 * @param batchSize int values per query
+	 */
+	UniquePropertyLookup(CmisClient client, String propertyId, String typeId, int batchSize) {
+		if (batchSize < 1) {
+			throw new IllegalArgumentException("Batch size must be at least 1: " + batchSize);
+		}
+		this.client = client;
+		this.typeRegistry = client.getTypeRegistry();
+		this.propertyId = propertyId;
+		this.typeId = typeId;
+		this.batchSize = batchSize;
+	}
+
+	String getPropertyId() {
+		return propertyId;
+	}
+
+	int getBatchSize() {
+		return batchSize;
+	}
+
+	/**
+	 * Looks up a single item.
+	 *
+	 * @return the ID of the existing object, or null if there is none
+	 */
+	String lookup(AlfrescoItem item) {
+		return lookup(Collections.singletonList(item)).get(item);
+	}
+
+	/**
+	 * Looks up the items that have a value for the property.
+	 *
+	 * @param items List<AlfrescoItem>
+	 * @return Map<AlfrescoItem, String> the ID of the existing object of each item found
+	 */
+	Map<AlfrescoItem, String> lookup(List<AlfrescoItem> items) {
+		// Values to look up, by the type that defines the property
+		Map<String, Map<String, List<AlfrescoItem>>> valuesByType =
+				new LinkedHashMap<String, Map<String, List<AlfrescoItem>>>();
+		for (AlfrescoItem item : items) {
+			String value = item.getProperties().get(propertyId);
+			String queryType = value != null ? getQueryType(item) : null;
+			if (queryType == null) {
+				continue;
+			}
+			Map<String, List<AlfrescoItem>> values = valuesByType.get(queryType);
+			if (values == null) {
+				values = new LinkedHashMap<String, List<AlfrescoItem>>();
+				valuesByType.put(queryType, values);
+			}
+			List<AlfrescoItem> withValue = values.get(value);
+			if (withValue == null) {
+				withValue = new ArrayList<AlfrescoItem>(1);
+				values.put(value, withValue);
+			}
+			withValue.add(item);
+		}
+
+		Map<AlfrescoItem, String> found = new IdentityHashMap<AlfrescoItem, String>();
+		for (Map.Entry<String, Map<String, List<AlfrescoItem>>> entry : valuesByType.entrySet()) {
+			List<String> values = new ArrayList<String>(entry.getValue().keySet());
+			for (int i = 0; i < values.size(); i += batchSize) {
+				List<String> batch = values.subList(i, Math.min(values.size(), i + batchSize));
+				for (Map.Entry<String, String> existing : query(entry.getKey(), batch).entrySet()) {
+					for (AlfrescoItem item : entry.getValue().get(existing.getKey())) {
+						found.put(item, existing.getValue());
+					}
+				}
+			}
+		}
+		return found;
+	}
+
+	/**
+	 * Returns the query name of the type to look the item up in, or null if
+	 * none of its types defines the property.
+	 */
+	private String getQueryType(AlfrescoItem item) {
+		String typeString = typeId != null ? typeId : item.getType();
+		if (typeString == null) {
+			return null;
+		}
+		String queryType = queryTypes.get(typeString);
+		if (queryType == null) {
+			queryType = UNDEFINED;
+			List<String> candidates = new ArrayList<String>();
+			if (typeId != null) {
+				candidates.add(typeId);
+			} else {
+				TypeRegistry.TypeSpec typeSpec = typeRegistry.getTypeSpec(typeString);
+				if (typeSpec != null) {
+					candidates.add(typeSpec.getPrimaryType().getId());
+					candidates.addAll(typeSpec.getAspects());
+				}
+			}
+			for (String candidate : candidates) {
+				String propertyQueryName = typeRegistry.getQueryName(candidate, propertyId);
+				if (propertyQueryName != null) {
+					queryType = typeRegistry.getType(candidate).getQueryName();
+					propertyQueryNames.put(queryType, propertyQueryName);
+					break;
+				}
+			}
+			if (queryType == UNDEFINED) {
+				logger.warn("No type of " + typeString + " defines " + propertyId + ", not looking items up");
+			}
+			queryTypes.put(typeString, queryType);
+		}
+		return queryType == UNDEFINED ? null : queryType;
+	}
+
+	/**
+	 * Returns the IDs of the objects of the given type with the given values,
+	 * by value.
+	 */
+	private Map<String, String> query(String queryType, List<String> values) {
+		Map<String, String> ids = new HashMap<String, String>();
+		Session session = client.getSession();
+		String queryName = propertyQueryNames.get(queryType);
+		QueryStatement query = session.createQueryStatement("SELECT " + PropertyIds.OBJECT_ID + ", "
+				+ queryName + " FROM " + queryType + " WHERE " + queryName + " IN (?)");
+		query.setString(1, values.toArray(new String[values.size()]));
+		OperationContext context = OperationContexts.minimal(session, batchSize, PropertyIds.OBJECT_ID);
+		context.setCacheEnabled(false);
+		ItemIterable<QueryResult> results = query.query(false, context);
+		GuardedPages.Page<QueryResult> page;
+		long skip = 0;
+		do {
+			page = GuardedPages.getPage(client.getCallGuard(), Operation.QUERY, results, skip);
+			skip += page.items.size();
+			for (QueryResult result : page.items) {
+				Object value = result.getPropertyValueById(propertyId);
+				String id = (String) result.getPropertyValueById(PropertyIds.OBJECT_ID);
+				if (value != null && id != null) {
+					String other = ids.put(value.toString(), id);
+					if (other != null && !other.equals(id)) {
+						logger.warn("More than one object with " + propertyId + " " + value + ": " + other
+								+ ", " + id);
+					}
+				}
+			}
+		} while (page.hasNext());
+		logger.debug("Found " + ids.size() + " of " + values.size() + " " + propertyId + " values in " + queryType);
+		return ids;
+	}
+}
@@ -0,0 +1,266 @@
+package com.tribloom.cmis;
+
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.apache.chemistry.opencmis.client.api.Folder;
+import org.apache.chemistry.opencmis.client.api.Session;
+import org.apache.chemistry.opencmis.client.runtime.repository.ObjectFactoryImpl;
+import org.apache.chemistry.opencmis.commons.PropertyIds;
+import org.apache.chemistry.opencmis.commons.SessionParameter;
+import org.apache.chemistry.opencmis.commons.data.Acl;
+import org.apache.chemistry.opencmis.commons.data.ExtensionsData;
+import org.apache.chemistry.opencmis.commons.data.PropertyData;
+import org.apache.chemistry.opencmis.commons.enums.BaseTypeId;
+import org.apache.chemistry.opencmis.commons.enums.Cardinality;
+import org.apache.chemistry.opencmis.commons.enums.ContentStreamAllowed;
+import org.apache.chemistry.opencmis.commons.enums.PropertyType;
+import org.apache.chemistry.opencmis.commons.enums.Updatability;
+import org.apache.chemistry.opencmis.commons.exceptions.CmisObjectNotFoundException;
+import org.apache.chemistry.opencmis.commons.exceptions.CmisServiceUnavailableException;
+import org.apache.chemistry.opencmis.commons.impl.dataobjects.AbstractTypeDefinition;
+import org.apache.chemistry.opencmis.commons.impl.dataobjects.DocumentTypeDefinitionImpl;
+import org.apache.chemistry.opencmis.commons.impl.dataobjects.FolderTypeDefinitionImpl;
+import org.apache.chemistry.opencmis.commons.impl.dataobjects.PropertiesImpl;
+import org.apache.chemistry.opencmis.commons.impl.dataobjects.PropertyStringDefinitionImpl;
+import org.apache.chemistry.opencmis.commons.impl.dataobjects.PropertyStringImpl;
+import org.apache.chemistry.opencmis.commons.impl.dataobjects.RelationshipTypeDefinitionImpl;
+import org.apache.chemistry.opencmis.commons.server.CallContext;
+import org.apache.chemistry.opencmis.commons.server.CmisService;
+import org.apache.chemistry.opencmis.inmemory.server.InMemoryServiceFactoryImpl;
+import org.apache.chemistry.opencmis.server.impl.CmisRepositoryContextListener;
+import org.apache.chemistry.opencmis.server.impl.atompub.CmisAtomPubServlet;
+import org.apache.chemistry.opencmis.server.shared.BasicAuthCallContextHandler;
+import org.apache.chemistry.opencmis.server.support.wrapper.AbstractCmisServiceWrapper;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.ServerConnector;
+import org.eclipse.jetty.servlet.ServletContextHandler;
+import org.eclipse.jetty.servlet.ServletHolder;
+
+/**
+ * An empty OpenCMIS InMemory repository served over AtomPub by an embedded
+ * Jetty on the loopback interface, with just enough of Alfresco's model for
+ * the importers: sites are plain folders (/Sites/NAME/documentLibrary), and
+ * createTypes adds data lists of issues (dl:issue, identified by dl:issueID)
+ * and the cm:references and dl:issueLinks associations.
+ */
+class InMemoryRepository {
+
+	static final String REPOSITORY_ID = "test";
+	static final String ISSUE_TYPE = "D:dl:issue";
+	static final String ISSUE_ID = "dl:issueID";
+	static final String REFERENCES = "cm:references";
+	// Only allowed between issues
+	static final String ISSUE_LINKS = "dl:issueLinks";
+
+	private static final String CONTEXT_PATH = "/inmemory";
+	private static final String SERVLET_PATH = "/atom11";
+
+	private final Server server;
+	private final int port;
+	private final AtomicBoolean loseRelationshipResponse = new AtomicBoolean();
+
+	InMemoryRepository() throws Exception {
+		Map<String, String> parameters = new HashMap<String, String>();
+		parameters.put("InMemoryServer.RepositoryId", REPOSITORY_ID);
+		InMemoryServiceFactoryImpl factory = new InMemoryServiceFactoryImpl() {
+			public CmisService getService(CallContext context) {
+				return new NamingRelationships(super.getService(context), loseRelationshipResponse);
+			}
+		};
+		factory.init(parameters);
+
+		ServletContextHandler context = new ServletContextHandler(ServletContextHandler.NO_SESSIONS);
+		context.setContextPath(CONTEXT_PATH);
+		context.setAttribute(CmisRepositoryContextListener.SERVICES_FACTORY, factory);
+		ServletHolder atom = new ServletHolder(new CmisAtomPubServlet());
+		atom.setInitParameter("callContextHandler", BasicAuthCallContextHandler.class.getName());
+		atom.setInitParameter("cmisVersion", "1.1");
+		context.addServlet(atom, SERVLET_PATH + "/*");
+
+		server = new Server();
+		ServerConnector connector = new ServerConnector(server);
+		connector.setHost(InetAddress.getLoopbackAddress().getHostAddress());
+		connector.setPort(0);
+		server.addConnector(connector);
+		server.setHandler(context);
+		server.start();
+		port = connector.getLocalPort();
+	}
+
+	/**
+	 * Creates a client with the given properties on top of those for this
+	 * repository.
+	 */
+	CmisClient createClient(Properties overrides) {
+		Properties properties = new Properties();
+		properties.setProperty("cmis.server.hostname", InetAddress.getLoopbackAddress().getHostAddress());
+		properties.setProperty("cmis.server.port", String.valueOf(port));
+		properties.setProperty("cmis.service.path", CONTEXT_PATH + SERVLET_PATH);
+		properties.setProperty("cmis.repository.id", REPOSITORY_ID);
+		// No Alfresco aspects here
+		properties.setProperty("cmis.session.parameter." + SessionParameter.OBJECT_FACTORY_CLASS,
+				ObjectFactoryImpl.class.getName());
+		properties.setProperty("cmis.utils.jmx.enabled", "false");
+		properties.putAll(overrides);
+		return new CmisClient(properties);
+	}
+
+	CmisClient createClient() {
+		return createClient(new Properties());
+	}
+
+	/**
+	 * Creates the folders of a site, and returns its document library.
+	 */
+	Folder createSite(CmisClient client, String siteName) {
+		Session session = client.getSession();
+		Folder sites = getOrCreateFolder(session, session.getRootFolder(), "Sites");
+		Folder site = getOrCreateFolder(session, sites, siteName);
+		return getOrCreateFolder(session, site, "documentLibrary");
+	}
+
+	Folder createFolder(Folder parent, String name) {
+		Map<String, Object> properties = new HashMap<String, Object>();
+		properties.put(PropertyIds.NAME, name);
+		properties.put(PropertyIds.OBJECT_TYPE_ID, "cmis:folder");
+		return parent.createFolder(properties);
+	}
+
+	/**
+	 * Creates the issue list of a site (and its data list container), as
+	 * Share would, and returns it.
+	 */
+	Folder createIssueList(CmisClient client, String siteName) {
+		Session session = client.getSession();
+		Folder site = createSite(client, siteName).getFolderParent();
+		Folder container = getOrCreateFolder(session, site, "dataLists");
+		Map<String, Object> properties = new HashMap<String, Object>();
+		properties.put(PropertyIds.NAME, "Issues");
+		properties.put(PropertyIds.OBJECT_TYPE_ID, "F:dl:dataList");
+		properties.put("dl:dataListItemType", "dl:issue");
+		return container.createFolder(properties);
+	}
+
+	/**
+	 * Creates the data list, issue and association types. Clients created
+	 * before then do not see them.
+	 */
+	void createTypes(CmisClient client) {
+		Session session = client.getSession();
+
+		FolderTypeDefinitionImpl dataList = new FolderTypeDefinitionImpl();
+		define(dataList, "F:dl:dataList", "dl:dataList", BaseTypeId.CMIS_FOLDER);
+		dataList.addPropertyDefinition(stringProperty("dl:dataListItemType"));
+		session.createType(dataList);
+
+		DocumentTypeDefinitionImpl issue = new DocumentTypeDefinitionImpl();
+		define(issue, ISSUE_TYPE, "dl:issue", BaseTypeId.CMIS_DOCUMENT);
+		issue.setContentStreamAllowed(ContentStreamAllowed.ALLOWED);
+		issue.setIsVersionable(false);
+		issue.addPropertyDefinition(stringProperty(ISSUE_ID));
+		session.createType(issue);
+
+		RelationshipTypeDefinitionImpl references = new RelationshipTypeDefinitionImpl();
+		define(references, "R:" + REFERENCES, REFERENCES, BaseTypeId.CMIS_RELATIONSHIP);
+		references.setIsFileable(false);
+		session.createType(references);
+
+		RelationshipTypeDefinitionImpl issueLinks = new RelationshipTypeDefinitionImpl();
+		define(issueLinks, "R:" + ISSUE_LINKS, ISSUE_LINKS, BaseTypeId.CMIS_RELATIONSHIP);
+		issueLinks.setIsFileable(false);
+		issueLinks.setAllowedSourceTypes(Collections.singletonList(ISSUE_TYPE));
+		issueLinks.setAllowedTargetTypes(Collections.singletonList(ISSUE_TYPE));
+		session.createType(issueLinks);
+	}
+
+	private static void define(AbstractTypeDefinition type, String id, String queryName, BaseTypeId baseType) {
+		type.setId(id);
+		type.setLocalName(queryName.substring(queryName.indexOf(':') + 1));
+		type.setLocalNamespace(queryName.substring(0, queryName.indexOf(':')));
+		type.setQueryName(queryName);
+		type.setDisplayName(queryName);
+		type.setDescription(queryName);
+		type.setBaseTypeId(baseType);
+		type.setParentTypeId(baseType.value());
+		type.setIsCreatable(true);
+		type.setIsFileable(true);
+		type.setIsQueryable(true);
+		type.setIsFulltextIndexed(false);
+		type.setIsIncludedInSupertypeQuery(true);
+		type.setIsControllablePolicy(false);
+		type.setIsControllableAcl(false);
+	}
+
+	private static PropertyStringDefinitionImpl stringProperty(String id) {
+		PropertyStringDefinitionImpl property = new PropertyStringDefinitionImpl();
+		property.setId(id);
+		property.setLocalName(id.substring(id.indexOf(':') + 1));
+		property.setQueryName(id);
+		property.setDisplayName(id);
+		property.setPropertyType(PropertyType.STRING);
+		property.setCardinality(Cardinality.SINGLE);
+		property.setUpdatability(Updatability.READWRITE);
+		property.setIsQueryable(true);
+		property.setIsOrderable(true);
+		property.setIsInherited(false);
+		property.setIsRequired(false);
+		return property;
+	}
+
+	private Folder getOrCreateFolder(Session session, Folder parent, String name) {
+		String path = parent.isRootFolder() ? "/" + name : parent.getPath() + "/" + name;
+		try {
+			return (Folder) session.getObjectByPath(path);
+		} catch (CmisObjectNotFoundException ex) {
+			return createFolder(parent, name);
+		}
+	}
+
+	/**
+	 * Makes the next createRelationship create the relationship, then answer
+	 * 503 Service Unavailable as if the response had been lost.
+	 */
+	void loseNextRelationshipResponse() {
+		loseRelationshipResponse.set(true);
+	}
+
+	void stop() throws Exception {
+		server.stop();
+	}
+
+	/**
+	 * Names the relationships created, which the InMemory server insists on
+	 * (and Alfresco does itself), and loses a response when told to.
+	 */
+	private static class NamingRelationships extends AbstractCmisServiceWrapper {
+
+		private final AtomicBoolean loseResponse;
+
+		NamingRelationships(CmisService service, AtomicBoolean loseResponse) {
+			super(service);
+			this.loseResponse = loseResponse;
+		}
+
+		public String createRelationship(String repositoryId,
+				org.apache.chemistry.opencmis.commons.data.Properties properties, List<String> policies, Acl addAces,
+				Acl removeAces, ExtensionsData extension) {
+			List<PropertyData<?>> named = new ArrayList<PropertyData<?>>(properties.getPropertyList());
+			if (!properties.getProperties().containsKey(PropertyIds.NAME)) {
+				named.add(new PropertyStringImpl(PropertyIds.NAME, "relationship"));
+			}
+			String id = super.createRelationship(repositoryId, new PropertiesImpl(named), policies, addAces,
+					removeAces, extension);
+			if (loseResponse.compareAndSet(true, false)) {
+				throw new CmisServiceUnavailableException("Response lost");
+			}
+			return id;
+		}
+	}
+}
@@ -0,0 +1,117 @@
+package com.tribloom.cmis;
+
+import java.util.Calendar;
+import java.util.GregorianCalendar;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.TimeZone;
+
+import junit.framework.TestCase;
+
+public class TestAlfrescoItem extends TestCase {
+
+	public void testPropertiesBehaveLikeAMap() {
+		AlfrescoItem item = new AlfrescoItem();
+		item.setName(" report.pdf ");
+		item.setType("cmis:document");
+		item.addProperty("cm:title", " Report ");
+		Map<String, String> properties = item.getProperties();
+		assertEquals(3, properties.size());
+		assertEquals("report.pdf", item.getName());
+		assertEquals("Report", properties.get("cm:title"));
+		assertTrue(properties.containsKey("cm:title"));
+		assertNull(properties.get("cm:description"));
+
+		Map<String, String> copy = new HashMap<String, String>(properties);
+		assertEquals(copy, properties);
+		assertEquals(copy.hashCode(), properties.hashCode());
+
+		assertEquals("Report", properties.put("cm:title", "Final"));
+		assertEquals("Final", properties.remove("cm:title"));
+		assertEquals(2, properties.size());
+		assertNull(properties.remove("cm:title"));
+
+		Iterator<Map.Entry<String, String>> entries = properties.entrySet().iterator();
+		entries.next().setValue("renamed.pdf");
+		entries.remove();
+		assertEquals(1, properties.size());
+		assertNull(item.getName());
+		assertEquals("cmis:document", item.getType());
+	}
+
+	public void testStringsRoundTrip() {
+		String[] values = { "42", "-7", "0", "007", "-0", "+5", "1.5", "1.50", "1e3", "true", "True", "",
+				"9223372036854775807", "9223372036854775808", "2014-03-01T12:30:00.000Z", "2014-03-01T12:30:00Z",
+				"2014-03-01T12:30:00.000+01:00", "2014-02-30T12:30:00.000Z", "NaN", " spaced " };
+		AlfrescoItem item = new AlfrescoItem();
+		for (int i = 0; i < values.length; i++) {
+			item.getProperties().put("p" + i, values[i]);
+		}
+		for (int i = 0; i < values.length; i++) {
+			assertEquals(values[i], item.getProperties().get("p" + i));
+		}
+		assertEquals(Long.valueOf(42), item.getPropertyValue("p0"));
+		assertEquals("007", item.getPropertyValue("p3"));
+		assertEquals(Double.valueOf(1.5), item.getPropertyValue("p6"));
+		assertEquals("1.50", item.getPropertyValue("p7"));
+		assertEquals(Boolean.TRUE, item.getPropertyValue("p9"));
+		assertTrue(item.getPropertyValue("p14") instanceof Calendar);
+		assertEquals("2014-03-01T12:30:00.000+01:00", item.getPropertyValue("p16"));
+	}
+
+	public void testTypedValues() {
+		Calendar date = new GregorianCalendar(TimeZone.getTimeZone("UTC"));
+		date.setTimeInMillis(0);
+		date.set(2020, Calendar.JANUARY, 2, 3, 4, 5);
+		AlfrescoItem item = new AlfrescoItem();
+		item.setProperty("cm:created", date);
+		item.setProperty("w:count", 3);
+		item.setProperty("w:rating", 4.5f);
+		item.setProperty("w:published", Boolean.FALSE);
+		assertEquals("2020-01-02T03:04:05.000Z", item.getProperties().get("cm:created"));
+		assertEquals(date.getTimeInMillis(), item.getDateProperty("cm:created").getTimeInMillis());
+		assertEquals("3", item.getProperties().get("w:count"));
+		assertEquals(Long.valueOf(3), item.getPropertyValue("w:count"));
+		assertEquals("4.5", item.getProperties().get("w:rating"));
+		assertEquals("false", item.getProperties().get("w:published"));
+		assertNull(item.getDateProperty("w:count"));
+		try {
+			item.setProperty("w:other", new Object());
+			fail("Expected IllegalArgumentException");
+		} catch (IllegalArgumentException ex) {
+			// Expected
+		}
+	}
+
+	public void testItemsShareSchemas() {
+		AlfrescoItem first = new AlfrescoItem();
+		AlfrescoItem second = new AlfrescoItem();
+		for (AlfrescoItem item : new AlfrescoItem[] { first, second }) {
+			item.setName("name");
+			item.setType("D:cm:content");
+			for (int i = 0; i < 20; i++) {
+				item.addProperty("w:field" + i, "value" + i);
+			}
+		}
+		CompactProperties one = (CompactProperties) first.getProperties();
+		CompactProperties two = (CompactProperties) second.getProperties();
+		assertSame(one.getSchema(), two.getSchema());
+		assertEquals("value19", two.get("w:field19"));
+
+		// Removing a key moves to the schema of the remaining keys
+		one.remove("w:field0");
+		two.remove("w:field0");
+		assertSame(one.getSchema(), two.getSchema());
+		assertEquals(21, one.size());
+	}
+
+	public void testAssociations() {
+		AlfrescoItem item = new AlfrescoItem();
+		item.addAssociation("cm:references", "workspace://SpacesStore/1");
+		Map<String, String> associations = new HashMap<String, String>();
+		associations.put("cm:attachments", "workspace://SpacesStore/2");
+		item.setAssociations(associations);
+		assertEquals(associations, item.getAssociations());
+	}
+}
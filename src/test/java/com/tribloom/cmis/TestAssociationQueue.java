@@ -0,0 +1,130 @@
+package com.tribloom.cmis;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.chemistry.opencmis.client.api.Document;
+import org.apache.chemistry.opencmis.client.api.Folder;
+import org.apache.chemistry.opencmis.client.api.Relationship;
+import org.apache.chemistry.opencmis.client.api.Session;
+import org.apache.chemistry.opencmis.commons.PropertyIds;
+import org.apache.chemistry.opencmis.commons.enums.RelationshipDirection;
+
+import junit.framework.TestCase;
+
+public class TestAssociationQueue extends TestCase {
+
+	private InMemoryRepository repository;
+	private CmisClient client;
+	private Folder library;
+
+	protected void setUp() throws Exception {
+		repository = new InMemoryRepository();
+		CmisClient admin = repository.createClient();
+		library = repository.createSite(admin, "test");
+		repository.createTypes(admin);
+		admin.close();
+		// Created after the types, so it sees them
+		client = repository.createClient();
+	}
+
+	protected void tearDown() throws Exception {
+		client.close();
+		repository.stop();
+	}
+
+	public void testCreatesAssociationsToKeysAndNodeRefs() {
+		String source = createDocument("source.txt");
+		String keyed = createDocument("keyed.txt");
+		String target = createDocument("target.txt");
+		AssociationQueue queue = client.createAssociationQueue();
+		queue.add(source, true, InMemoryRepository.REFERENCES, "key");
+		queue.add(source, true, InMemoryRepository.REFERENCES, target);
+		queue.add(source, true, InMemoryRepository.REFERENCES, " " + target + " ");
+		assertEquals(3, queue.size());
+
+		AssociationReport report = queue.flush(Collections.singletonMap("key", keyed), 2);
+		assertEquals(2, report.getCreated());
+		assertEquals(0, report.getFailed());
+		assertEquals(0, queue.size());
+		Set<String> expected = new HashSet<String>();
+		expected.add(keyed);
+		expected.add(target);
+		assertEquals(expected, getTargets(source));
+	}
+
+	public void testSkipsExistingAssociations() {
+		String source = createDocument("source.txt");
+		String target = createDocument("target.txt");
+		AssociationQueue queue = client.createAssociationQueue();
+		queue.add(source, true, InMemoryRepository.REFERENCES, target);
+		assertEquals(1, queue.flush(null, 1).getCreated());
+
+		queue = client.createAssociationQueue();
+		queue.add(source, false, InMemoryRepository.REFERENCES, target);
+		AssociationReport report = queue.flush(null, 1);
+		assertEquals(0, report.getCreated());
+		assertEquals(1, report.getSkipped());
+		assertEquals(1, getTargets(source).size());
+	}
+
+	public void testCountsUnresolvedTargets() {
+		String source = createDocument("source.txt");
+		String target = createDocument("target.txt");
+		AssociationQueue queue = client.createAssociationQueue();
+		queue.add(source, true, InMemoryRepository.REFERENCES, "no-such-key");
+		queue.add(source, true, InMemoryRepository.REFERENCES, "workspace://SpacesStore/no-such-node");
+		queue.add(source, true, InMemoryRepository.REFERENCES, target);
+		AssociationReport report = queue.flush(new HashMap<String, String>(), 2);
+		assertEquals(1, report.getCreated());
+		assertEquals(2, report.getUnresolved());
+		assertEquals(0, report.getFailed());
+	}
+
+	public void testCountsDisallowedAssociationsAsFailed() {
+		String source = createDocument("source.txt");
+		String target = createDocument("target.txt");
+		AssociationQueue queue = client.createAssociationQueue();
+		// Neither is an issue
+		queue.add(source, false, InMemoryRepository.ISSUE_LINKS, target);
+		AssociationReport report = queue.flush(null, 1);
+		assertEquals(0, report.getCreated());
+		assertEquals(0, report.getSkipped());
+		assertEquals(1, report.getFailed());
+	}
+
+	public void testChecksBeforeRetryingCreate() {
+		String source = createDocument("source.txt");
+		String target = createDocument("target.txt");
+		AssociationQueue queue = client.createAssociationQueue();
+		queue.add(source, true, InMemoryRepository.REFERENCES, target);
+		repository.loseNextRelationshipResponse();
+		AssociationReport report = queue.flush(null, 1);
+		assertEquals(1, report.getCreated());
+		assertEquals(0, report.getFailed());
+		Session session = client.getSession();
+		assertEquals(1, session.getRelationships(session.createObjectId(source), true, RelationshipDirection.SOURCE,
+				null, session.getDefaultContext()).getTotalNumItems());
+	}
+
+	private String createDocument(String name) {
+		Map<String, Object> properties = new HashMap<String, Object>();
+		properties.put(PropertyIds.NAME, name);
+		properties.put(PropertyIds.OBJECT_TYPE_ID, "cmis:document");
+		Document document = library.createDocument(properties, null, null);
+		return document.getId();
+	}
+
+	private Set<String> getTargets(String sourceId) {
+		Session session = client.getSession();
+		Set<String> targets = new HashSet<String>();
+		for (Relationship relationship : session.getRelationships(session.createObjectId(sourceId), true,
+				RelationshipDirection.SOURCE, null, session.getDefaultContext())) {
+			targets.add(relationship.getTargetId().getId());
+		}
+		return targets;
+	}
+}
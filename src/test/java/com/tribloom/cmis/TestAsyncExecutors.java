@@ -0,0 +1,60 @@
+package com.tribloom.cmis;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import junit.framework.TestCase;
+
+public class TestAsyncExecutors extends TestCase {
+
+	public void testVirtualThreadsWhereAvailable() throws Exception {
+		ExecutorService executor = AsyncExecutors.newVirtualThreadExecutor();
+		boolean available;
+		try {
+			Thread.class.getMethod("ofVirtual");
+			available = true;
+		} catch (NoSuchMethodException ex) {
+			available = false;
+		}
+		assertEquals(available, executor != null);
+		if (executor != null) {
+			assertEquals("ok", run(executor));
+			executor.shutdown();
+		}
+	}
+
+	public void testThreadPool() throws Exception {
+		ExecutorService executor = AsyncExecutors.newThreadPool(2);
+		assertEquals("ok", run(executor));
+		executor.shutdown();
+		assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+	}
+
+	public void testLimiterWaitsForRelease() throws Exception {
+		final ConcurrencyLimiter limiter = new ConcurrencyLimiter(1, 1, 1, 0.5, 2.0);
+		limiter.acquire();
+		final CountDownLatch acquired = new CountDownLatch(1);
+		Thread waiter = new Thread(new Runnable() {
+			public void run() {
+				limiter.acquire();
+				acquired.countDown();
+			}
+		});
+		waiter.start();
+		assertFalse(acquired.await(100, TimeUnit.MILLISECONDS));
+		limiter.release();
+		assertTrue(acquired.await(5, TimeUnit.SECONDS));
+		assertEquals(1, limiter.getInFlight());
+	}
+
+	private static String run(ExecutorService executor) throws Exception {
+		return CompletableFuture.supplyAsync(new Supplier<String>() {
+			public String get() {
+				return "ok";
+			}
+		}, executor).get(5, TimeUnit.SECONDS);
+	}
+}
@@ -0,0 +1,39 @@
+package com.tribloom.cmis;
+
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.TestCase;
+
+public class TestBandwidthLimiter extends TestCase {
+
+	public void testBurstThenRate() {
+		BandwidthLimiter limiter = new BandwidthLimiter(1000);
+		// A second's worth is available at once
+		assertEquals(0, limiter.reserve(1000));
+		// Then each byte costs a millisecond
+		long wait = limiter.reserve(500);
+		assertTrue(wait > TimeUnit.MILLISECONDS.toNanos(450) && wait <= TimeUnit.MILLISECONDS.toNanos(500));
+		wait = limiter.reserve(500);
+		assertTrue(wait > TimeUnit.MILLISECONDS.toNanos(950) && wait <= TimeUnit.MILLISECONDS.toNanos(1000));
+	}
+
+	public void testLimitsThroughput() throws Exception {
+		BandwidthLimiter limiter = new BandwidthLimiter(100000);
+		limiter.reserve(100000);
+		long start = System.nanoTime();
+		for (int i = 0; i < 10; i++) {
+			limiter.acquire(2000);
+		}
+		long millis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+		assertTrue("Took " + millis + " ms", millis >= 180);
+	}
+
+	public void testRejectsZero() {
+		try {
+			new BandwidthLimiter(0);
+			fail("Expected IllegalArgumentException");
+		} catch (IllegalArgumentException ex) {
+			// Expected
+		}
+	}
+}
@@ -0,0 +1,131 @@
+package com.tribloom.cmis;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+
+import org.apache.chemistry.opencmis.client.api.Document;
+import org.apache.chemistry.opencmis.client.api.Folder;
+
+import junit.framework.TestCase;
+
+public class TestBulkImporter extends TestCase {
+
+	private InMemoryRepository repository;
+	private CmisClient client;
+	private Folder library;
+
+	protected void setUp() throws Exception {
+		repository = new InMemoryRepository();
+		client = repository.createClient();
+		library = repository.createSite(client, "test");
+	}
+
+	protected void tearDown() throws Exception {
+		client.close();
+		repository.stop();
+	}
+
+	public void testPlacesItemsInKeyedDestinations() {
+		List<AlfrescoItem> items = new ArrayList<AlfrescoItem>();
+		items.add(folder("a", "a", null));
+		for (int i = 0; i < 10; i++) {
+			items.add(document("doc" + i + ".txt", "a"));
+		}
+		items.add(folder("b", "b", "a"));
+		items.add(document("nested.txt", "b"));
+
+		List<ImportResult> results = new BulkImporter(client, 4).importItems(items);
+		assertEquals(items.size(), results.size());
+		for (int i = 0; i < items.size(); i++) {
+			assertSame(items.get(i), results.get(i).getItem());
+			assertEquals(ImportResult.Status.CREATED, results.get(i).getStatus());
+		}
+		Folder a = (Folder) client.getSession().getObjectByPath(library.getPath() + "/a");
+		assertEquals(11, a.getChildren().getTotalNumItems());
+		assertEquals(results.get(0).getNodeRef(), a.getId());
+		Folder b = (Folder) client.getSession().getObjectByPath(library.getPath() + "/a/b");
+		assertEquals(1, b.getChildren().getTotalNumItems());
+	}
+
+	public void testReportsEachItemOnFailure() {
+		List<AlfrescoItem> items = new ArrayList<AlfrescoItem>();
+		AlfrescoItem broken = folder("broken", "broken", null);
+		broken.setType("cmis:noSuchType");
+		items.add(broken);
+		items.add(document("orphan.txt", "broken"));
+		items.add(document("fine.txt", null));
+
+		List<ImportResult> results = new BulkImporter(client, 2).importItems(items);
+		assertEquals(3, results.size());
+		assertTrue(results.get(0).isFailed());
+		assertTrue(results.get(1).isFailed());
+		assertTrue(results.get(1).getMessage().startsWith("Destination was not imported"));
+		assertEquals(ImportResult.Status.CREATED, results.get(2).getStatus());
+
+		// Found by name in its destination
+		items.set(2, document("fine.txt", null));
+		results = new BulkImporter(client, 2).importItems(items.subList(2, 3));
+		assertEquals(ImportResult.Status.SKIPPED, results.get(0).getStatus());
+	}
+
+	public void testProbesMimetypeOfOverwrittenContent() throws IOException {
+		new BulkImporter(client, 1).importItems(Arrays.asList(document("page.html", null), 
+				document("data.bin", null)));
+		Properties properties = new Properties();
+		properties.setProperty("cmis.utils.overwrite", "true");
+		CmisClient overwriting = repository.createClient(properties);
+		try {
+			Path file = Files.createTempFile("page", ".html");
+			Files.write(file, "<html/>".getBytes());
+			AlfrescoItem page = document("page.html", null);
+			page.setMimetype(null);
+			page.setContent(file);
+			AlfrescoItem data = document("data.bin", null);
+			data.setMimetype(null);
+			data.setContent("changed".getBytes());
+
+			List<ImportResult> results = new BulkImporter(overwriting, 1).importItems(Arrays.asList(page, data));
+			assertEquals(ImportResult.Status.UPDATED, results.get(0).getStatus());
+			Document updated = (Document) client.getSession().getObject(results.get(0).getNodeRef());
+			updated.refresh();
+			assertEquals(Files.probeContentType(file), updated.getContentStreamMimeType());
+			assertTrue(results.get(1).isFailed());
+			assertEquals("No mimetype provided", results.get(1).getMessage());
+			Files.delete(file);
+		} finally {
+			overwriting.close();
+		}
+	}
+
+	private AlfrescoItem folder(String name, String key, String destination) {
+		AlfrescoItem item = new AlfrescoItem();
+		item.setName(name);
+		item.setType("cmis:folder");
+		item.setKey(key);
+		place(item, destination);
+		return item;
+	}
+
+	private AlfrescoItem document(String name, String destination) {
+		AlfrescoItem item = new AlfrescoItem();
+		item.setName(name);
+		item.setType("cmis:document");
+		item.setMimetype("text/plain");
+		item.setContent(name.getBytes());
+		place(item, destination);
+		return item;
+	}
+
+	private void place(AlfrescoItem item, String destination) {
+		if (destination != null) {
+			item.setDestination(destination);
+		} else {
+			item.setDestinationObject(library);
+		}
+	}
+}
@@ -0,0 +1,202 @@
+package com.tribloom.cmis;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.chemistry.opencmis.client.api.ItemIterable;
+import org.apache.chemistry.opencmis.client.runtime.util.AbstractPageFetcher;
+import org.apache.chemistry.opencmis.client.runtime.util.CollectionIterable;
+
+import org.apache.chemistry.opencmis.commons.exceptions.CmisConnectionException;
+import org.apache.chemistry.opencmis.commons.exceptions.CmisObjectNotFoundException;
+import org.apache.chemistry.opencmis.commons.exceptions.CmisRuntimeException;
+import org.apache.chemistry.opencmis.commons.exceptions.CmisServiceUnavailableException;
+import org.apache.chemistry.opencmis.commons.exceptions.CmisTooManyRequestsException;
+
+import junit.framework.TestCase;
+
+public class TestCallGuard extends TestCase {
+
+	public void testLimiterIncreasesWhileUsed() {
+		ConcurrencyLimiter limiter = new ConcurrencyLimiter(2, 1, 4, 0.5, 2.0);
+		for (int i = 0; i < 100; i++) {
+			limiter.acquire();
+			limiter.acquire();
+			limiter.release(Operation.GET_OBJECT, System.nanoTime(), 1000, false);
+			limiter.release(Operation.GET_OBJECT, System.nanoTime(), 1000, false);
+		}
+		assertEquals(4, limiter.getLimit());
+		assertEquals(0, limiter.getInFlight());
+	}
+
+	public void testLimiterDecreasesOncePerRoundTrip() {
+		ConcurrencyLimiter limiter = new ConcurrencyLimiter(8, 1, 8, 0.5, 2.0);
+		long start = System.nanoTime();
+		for (int i = 0; i < 3; i++) {
+			limiter.acquire();
+		}
+		for (int i = 0; i < 3; i++) {
+			limiter.release(Operation.QUERY, start, 1000, true);
+		}
+		assertEquals(4, limiter.getLimit());
+		limiter.acquire();
+		limiter.release(Operation.QUERY, System.nanoTime(), 1000, true);
+		assertEquals(2, limiter.getLimit());
+	}
+
+	public void testLimiterDecreasesWhenSlow() {
+		ConcurrencyLimiter limiter = new ConcurrencyLimiter(8, 1, 8, 0.5, 2.0);
+		for (int i = 0; i < 30; i++) {
+			limiter.acquire();
+			limiter.release(Operation.GET_OBJECT, System.nanoTime(), 1000000, false);
+		}
+		assertEquals(8, limiter.getLimit());
+		limiter.acquire();
+		limiter.release(Operation.CREATE_DOCUMENT, System.nanoTime(), 100000000, false);
+		assertEquals(8, limiter.getLimit());
+		limiter.acquire();
+		limiter.release(Operation.GET_OBJECT, System.nanoTime(), 5000000, false);
+		assertEquals(4, limiter.getLimit());
+	}
+
+	public void testCircuitBreaker() throws InterruptedException {
+		CircuitBreaker breaker = new CircuitBreaker(2, 50);
+		breaker.onFailure();
+		assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+		breaker.onFailure();
+		assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+		assertFalse(breaker.allowRequest());
+		Thread.sleep(60);
+		assertTrue(breaker.allowRequest());
+		assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+		assertFalse(breaker.allowRequest());
+		breaker.onFailure();
+		assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+		Thread.sleep(60);
+		assertTrue(breaker.allowRequest());
+		breaker.onSuccess();
+		assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+		assertTrue(breaker.allowRequest());
+	}
+
+	public void testRetriesTransientFailures() {
+		CallGuard guard = createGuard(10);
+		final AtomicInteger calls = new AtomicInteger();
+		String result = guard.execute(Operation.GET_OBJECT, new CallGuard.Call<String>() {
+			public String call() {
+				if (calls.incrementAndGet() < 3) {
+					throw new CmisServiceUnavailableException("busy");
+				}
+				return "ok";
+			}
+		});
+		assertEquals("ok", result);
+		assertEquals(3, calls.get());
+		assertEquals(2, guard.getMetrics().getStats(Operation.GET_OBJECT).getErrorCount());
+		assertEquals(0, guard.getLimiter().getInFlight());
+	}
+
+	public void testDoesNotRetryOtherFailures() {
+		CallGuard guard = createGuard(10);
+		final AtomicInteger calls = new AtomicInteger();
+		try {
+			guard.execute(Operation.GET_OBJECT, new CallGuard.Call<String>() {
+				public String call() {
+					calls.incrementAndGet();
+					throw new CmisObjectNotFoundException("missing");
+				}
+			});
+			fail("Expected the failure to be thrown");
+		} catch (CmisObjectNotFoundException expected) {
+		}
+		assertEquals(1, calls.get());
+		try {
+			guard.execute(Operation.CREATE_ITEM, new CallGuard.Call<String>() {
+				public String call() {
+					calls.incrementAndGet();
+					throw new CmisConnectionException("timeout");
+				}
+			});
+			fail("Expected the failure to be thrown");
+		} catch (CmisConnectionException expected) {
+		}
+		assertEquals(2, calls.get());
+		assertEquals(0, guard.getLimiter().getInFlight());
+	}
+
+	public void testServerErrorsAreNotOverload() {
+		CallGuard guard = createGuard(2);
+		final AtomicInteger calls = new AtomicInteger();
+		for (int i = 0; i < 5; i++) {
+			try {
+				guard.execute(Operation.GET_OBJECT, new CallGuard.Call<String>() {
+					public String call() {
+						calls.incrementAndGet();
+						throw new CmisRuntimeException("Integrity violation");
+					}
+				});
+				fail("Expected the failure to be thrown");
+			} catch (CmisRuntimeException expected) {
+			}
+		}
+		// Neither retried, nor a cut in the limit, nor counted by the breaker
+		assertEquals(5, calls.get());
+		assertEquals(4, guard.getLimiter().getLimit());
+		assertEquals(CircuitBreaker.State.CLOSED, guard.getBreaker().getState());
+		assertFalse(CallGuard.isTransient(new CmisRuntimeException("500")));
+		assertTrue(CallGuard.isTransient(new CmisTooManyRequestsException("429")));
+	}
+
+	public void testGuardsEachPageOfAListing() {
+		CallGuard guard = createGuard(10);
+		// 25 items, in pages of at most 10, of which the server returns only 7
+		ItemIterable<Integer> listing = new CollectionIterable<Integer>(new AbstractPageFetcher<Integer>(10) {
+			protected Page<Integer> fetchPage(long skipCount) {
+				List<Integer> page = new ArrayList<Integer>();
+				for (long i = skipCount; i < Math.min(25, skipCount + 7); i++) {
+					page.add((int) i);
+				}
+				return new Page<Integer>(page, 25, skipCount + page.size() < 25);
+			}
+		});
+		List<Integer> items = new ArrayList<Integer>();
+		GuardedPages.Page<Integer> page;
+		do {
+			page = GuardedPages.getPage(guard, Operation.GET_CHILDREN, listing, items.size());
+			items.addAll(page.items);
+		} while (page.hasNext());
+		assertEquals(25, items.size());
+		assertEquals(24, items.get(24).intValue());
+		assertEquals(4, guard.getMetrics().getStats(Operation.GET_CHILDREN).getCount());
+	}
+
+	public void testOpenBreakerRefusesCalls() {
+		CallGuard guard = createGuard(2);
+		final AtomicInteger calls = new AtomicInteger();
+		CallGuard.Call<String> failing = new CallGuard.Call<String>() {
+			public String call() {
+				calls.incrementAndGet();
+				throw new CmisConnectionException("down");
+			}
+		};
+		try {
+			guard.execute(Operation.QUERY, failing);
+			fail("Expected the failure to be thrown");
+		} catch (CmisConnectionException expected) {
+		}
+		assertEquals(2, calls.get());
+		assertEquals(CircuitBreaker.State.OPEN, guard.getBreaker().getState());
+		try {
+			guard.execute(Operation.QUERY, failing);
+			fail("Expected the call to be refused");
+		} catch (CmisConnectionException expected) {
+		}
+		assertEquals(2, calls.get());
+	}
+
+	private static CallGuard createGuard(int breakerFailures) {
+		return new CallGuard(new ImportMetrics(), new ConcurrencyLimiter(4, 1, 8, 0.75, 2.0),
+				new CircuitBreaker(breakerFailures, 60000), 3, 1, 5);
+	}
+}
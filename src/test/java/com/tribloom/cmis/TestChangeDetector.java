@@ -0,0 +1,73 @@
+package com.tribloom.cmis;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.Collections;
+import java.util.GregorianCalendar;
+import java.util.TimeZone;
+
+import org.apache.chemistry.opencmis.client.api.Property;
+import org.apache.chemistry.opencmis.client.runtime.PropertyImpl;
+import org.apache.chemistry.opencmis.commons.enums.Cardinality;
+import org.apache.chemistry.opencmis.commons.enums.PropertyType;
+import org.apache.chemistry.opencmis.commons.impl.dataobjects.AbstractPropertyDefinition;
+import org.apache.chemistry.opencmis.commons.impl.dataobjects.PropertyDateTimeDefinitionImpl;
+import org.apache.chemistry.opencmis.commons.impl.dataobjects.PropertyDecimalDefinitionImpl;
+import org.apache.chemistry.opencmis.commons.impl.dataobjects.PropertyIntegerDefinitionImpl;
+import org.apache.chemistry.opencmis.commons.impl.dataobjects.PropertyStringDefinitionImpl;
+
+import junit.framework.TestCase;
+
+public class TestChangeDetector extends TestCase {
+
+	public void testStringValues() {
+		Property<String> title = property(new PropertyStringDefinitionImpl(), "cm:title", "Report");
+		assertTrue(ChangeDetector.isSameValue(title, "Report"));
+		assertFalse(ChangeDetector.isSameValue(title, "Report 2"));
+	}
+
+	public void testMissingValues() {
+		assertTrue(ChangeDetector.isSameValue(null, ""));
+		assertFalse(ChangeDetector.isSameValue(null, "Report"));
+	}
+
+	public void testTypedValues() {
+		GregorianCalendar date = new GregorianCalendar(TimeZone.getTimeZone("UTC"));
+		date.clear();
+		date.set(2013, 0, 1, 12, 0, 0);
+		Property<GregorianCalendar> created = property(new PropertyDateTimeDefinitionImpl(), "cm:created", date);
+		assertTrue(ChangeDetector.isSameValue(created, "2013-01-01T12:00:00.000Z"));
+		assertTrue(ChangeDetector.isSameValue(created, "2013-01-01T13:00:00.000+01:00"));
+		assertFalse(ChangeDetector.isSameValue(created, "2013-01-02T12:00:00.000Z"));
+
+		Property<BigInteger> count = property(new PropertyIntegerDefinitionImpl(), "x:count", BigInteger.valueOf(42));
+		assertTrue(ChangeDetector.isSameValue(count, " 42"));
+		assertFalse(ChangeDetector.isSameValue(count, "forty-two"));
+
+		Property<BigDecimal> price = property(new PropertyDecimalDefinitionImpl(), "x:price", new BigDecimal("1.5"));
+		assertTrue(ChangeDetector.isSameValue(price, "1.50"));
+	}
+
+	public void testHash() throws IOException {
+		assertEquals("e3b0c44298fc1c149afbf4c8996fb92427ae41e4649b934ca495991b7852b855",
+				ChangeDetector.hash(ItemContent.from("")));
+		assertNull(ChangeDetector.hash(ItemContent.forStream(null, 0)));
+	}
+
+	private static <T> Property<T> property(AbstractPropertyDefinition<T> definition, String id, T value) {
+		definition.setId(id);
+		definition.setQueryName(id);
+		definition.setCardinality(Cardinality.SINGLE);
+		if (definition instanceof PropertyStringDefinitionImpl) {
+			definition.setPropertyType(PropertyType.STRING);
+		} else if (definition instanceof PropertyDateTimeDefinitionImpl) {
+			definition.setPropertyType(PropertyType.DATETIME);
+		} else if (definition instanceof PropertyIntegerDefinitionImpl) {
+			definition.setPropertyType(PropertyType.INTEGER);
+		} else if (definition instanceof PropertyDecimalDefinitionImpl) {
+			definition.setPropertyType(PropertyType.DECIMAL);
+		}
+		return new PropertyImpl<T>(definition, Collections.singletonList(value));
+	}
+}
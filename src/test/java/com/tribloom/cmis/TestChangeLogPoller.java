@@ -0,0 +1,171 @@
+package com.tribloom.cmis;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.GregorianCalendar;
+import java.util.List;
+import java.util.function.Supplier;
+
+import org.apache.chemistry.opencmis.client.api.ChangeEvent;
+import org.apache.chemistry.opencmis.client.api.Session;
+import org.apache.chemistry.opencmis.client.runtime.ChangeEventImpl;
+import org.apache.chemistry.opencmis.client.runtime.ChangeEventsImpl;
+import org.apache.chemistry.opencmis.client.runtime.OperationContextImpl;
+import org.apache.chemistry.opencmis.commons.enums.ChangeType;
+import org.apache.chemistry.opencmis.commons.exceptions.CmisInvalidArgumentException;
+import org.apache.chemistry.opencmis.commons.impl.dataobjects.RepositoryInfoImpl;
+import org.apache.chemistry.opencmis.commons.spi.CmisBinding;
+import org.apache.chemistry.opencmis.commons.spi.RepositoryService;
+
+import junit.framework.TestCase;
+
+public class TestChangeLogPoller extends TestCase {
+
+	private Path tokenFile;
+	private FakeLog log;
+	private RecordingListener listener;
+
+	protected void setUp() throws Exception {
+		tokenFile = Files.createTempFile("changes", ".token");
+		Files.delete(tokenFile);
+		log = new FakeLog();
+		listener = new RecordingListener();
+	}
+
+	protected void tearDown() throws Exception {
+		Files.deleteIfExists(tokenFile);
+	}
+
+	public void testStartsAtLatestChangeAndReadsOn() throws Exception {
+		log.append("a", "b");
+		ChangeLogPoller poller = createPoller(tokenFile);
+		assertEquals(0, poller.poll());
+		assertTrue(listener.changed.isEmpty());
+
+		log.append("c", "d", "e");
+		assertEquals(3, poller.poll());
+		assertEquals(Arrays.asList("c", "d", "e"), listener.changed);
+		assertEquals("5", poller.getToken());
+		assertEquals(0, poller.poll());
+	}
+
+	public void testReadsPagesAndResumesFromSavedToken() throws Exception {
+		log.append("a");
+		ChangeLogPoller poller = createPoller(tokenFile);
+		poller.poll();
+		poller.stop();
+
+		// Changes made while no poller ran
+		log.append("b", "c", "d", "e", "f");
+		poller = createPoller(tokenFile);
+		assertEquals(5, poller.poll());
+		assertEquals(Arrays.asList("b", "c", "d", "e", "f"), listener.changed);
+		assertTrue(log.calls >= 3);
+		assertEquals("6", new String(Files.readAllBytes(tokenFile), "UTF-8").trim());
+	}
+
+	public void testDropsEverythingWhenTheLogIsTruncated() throws Exception {
+		Files.write(tokenFile, "1\n".getBytes("UTF-8"));
+		log.append("a", "b", "c");
+		log.truncated = true;
+		ChangeLogPoller poller = createPoller(tokenFile);
+		assertEquals(0, poller.poll());
+		assertEquals(1, listener.lost);
+		assertEquals("3", poller.getToken());
+
+		log.truncated = false;
+		log.append("d");
+		assertEquals(1, poller.poll());
+		assertEquals(Arrays.asList("d"), listener.changed);
+	}
+
+	private ChangeLogPoller createPoller(Path tokenFile) {
+		CallGuard guard = new CallGuard(new ImportMetrics(), new ConcurrencyLimiter(4, 1, 8, 0.75, 2.0),
+				new CircuitBreaker(5, 60000), 0, 1, 5);
+		final Session session = log.createSession();
+		return new ChangeLogPoller(new Supplier<Session>() {
+			public Session get() {
+				return session;
+			}
+		}, guard, listener, tokenFile, 2);
+	}
+
+	private static class RecordingListener implements ChangeLogPoller.Listener {
+		final List<String> changed = new ArrayList<String>();
+		int lost;
+
+		public void changed(ChangeEvent event) {
+			changed.add(event.getObjectId());
+		}
+
+		public void changesLost() {
+			lost++;
+		}
+	}
+
+	/**
+	 * A change log whose tokens count the changes read so far, read through a
+	 * Session that implements only what the poller calls.
+	 */
+	private static class FakeLog implements InvocationHandler {
+		final List<String> ids = new ArrayList<String>();
+		boolean truncated;
+		int calls;
+
+		void append(String... changed) {
+			ids.addAll(Arrays.asList(changed));
+		}
+
+		String latest() {
+			return String.valueOf(ids.size());
+		}
+
+		Session createSession() {
+			return proxy(Session.class);
+		}
+
+		public Object invoke(Object proxy, Method method, Object[] args) {
+			String name = method.getName();
+			if ("getContentChanges".equals(name)) {
+				return getContentChanges((String) args[0], ((Number) args[2]).intValue());
+			} else if ("createOperationContext".equals(name)) {
+				return new OperationContextImpl();
+			} else if ("getBinding".equals(name)) {
+				return proxy(CmisBinding.class);
+			} else if ("getRepositoryService".equals(name)) {
+				return proxy(RepositoryService.class);
+			} else if ("getRepositoryInfo".equals(name)) {
+				RepositoryInfoImpl info = new RepositoryInfoImpl();
+				info.setId("test");
+				info.setLatestChangeLogToken(latest());
+				return info;
+			}
+			throw new UnsupportedOperationException(name);
+		}
+
+		private ChangeEventsImpl getContentChanges(String token, int max) {
+			calls++;
+			if (truncated) {
+				throw new CmisInvalidArgumentException("Invalid change log token: " + token);
+			}
+			int from = Integer.parseInt(token);
+			int to = Math.min(ids.size(), from + max);
+			List<ChangeEvent> events = new ArrayList<ChangeEvent>();
+			for (int i = from; i < to; i++) {
+				ChangeEventImpl event = new ChangeEventImpl(ChangeType.UPDATED, new GregorianCalendar(), ids.get(i),
+						null, null, null);
+				events.add(event);
+			}
+			return new ChangeEventsImpl(String.valueOf(to), events, to < ids.size(), ids.size());
+		}
+
+		private <T> T proxy(Class<T> type) {
+			return type.cast(Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] { type }, this));
+		}
+	}
+}
@@ -0,0 +1,92 @@
+package com.tribloom.cmis;
+
+import org.apache.chemistry.opencmis.client.api.Folder;
+import org.apache.chemistry.opencmis.client.api.Session;
+
+import junit.framework.TestCase;
+
+public class TestChildNameIndex extends TestCase {
+
+	private InMemoryRepository repository;
+	private CmisClient client;
+	private Folder library;
+
+	protected void setUp() throws Exception {
+		repository = new InMemoryRepository();
+		client = repository.createClient();
+		library = repository.createSite(client, "test");
+	}
+
+	protected void tearDown() throws Exception {
+		client.close();
+		repository.stop();
+	}
+
+	public void testIndexesChildrenByName() {
+		Folder folder = createFolderWithChildren("indexed", 5);
+		ChildNameIndex index = createIndex(100);
+		Session session = client.getSession();
+		assertNotNull(index.getChildId(session, folder, "f3"));
+		assertNotNull(index.getChildId(session, folder, "f0"));
+		assertNull(index.getChildId(session, folder, "missing"));
+		assertEquals(1, count(Operation.GET_CHILDREN));
+		assertEquals(0, count(Operation.QUERY));
+
+		index.put(folder.getId(), "added", "id-1");
+		assertEquals("id-1", index.getChildId(session, folder, "added"));
+		index.remove(folder.getId(), "added");
+		assertNull(index.getChildId(session, folder, "added"));
+		index.invalidate(folder.getId());
+		assertNotNull(index.getChildId(session, folder, "f4"));
+		assertEquals(2, count(Operation.GET_CHILDREN));
+	}
+
+	public void testQueriesFoldersTooLargeToIndex() {
+		Folder folder = createFolderWithChildren("large", 5);
+		ChildNameIndex index = createIndex(2);
+		Session session = client.getSession();
+		String id = index.getChildId(session, folder, "f4");
+		assertEquals(((Folder) session.getObjectByPath(folder.getPath() + "/f4")).getId(), id);
+		assertTrue(count(Operation.QUERY) > 0);
+		long queries = count(Operation.QUERY);
+		// Remembered once found
+		assertEquals(id, index.getChildId(session, folder, "f4"));
+		assertEquals(queries, count(Operation.QUERY));
+		assertNull(index.getChildId(session, folder, "missing"));
+	}
+
+	public void testDropsLeastRecentlyUsedFoldersByNames() {
+		Folder first = createFolderWithChildren("first", 5);
+		Folder second = createFolderWithChildren("second", 5);
+		// Room for one folder of five names, not two
+		ChildNameIndex index = createIndex(100, 10);
+		Session session = client.getSession();
+		assertNotNull(index.getChildId(session, first, "f1"));
+		assertNotNull(index.getChildId(session, first, "f2"));
+		assertNotNull(index.getChildId(session, second, "f1"));
+		assertEquals(2, count(Operation.GET_CHILDREN));
+		assertNotNull(index.getChildId(session, first, "f3"));
+		assertEquals(3, count(Operation.GET_CHILDREN));
+	}
+
+	private Folder createFolderWithChildren(String name, int children) {
+		Folder folder = repository.createFolder(library, name);
+		for (int i = 0; i < children; i++) {
+			repository.createFolder(folder, "f" + i);
+		}
+		return folder;
+	}
+
+	private ChildNameIndex createIndex(int maxIndexedChildren) {
+		return createIndex(maxIndexedChildren, 1000);
+	}
+
+	private ChildNameIndex createIndex(int maxIndexedChildren, long maxNames) {
+		return new ChildNameIndex(maxIndexedChildren, new LruCache<String, ChildNameIndex.FolderIndex>(maxNames, 0,
+				ChildNameIndex.WEIGHER), client.getCallGuard());
+	}
+
+	private long count(Operation operation) {
+		return client.getCallGuard().getMetrics().getStats(operation).getCount();
+	}
+}
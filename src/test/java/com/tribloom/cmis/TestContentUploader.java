@@ -0,0 +1,147 @@
+package com.tribloom.cmis;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+import org.apache.chemistry.opencmis.client.api.Document;
+import org.apache.chemistry.opencmis.client.api.Folder;
+import org.apache.chemistry.opencmis.commons.data.ContentStream;
+import org.apache.chemistry.opencmis.commons.exceptions.CmisRuntimeException;
+
+import junit.framework.TestCase;
+
+public class TestContentUploader extends TestCase {
+
+	public void testClosesStreamAfterUpload() throws IOException {
+		TestItemContent.CloseTrackingStream stream = new TestItemContent.CloseTrackingStream("abc".getBytes());
+		Server server = new Server(false);
+		uploader(10).createDocument(server.folder, new HashMap<String, Object>(), "a.txt", "text/plain",
+				ItemContent.forStream(stream, 3), false);
+		assertEquals(1, server.calls.size());
+		assertTrue(stream.closed);
+	}
+
+	public void testClosesStreamWhenCreateFails() throws IOException {
+		TestItemContent.CloseTrackingStream stream = new TestItemContent.CloseTrackingStream("abc".getBytes());
+		Server server = new Server(true);
+		try {
+			uploader(10).createDocument(server.folder, new HashMap<String, Object>(), "a.txt", "text/plain",
+					ItemContent.forStream(stream, 3), false);
+			fail();
+		} catch (CmisRuntimeException expected) {
+		}
+		assertTrue(stream.closed);
+	}
+
+	public void testClosesOneShotContentWhenAppendFails() throws IOException {
+		TestItemContent.CloseTrackingStream stream = new TestItemContent.CloseTrackingStream("0123456789".getBytes());
+		Server server = new Server(false);
+		server.failAppend = true;
+		try {
+			uploader(4).createDocument(server.folder, new HashMap<String, Object>(), "a.txt", "text/plain",
+					ItemContent.forStream(stream, 10), false);
+			fail();
+		} catch (CmisRuntimeException expected) {
+		}
+		assertEquals(2, server.calls.size());
+		assertTrue(stream.closed);
+		assertTrue(server.deleted);
+	}
+
+	public void testDeletesDocumentWhenLastChunkFails() throws IOException {
+		Server server = new Server(false);
+		server.failLastAppend = true;
+		try {
+			uploader(4).createDocument(server.folder, new HashMap<String, Object>(), "a.txt", "text/plain",
+					ItemContent.forBytes("0123456789".getBytes()), false);
+			fail();
+		} catch (CmisRuntimeException expected) {
+		}
+		assertEquals(3, server.calls.size());
+		assertEquals("89", server.calls.get(2));
+		assertTrue(server.deleted);
+	}
+
+	public void testKeepsCompleteDocument() throws IOException {
+		Server server = new Server(false);
+		uploader(4).createDocument(server.folder, new HashMap<String, Object>(), "a.txt", "text/plain",
+				ItemContent.forBytes("0123456789".getBytes()), false);
+		assertEquals(3, server.calls.size());
+		assertFalse(server.deleted);
+	}
+
+	public void testRejectsChunksLargerThanABuffer() {
+		try {
+			uploader(Integer.MAX_VALUE + 1L);
+			fail();
+		} catch (IllegalArgumentException expected) {
+		}
+	}
+
+	private static ContentUploader uploader(long chunkSize) {
+		return new ContentUploader(chunkSize, 1, new CallGuard(new ImportMetrics(),
+				new ConcurrencyLimiter(4, 1, 8, 0.75, 2.0), new CircuitBreaker(5, 60000), 0, 1, 5));
+	}
+
+	/**
+	 * A folder whose createDocument, and a document whose appendContentStream,
+	 * read the content sent (like OpenCMIS, without closing it), then fail if told to.
+	 * Deleting the document (with all its versions) is recorded.
+	 */
+	private static class Server {
+		final List<String> calls = new ArrayList<String>();
+		final Folder folder;
+		boolean failAppend;
+		boolean failLastAppend;
+		boolean deleted;
+
+		Server(final boolean failCreate) {
+			final Document document = (Document) Proxy.newProxyInstance(getClass().getClassLoader(),
+					new Class<?>[] { Document.class }, new InvocationHandler() {
+						public Object invoke(Object proxy, Method method, Object[] args) throws IOException {
+							if ("appendContentStream".equals(method.getName())) {
+								calls.add(read((ContentStream) args[0]));
+								if (failAppend || failLastAppend && Boolean.TRUE.equals(args[1])) {
+									throw new CmisRuntimeException("Append failed");
+								}
+								return null;
+							}
+							if ("delete".equals(method.getName()) && Boolean.TRUE.equals(args[0])) {
+								deleted = true;
+								return null;
+							}
+							throw new UnsupportedOperationException(method.getName());
+						}
+					});
+			folder = (Folder) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] { Folder.class },
+					new InvocationHandler() {
+						public Object invoke(Object proxy, Method method, Object[] args) throws IOException {
+							if ("createDocument".equals(method.getName())) {
+								calls.add(read((ContentStream) args[1]));
+								if (failCreate) {
+									throw new CmisRuntimeException("Create failed");
+								}
+								return document;
+							}
+							throw new UnsupportedOperationException(method.getName());
+						}
+					});
+		}
+
+		private static String read(ContentStream contentStream) throws IOException {
+			InputStream in = contentStream.getStream();
+			StringBuilder read = new StringBuilder();
+			int b;
+			while ((b = in.read()) >= 0) {
+				read.append((char) b);
+			}
+			return read.toString();
+		}
+	}
+}
@@ -0,0 +1,153 @@
+package com.tribloom.cmis;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.chemistry.opencmis.client.api.CmisObject;
+import org.apache.chemistry.opencmis.client.api.Folder;
+
+import junit.framework.TestCase;
+
+public class TestDataListImporter extends TestCase {
+
+	private static final String SITE = "test";
+
+	private InMemoryRepository repository;
+	private CmisClient client;
+	private Folder issues;
+
+	protected void setUp() throws Exception {
+		repository = new InMemoryRepository();
+		CmisClient admin = repository.createClient();
+		repository.createTypes(admin);
+		admin.close();
+		// Created after the types, so it sees them
+		client = repository.createClient();
+		issues = repository.createIssueList(client, SITE);
+	}
+
+	protected void tearDown() throws Exception {
+		client.close();
+		repository.stop();
+	}
+
+	public void testInsertsRows() {
+		List<AlfrescoItem> rows = new ArrayList<AlfrescoItem>();
+		for (int i = 0; i < 10; i++) {
+			rows.add(row("ISS-" + i));
+		}
+		List<ImportResult> results = new DataListImporter(client, 4).importRows(SITE, "dl:issue", rows);
+		assertEquals(10, results.size());
+		for (int i = 0; i < 10; i++) {
+			assertSame(rows.get(i), results.get(i).getItem());
+			assertEquals(ImportResult.Status.CREATED, results.get(i).getStatus());
+		}
+		assertEquals(10, countRows().size());
+	}
+
+	public void testSkipsDuplicates() {
+		DataListImporter importer = new DataListImporter(client, 4);
+		importer.setUniqueProperty(InMemoryRepository.ISSUE_ID);
+		List<AlfrescoItem> rows = new ArrayList<AlfrescoItem>();
+		for (int i = 0; i < 12; i++) {
+			rows.add(row("ISS-" + (i % 4)));
+		}
+		List<ImportResult> results = importer.importRows(SITE, "dl:issue", rows);
+		int created = 0;
+		for (ImportResult result : results) {
+			if (result.getStatus() == ImportResult.Status.CREATED) {
+				created++;
+			} else {
+				assertEquals(ImportResult.Status.SKIPPED, result.getStatus());
+				assertNotNull(result.getNodeRef());
+			}
+		}
+		assertEquals(4, created);
+
+		// Later batches, and new importers, find the rows already in the list
+		rows.add(row("ISS-4"));
+		DataListImporter other = new DataListImporter(client, 2);
+		other.setUniqueProperty(InMemoryRepository.ISSUE_ID);
+		results = other.importRows(SITE, "dl:issue", rows);
+		for (int i = 0; i < 12; i++) {
+			assertEquals(ImportResult.Status.SKIPPED, results.get(i).getStatus());
+		}
+		assertEquals(ImportResult.Status.CREATED, results.get(12).getStatus());
+		Map<String, Integer> counts = countRows();
+		assertEquals(5, counts.size());
+		for (Integer count : counts.values()) {
+			assertEquals(1, count.intValue());
+		}
+	}
+
+	public void testInsertsDuplicateWhenFirstRowFails() {
+		DataListImporter importer = new DataListImporter(client, 4);
+		importer.setUniqueProperty(InMemoryRepository.ISSUE_ID);
+		List<AlfrescoItem> rows = new ArrayList<AlfrescoItem>();
+		for (int i = 0; i < 20; i++) {
+			// The first row with each value can't be created
+			AlfrescoItem broken = row("ISS-" + i);
+			broken.addProperty("dl:noSuchProperty", "x");
+			rows.add(broken);
+			rows.add(row("ISS-" + i));
+		}
+		List<ImportResult> results = importer.importRows(SITE, "dl:issue", rows);
+		for (int i = 0; i < 20; i++) {
+			// Failed, or skipped if the second row got to the value first
+			assertFalse(results.get(2 * i).getStatus() == ImportResult.Status.CREATED);
+			assertEquals(ImportResult.Status.CREATED, results.get(2 * i + 1).getStatus());
+		}
+		assertEquals(20, countRows().size());
+	}
+
+	public void testSharesIndexAcrossCalls() throws InterruptedException {
+		final List<AlfrescoItem> rows = new ArrayList<AlfrescoItem>();
+		for (int i = 0; i < 20; i++) {
+			rows.add(row("ISS-" + i));
+		}
+		client.importDataListRows(SITE, "dl:issue", rows.subList(0, 1), InMemoryRepository.ISSUE_ID);
+		long queries = client.getCallGuard().getMetrics().getStats(Operation.QUERY).getCount();
+
+		// Concurrent calls see each other's rows
+		Thread[] threads = new Thread[3];
+		for (int i = 0; i < threads.length; i++) {
+			threads[i] = new Thread() {
+				public void run() {
+					client.importDataListRows(SITE, "dl:issue", rows, InMemoryRepository.ISSUE_ID);
+				}
+			};
+			threads[i].start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		// The index was loaded by the first call only
+		assertEquals(queries, client.getCallGuard().getMetrics().getStats(Operation.QUERY).getCount());
+		Map<String, Integer> counts = countRows();
+		assertEquals(20, counts.size());
+		for (Integer count : counts.values()) {
+			assertEquals(1, count.intValue());
+		}
+	}
+
+	private static AlfrescoItem row(String issueId) {
+		AlfrescoItem row = new AlfrescoItem();
+		row.addProperty(InMemoryRepository.ISSUE_ID, issueId);
+		return row;
+	}
+
+	/**
+	 * Returns the number of rows in the issue list by issue ID.
+	 */
+	private Map<String, Integer> countRows() {
+		Map<String, Integer> counts = new HashMap<String, Integer>();
+		for (CmisObject child : issues.getChildren()) {
+			String issueId = child.getPropertyValue(InMemoryRepository.ISSUE_ID);
+			Integer count = counts.get(issueId);
+			counts.put(issueId, count == null ? 1 : count + 1);
+		}
+		return counts;
+	}
+}
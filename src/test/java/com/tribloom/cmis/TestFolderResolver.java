@@ -0,0 +1,73 @@
+package com.tribloom.cmis;
+
+import org.apache.chemistry.opencmis.client.api.Folder;
+
+import junit.framework.TestCase;
+
+public class TestFolderResolver extends TestCase {
+
+	private InMemoryRepository repository;
+	private CmisClient client;
+	private Folder library;
+
+	protected void setUp() throws Exception {
+		repository = new InMemoryRepository();
+		client = repository.createClient();
+		library = repository.createSite(client, "test");
+	}
+
+	protected void tearDown() throws Exception {
+		client.close();
+		repository.stop();
+	}
+
+	public void testCreatesMissingFolders() {
+		FolderResolver resolver = createResolver(100);
+		Folder c = resolver.resolve(library, "a/b/c", true);
+		assertEquals(library.getPath() + "/a/b/c", c.getPath());
+		assertTrue(resolver.isResolved(c.getId()));
+		long created = count(Operation.CREATE_FOLDER);
+		assertEquals(3, created);
+
+		assertEquals(c.getId(), resolver.resolve(library, "/a/./b/c/", true).getId());
+		assertEquals(created, count(Operation.CREATE_FOLDER));
+		assertNull(resolver.resolve(library, "a/x/y", false));
+		assertEquals(created, count(Operation.CREATE_FOLDER));
+	}
+
+	public void testFindsFoldersCreatedElsewhere() {
+		Folder existing = repository.createFolder(repository.createFolder(library, "a"), "b");
+		FolderResolver resolver = createResolver(100);
+		assertEquals(existing.getId(), resolver.resolve(library, "a/b", true).getId());
+		assertEquals(0, count(Operation.CREATE_FOLDER));
+	}
+
+	public void testForgetsEvictedFolders() {
+		// Room for two folders
+		FolderResolver resolver = createResolver(2);
+		Folder c = resolver.resolve(library, "a/b/c", true);
+		assertEquals(3, count(Operation.CREATE_FOLDER));
+		assertEquals(0, resolver.getResolvingCount());
+		Folder a = resolver.resolve(library, "a", false);
+		assertFalse(resolver.isResolved(a.getId()) && resolver.isResolved(c.getId()) 
+				&& resolver.isResolved(c.getParentId()));
+
+		// Evicted folders are resolved again, not created
+		assertEquals(c.getId(), resolver.resolve(library, "a/b/c", true).getId());
+		assertEquals(3, count(Operation.CREATE_FOLDER));
+	}
+
+	private FolderResolver createResolver(int size) {
+		return new FolderResolver(client, createIndex(100), new LruCache<String, Folder>(size, 0, null), 
+				new LruCache<String, Boolean>(size, 0, null));
+	}
+
+	private ChildNameIndex createIndex(int maxIndexedChildren) {
+		return new ChildNameIndex(maxIndexedChildren, new LruCache<String, ChildNameIndex.FolderIndex>(1000, 0,
+				ChildNameIndex.WEIGHER), client.getCallGuard());
+	}
+
+	private long count(Operation operation) {
+		return client.getCallGuard().getMetrics().getStats(operation).getCount();
+	}
+}
@@ -0,0 +1,104 @@
+package com.tribloom.cmis;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import junit.framework.TestCase;
+
+public class TestImportJournal extends TestCase {
+
+	private Path file;
+
+	protected void setUp() throws Exception {
+		file = Files.createTempFile("import", ".journal");
+		Files.delete(file);
+	}
+
+	protected void tearDown() throws Exception {
+		Files.deleteIfExists(file);
+	}
+
+	public void testAppendAndReopen() throws Exception {
+		ImportJournal journal = new ImportJournal(file);
+		assertEquals(0, journal.size());
+		journal.append("a", ImportResult.Status.CREATED, "workspace://SpacesStore/a");
+		journal.append("b", ImportResult.Status.FAILED, null);
+		assertEquals("workspace://SpacesStore/a", journal.getNodeRef("a"));
+		assertNull(journal.getNodeRef("b"));
+		assertEquals(ImportResult.Status.FAILED, journal.get("b").getStatus());
+		assertNull(journal.get("c"));
+		journal.close();
+
+		journal = new ImportJournal(file);
+		assertEquals(2, journal.size());
+		assertEquals("workspace://SpacesStore/a", journal.getNodeRef("a"));
+		assertEquals(ImportResult.Status.FAILED, journal.get("b").getStatus());
+		journal.append("c", ImportResult.Status.SKIPPED, "workspace://SpacesStore/c");
+		assertEquals("workspace://SpacesStore/c", journal.getNodeRef("c"));
+		journal.close();
+	}
+
+	public void testLastRecordWins() throws Exception {
+		ImportJournal journal = new ImportJournal(file);
+		journal.append("a", ImportResult.Status.FAILED, null);
+		journal.append("a", ImportResult.Status.CREATED, "workspace://SpacesStore/a");
+		assertEquals(1, journal.size());
+		assertEquals(ImportResult.Status.CREATED, journal.get("a").getStatus());
+		journal.close();
+
+		journal = new ImportJournal(file);
+		assertEquals(1, journal.size());
+		assertEquals("workspace://SpacesStore/a", journal.getNodeRef("a"));
+		journal.close();
+	}
+
+	public void testTornRecordIsDropped() throws Exception {
+		ImportJournal journal = new ImportJournal(file);
+		journal.append("a", ImportResult.Status.CREATED, "workspace://SpacesStore/a");
+		journal.append("b", ImportResult.Status.CREATED, "workspace://SpacesStore/b");
+		journal.close();
+		long length = Files.size(file);
+		RandomAccessFile raf = new RandomAccessFile(file.toFile(), "rw");
+		raf.setLength(length - 3);
+		raf.close();
+
+		journal = new ImportJournal(file);
+		assertEquals(1, journal.size());
+		assertNull(journal.get("b"));
+		journal.append("b", ImportResult.Status.UPDATED, "workspace://SpacesStore/b");
+		journal.close();
+
+		journal = new ImportJournal(file);
+		assertEquals(2, journal.size());
+		assertEquals(ImportResult.Status.UPDATED, journal.get("b").getStatus());
+		journal.close();
+	}
+
+	public void testManyKeys() throws Exception {
+		ImportJournal journal = new ImportJournal(file, 10000, Long.MAX_VALUE);
+		for (int i = 0; i < 20000; i++) {
+			journal.append("key-" + i, ImportResult.Status.CREATED, "ref-" + i);
+		}
+		journal.close();
+
+		journal = new ImportJournal(file);
+		assertEquals(20000, journal.size());
+		for (int i = 0; i < 20000; i++) {
+			assertEquals("ref-" + i, journal.getNodeRef("key-" + i));
+		}
+		assertNull(journal.get("key-20000"));
+		journal.close();
+	}
+
+	public void testNotAJournal() throws Exception {
+		Files.write(file, "something else".getBytes("UTF-8"));
+		try {
+			new ImportJournal(file);
+			fail("Opened a file that is not a journal");
+		} catch (IOException ex) {
+			// expected
+		}
+	}
+}
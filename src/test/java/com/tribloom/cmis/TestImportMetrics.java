@@ -0,0 +1,63 @@
+package com.tribloom.cmis;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import junit.framework.TestCase;
+
+public class TestImportMetrics extends TestCase {
+
+	public void testBuckets() {
+		for (long value = 0; value < 100000; value++) {
+			int bucket = LatencyHistogram.bucketOf(value);
+			assertTrue(value <= LatencyHistogram.upperBoundOf(bucket));
+			assertTrue(bucket == 0 || value > LatencyHistogram.upperBoundOf(bucket - 1));
+		}
+		assertEquals(Long.MAX_VALUE, LatencyHistogram.upperBoundOf(LatencyHistogram.bucketOf(Long.MAX_VALUE)));
+	}
+
+	public void testPercentiles() {
+		LatencyHistogram histogram = new LatencyHistogram();
+		assertEquals(0, histogram.getPercentile(50));
+		for (int i = 1; i <= 1000; i++) {
+			histogram.record(i);
+		}
+		assertEquals(1000, histogram.getCount());
+		assertEquals(1000, histogram.getMax());
+		assertEquals(500, histogram.getMean());
+		long p50 = histogram.getPercentile(50);
+		assertTrue("p50=" + p50, p50 >= 500 && p50 <= 500 * 1.125);
+		long p99 = histogram.getPercentile(99);
+		assertTrue("p99=" + p99, p99 >= 990 && p99 <= 1000);
+		assertEquals(1000, histogram.getPercentile(100));
+	}
+
+	public void testTimerAndListener() {
+		ImportMetrics metrics = new ImportMetrics();
+		final AtomicLong failures = new AtomicLong();
+		final AtomicLong bytes = new AtomicLong();
+		metrics.addListener(new MetricsListener() {
+			public void operationCompleted(Operation operation, long nanos, boolean success) {
+				if (!success) {
+					failures.incrementAndGet();
+				}
+			}
+			public void bytesUploaded(long count) {
+				bytes.addAndGet(count);
+			}
+		});
+
+		ImportMetrics.Timer timer = metrics.start(Operation.CREATE_FOLDER);
+		timer.success();
+		timer.stop();
+		metrics.start(Operation.CREATE_FOLDER).stop();
+		metrics.addBytesUploaded(42);
+
+		OperationStats stats = metrics.getStats(Operation.CREATE_FOLDER);
+		assertEquals(2, stats.getCount());
+		assertEquals(1, stats.getErrorCount());
+		assertEquals(1, failures.get());
+		assertEquals(0, metrics.getStats(Operation.QUERY).getCount());
+		assertEquals(42, metrics.getBytesUploaded());
+		assertEquals(42, bytes.get());
+	}
+}
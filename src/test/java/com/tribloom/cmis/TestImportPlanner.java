@@ -0,0 +1,108 @@
+package com.tribloom.cmis;
+
+import java.util.Arrays;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+public class TestImportPlanner extends TestCase {
+
+	public void testGroupsByDestinationHoweverWritten() {
+		AlfrescoItem a = item("a.txt", "cmis:document", null);
+		AlfrescoItem b = item("b.txt", "cmis:document", "x");
+		AlfrescoItem c = item("c.txt", "cmis:document", "/Sites/s/documentLibrary");
+		AlfrescoItem d = item("d.txt", "cmis:document", "/Sites/s/documentLibrary//x/.");
+		ImportPlan plan = new ImportPlanner(false).plan(Arrays.asList(a, b, c, d));
+		assertEquals(2, plan.getGroups().size());
+		assertEquals("/Sites/s/documentLibrary", plan.getGroups().get(0).getDestination());
+		assertEquals(Arrays.asList(a, c), plan.getGroups().get(0).getItems());
+		assertEquals("/Sites/s/documentLibrary/x", plan.getGroups().get(1).getDestination());
+		assertEquals(Arrays.asList(b, d), plan.getGroups().get(1).getItems());
+		assertEquals(Arrays.asList(a, c, b, d), plan.getItems());
+	}
+
+	public void testCollapsesRepeatedWrites() {
+		AlfrescoItem first = item("a.txt", "cmis:document", null);
+		first.addProperty("cm:title", "First");
+		first.addProperty("cm:description", "Kept");
+		first.addAssociation("cm:references", "k1");
+		AlfrescoItem second = item("a.txt", "cmis:document", "/Sites/s/documentLibrary");
+		second.addProperty("cm:title", "Second");
+		second.setContent("v2".getBytes());
+		second.setMimetype("text/plain");
+		second.addAssociation("cm:references", "k2");
+		second.setKey("a");
+
+		ImportPlan plan = new ImportPlanner(true).plan(Arrays.asList(first, second));
+		assertEquals(Arrays.asList(first), plan.getItems());
+		assertEquals(2, plan.getItemCount());
+		assertEquals(1, plan.getCollapsedCount());
+		assertEquals("Second", first.getProperties().get("cm:title"));
+		assertEquals("Kept", first.getProperties().get("cm:description"));
+		assertEquals("text/plain", first.getMimetype());
+		assertEquals("k1,k2", first.getAssociations().get("cm:references"));
+		// The collapsed item's key now names the item it was collapsed into
+		assertEquals("a", first.getKey());
+	}
+
+	public void testKeepsFirstWriteWithoutOverwrite() {
+		AlfrescoItem first = item("a.txt", "cmis:document", null);
+		first.addProperty("cm:title", "First");
+		AlfrescoItem second = item("a.txt", "cmis:document", null);
+		second.addProperty("cm:title", "Second");
+		ImportPlan plan = new ImportPlanner(false).plan(Arrays.asList(first, second));
+		assertEquals(1, plan.getItems().size());
+		assertEquals("First", first.getProperties().get("cm:title"));
+	}
+
+	public void testPlacesContentsInFolderItems() {
+		AlfrescoItem doc = item("d.txt", "cmis:document", "a/b");
+		AlfrescoItem b = item("b", "cmis:folder,P:cm:titled", "a");
+		AlfrescoItem a = item("a", "F:cm:folder", null);
+		ImportPlan plan = new ImportPlanner(false).plan(Arrays.asList(doc, b, a));
+		assertEquals(Arrays.asList(a, b, doc), plan.getItems());
+		assertEquals("plan:/Sites/s/documentLibrary/a", a.getKey());
+		assertEquals(a.getKey(), b.getDestination());
+		assertEquals(b.getKey(), doc.getDestination());
+		assertEquals(1, plan.getGroups().get(0).getFolders());
+	}
+
+	public void testFollowsKeysOfCollapsedItems() {
+		AlfrescoItem folder = item("f", "cmis:folder", null);
+		folder.setKey("f1");
+		AlfrescoItem again = item("f", "cmis:folder", null);
+		again.setKey("f2");
+		AlfrescoItem doc = item("d.txt", "cmis:document", "f2");
+		List<AlfrescoItem> items = Arrays.asList(folder, again, doc);
+		ImportPlan plan = new ImportPlanner(false).plan(items);
+		assertEquals(Arrays.asList(folder, doc), plan.getItems());
+		assertEquals("f1", doc.getDestination());
+		assertEquals("/Sites/s/documentLibrary/f", plan.getGroups().get(1).getDestination());
+	}
+
+	public void testEstimatesRoundTrips() {
+		AlfrescoItem a = item("a.txt", "cmis:document", "x/y");
+		AlfrescoItem b = item("b.txt", "cmis:document", "x");
+		b.addAssociation("cm:references", "workspace://SpacesStore/1,workspace://SpacesStore/2");
+		ImportPlan plan = new ImportPlanner(false).plan(Arrays.asList(a, b, item("a.txt", "cmis:document", "x/y")));
+		// Site folder and document library
+		int roundTrips = 2;
+		// x: resolved, name index, one item with two associations
+		roundTrips += 1 + 1 + 1 + 2;
+		// y: resolved below x, name index, one item
+		roundTrips += 1 + 1 + 1;
+		assertEquals(roundTrips, plan.getEstimatedRoundTrips());
+		assertTrue(plan.toString().startsWith("3 items in 2 destinations, 1 collapsed"));
+	}
+
+	private static AlfrescoItem item(String name, String type, String destination) {
+		AlfrescoItem item = new AlfrescoItem();
+		item.setName(name);
+		item.setType(type);
+		item.setSiteName("s");
+		if (destination != null) {
+			item.setDestination(destination);
+		}
+		return item;
+	}
+}
@@ -0,0 +1,89 @@
+package com.tribloom.cmis;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import junit.framework.TestCase;
+
+public class TestItemContent extends TestCase {
+
+	public void testStringContent() throws IOException {
+		ItemContent content = ItemContent.from("Hello world");
+		assertEquals(11, content.getLength());
+		assertTrue(content.isRepeatable());
+		assertEquals("world", read(content.openStream(6)));
+		assertEquals("Hello world", read(content.openStream(0)));
+	}
+
+	public void testPathContent() throws IOException {
+		Path file = Files.createTempFile("cmis-utils", ".txt");
+		try {
+			Files.write(file, "0123456789".getBytes());
+			ItemContent content = ItemContent.from(file);
+			assertEquals(10, content.getLength());
+			assertEquals("789", read(content.openStream(7)));
+		} finally {
+			Files.delete(file);
+		}
+	}
+
+	public void testStreamContentIsReadOnce() throws IOException {
+		ItemContent content = ItemContent.forStream(new ByteArrayInputStream("abc".getBytes()), 3);
+		assertFalse(content.isRepeatable());
+		assertEquals("abc", read(content.openStream(0)));
+		try {
+			content.openStream(0);
+			fail("Stream content should only open once");
+		} catch (IOException expected) {
+		}
+	}
+
+	public void testDiscardClosesUnreadStream() throws IOException {
+		CloseTrackingStream stream = new CloseTrackingStream("abc".getBytes());
+		ItemContent content = ItemContent.forStream(stream, 3);
+		content.discard();
+		assertTrue(stream.closed);
+		try {
+			content.openStream(0);
+			fail("Discarded content should not open");
+		} catch (IOException expected) {
+		}
+		// Repeatable content has nothing to release
+		ItemContent.from("abc").discard();
+	}
+
+	public void testUnsupportedContent() {
+		assertNull(ItemContent.from(Integer.valueOf(1)));
+		assertNull(ItemContent.from(null));
+	}
+
+	static class CloseTrackingStream extends ByteArrayInputStream {
+		boolean closed;
+
+		CloseTrackingStream(byte[] bytes) {
+			super(bytes);
+		}
+		public void close() throws IOException {
+			closed = true;
+			super.close();
+		}
+	}
+
+	private static String read(InputStream in) throws IOException {
+		try {
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			byte[] buffer = new byte[4];
+			int count;
+			while ((count = in.read(buffer)) >= 0) {
+				out.write(buffer, 0, count);
+			}
+			return out.toString();
+		} finally {
+			in.close();
+		}
+	}
+}
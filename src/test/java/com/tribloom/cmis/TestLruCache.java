@@ -0,0 +1,80 @@
+package com.tribloom.cmis;
+
+import junit.framework.TestCase;
+
+public class TestLruCache extends TestCase {
+
+	public void testEvictsLeastRecentlyUsed() {
+		Cache<String, String> cache = new LruCache<String, String>(2);
+		cache.put("a", "1");
+		cache.put("b", "2");
+		assertEquals("1", cache.get("a"));
+		cache.put("c", "3");
+		assertNull(cache.get("b"));
+		assertEquals("1", cache.get("a"));
+		assertEquals("3", cache.get("c"));
+		assertEquals(2, cache.size());
+		assertEquals(1, cache.getStats().getEvictionCount());
+	}
+
+	public void testWeightBound() {
+		Cache<String, String> cache = new LruCache<String, String>(10, 0, new LruCache.Weigher<String, String>() {
+			public int weigh(String key, String value) {
+				return value.length();
+			}
+		});
+		cache.put("a", "12345");
+		cache.put("b", "12345");
+		assertEquals(2, cache.size());
+		cache.put("c", "1");
+		assertNull(cache.get("a"));
+		assertEquals(2, cache.size());
+	}
+
+	public void testKeepsEntryHeavierThanTheCache() {
+		Cache<String, String> cache = new LruCache<String, String>(10, 0, new LruCache.Weigher<String, String>() {
+			public int weigh(String key, String value) {
+				return value.length();
+			}
+		});
+		cache.put("a", "1");
+		cache.put("b", "123456789012");
+		assertNull(cache.get("a"));
+		assertEquals("123456789012", cache.get("b"));
+		cache.put("c", "1");
+		assertNull(cache.get("b"));
+		assertEquals("1", cache.get("c"));
+	}
+
+	public void testExpiry() throws InterruptedException {
+		Cache<String, String> cache = new LruCache<String, String>(10, 20, null);
+		cache.put("a", "1");
+		assertEquals("1", cache.get("a"));
+		Thread.sleep(40);
+		assertNull(cache.get("a"));
+	}
+
+	public void testStats() {
+		Cache<String, String> cache = new LruCache<String, String>(100);
+		cache.put("a", "1");
+		cache.get("a");
+		cache.get("a");
+		cache.get("b");
+		CacheStats stats = cache.getStats();
+		assertEquals(2, stats.getHitCount());
+		assertEquals(1, stats.getMissCount());
+		assertEquals(2.0 / 3, stats.getHitRate(), 0.0001);
+	}
+
+	public void testInvalidate() {
+		Cache<String, String> cache = new LruCache<String, String>(1000);
+		for (int i = 0; i < 500; i++) {
+			cache.put("key" + i, "value" + i);
+		}
+		cache.invalidate("key1");
+		assertNull(cache.get("key1"));
+		assertEquals("value2", cache.get("key2"));
+		cache.invalidateAll();
+		assertEquals(0, cache.size());
+	}
+}
@@ -0,0 +1,130 @@
+package com.tribloom.cmis;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+public class TestManifestReader extends TestCase {
+
+	public void testCsv() {
+		String csv = "name,destination,cm:title,assoc:cm:references,key\r\n"
+				+ "a.txt,/Sites/one/documentLibrary,\"Title, with comma\",b,a\r\n"
+				+ "\n"
+				+ "b.txt,a,\"Two\nlines, \"\"quoted\"\"\",,b\n"
+				+ "c.txt,a";
+		List<AlfrescoItem> items = readAll(new CsvManifestReader(new StringReader(csv), null));
+		assertEquals(3, items.size());
+
+		AlfrescoItem a = items.get(0);
+		assertEquals("a.txt", a.getName());
+		assertEquals("/Sites/one/documentLibrary", a.getDestination());
+		assertEquals("Title, with comma", a.getProperties().get("cm:title"));
+		assertEquals("b", a.getAssociations().get("cm:references"));
+		assertEquals("a", a.getKey());
+
+		AlfrescoItem b = items.get(1);
+		assertEquals("Two\nlines, \"quoted\"", b.getProperties().get("cm:title"));
+		assertTrue(b.getAssociations().isEmpty());
+
+		AlfrescoItem c = items.get(2);
+		assertEquals("c.txt", c.getName());
+		assertEquals("a", c.getDestination());
+		assertNull(c.getKey());
+	}
+
+	public void testMapping() {
+		ManifestMapping mapping = new ManifestMapping();
+		mapping.mapField("filename", ManifestMapping.Role.NAME);
+		mapping.mapField("file", ManifestMapping.Role.CONTENT);
+		mapping.mapProperty("title", "cm:title");
+		mapping.mapAssociation("ref", "cm:references");
+		mapping.ignoreField("notes");
+		String tsv = "filename\tsite\tfile\ttitle\tref\tnotes\n"
+				+ "a.txt\tone\tfiles/a.txt\tA\tb\tignore me\n";
+		CsvManifestReader reader = new CsvManifestReader(new StringReader(tsv), mapping, '\t');
+		reader.setContentBase(Paths.get("/data"));
+		AlfrescoItem item = readAll(reader).get(0);
+		assertEquals("a.txt", item.getName());
+		assertEquals("one", item.getSiteName());
+		assertEquals(Paths.get("/data/files/a.txt"), item.getContent());
+		assertEquals("A", item.getProperties().get("cm:title"));
+		assertEquals("b", item.getAssociations().get("cm:references"));
+		assertFalse(item.getProperties().containsKey("notes"));
+	}
+
+	public void testJsonArray() {
+		String json = "[\n"
+				+ "  {\"name\": \"a.txt\", \"site\": \"one\", \"cm:title\": \"A } [\\\"\", \"size\": 12},\n"
+				+ "  {\"name\": \"b.txt\", \"site\": \"one\", \"properties\": {\"cm:title\": \"B\"},\n"
+				+ "   \"associations\": {\"cm:references\": \"a\"}, \"tags\": [\"x\", \"y\"]}\n"
+				+ "]\n";
+		List<AlfrescoItem> items = readAll(new JsonManifestReader(new StringReader(json), null));
+		assertEquals(2, items.size());
+		assertEquals("A } [\"", items.get(0).getProperties().get("cm:title"));
+		assertEquals("12", items.get(0).getProperties().get("size"));
+		assertEquals("one", items.get(0).getSiteName());
+		assertEquals("B", items.get(1).getProperties().get("cm:title"));
+		assertEquals("a", items.get(1).getAssociations().get("cm:references"));
+		assertFalse(items.get(1).getProperties().containsKey("tags"));
+	}
+
+	public void testNdjsonSkipsBadRecords() {
+		String ndjson = "{\"name\": \"a.txt\", \"destination\": \"/x\"}\n"
+				+ "{\"name\": }\n"
+				+ "{\"name\": \"c.txt\", \"destination\": \"/x\", \"key\": 3}\n";
+		JsonManifestReader reader = new JsonManifestReader(new StringReader(ndjson), null);
+		List<AlfrescoItem> items = readAll(reader);
+		assertEquals(2, items.size());
+		assertEquals("a.txt", items.get(0).getName());
+		assertEquals("3", items.get(1).getKey());
+		assertEquals(2, reader.getCount());
+	}
+
+	public void testReadsLazily() {
+		StringBuilder ndjson = new StringBuilder();
+		for (int i = 0; i < 3; i++) {
+			ndjson.append("{\"name\": \"").append(i).append("\"}\n");
+		}
+		ndjson.append("not json\n");
+		JsonManifestReader reader = new JsonManifestReader(new StringReader(ndjson.toString()), null);
+		for (int i = 0; i < 3; i++) {
+			assertEquals(String.valueOf(i), reader.next().getName());
+		}
+		try {
+			reader.hasNext();
+			fail("Expected the malformed input to be reported");
+		} catch (IllegalStateException expected) {
+		}
+		assertFalse(reader.hasNext());
+	}
+
+	public void testOpen() throws IOException {
+		Path dir = Files.createTempDirectory("manifest");
+		Path file = dir.resolve("items.ndjson");
+		try {
+			Files.write(file, "{\"name\": \"a.txt\", \"content\": \"a.txt\", \"site\": \"one\"}\n".getBytes("UTF-8"));
+			ManifestReader reader = ManifestReader.open(file, null);
+			assertTrue(reader instanceof JsonManifestReader);
+			List<AlfrescoItem> items = readAll(reader);
+			assertEquals(1, items.size());
+			assertEquals(dir.toAbsolutePath().resolve("a.txt"), items.get(0).getContent());
+		} finally {
+			Files.delete(file);
+			Files.delete(dir);
+		}
+	}
+
+	private static List<AlfrescoItem> readAll(ManifestReader reader) {
+		List<AlfrescoItem> items = new ArrayList<AlfrescoItem>();
+		for (AlfrescoItem item : reader) {
+			items.add(item);
+		}
+		return items;
+	}
+}
@@ -0,0 +1,80 @@
+package com.tribloom.cmis;
+
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.GregorianCalendar;
+import java.util.List;
+import java.util.TimeZone;
+
+import junit.framework.TestCase;
+
+public class TestManifestWriter extends TestCase {
+
+	public void testRoundTrip() throws Exception {
+		AlfrescoItem item = new AlfrescoItem();
+		item.setKey("workspace://SpacesStore/1");
+		item.setName("a \"quoted\" name.txt");
+		item.setType("D:cm:content,P:cm:titled");
+		item.setSiteName("one");
+		item.setDestination("Reports/2014");
+		item.setMimetype("text/plain");
+		item.addProperty("cm:title", "Line one\nline two");
+		Calendar created = new GregorianCalendar(TimeZone.getTimeZone("UTC"));
+		created.setTimeInMillis(1393677000000L);
+		item.setProperty("cm:created", created);
+		item.addAssociation("cm:references", "workspace://SpacesStore/2");
+
+		StringWriter out = new StringWriter();
+		ManifestWriter writer = new ManifestWriter(out);
+		writer.write(item);
+		writer.close();
+		assertEquals(1, writer.getCount());
+
+		List<AlfrescoItem> items = readAll(new JsonManifestReader(new StringReader(out.toString()), null));
+		assertEquals(1, items.size());
+		AlfrescoItem read = items.get(0);
+		assertEquals(item.getKey(), read.getKey());
+		assertEquals(item.getName(), read.getName());
+		assertEquals(item.getType(), read.getType());
+		assertEquals("one", read.getSiteName());
+		assertEquals("Reports/2014", read.getDestination());
+		assertEquals("text/plain", read.getMimetype());
+		assertEquals(item.getProperties(), read.getProperties());
+		assertEquals("2014-03-01T12:30:00.000Z", read.getProperties().get("cm:created"));
+		assertEquals(item.getAssociations(), read.getAssociations());
+	}
+
+	public void testContentRelativeToManifest() throws Exception {
+		Path directory = Files.createTempDirectory("manifest");
+		Path file = directory.resolve("manifest.jsonl");
+		Path content = directory.resolve("documentLibrary").resolve("a.txt");
+		try {
+			AlfrescoItem item = new AlfrescoItem();
+			item.setName("a.txt");
+			item.setContent(content);
+			ManifestWriter writer = ManifestWriter.open(file);
+			writer.write(item);
+			writer.close();
+			String record = new String(Files.readAllBytes(file), "UTF-8");
+			assertFalse(record.contains(directory.getFileName().toString()));
+
+			AlfrescoItem read = readAll(ManifestReader.open(file, null)).get(0);
+			assertEquals(content.toAbsolutePath(), read.getContent());
+		} finally {
+			Files.deleteIfExists(file);
+			Files.deleteIfExists(directory);
+		}
+	}
+
+	private static List<AlfrescoItem> readAll(ManifestReader reader) {
+		List<AlfrescoItem> items = new ArrayList<AlfrescoItem>();
+		for (AlfrescoItem item : reader) {
+			items.add(item);
+		}
+		return items;
+	}
+}
@@ -0,0 +1,145 @@
+package com.tribloom.cmis;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Collectors;
+
+import org.apache.chemistry.opencmis.client.api.ItemIterable;
+import org.apache.chemistry.opencmis.client.api.OperationContext;
+import org.apache.chemistry.opencmis.client.api.Session;
+import org.apache.chemistry.opencmis.client.runtime.ObjectIdImpl;
+import org.apache.chemistry.opencmis.client.runtime.OperationContextImpl;
+import org.apache.chemistry.opencmis.client.runtime.QueryStatementImpl;
+import org.apache.chemistry.opencmis.client.runtime.util.AbstractPageFetcher;
+import org.apache.chemistry.opencmis.client.runtime.util.CollectionIterable;
+
+import junit.framework.TestCase;
+
+public class TestPagedQuery extends TestCase {
+
+	public void testEncodesPathNames() {
+		assertEquals("swsdp", PagedQuery.encodePathName("swsdp"));
+		assertEquals("my-site.v2", PagedQuery.encodePathName("my-site.v2"));
+		assertEquals("_x0032_014_x0020_reports", PagedQuery.encodePathName("2014 reports"));
+		assertEquals("it_x0027_s_x0022_", PagedQuery.encodePathName("it's\""));
+		assertEquals("a_x005F_x0020_b", PagedQuery.encodePathName("a_x0020_b"));
+	}
+
+	public void testBindsParameters() {
+		NumberQuery query = new NumberQuery(10, null);
+		query.setString(1, "x' OR cmis:name LIKE '%").setId(2, new ObjectIdImpl("a'b"));
+		assertEquals("dl:dataListItemType = 'x\\' OR cmis:name LIKE \\'%' AND IN_FOLDER('a\\'b')",
+				query.toQueryString());
+	}
+
+	public void testReadsEveryPageInOrder() {
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		try {
+			NumberQuery query = new NumberQuery(250, executor);
+			query.setPageSize(100);
+			List<Integer> results = query.toList();
+			assertEquals(250, results.size());
+			for (int i = 0; i < results.size(); i++) {
+				assertEquals(i, results.get(i).intValue());
+			}
+			assertEquals(3, query.fetches.size());
+			// The first page is fetched by the reader
+			assertTrue(query.fetchThreads.contains(Thread.currentThread().getName()));
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	public void testStopsAtMaxItems() {
+		NumberQuery query = new NumberQuery(1000, null);
+		query.setPageSize(30).setMaxItems(50);
+		List<Integer> results = query.stream().collect(Collectors.<Integer>toList());
+		assertEquals(50, results.size());
+		assertEquals(49, results.get(49).intValue());
+		assertEquals(2, query.fetches.size());
+		assertEquals(Long.valueOf(30), query.fetches.get(1));
+	}
+
+	public void testFetchesPrefetchedPageItselfIfNotStarted() {
+		// An executor too busy to ever start the prefetch
+		final List<Runnable> queued = new ArrayList<Runnable>();
+		NumberQuery query = new NumberQuery(25, new Executor() {
+			public void execute(Runnable command) {
+				queued.add(command);
+			}
+		});
+		query.setPageSize(10);
+		assertEquals(25, query.toList().size());
+		assertEquals(2, queued.size());
+		for (String thread : query.fetchThreads) {
+			assertEquals(Thread.currentThread().getName(), thread);
+		}
+	}
+
+	public void testClosingDropsPrefetchedPage() {
+		final List<Runnable> queued = new ArrayList<Runnable>();
+		NumberQuery query = new NumberQuery(25, new Executor() {
+			public void execute(Runnable command) {
+				queued.add(command);
+			}
+		});
+		query.setPageSize(10);
+		PagedQuery<Integer>.Results results = query.iterator();
+		assertEquals(0, results.next().intValue());
+		results.close();
+		assertFalse(results.hasNext());
+		queued.get(0).run();
+		assertEquals(1, query.fetches.size());
+	}
+
+	/**
+	 * Numbers 0..size-1 in pages, recording the skip count and thread of each fetch.
+	 */
+	private static class NumberQuery extends PagedQuery<Integer> {
+		final int size;
+		final List<Long> fetches = Collections.synchronizedList(new ArrayList<Long>());
+		final List<String> fetchThreads = Collections.synchronizedList(new ArrayList<String>());
+
+		NumberQuery(int size, Executor prefetchExecutor) {
+			super(createSession(), new CallGuard(new ImportMetrics(), new ConcurrencyLimiter(4, 1, 8, 0.75, 2.0),
+					new CircuitBreaker(5, 60000), 0, 1, 5), prefetchExecutor,
+					"dl:dataListItemType = ? AND IN_FOLDER(?)");
+			this.size = size;
+		}
+
+		ItemIterable<Integer> execute(boolean searchAllVersions, OperationContext context) {
+			return new CollectionIterable<Integer>(new AbstractPageFetcher<Integer>(context.getMaxItemsPerPage()) {
+				protected Page<Integer> fetchPage(long skipCount) {
+					fetches.add(skipCount);
+					fetchThreads.add(Thread.currentThread().getName());
+					List<Integer> page = new ArrayList<Integer>();
+					for (long i = skipCount; i < Math.min(size, skipCount + maxNumItems); i++) {
+						page.add((int) i);
+					}
+					return new Page<Integer>(page, size, skipCount + page.size() < size);
+				}
+			});
+		}
+
+		private static Session createSession() {
+			return (Session) Proxy.newProxyInstance(TestPagedQuery.class.getClassLoader(),
+					new Class<?>[] { Session.class }, new InvocationHandler() {
+						public Object invoke(Object proxy, Method method, Object[] args) {
+							if ("createQueryStatement".equals(method.getName())) {
+								return new QueryStatementImpl((Session) proxy, (String) args[0]);
+							} else if ("createOperationContext".equals(method.getName())) {
+								return new OperationContextImpl();
+							}
+							throw new UnsupportedOperationException(method.getName());
+						}
+					});
+		}
+	}
+}
@@ -0,0 +1,93 @@
+package com.tribloom.cmis;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.apache.chemistry.opencmis.client.api.Repository;
+import org.apache.chemistry.opencmis.client.api.Session;
+
+import junit.framework.TestCase;
+
+public class TestSessionPool extends TestCase {
+
+	public void testRejectsEmptyPool() {
+		try {
+			new SessionPool(new Sessions().repository, 0);
+			fail();
+		} catch (IllegalArgumentException expected) {
+		}
+	}
+
+	public void testCreatesSessionsUpToItsSize() {
+		Sessions sessions = new Sessions();
+		SessionPool pool = new SessionPool(sessions.repository, 3);
+		assertEquals(1, sessions.created.get());
+		// The primary session is lent out first
+		assertSame(pool.getPrimary(), pool.borrow());
+		Session second = pool.borrow();
+		Session third = pool.borrow();
+		assertNotSame(second, third);
+		assertEquals(3, sessions.created.get());
+
+		pool.release(second);
+		assertSame(second, pool.borrow());
+		assertEquals(3, sessions.created.get());
+	}
+
+	public void testWaitsForARelease() throws InterruptedException {
+		Sessions sessions = new Sessions();
+		final SessionPool pool = new SessionPool(sessions.repository, 1);
+		Session primary = pool.borrow();
+		final AtomicReference<Session> borrowed = new AtomicReference<Session>();
+		final CountDownLatch done = new CountDownLatch(1);
+		new Thread() {
+			public void run() {
+				borrowed.set(pool.borrow());
+				done.countDown();
+			}
+		}.start();
+		assertFalse(done.await(200, TimeUnit.MILLISECONDS));
+
+		pool.release(primary);
+		assertTrue(done.await(5, TimeUnit.SECONDS));
+		assertSame(primary, borrowed.get());
+		assertEquals(1, sessions.created.get());
+	}
+
+	/**
+	 * A repository that creates a new (inert) session every time.
+	 */
+	private static class Sessions {
+		final AtomicInteger created = new AtomicInteger();
+		final Repository repository = (Repository) Proxy.newProxyInstance(getClass().getClassLoader(),
+				new Class<?>[] { Repository.class }, new InvocationHandler() {
+					public Object invoke(Object proxy, Method method, Object[] args) {
+						if (method.getName().equals("createSession")) {
+							created.incrementAndGet();
+							return session();
+						}
+						throw new UnsupportedOperationException(method.getName());
+					}
+				});
+
+		private Session session() {
+			return (Session) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] { Session.class },
+					new InvocationHandler() {
+						public Object invoke(Object proxy, Method method, Object[] args) {
+							if (method.getName().equals("equals")) {
+								return proxy == args[0];
+							}
+							if (method.getName().equals("hashCode")) {
+								return System.identityHashCode(proxy);
+							}
+							throw new UnsupportedOperationException(method.getName());
+						}
+					});
+		}
+	}
+}
@@ -0,0 +1,77 @@
+package com.tribloom.cmis;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.chemistry.opencmis.client.api.Document;
+import org.apache.chemistry.opencmis.client.api.Folder;
+import org.apache.chemistry.opencmis.commons.PropertyIds;
+import org.apache.chemistry.opencmis.commons.data.ContentStream;
+import org.apache.chemistry.opencmis.commons.impl.dataobjects.ContentStreamImpl;
+
+import junit.framework.TestCase;
+
+public class TestSiteExporter extends TestCase {
+
+	private InMemoryRepository repository;
+	private CmisClient client;
+	private Folder library;
+	private Path directory;
+
+	protected void setUp() throws Exception {
+		repository = new InMemoryRepository();
+		client = repository.createClient();
+		library = repository.createSite(client, "test");
+		directory = Files.createTempDirectory("export");
+	}
+
+	protected void tearDown() throws Exception {
+		client.close();
+		repository.stop();
+		delete(directory);
+	}
+
+	public void testDownloadsChangedContentOfTheSameLength() throws Exception {
+		Map<String, Object> properties = new HashMap<String, Object>();
+		properties.put(PropertyIds.NAME, "a.txt");
+		properties.put(PropertyIds.OBJECT_TYPE_ID, "cmis:document");
+		Document document = library.createDocument(properties, content("old"), null);
+
+		ExportReport report = client.exportSite("test", directory);
+		assertEquals(1, report.getExported());
+		Path file = directory.resolve(SiteExporter.DOCUMENT_LIBRARY).resolve("a.txt");
+		assertEquals("old", new String(Files.readAllBytes(file)));
+
+		// Unchanged
+		report = client.exportSite("test", directory);
+		assertEquals(0, report.getExported());
+		assertEquals(1, report.getSkipped());
+
+		// Modification dates are compared to the second
+		Thread.sleep(1100);
+		document.setContentStream(content("new"), true);
+		report = client.exportSite("test", directory);
+		assertEquals(1, report.getExported());
+		assertEquals("new", new String(Files.readAllBytes(file)));
+	}
+
+	private static ContentStream content(String text) {
+		byte[] bytes = text.getBytes();
+		return new ContentStreamImpl("a.txt", BigInteger.valueOf(bytes.length), "text/plain",
+				new ByteArrayInputStream(bytes));
+	}
+
+	private static void delete(Path path) throws IOException {
+		if (Files.isDirectory(path)) {
+			for (Path child : Files.newDirectoryStream(path)) {
+				delete(child);
+			}
+		}
+		Files.delete(path);
+	}
+}
@@ -0,0 +1,75 @@
+package com.tribloom.cmis;
+
+import java.util.List;
+
+import org.apache.chemistry.opencmis.client.api.Folder;
+import org.apache.chemistry.opencmis.commons.PropertyIds;
+
+import junit.framework.TestCase;
+
+public class TestSiteLookups extends TestCase {
+
+	private static final String SITE = "test";
+
+	private InMemoryRepository repository;
+	private CmisClient client;
+	private Folder library;
+	private Folder issues;
+
+	protected void setUp() throws Exception {
+		repository = new InMemoryRepository();
+		CmisClient admin = repository.createClient();
+		repository.createTypes(admin);
+		library = repository.createSite(admin, SITE);
+		issues = repository.createIssueList(admin, SITE);
+		admin.close();
+		// Created after the types, so it sees them
+		client = repository.createClient();
+	}
+
+	protected void tearDown() throws Exception {
+		client.close();
+		repository.stop();
+	}
+
+	public void testFetchesOnlyFolderProperties() {
+		Folder docLib = client.getDocumentLibrary(SITE);
+		assertEquals(library.getId(), docLib.getId());
+		assertMinimal(docLib);
+		Folder site = client.getSiteFolder(SITE);
+		assertEquals(library.getParentId(), site.getId());
+		assertMinimal(site);
+		Folder container = client.getDataListContainer(SITE, false);
+		assertEquals(issues.getParentId(), container.getId());
+		assertMinimal(container);
+		List<Folder> dataLists = client.getDataLists(SITE, "dl:issue", false);
+		assertEquals(1, dataLists.size());
+		assertEquals(issues.getId(), dataLists.get(0).getId());
+		assertEquals("dl:issue", dataLists.get(0).getPropertyValue("dl:dataListItemType"));
+		assertNull(dataLists.get(0).getProperty(PropertyIds.CREATED_BY));
+	}
+
+	public void testCachesLookups() {
+		client.getDocumentLibrary(SITE);
+		long calls = count(Operation.QUERY) + count(Operation.GET_OBJECT);
+		assertEquals(library.getId(), client.getDocumentLibrary(SITE).getId());
+		assertEquals(library.getParentId(), client.getSiteFolder(SITE).getId());
+		assertEquals(calls, count(Operation.QUERY) + count(Operation.GET_OBJECT));
+	}
+
+	public void testReturnsNullForMissingSite() {
+		assertNull(client.getSiteFolder("missing"));
+		assertNull(client.getDocumentLibrary("missing"));
+	}
+
+	private static void assertMinimal(Folder folder) {
+		assertNotNull(folder.getName());
+		assertNotNull(folder.getPath());
+		assertNull(folder.getProperty(PropertyIds.CREATED_BY));
+		assertNull(folder.getAllowableActions());
+	}
+
+	private long count(Operation operation) {
+		return client.getCallGuard().getMetrics().getStats(operation).getCount();
+	}
+}
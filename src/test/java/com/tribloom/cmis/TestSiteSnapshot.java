@@ -0,0 +1,72 @@
+package com.tribloom.cmis;
+
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import junit.framework.TestCase;
+
+public class TestSiteSnapshot extends TestCase {
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	private Path file;
+
+	protected void setUp() throws Exception {
+		file = Files.createTempFile("sites", ".snapshot");
+		Files.delete(file);
+	}
+
+	protected void tearDown() throws Exception {
+		Files.deleteIfExists(file);
+	}
+
+	public void testSaveAndReload() throws Exception {
+		SiteSnapshot snapshot = new SiteSnapshot(file);
+		assertEquals(0, snapshot.size());
+		snapshot.put("swsdp", "workspace://SpacesStore/site", "workspace://SpacesStore/doclib");
+		snapshot.put("empty", "workspace://SpacesStore/empty", null);
+		snapshot.save();
+
+		snapshot = new SiteSnapshot(file);
+		assertEquals(2, snapshot.size());
+		SiteSnapshot.Entry entry = snapshot.get("swsdp");
+		assertEquals("workspace://SpacesStore/site", entry.getSiteFolderId());
+		assertEquals("workspace://SpacesStore/doclib", entry.getDocumentLibraryId());
+		assertNull(snapshot.get("empty").getDocumentLibraryId());
+		assertNull(snapshot.get("missing"));
+	}
+
+	public void testRetainAndRemove() throws Exception {
+		SiteSnapshot snapshot = new SiteSnapshot(file);
+		snapshot.put("a", "1", "2");
+		snapshot.put("b", "3", "4");
+		snapshot.put("c", "5", "6");
+		snapshot.retainAll(Arrays.asList("a", "b"));
+		snapshot.remove("a");
+		snapshot.save();
+		snapshot = new SiteSnapshot(file);
+		assertEquals(1, snapshot.size());
+		assertNotNull(snapshot.get("b"));
+	}
+
+	public void testStaleEntries() {
+		SiteSnapshot.Entry entry = new SiteSnapshot.Entry("a", "1", "2", System.currentTimeMillis() - 60000);
+		assertTrue(entry.isStale(1000));
+		assertFalse(entry.isStale(120000));
+		assertFalse(entry.isStale(0));
+	}
+
+	public void testSkipsUnreadableLines() throws Exception {
+		Files.write(file, Arrays.asList("# cmis-utils site snapshot 1", "a\t1\t2\t1000", "b\t3", "c\t5\t-\tnot a time",
+				"d\t7\t-\t2000"), UTF8);
+		SiteSnapshot snapshot = new SiteSnapshot(file);
+		assertEquals(2, snapshot.size());
+		assertEquals(1000, snapshot.get("a").getCheckedAt());
+		assertNull(snapshot.get("d").getDocumentLibraryId());
+
+		Files.write(file, Arrays.asList("something else"), UTF8);
+		assertEquals(0, new SiteSnapshot(file).size());
+	}
+}
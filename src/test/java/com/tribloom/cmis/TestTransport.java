@@ -0,0 +1,108 @@
+package com.tribloom.cmis;
+
+import java.util.Map;
+import java.util.Properties;
+
+import org.apache.chemistry.opencmis.client.bindings.impl.CmisBindingsHelper;
+import org.apache.chemistry.opencmis.client.bindings.impl.SessionImpl;
+import org.apache.chemistry.opencmis.client.bindings.spi.BindingSession;
+import org.apache.chemistry.opencmis.client.bindings.spi.StandardAuthenticationProvider;
+import org.apache.chemistry.opencmis.commons.SessionParameter;
+import org.apache.chemistry.opencmis.commons.enums.BindingType;
+import org.apache.chemistry.opencmis.commons.impl.UrlBuilder;
+import org.apache.http.impl.client.DefaultHttpClient;
+import org.apache.http.impl.conn.PoolingClientConnectionManager;
+
+import junit.framework.TestCase;
+
+public class TestTransport extends TestCase {
+
+	public void testDefaultsToAtomPub() {
+		Map<String, String> parameter = Transport.getSessionParameters(new Properties());
+		assertEquals(BindingType.ATOMPUB.value(), parameter.get(SessionParameter.BINDING_TYPE));
+		assertEquals("http://localhost:8080/alfresco/cmisatom", parameter.get(SessionParameter.ATOMPUB_URL));
+		assertEquals("admin", parameter.get(SessionParameter.USER));
+		assertEquals("false", parameter.get(SessionParameter.COMPRESSION));
+		assertEquals("false", parameter.get(SessionParameter.CLIENT_COMPRESSION));
+		assertFalse(parameter.containsKey(SessionParameter.READ_TIMEOUT));
+		assertFalse(parameter.containsKey(SessionParameter.HTTP_INVOKER_CLASS));
+	}
+
+	public void testBrowserBinding() {
+		Properties properties = new Properties();
+		properties.setProperty("cmis.binding", " Browser");
+		properties.setProperty("cmis.server.scheme", "https");
+		properties.setProperty("cmis.server.hostname", "alfresco.example.com");
+		properties.setProperty("cmis.server.port", "");
+		Map<String, String> parameter = Transport.getSessionParameters(properties);
+		assertEquals(BindingType.BROWSER.value(), parameter.get(SessionParameter.BINDING_TYPE));
+		assertEquals("https://alfresco.example.com/alfresco/api/-default-/public/cmis/versions/1.1/browser",
+				parameter.get(SessionParameter.BROWSER_URL));
+		assertFalse(parameter.containsKey(SessionParameter.ATOMPUB_URL));
+
+		properties.setProperty("cmis.service.path", "/cmis/browser");
+		assertEquals("https://alfresco.example.com/cmis/browser",
+				Transport.getSessionParameters(properties).get(SessionParameter.BROWSER_URL));
+	}
+
+	public void testHttpSettings() {
+		Properties properties = new Properties();
+		properties.setProperty("cmis.http.compression", "true");
+		properties.setProperty("cmis.http.client.compression", "TRUE");
+		properties.setProperty("cmis.http.connect.timeout.millis", "5000");
+		properties.setProperty("cmis.http.read.timeout.millis", " 60000 ");
+		properties.setProperty("cmis.http.invoker", "apache");
+		Map<String, String> parameter = Transport.getSessionParameters(properties);
+		assertEquals("true", parameter.get(SessionParameter.COMPRESSION));
+		assertEquals("true", parameter.get(SessionParameter.CLIENT_COMPRESSION));
+		assertEquals("5000", parameter.get(SessionParameter.CONNECT_TIMEOUT));
+		assertEquals("60000", parameter.get(SessionParameter.READ_TIMEOUT));
+		assertEquals("org.apache.chemistry.opencmis.client.bindings.spi.http.ApacheClientHttpInvoker",
+				parameter.get(SessionParameter.HTTP_INVOKER_CLASS));
+		assertEquals("com.example.MyInvoker", Transport.getInvokerClass("com.example.MyInvoker"));
+	}
+
+	public void testSizesTheApacheInvokersPool() {
+		Properties properties = new Properties();
+		properties.setProperty("cmis.http.invoker", "apache");
+		properties.setProperty("cmis.http.max.connections", "12");
+		String system = System.getProperty("http.maxConnections");
+		Map<String, String> parameter = Transport.getSessionParameters(properties);
+		assertEquals(PooledHttpInvoker.class.getName(), parameter.get(SessionParameter.HTTP_INVOKER_CLASS));
+		assertEquals("12", parameter.get(PooledHttpInvoker.MAX_CONNECTIONS));
+		assertEquals(system, System.getProperty("http.maxConnections"));
+
+		BindingSession session = new SessionImpl();
+		session.put(PooledHttpInvoker.MAX_CONNECTIONS, "12");
+		session.put(CmisBindingsHelper.AUTHENTICATION_PROVIDER_OBJECT, new StandardAuthenticationProvider());
+		DefaultHttpClient httpClient = new PooledHttpInvoker().createHttpClient(new UrlBuilder("http://localhost/"),
+				session);
+		assertEquals(12, ((PoolingClientConnectionManager) httpClient.getConnectionManager()).getMaxTotal());
+		assertEquals(12, ((PoolingClientConnectionManager) httpClient.getConnectionManager()).getDefaultMaxPerRoute());
+
+		// The JDK's pool can't be sized per client
+		properties.remove("cmis.http.invoker");
+		try {
+			Transport.getSessionParameters(properties);
+			fail();
+		} catch (IllegalArgumentException expected) {
+		}
+	}
+
+	public void testRejectsUnknownSettings() {
+		Properties properties = new Properties();
+		properties.setProperty("cmis.binding", "webservices");
+		try {
+			Transport.getSessionParameters(properties);
+			fail();
+		} catch (IllegalArgumentException ex) {
+			// Expected
+		}
+		try {
+			Transport.getInvokerClass("jetty");
+			fail();
+		} catch (IllegalArgumentException ex) {
+			// Expected
+		}
+	}
+}
@@ -0,0 +1,61 @@
+package com.tribloom.cmis;
+
+import java.util.Arrays;
+
+import junit.framework.TestCase;
+
+public class TestTypeRegistry extends TestCase {
+
+	private InMemoryRepository repository;
+	private CmisClient client;
+
+	protected void setUp() throws Exception {
+		repository = new InMemoryRepository();
+		CmisClient admin = repository.createClient();
+		repository.createTypes(admin);
+		admin.close();
+		// Created after the types, so it sees them
+		client = repository.createClient();
+	}
+
+	protected void tearDown() throws Exception {
+		client.close();
+		repository.stop();
+	}
+
+	public void testResolvesTypesOnce() {
+		TypeRegistry registry = new TypeRegistry(client.getSession());
+		assertEquals(InMemoryRepository.ISSUE_TYPE, registry.getType(InMemoryRepository.ISSUE_TYPE).getId());
+		assertSame(registry.getType(InMemoryRepository.ISSUE_TYPE), registry.getType(InMemoryRepository.ISSUE_TYPE));
+		assertNull(registry.getType("D:no:such"));
+		assertNull(registry.getType("D:no:such"));
+	}
+
+	public void testResolvesQueryNames() {
+		TypeRegistry registry = new TypeRegistry(client.getSession());
+		assertEquals("dl:issueID", registry.getQueryName(InMemoryRepository.ISSUE_TYPE, InMemoryRepository.ISSUE_ID));
+		// Inherited from cmis:document
+		assertEquals("cmis:name", registry.getQueryName(InMemoryRepository.ISSUE_TYPE, "cmis:name"));
+		assertNull(registry.getQueryName(InMemoryRepository.ISSUE_TYPE, "dl:noSuchProperty"));
+		assertNull(registry.getQueryName("D:no:such", "cmis:name"));
+	}
+
+	public void testParsesTypeStrings() {
+		TypeRegistry registry = new TypeRegistry(client.getSession());
+		TypeRegistry.TypeSpec spec = registry.getTypeSpec("cmis:folder, P:cm:titled,P:cm:ownable,");
+		assertEquals("cmis:folder", spec.getPrimaryType().getId());
+		assertEquals(Arrays.asList("P:cm:titled", "P:cm:ownable"), spec.getAspects());
+		assertSame(spec, registry.getTypeSpec("cmis:folder, P:cm:titled,P:cm:ownable,"));
+		assertTrue(registry.getTypeSpec("cmis:document").getAspects().isEmpty());
+		assertNull(registry.getTypeSpec("D:no:such,P:cm:titled"));
+	}
+
+	public void testPreloadsTypes() {
+		TypeRegistry registry = new TypeRegistry(client.getSession());
+		registry.preload(Arrays.asList(InMemoryRepository.ISSUE_TYPE, "cmis:folder,P:cm:titled", "D:no:such"), 3);
+		assertNotNull(registry.getTypeSpec(InMemoryRepository.ISSUE_TYPE));
+		assertEquals("dl:issueID", registry.getQueryName(InMemoryRepository.ISSUE_TYPE, InMemoryRepository.ISSUE_ID));
+		assertNotNull(registry.getType("cmis:folder"));
+		assertNull(registry.getType("D:no:such"));
+	}
+}
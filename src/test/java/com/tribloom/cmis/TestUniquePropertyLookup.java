@@ -0,0 +1,109 @@
+package com.tribloom.cmis;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+import org.apache.chemistry.opencmis.client.api.Folder;
+import org.apache.chemistry.opencmis.commons.PropertyIds;
+
+import junit.framework.TestCase;
+
+public class TestUniquePropertyLookup extends TestCase {
+
+	private InMemoryRepository repository;
+	private CmisClient client;
+	private Folder library;
+
+	protected void setUp() throws Exception {
+		repository = new InMemoryRepository();
+		CmisClient admin = repository.createClient();
+		library = repository.createSite(admin, "test");
+		repository.createTypes(admin);
+		admin.close();
+		// Created after the types, so it sees them
+		Properties properties = new Properties();
+		properties.setProperty("cmis.utils.unique.property", InMemoryRepository.ISSUE_ID);
+		properties.setProperty("cmis.utils.unique.batch.size", "2");
+		client = repository.createClient(properties);
+	}
+
+	protected void tearDown() throws Exception {
+		client.close();
+		repository.stop();
+	}
+
+	public void testLooksItemsUpInBatches() {
+		Map<String, String> ids = new HashMap<String, String>();
+		for (int i = 0; i < 5; i++) {
+			ids.put("ISS-" + i, createIssue("existing" + i + ".txt", "ISS-" + i));
+		}
+		List<AlfrescoItem> items = new ArrayList<AlfrescoItem>();
+		for (int i = 0; i < 7; i++) {
+			items.add(issue("other" + i + ".txt", "ISS-" + (i % 6)));
+		}
+		AlfrescoItem plain = issue("plain.txt", null);
+		plain.setType("cmis:document");
+		items.add(plain);
+
+		UniquePropertyLookup lookup = client.getUniquePropertyLookup();
+		long queries = count(Operation.QUERY);
+		Map<AlfrescoItem, String> found = lookup.lookup(items);
+		// Six distinct values, two per query
+		assertEquals(3, count(Operation.QUERY) - queries);
+		assertEquals(6, found.size());
+		for (int i = 0; i < 7; i++) {
+			assertEquals(ids.get("ISS-" + (i % 6)), found.get(items.get(i)));
+		}
+		assertFalse(found.containsKey(plain));
+	}
+
+	public void testImportSkipsItemsFoundByValue() {
+		List<AlfrescoItem> items = new ArrayList<AlfrescoItem>();
+		for (int i = 0; i < 5; i++) {
+			items.add(issue("issue" + i + ".txt", "ISS-" + i));
+		}
+		List<ImportResult> created = new BulkImporter(client, 2).importItems(items);
+
+		// Found by value, though named differently
+		List<AlfrescoItem> again = new ArrayList<AlfrescoItem>();
+		for (int i = 0; i < 5; i++) {
+			again.add(issue("renamed" + i + ".txt", "ISS-" + i));
+		}
+		again.add(issue("new.txt", "ISS-5"));
+		List<ImportResult> results = new BulkImporter(client, 2).importItems(again);
+		for (int i = 0; i < 5; i++) {
+			assertEquals(ImportResult.Status.CREATED, created.get(i).getStatus());
+			assertEquals(ImportResult.Status.SKIPPED, results.get(i).getStatus());
+			assertEquals(created.get(i).getNodeRef(), results.get(i).getNodeRef());
+		}
+		assertEquals(ImportResult.Status.CREATED, results.get(5).getStatus());
+	}
+
+	private String createIssue(String name, String issueId) {
+		Map<String, Object> properties = new HashMap<String, Object>();
+		properties.put(PropertyIds.NAME, name);
+		properties.put(PropertyIds.OBJECT_TYPE_ID, InMemoryRepository.ISSUE_TYPE);
+		properties.put(InMemoryRepository.ISSUE_ID, issueId);
+		return library.createDocument(properties, null, null).getId();
+	}
+
+	private AlfrescoItem issue(String name, String issueId) {
+		AlfrescoItem item = new AlfrescoItem();
+		item.setName(name);
+		item.setType(InMemoryRepository.ISSUE_TYPE);
+		item.setMimetype("text/plain");
+		item.setContent(name.getBytes());
+		item.setDestinationObject(library);
+		if (issueId != null) {
+			item.addProperty(InMemoryRepository.ISSUE_ID, issueId);
+		}
+		return item;
+	}
+
+	private long count(Operation operation) {
+		return client.getCallGuard().getMetrics().getStats(operation).getCount();
+	}
+}